@@ -0,0 +1,61 @@
+package com.springselfcoding.benchmark;
+
+import com.springselfcoding.benchmark.support.SyntheticBeans;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 容器启动耗时, N个合成Bean (见SyntheticBeans), 每次操作都是一次冷启动
+ * 1) 每次在新的ClassLoader中启动, 框架与Bean的类重新加载, 包含组件索引读取, 字节码解析, 依赖分析与实例化
+ * 2) snapshot=true时使用预先写好的启动快照, 对比跳过扫描与反射解析后的耗时
+ * e.g. java -jar target/benchmarks.jar ContextStartupBenchmark -p beanCount=1000
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContextStartupBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int beanCount;
+
+    @Param({"false", "true"})
+    public boolean snapshot;
+
+    private Path classes;
+
+    private String configLocation;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        classes = SyntheticBeans.generate(beanCount);
+        configLocation = snapshot ? SyntheticBeans.SNAPSHOT_CONFIG : SyntheticBeans.CONFIG;
+        if (snapshot) {
+            // 第一次启动写入快照, 不计入结果
+            startAndClose();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticBeans.delete(classes);
+    }
+
+    @Benchmark
+    public Object startup() throws Exception {
+        return startAndClose();
+    }
+
+    private Object startAndClose() throws Exception {
+        try (URLClassLoader classLoader = SyntheticBeans.classLoader(classes);
+             AutoCloseable context = SyntheticBeans.start(classLoader, configLocation)) {
+            return context;
+        }
+    }
+}
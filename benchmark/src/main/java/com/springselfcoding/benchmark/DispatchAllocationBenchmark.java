@@ -0,0 +1,75 @@
+package com.springselfcoding.benchmark;
+
+import com.springselfcoding.benchmark.support.BenchmarkHttpServletRequest;
+import com.springselfcoding.benchmark.support.BenchmarkHttpServletResponse;
+import com.springselfcoding.benchmark.support.BenchmarkServlets;
+import com.springselfcoding.demo.SelfDispatchServletV2;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次完整doDispatch的耗时与分配, 配合 -prof gc 查看gc.alloc.rate.norm (bytes/op)
+ * 1) demoQuery: DemoAction.query, @SelfCacheable命中时的路径
+ * 2) echoQuery: 同样的Handler不缓存, 包含参数绑定, 调用与String写出
+ * 3) echoJson: 路径变量 + 请求参数, 返回值写为JSON
+ * 请求与响应对象每次reset后复用, 不计入分配
+ * e.g. java -jar target/benchmarks.jar DispatchAllocationBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchAllocationBenchmark {
+
+    private SelfDispatchServletV2 demoServlet;
+
+    private SelfDispatchServletV2 echoServlet;
+
+    private BenchmarkHttpServletRequest demoRequest;
+
+    private BenchmarkHttpServletRequest echoRequest;
+
+    private BenchmarkHttpServletRequest jsonRequest;
+
+    private BenchmarkHttpServletResponse response;
+
+    @Setup
+    public void setup() throws Exception {
+        demoServlet = BenchmarkServlets.dispatcher("classpath:application.properties");
+        echoServlet = BenchmarkServlets.dispatcher("classpath:benchmark-web.properties");
+        demoRequest = new BenchmarkHttpServletRequest("GET", "/demo/query").setParameter("name", "self");
+        echoRequest = new BenchmarkHttpServletRequest("GET", "/echo/query").setParameter("name", "self");
+        jsonRequest = new BenchmarkHttpServletRequest("GET", "/echo/users/42").setParameter("name", "self");
+        response = new BenchmarkHttpServletResponse();
+    }
+
+    @TearDown
+    public void tearDown() {
+        demoServlet.destroy();
+        echoServlet.destroy();
+    }
+
+    @Benchmark
+    public int demoQuery() throws Exception {
+        return dispatch(demoServlet, demoRequest);
+    }
+
+    @Benchmark
+    public int echoQuery() throws Exception {
+        return dispatch(echoServlet, echoRequest);
+    }
+
+    @Benchmark
+    public int echoJson() throws Exception {
+        return dispatch(echoServlet, jsonRequest);
+    }
+
+    private int dispatch(SelfDispatchServletV2 servlet, BenchmarkHttpServletRequest request) throws Exception {
+        response.reset();
+        servlet.service(request, response);
+        return response.getStatus();
+    }
+}
@@ -0,0 +1,83 @@
+package com.springselfcoding.benchmark;
+
+import com.springselfcoding.benchmark.support.SyntheticBeans;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 已创建的单例按名称, 按类与按接口获取的耗时, Bean数量从100到10000, 耗时应基本持平
+ * 1) byName: 主beanName, 直接命中单例缓存
+ * 2) byClass: 类名是别名, 先解析为主beanName
+ * 3) byInterface: 接口名同样是别名, 只有一个实现时可以按接口获取
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetBeanBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int beanCount;
+
+    private Path classes;
+
+    private URLClassLoader classLoader;
+
+    private AutoCloseable context;
+
+    private Function<String, Object> byName;
+
+    private Function<Class<?>, Object> byType;
+
+    private String beanName;
+
+    private Class<?> beanClass;
+
+    private Class<?> beanInterface;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        classes = SyntheticBeans.generate(beanCount);
+        classLoader = SyntheticBeans.classLoader(classes);
+        context = SyntheticBeans.start(classLoader, SyntheticBeans.CONFIG);
+        byName = (Function<String, Object>) context.getClass().getMethod("byName").invoke(context);
+        byType = (Function<Class<?>, Object>) context.getClass().getMethod("byType").invoke(context);
+
+        // 取中间的一个偶数Bean, 它实现了接口
+        int index = beanCount / 2 - beanCount / 2 % 2;
+        String simpleName = SyntheticBeans.bean(index);
+        beanName = Character.toLowerCase(simpleName.charAt(0)) + simpleName.substring(1);
+        beanClass = classLoader.loadClass(SyntheticBeans.PACKAGE + "." + simpleName);
+        beanInterface = classLoader.loadClass(SyntheticBeans.PACKAGE + "." + SyntheticBeans.api(index));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.close();
+        classLoader.close();
+        SyntheticBeans.delete(classes);
+    }
+
+    @Benchmark
+    public Object byName() {
+        return byName.apply(beanName);
+    }
+
+    @Benchmark
+    public Object byClass() {
+        return byType.apply(beanClass);
+    }
+
+    @Benchmark
+    public Object byInterface() {
+        return byType.apply(beanInterface);
+    }
+}
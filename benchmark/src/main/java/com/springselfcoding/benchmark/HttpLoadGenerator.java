@@ -0,0 +1,235 @@
+package com.springselfcoding.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地HTTP压测, 比较内嵌服务器与Servlet容器 (jetty) 的吞吐, 不经过JMH
+ * 1) 每个连接一个线程, keep-alive复用连接, 每轮连续发出pipeline个请求再依次读取响应
+ * 2) 延迟按一轮计算 (从写出第一个请求到读完最后一个响应), 10微秒一格的直方图, 超过100ms的计入最后一格
+ * 3) 只支持http, 响应按Content-Length或chunked读取
+ * 用法: java -cp benchmarks.jar com.springselfcoding.benchmark.HttpLoadGenerator url [connections] [seconds] [pipeline]
+ * 内嵌服务器: java -cp benchmarks.jar com.springselfcoding.demo.SelfEmbeddedApplication classpath:benchmark-web.properties
+ */
+public class HttpLoadGenerator {
+
+    private static final int BUCKET_MICROS = 10;
+
+    private static final int BUCKETS = 10000;
+
+    private final URI uri;
+
+    private final int connections;
+
+    private final int seconds;
+
+    private final int pipeline;
+
+    private final LongAdder responses = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private volatile boolean running = true;
+
+    public HttpLoadGenerator(URI uri, int connections, int seconds, int pipeline) {
+        this.uri = uri;
+        this.connections = connections;
+        this.seconds = seconds;
+        this.pipeline = pipeline;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("usage: HttpLoadGenerator url [connections=64] [seconds=10] [pipeline=1]");
+            return;
+        }
+        new HttpLoadGenerator(URI.create(args[0]),
+                args.length > 1 ? Integer.parseInt(args[1]) : 64,
+                args.length > 2 ? Integer.parseInt(args[2]) : 10,
+                args.length > 3 ? Integer.parseInt(args[3]) : 1).run();
+    }
+
+    public void run() throws Exception {
+        // 1. 所有请求预先编码, 每轮直接写出
+        String path = null == this.uri.getRawQuery() ? this.uri.getRawPath() : this.uri.getRawPath() + "?" + this.uri.getRawQuery();
+        int port = -1 == this.uri.getPort() ? 80 : this.uri.getPort();
+        byte[] request = ("GET " + path + " HTTP/1.1\r\nHost: " + this.uri.getHost() + ":" + port + "\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        byte[] batch = new byte[request.length * this.pipeline];
+        for (int i = 0; i < this.pipeline; i++) {
+            System.arraycopy(request, 0, batch, i * request.length, request.length);
+        }
+
+        // 2. 每个连接一个线程
+        System.out.println("Running " + this.seconds + "s against " + this.uri + ", " + this.connections
+                + " connections, pipeline " + this.pipeline);
+        CountDownLatch finished = new CountDownLatch(this.connections);
+        List<long[]> histograms = new ArrayList<>();
+        for (int i = 0; i < this.connections; i++) {
+            long[] histogram = new long[BUCKETS + 1];
+            histograms.add(histogram);
+            Thread.ofPlatform().name("load-" + i).daemon().start(() -> {
+                try {
+                    connection(new InetSocketAddress(this.uri.getHost(), port), batch, histogram);
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+
+        // 3. 每秒打印一次吞吐
+        long start = System.nanoTime();
+        long last = 0;
+        for (int i = 1; i <= this.seconds; i++) {
+            Thread.sleep(Math.max(0, start / 1_000_000 + i * 1000L - System.nanoTime() / 1_000_000));
+            long total = this.responses.sum();
+            System.out.println(i + "s: " + (total - last) + " req/s");
+            last = total;
+        }
+        this.running = false;
+        finished.await();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        // 4. 汇总
+        long[] merged = new long[BUCKETS + 1];
+        for (long[] histogram : histograms) {
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] += histogram[i];
+            }
+        }
+        long total = this.responses.sum();
+        System.out.printf("Requests: %d in %.1fs, %.0f req/s, non-2xx: %d, connection errors: %d%n",
+                total, elapsed, total / elapsed, this.failures.sum(), this.errors.sum());
+        System.out.println("Batch latency p50 " + percentile(merged, 0.5) + ", p99 " + percentile(merged, 0.99)
+                + ", p99.9 " + percentile(merged, 0.999));
+    }
+
+    /**
+     * 一个连接: 出错时重新连接, 直到结束
+     */
+    private void connection(InetSocketAddress address, byte[] batch, long[] histogram) {
+        while (this.running) {
+            try (Socket socket = new Socket()) {
+                socket.setTcpNoDelay(true);
+                socket.connect(address, 5000);
+                socket.setSoTimeout(10000);
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+                while (this.running) {
+                    long begin = System.nanoTime();
+                    out.write(batch);
+                    for (int i = 0; i < this.pipeline; i++) {
+                        if (!readResponse(in)) {
+                            throw new IOException("Connection closed by server");
+                        }
+                    }
+                    long micros = (System.nanoTime() - begin) / 1000;
+                    histogram[(int) Math.min(BUCKETS, micros / BUCKET_MICROS)]++;
+                    this.responses.add(this.pipeline);
+                }
+            } catch (IOException e) {
+                if (this.running) {
+                    this.errors.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取一个响应并丢弃响应体, 服务器要求关闭连接时返回false
+     */
+    private boolean readResponse(InputStream in) throws IOException {
+        String statusLine = readLine(in);
+        if (null == statusLine) {
+            throw new IOException("Connection closed by server");
+        }
+        int status = Integer.parseInt(statusLine.substring(9, 12));
+        if (status < 200 || status >= 300) {
+            this.failures.increment();
+        }
+        long contentLength = -1;
+        boolean chunked = false;
+        boolean close = false;
+        String line;
+        while (null != (line = readLine(in)) && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                contentLength = Long.parseLong(value);
+            } else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+                chunked = "chunked".equalsIgnoreCase(value);
+            } else if ("Connection".equalsIgnoreCase(name)) {
+                close = "close".equalsIgnoreCase(value);
+            }
+        }
+        if (chunked) {
+            long size;
+            while ((size = Long.parseLong(readLine(in).split(";")[0].trim(), 16)) > 0) {
+                skip(in, size + 2);
+            }
+            // trailer直到空行
+            while (null != (line = readLine(in)) && !line.isEmpty()) {
+                // 忽略trailer
+            }
+        } else if (contentLength > 0) {
+            skip(in, contentLength);
+        }
+        return !close;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) >= 0) {
+            if ('\n' == b) {
+                int length = line.length();
+                return length > 0 && '\r' == line.charAt(length - 1) ? line.substring(0, length - 1) : line.toString();
+            }
+            line.append((char) b);
+        }
+        return null;
+    }
+
+    private static void skip(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new IOException("Connection closed by server");
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    private static String percentile(long[] histogram, double quantile) {
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        long target = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= target && seen > 0) {
+                return i == BUCKETS ? ">" + BUCKETS * BUCKET_MICROS / 1000 + "ms"
+                        : String.format("%.2fms", (i + 1) * BUCKET_MICROS / 1000.0);
+            }
+        }
+        return "-";
+    }
+}
@@ -0,0 +1,89 @@
+package com.springselfcoding.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springselfcoding.mvcframework.codec.SelfJsonCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SelfJsonCodec与Jackson的读写耗时对比, 两边都是byte[]进出
+ * 负载是一个包含10个明细的订单, 与典型的接口请求体大小相当
+ * 配合 -prof gc 查看每次操作的分配量
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonCodecBenchmark {
+
+    public static class Item {
+        public String sku;
+        public int qty;
+        public double price;
+    }
+
+    public static class Order {
+        public long id;
+        public String customer;
+        public List<Item> items;
+        public List<String> tags;
+        public boolean paid;
+    }
+
+    private SelfJsonCodec selfCodec;
+
+    private ObjectMapper objectMapper;
+
+    private Order order;
+
+    private byte[] json;
+
+    @Setup
+    public void setup() throws IOException {
+        selfCodec = new SelfJsonCodec();
+        objectMapper = new ObjectMapper();
+        order = new Order();
+        order.id = 1234567890123L;
+        order.customer = "Zhang San (张三)";
+        order.items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Item item = new Item();
+            item.sku = "SKU-" + (10000 + i);
+            item.qty = i + 1;
+            item.price = 19.99 + i;
+            order.items.add(item);
+        }
+        order.tags = List.of("express", "gift", "vip");
+        order.paid = true;
+        json = objectMapper.writeValueAsBytes(order);
+        // 两边的输出应当可以互相读取
+        objectMapper.readValue(selfCodec.writeAsBytes(order), Order.class);
+        selfCodec.read(json, Order.class);
+    }
+
+    @Benchmark
+    public byte[] selfWrite() {
+        return selfCodec.writeAsBytes(order);
+    }
+
+    @Benchmark
+    public byte[] jacksonWrite() throws IOException {
+        return objectMapper.writeValueAsBytes(order);
+    }
+
+    @Benchmark
+    public Order selfRead() throws IOException {
+        return selfCodec.read(json, Order.class);
+    }
+
+    @Benchmark
+    public Order jacksonRead() throws IOException {
+        return objectMapper.readValue(json, Order.class);
+    }
+}
@@ -0,0 +1,76 @@
+package com.springselfcoding.benchmark;
+
+import com.springselfcoding.mvcframework.router.SelfRouteMatch;
+import com.springselfcoding.mvcframework.router.SelfRouter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 路由查找耗时, 路由数量从10到10000, 耗时应基本持平
+ * 路由由静态, 单段变量, 多段通配三类各占1/3组成
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouterBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int routeCount;
+
+    private SelfRouter<Integer> router;
+
+    private String staticPath;
+
+    private String variablePath;
+
+    private String wildcardPath;
+
+    private String missPath;
+
+    @Setup
+    public void setup() {
+        router = new SelfRouter<>();
+        for (int i = 0; i < routeCount; i++) {
+            switch (i % 3) {
+                case 0:
+                    router.addRoute("/api/module" + i + "/items", i);
+                    break;
+                case 1:
+                    router.addRoute("/api/module" + i + "/items/{id}", i);
+                    break;
+                default:
+                    router.addRoute("/static/module" + i + "/**", i);
+            }
+        }
+        // 取最后注册的一批路由, 避免只测到最先插入的分支
+        int last = routeCount - routeCount % 3 - 3;
+        staticPath = "/api/module" + last + "/items";
+        variablePath = "/api/module" + (last + 1) + "/items/42";
+        wildcardPath = "/static/module" + (last + 2) + "/css/app.css";
+        missPath = "/api/module" + routeCount + "0/items";
+    }
+
+    @Benchmark
+    public SelfRouteMatch<Integer> matchStatic() {
+        return router.match(staticPath);
+    }
+
+    @Benchmark
+    public SelfRouteMatch<Integer> matchVariable() {
+        return router.match(variablePath);
+    }
+
+    @Benchmark
+    public SelfRouteMatch<Integer> matchWildcard() {
+        return router.match(wildcardPath);
+    }
+
+    @Benchmark
+    public SelfRouteMatch<Integer> matchMiss() {
+        return router.match(missPath);
+    }
+}
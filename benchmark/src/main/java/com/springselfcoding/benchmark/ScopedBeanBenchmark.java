@@ -0,0 +1,82 @@
+package com.springselfcoding.benchmark;
+
+import com.springselfcoding.benchmark.scope.SingletonState;
+import com.springselfcoding.benchmark.scope.ThreadState;
+import com.springselfcoding.benchmark.scope.TraceState;
+import com.springselfcoding.ioc.context.SelfApplicationContext;
+import com.springselfcoding.ioc.core.SelfScopeContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 作用域代理的调用开销, 以及一个请求作用域从开始到结束的开销
+ * 1) singleton: 直接调用单例, 作为对照
+ * 2) threadScoped / requestScoped: 经过作用域代理, 按槽位取出当前实例后调用, 实例已经存在
+ * 3) requestLifecycle: beginRequest, 第一次访问时创建实例, detach, end; 配合 -prof gc 查看每个请求的分配
+ *    分配只有上下文, 槽位数组与实例本身, end()不分配
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScopedBeanBenchmark {
+
+    private SelfApplicationContext context;
+
+    private SingletonState singleton;
+
+    private ThreadState threadState;
+
+    private TraceState traceState;
+
+    private SelfScopeContext request;
+
+    @Setup
+    public void setup() {
+        context = new SelfApplicationContext("classpath:benchmark-scope.properties");
+        singleton = (SingletonState) context.getBean(SingletonState.class);
+        threadState = (ThreadState) context.getBean(ThreadState.class);
+        traceState = (TraceState) context.getBean(TraceState.class);
+
+        // requestScoped在同一个请求中反复调用
+        request = SelfScopeContext.beginRequest();
+        traceState.getTraceId();
+    }
+
+    @TearDown
+    public void tearDown() {
+        SelfScopeContext.detach(null);
+        request.end();
+        context.close();
+    }
+
+    @Benchmark
+    public long singleton() {
+        return singleton.getId();
+    }
+
+    @Benchmark
+    public long threadScoped() {
+        return threadState.next();
+    }
+
+    @Benchmark
+    public long requestScoped() {
+        return traceState.getTraceId();
+    }
+
+    @Benchmark
+    public long requestLifecycle() {
+        SelfScopeContext previous = SelfScopeContext.currentRequest();
+        SelfScopeContext scope = SelfScopeContext.beginRequest();
+        try {
+            return traceState.getTraceId();
+        } finally {
+            SelfScopeContext.detach(previous);
+            scope.end();
+        }
+    }
+}
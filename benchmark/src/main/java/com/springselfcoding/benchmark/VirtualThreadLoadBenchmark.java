@@ -0,0 +1,80 @@
+package com.springselfcoding.benchmark;
+
+import com.springselfcoding.benchmark.support.BenchmarkHttpServletRequest;
+import com.springselfcoding.benchmark.support.BenchmarkHttpServletResponse;
+import com.springselfcoding.benchmark.support.BenchmarkServlets;
+import com.springselfcoding.demo.SelfDispatchServletV2;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 5000个并发客户端同时请求一个阻塞50ms的Handler, 比较平台线程与虚拟线程的吞吐
+ * 1) 容器线程池固定200个线程 (Tomcat默认maxThreads), 多出的请求在队列中等待, 相当于accept队列
+ * 2) platform: Handler直接在容器线程上阻塞, 理论上限 200 / 50ms = 4000 req/s
+ * 3) virtual: 容器线程只开启异步, Handler在虚拟线程上阻塞, 上限只取决于并发数, 5000 / 50ms = 100000 req/s
+ * 结果单位ops/s即每秒完成的请求数
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VirtualThreadLoadBenchmark {
+
+    public static final int CLIENTS = 5000;
+
+    public static final int CONTAINER_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    private SelfDispatchServletV2 servlet;
+
+    private ExecutorService containerThreads;
+
+    private String uri;
+
+    @Setup
+    public void setup() throws Exception {
+        servlet = BenchmarkServlets.dispatcher("classpath:benchmark-web.properties");
+        containerThreads = Executors.newFixedThreadPool(CONTAINER_THREADS);
+        uri = "/blocking/" + mode;
+    }
+
+    @TearDown
+    public void tearDown() {
+        containerThreads.shutdownNow();
+        servlet.destroy();
+    }
+
+    /**
+     * 一次操作是一轮5000个请求全部完成
+     */
+    @Benchmark
+    @OperationsPerInvocation(CLIENTS)
+    public void concurrentClients() throws Exception {
+        CountDownLatch finished = new CountDownLatch(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            containerThreads.execute(() -> {
+                BenchmarkHttpServletRequest req = new BenchmarkHttpServletRequest("GET", uri)
+                        .onComplete(finished::countDown);
+                BenchmarkHttpServletResponse resp = new BenchmarkHttpServletResponse();
+                try {
+                    servlet.service(req, resp);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                // 同步处理的请求在service返回时就结束了, 异步的由complete回调计数
+                if (!req.hasAsyncContext()) {
+                    finished.countDown();
+                }
+            });
+        }
+        finished.await();
+    }
+}
@@ -0,0 +1,16 @@
+package com.springselfcoding.benchmark.scope;
+
+import com.springselfcoding.mvcframework.SelfService;
+
+/**
+ * 对照组, 普通单例
+ */
+@SelfService
+public class SingletonState {
+
+    private final long id = System.nanoTime();
+
+    public long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,18 @@
+package com.springselfcoding.benchmark.scope;
+
+import com.springselfcoding.mvcframework.SelfScope;
+import com.springselfcoding.mvcframework.SelfService;
+
+/**
+ * 每个线程一个的计数器
+ */
+@SelfService
+@SelfScope("thread")
+public class ThreadState {
+
+    private long count;
+
+    public long next() {
+        return ++count;
+    }
+}
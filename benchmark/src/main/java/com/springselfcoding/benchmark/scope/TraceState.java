@@ -0,0 +1,18 @@
+package com.springselfcoding.benchmark.scope;
+
+import com.springselfcoding.mvcframework.SelfScope;
+import com.springselfcoding.mvcframework.SelfService;
+
+/**
+ * 每个请求一个的追踪信息
+ */
+@SelfService
+@SelfScope("request")
+public class TraceState {
+
+    private long traceId = System.nanoTime();
+
+    public long getTraceId() {
+        return traceId;
+    }
+}
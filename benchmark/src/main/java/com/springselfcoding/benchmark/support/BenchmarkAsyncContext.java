@@ -0,0 +1,121 @@
+package com.springselfcoding.benchmark.support;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试用的AsyncContext, 不做超时调度, complete时通知监听器与测试的回调
+ */
+public class BenchmarkAsyncContext implements AsyncContext {
+
+    private final ServletRequest request;
+
+    private final ServletResponse response;
+
+    private final Runnable onComplete;
+
+    private final List<AsyncListener> listeners = new ArrayList<>(1);
+
+    private long timeout;
+
+    private volatile boolean completed;
+
+    public BenchmarkAsyncContext(ServletRequest request, ServletResponse response, Runnable onComplete) {
+        this.request = request;
+        this.response = response;
+        this.onComplete = onComplete;
+    }
+
+    public boolean isCompleted() {
+        return this.completed;
+    }
+
+    @Override
+    public void complete() {
+        if (this.completed) {
+            return;
+        }
+        this.completed = true;
+        for (AsyncListener listener : this.listeners) {
+            try {
+                listener.onComplete(new AsyncEvent(this, this.request, this.response));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (null != this.onComplete) {
+            this.onComplete.run();
+        }
+    }
+
+    @Override
+    public ServletRequest getRequest() {
+        return this.request;
+    }
+
+    @Override
+    public ServletResponse getResponse() {
+        return this.response;
+    }
+
+    @Override
+    public boolean hasOriginalRequestAndResponse() {
+        return true;
+    }
+
+    @Override
+    public void start(Runnable run) {
+        new Thread(run).start();
+    }
+
+    @Override
+    public void addListener(AsyncListener listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void addListener(AsyncListener listener, ServletRequest servletRequest, ServletResponse servletResponse) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public <T extends AsyncListener> T createListener(Class<T> clazz) {
+        try {
+            return clazz.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public long getTimeout() {
+        return this.timeout;
+    }
+
+    @Override
+    public void dispatch() {
+        throw new UnsupportedOperationException("dispatch");
+    }
+
+    @Override
+    public void dispatch(String path) {
+        throw new UnsupportedOperationException("dispatch");
+    }
+
+    @Override
+    public void dispatch(ServletContext context, String path) {
+        throw new UnsupportedOperationException("dispatch");
+    }
+}
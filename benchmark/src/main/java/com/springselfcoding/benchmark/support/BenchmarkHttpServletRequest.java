@@ -0,0 +1,494 @@
+package com.springselfcoding.benchmark.support;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.ReadListener;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpUpgradeHandler;
+import javax.servlet.http.Part;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 基准测试用的请求, 只实现Dispatcher会用到的部分, 不依赖容器
+ * 1) 参数, 请求头, 属性与请求体都由测试直接设置
+ * 2) startAsync返回BenchmarkAsyncContext, 请求结束时回调onComplete
+ * 3) reset后可以重复使用, 测量时不计入请求对象本身的分配
+ */
+public class BenchmarkHttpServletRequest implements HttpServletRequest {
+
+    private final Map<String, String[]> parameters = new HashMap<>();
+
+    private final Map<String, String> headers = new HashMap<>();
+
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    private String method = "GET";
+
+    private String requestURI = "/";
+
+    private byte[] body = new byte[0];
+
+    private BenchmarkAsyncContext asyncContext;
+
+    // 异步请求结束时的回调
+    private Runnable onComplete;
+
+    public BenchmarkHttpServletRequest() {
+    }
+
+    public BenchmarkHttpServletRequest(String method, String requestURI) {
+        this.method = method;
+        this.requestURI = requestURI;
+    }
+
+    public BenchmarkHttpServletRequest setMethod(String method) {
+        this.method = method;
+        return this;
+    }
+
+    public BenchmarkHttpServletRequest setRequestURI(String requestURI) {
+        this.requestURI = requestURI;
+        return this;
+    }
+
+    public BenchmarkHttpServletRequest setParameter(String name, String value) {
+        this.parameters.put(name, new String[]{value});
+        return this;
+    }
+
+    public BenchmarkHttpServletRequest setHeader(String name, String value) {
+        this.headers.put(name, value);
+        return this;
+    }
+
+    public BenchmarkHttpServletRequest setBody(byte[] body) {
+        this.body = body;
+        return this;
+    }
+
+    public BenchmarkHttpServletRequest onComplete(Runnable onComplete) {
+        this.onComplete = onComplete;
+        return this;
+    }
+
+    /**
+     * 清除异步状态与属性, 参数与请求头保留
+     */
+    public void reset() {
+        this.attributes.clear();
+        this.asyncContext = null;
+    }
+
+    /**
+     * 是否开启过异步, 与isAsyncStarted不同, complete之后仍然返回true
+     */
+    public boolean hasAsyncContext() {
+        return null != this.asyncContext;
+    }
+
+    // ------------- 基准测试会用到的部分 ------------------
+
+    @Override
+    public String getMethod() {
+        return this.method;
+    }
+
+    @Override
+    public String getRequestURI() {
+        return this.requestURI;
+    }
+
+    @Override
+    public StringBuffer getRequestURL() {
+        return new StringBuffer("http://localhost").append(this.requestURI);
+    }
+
+    @Override
+    public String getContextPath() {
+        return "";
+    }
+
+    @Override
+    public String getServletPath() {
+        return "";
+    }
+
+    @Override
+    public String getPathInfo() {
+        return this.requestURI;
+    }
+
+    @Override
+    public String getQueryString() {
+        return null;
+    }
+
+    @Override
+    public String getProtocol() {
+        return "HTTP/1.1";
+    }
+
+    @Override
+    public String getScheme() {
+        return "http";
+    }
+
+    @Override
+    public String getServerName() {
+        return "localhost";
+    }
+
+    @Override
+    public int getServerPort() {
+        return 80;
+    }
+
+    @Override
+    public String getParameter(String name) {
+        String[] values = this.parameters.get(name);
+        return null == values ? null : values[0];
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(this.parameters.keySet());
+    }
+
+    @Override
+    public String[] getParameterValues(String name) {
+        return this.parameters.get(name);
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        return this.parameters;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return this.headers.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+        String value = this.headers.get(name);
+        return Collections.enumeration(null == value ? Collections.emptyList() : Collections.singletonList(value));
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+        return Collections.enumeration(this.headers.keySet());
+    }
+
+    @Override
+    public long getDateHeader(String name) {
+        return -1;
+    }
+
+    @Override
+    public int getIntHeader(String name) {
+        String value = this.headers.get(name);
+        return null == value ? -1 : Integer.parseInt(value);
+    }
+
+    @Override
+    public String getContentType() {
+        return this.headers.get("Content-Type");
+    }
+
+    @Override
+    public int getContentLength() {
+        return this.body.length;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+        return this.body.length;
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return "UTF-8";
+    }
+
+    @Override
+    public void setCharacterEncoding(String env) {
+    }
+
+    @Override
+    public ServletInputStream getInputStream() {
+        ByteArrayInputStream in = new ByteArrayInputStream(this.body);
+        return new ServletInputStream() {
+            @Override
+            public int read() {
+                return in.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return in.read(b, off, len);
+            }
+
+            @Override
+            public boolean isFinished() {
+                return 0 == in.available();
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+            }
+        };
+    }
+
+    @Override
+    public BufferedReader getReader() {
+        return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(this.body), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return this.attributes.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        return Collections.enumeration(this.attributes.keySet());
+    }
+
+    @Override
+    public void setAttribute(String name, Object o) {
+        this.attributes.put(name, o);
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        this.attributes.remove(name);
+    }
+
+    @Override
+    public String getRemoteAddr() {
+        return "127.0.0.1";
+    }
+
+    @Override
+    public String getRemoteHost() {
+        return "localhost";
+    }
+
+    @Override
+    public int getRemotePort() {
+        return 0;
+    }
+
+    @Override
+    public String getLocalName() {
+        return "localhost";
+    }
+
+    @Override
+    public String getLocalAddr() {
+        return "127.0.0.1";
+    }
+
+    @Override
+    public int getLocalPort() {
+        return 80;
+    }
+
+    @Override
+    public Locale getLocale() {
+        return Locale.getDefault();
+    }
+
+    @Override
+    public Enumeration<Locale> getLocales() {
+        return Collections.enumeration(Collections.singletonList(Locale.getDefault()));
+    }
+
+    @Override
+    public boolean isSecure() {
+        return false;
+    }
+
+    @Override
+    public AsyncContext startAsync() {
+        return startAsync(this, null);
+    }
+
+    @Override
+    public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+        if (null != this.asyncContext) {
+            throw new IllegalStateException("Async already started");
+        }
+        this.asyncContext = new BenchmarkAsyncContext(servletRequest, servletResponse, this.onComplete);
+        return this.asyncContext;
+    }
+
+    @Override
+    public boolean isAsyncStarted() {
+        return null != this.asyncContext && !this.asyncContext.isCompleted();
+    }
+
+    @Override
+    public boolean isAsyncSupported() {
+        return true;
+    }
+
+    @Override
+    public AsyncContext getAsyncContext() {
+        if (null == this.asyncContext) {
+            throw new IllegalStateException("Async not started");
+        }
+        return this.asyncContext;
+    }
+
+    @Override
+    public DispatcherType getDispatcherType() {
+        return null == this.asyncContext ? DispatcherType.REQUEST : DispatcherType.ASYNC;
+    }
+
+    // ------------- 基准测试用不到的部分 ------------------
+
+    @Override
+    public String getAuthType() {
+        return null;
+    }
+
+    @Override
+    public Cookie[] getCookies() {
+        return null;
+    }
+
+    @Override
+    public String getPathTranslated() {
+        return null;
+    }
+
+    @Override
+    public String getRemoteUser() {
+        return null;
+    }
+
+    @Override
+    public boolean isUserInRole(String role) {
+        return false;
+    }
+
+    @Override
+    public Principal getUserPrincipal() {
+        return null;
+    }
+
+    @Override
+    public String getRequestedSessionId() {
+        return null;
+    }
+
+    @Override
+    public HttpSession getSession(boolean create) {
+        if (create) {
+            throw new UnsupportedOperationException("getSession");
+        }
+        return null;
+    }
+
+    @Override
+    public HttpSession getSession() {
+        return getSession(true);
+    }
+
+    @Override
+    public String changeSessionId() {
+        throw new UnsupportedOperationException("changeSessionId");
+    }
+
+    @Override
+    public boolean isRequestedSessionIdValid() {
+        return false;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromCookie() {
+        return false;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromURL() {
+        return false;
+    }
+
+    @Override
+    @Deprecated
+    public boolean isRequestedSessionIdFromUrl() {
+        return false;
+    }
+
+    @Override
+    public boolean authenticate(HttpServletResponse response) {
+        throw new UnsupportedOperationException("authenticate");
+    }
+
+    @Override
+    public void login(String username, String password) {
+        throw new UnsupportedOperationException("login");
+    }
+
+    @Override
+    public void logout() {
+        throw new UnsupportedOperationException("logout");
+    }
+
+    @Override
+    public Collection<Part> getParts() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Part getPart(String name) {
+        return null;
+    }
+
+    @Override
+    public <T extends HttpUpgradeHandler> T upgrade(Class<T> handlerClass) {
+        throw new UnsupportedOperationException("upgrade");
+    }
+
+    @Override
+    public RequestDispatcher getRequestDispatcher(String path) {
+        throw new UnsupportedOperationException("getRequestDispatcher");
+    }
+
+    @Override
+    @Deprecated
+    public String getRealPath(String path) {
+        return null;
+    }
+
+    @Override
+    public ServletContext getServletContext() {
+        throw new UnsupportedOperationException("getServletContext");
+    }
+}
@@ -0,0 +1,256 @@
+package com.springselfcoding.benchmark.support;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 基准测试用的响应, 响应体写入内存, reset后可以重复使用
+ */
+public class BenchmarkHttpServletResponse implements HttpServletResponse {
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+
+    private final Map<String, String> headers = new HashMap<>();
+
+    private final ServletOutputStream outputStream = new ServletOutputStream() {
+        @Override
+        public void write(int b) {
+            body.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            body.write(b, off, len);
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    };
+
+    private final PrintWriter writer = new PrintWriter(new OutputStreamWriter(this.outputStream, StandardCharsets.UTF_8));
+
+    private int status = SC_OK;
+
+    private String contentType;
+
+    public byte[] getBody() {
+        this.writer.flush();
+        return this.body.toByteArray();
+    }
+
+    public String getBodyAsString() {
+        return new String(getBody(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void reset() {
+        this.writer.flush();
+        this.body.reset();
+        this.headers.clear();
+        this.status = SC_OK;
+        this.contentType = null;
+    }
+
+    @Override
+    public void resetBuffer() {
+        this.writer.flush();
+        this.body.reset();
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+        return this.writer;
+    }
+
+    @Override
+    public void flushBuffer() {
+        this.writer.flush();
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return false;
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        this.status = sc;
+    }
+
+    @Override
+    @Deprecated
+    public void setStatus(int sc, String sm) {
+        this.status = sc;
+    }
+
+    @Override
+    public int getStatus() {
+        return this.status;
+    }
+
+    @Override
+    public void sendError(int sc, String msg) {
+        this.status = sc;
+    }
+
+    @Override
+    public void sendError(int sc) {
+        this.status = sc;
+    }
+
+    @Override
+    public void sendRedirect(String location) {
+        this.status = SC_FOUND;
+        this.headers.put("Location", location);
+    }
+
+    @Override
+    public boolean containsHeader(String name) {
+        return this.headers.containsKey(name);
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        this.headers.put(name, value);
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        this.headers.put(name, value);
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        this.headers.put(name, String.valueOf(value));
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        this.headers.put(name, String.valueOf(value));
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+        this.headers.put(name, String.valueOf(date));
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+        this.headers.put(name, String.valueOf(date));
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return this.headers.get(name);
+    }
+
+    @Override
+    public Collection<String> getHeaders(String name) {
+        String value = this.headers.get(name);
+        Collection<String> values = new ArrayList<>(1);
+        if (null != value) {
+            values.add(value);
+        }
+        return values;
+    }
+
+    @Override
+    public Collection<String> getHeaderNames() {
+        return this.headers.keySet();
+    }
+
+    @Override
+    public void setContentType(String type) {
+        this.contentType = type;
+    }
+
+    @Override
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        this.headers.put("Content-Length", String.valueOf(len));
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        this.headers.put("Content-Length", String.valueOf(len));
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return "UTF-8";
+    }
+
+    @Override
+    public void setCharacterEncoding(String charset) {
+    }
+
+    @Override
+    public void setBufferSize(int size) {
+    }
+
+    @Override
+    public int getBufferSize() {
+        return 0;
+    }
+
+    @Override
+    public void setLocale(Locale loc) {
+    }
+
+    @Override
+    public Locale getLocale() {
+        return Locale.getDefault();
+    }
+
+    @Override
+    public void addCookie(Cookie cookie) {
+    }
+
+    @Override
+    public String encodeURL(String url) {
+        return url;
+    }
+
+    @Override
+    public String encodeRedirectURL(String url) {
+        return url;
+    }
+
+    @Override
+    @Deprecated
+    public String encodeUrl(String url) {
+        return url;
+    }
+
+    @Override
+    @Deprecated
+    public String encodeRedirectUrl(String url) {
+        return url;
+    }
+}
@@ -0,0 +1,47 @@
+package com.springselfcoding.benchmark.support;
+
+import com.springselfcoding.demo.SelfDispatchServletV2;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import java.util.Collections;
+import java.util.Enumeration;
+
+/**
+ * 不启动容器, 直接初始化Dispatcher
+ */
+public final class BenchmarkServlets {
+
+    private BenchmarkServlets() {
+    }
+
+    /**
+     * @param contextConfigLocation e.g. classpath:benchmark-web.properties
+     */
+    public static SelfDispatchServletV2 dispatcher(String contextConfigLocation) throws ServletException {
+        SelfDispatchServletV2 servlet = new SelfDispatchServletV2();
+        servlet.init(new ServletConfig() {
+            @Override
+            public String getServletName() {
+                return "selfmvc";
+            }
+
+            @Override
+            public ServletContext getServletContext() {
+                return null;
+            }
+
+            @Override
+            public String getInitParameter(String name) {
+                return "contextConfigLocation".equals(name) ? contextConfigLocation : null;
+            }
+
+            @Override
+            public Enumeration<String> getInitParameterNames() {
+                return Collections.enumeration(Collections.singletonList("contextConfigLocation"));
+            }
+        });
+        return servlet;
+    }
+}
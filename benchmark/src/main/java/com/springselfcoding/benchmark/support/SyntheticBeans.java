@@ -0,0 +1,159 @@
+package com.springselfcoding.benchmark.support;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 生成N个合成的Bean, 编译到临时目录, 用于容器启动与getBean的基准测试
+ * 1) Bean{i}: @SelfService, 偶数的实现接口Api{i}; 每10个一组, 组内依次字段注入前一个, 每3个构造器注入一个更早的Bean, 依赖图无环
+ * 2) 编译时同时执行SelfComponentIndexer, 与正常构建一样生成组件索引
+ * 3) 生成的类不在JMH进程的classpath上, 需要通过classLoader()在隔离的ClassLoader中启动容器, 框架的类也在其中重新加载
+ */
+public final class SyntheticBeans {
+
+    public static final String PACKAGE = "com.springselfcoding.benchmark.synthetic";
+
+    // 不使用快照的配置
+    public static final String CONFIG = "classpath:synthetic.properties";
+
+    // 使用启动快照的配置, 快照文件在生成目录下
+    public static final String SNAPSHOT_CONFIG = "classpath:synthetic-snapshot.properties";
+
+    private SyntheticBeans() {
+    }
+
+    /**
+     * 生成并编译count个Bean, 返回class输出目录
+     */
+    public static Path generate(int count) throws IOException {
+        Path root = Files.createTempDirectory("self-synthetic-" + count + "-");
+        Path sources = root.resolve("src");
+        Path classes = root.resolve("classes");
+        Path packageDirectory = sources.resolve(PACKAGE.replace('.', '/'));
+        Files.createDirectories(packageDirectory);
+        Files.createDirectories(classes);
+
+        // 1. 源文件
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (0 == i % 2) {
+                files.add(write(packageDirectory.resolve(api(i) + ".java"),
+                        "package " + PACKAGE + ";\n\npublic interface " + api(i) + " {\n}\n"));
+            }
+            files.add(write(packageDirectory.resolve(bean(i) + ".java"), beanSource(i)));
+        }
+
+        // 2. 配置
+        String config = "scanPackage=" + PACKAGE + "\nstartup.reportLimit=0\n";
+        Files.writeString(classes.resolve("synthetic.properties"), config);
+        Files.writeString(classes.resolve("synthetic-snapshot.properties"), config + "snapshot.path="
+                + root.resolve("synthetic.snapshot").toString().replace('\\', '/') + "\n");
+
+        // 3. 编译, 组件索引与正常构建一样由注解处理器生成
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (null == compiler) {
+            throw new IllegalStateException("Synthetic beans need a JDK, no system Java compiler found");
+        }
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            List<String> options = List.of("-d", classes.toString(), "-cp", System.getProperty("java.class.path"),
+                    "-processor", "com.springselfcoding.ioc.index.SelfComponentIndexer", "-nowarn");
+            Boolean success = compiler.getTask(null, fileManager, null, options, null,
+                    fileManager.getJavaFileObjectsFromFiles(files)).call();
+            if (!Boolean.TRUE.equals(success)) {
+                throw new IllegalStateException("Failed to compile synthetic beans in " + sources);
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * 生成的类在前, 之后是当前进程的classpath, 父ClassLoader只有JDK的类, 每次调用都会重新加载框架
+     */
+    public static URLClassLoader classLoader(Path classes) {
+        List<URL> urls = new ArrayList<>();
+        try {
+            urls.add(classes.toUri().toURL());
+            for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+                urls.add(Paths.get(entry).toUri().toURL());
+            }
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+        return new URLClassLoader("self-synthetic", urls.toArray(new URL[0]), ClassLoader.getPlatformClassLoader());
+    }
+
+    /**
+     * 在给定的ClassLoader中启动容器
+     */
+    public static AutoCloseable start(ClassLoader classLoader, String configLocation) throws Exception {
+        return (AutoCloseable) classLoader.loadClass(SyntheticContext.class.getName())
+                .getConstructor(String.class).newInstance(configLocation);
+    }
+
+    /**
+     * 删除generate()生成的整个临时目录
+     */
+    public static void delete(Path classes) throws IOException {
+        try (Stream<Path> paths = Files.walk(classes.getParent())) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static String bean(int i) {
+        return String.format("Bean%05d", i);
+    }
+
+    public static String api(int i) {
+        return String.format("Api%05d", i);
+    }
+
+    private static String beanSource(int i) {
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(PACKAGE).append(";\n\n")
+                .append("import com.springselfcoding.mvcframework.SelfAutowired;\n")
+                .append("import com.springselfcoding.mvcframework.SelfService;\n\n")
+                .append("@SelfService\n")
+                .append("public class ").append(bean(i));
+        if (0 == i % 2) {
+            source.append(" implements ").append(api(i));
+        }
+        source.append(" {\n");
+        // 组内字段注入前一个Bean
+        if (0 != i % 10) {
+            source.append("    @SelfAutowired\n    private ").append(bean(i - 1)).append(" previous;\n");
+        }
+        // 每3个构造器注入上一组中的一个Bean, 偶数Bean按接口注入
+        if (0 == i % 3 && i >= 10) {
+            int dependency = i - 10 + i % 7;
+            String type = 0 == dependency % 2 ? api(dependency) : bean(dependency);
+            source.append("    private final ").append(type).append(" earlier;\n\n")
+                    .append("    public ").append(bean(i)).append("(").append(type).append(" earlier) {\n")
+                    .append("        this.earlier = earlier;\n    }\n");
+        }
+        return source.append("}\n").toString();
+    }
+
+    private static File write(Path path, String content) throws IOException {
+        Files.writeString(path, content);
+        return path.toFile();
+    }
+}
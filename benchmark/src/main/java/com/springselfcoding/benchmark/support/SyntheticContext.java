@@ -0,0 +1,41 @@
+package com.springselfcoding.benchmark.support;
+
+import com.springselfcoding.ioc.context.SelfApplicationContext;
+
+import java.util.function.Function;
+
+/**
+ * 只在SyntheticBeans.classLoader()中加载, 持有另一份框架的容器
+ * 基准测试不能直接引用这里的框架类型, 只通过AutoCloseable与Function这些JDK接口调用
+ */
+public class SyntheticContext implements AutoCloseable {
+
+    private final SelfApplicationContext context;
+
+    public SyntheticContext(String configLocation) {
+        this.context = new SelfApplicationContext(configLocation);
+    }
+
+    public int getBeanDefinitionCount() {
+        return this.context.getBeanDefinitionCount();
+    }
+
+    /**
+     * 按beanName获取
+     */
+    public Function<String, Object> byName() {
+        return this.context::getBean;
+    }
+
+    /**
+     * 按类型获取, 类型需要从同一个ClassLoader中加载
+     */
+    public Function<Class<?>, Object> byType() {
+        return this.context::getBean;
+    }
+
+    @Override
+    public void close() {
+        this.context.close();
+    }
+}
@@ -0,0 +1,29 @@
+package com.springselfcoding.benchmark.web;
+
+import com.springselfcoding.mvcframework.SelfController;
+import com.springselfcoding.mvcframework.SelfRequestMapping;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 模拟阻塞50ms的下游调用 (JDBC/HTTP), 两个路由只有执行线程不同
+ */
+@SelfController
+@SelfRequestMapping("/blocking")
+public class BlockingAction {
+
+    public static final long BLOCKING_MILLIS = 50;
+
+    @SelfRequestMapping("/platform")
+    public void platform(HttpServletResponse resp) throws IOException, InterruptedException {
+        Thread.sleep(BLOCKING_MILLIS);
+        resp.getWriter().write("ok");
+    }
+
+    @SelfRequestMapping(value = "/virtual", virtualThread = true)
+    public void virtual(HttpServletResponse resp) throws IOException, InterruptedException {
+        Thread.sleep(BLOCKING_MILLIS);
+        resp.getWriter().write("ok");
+    }
+}
@@ -0,0 +1,28 @@
+package com.springselfcoding.benchmark.web;
+
+import com.springselfcoding.mvcframework.SelfController;
+import com.springselfcoding.mvcframework.SelfPathVariable;
+import com.springselfcoding.mvcframework.SelfRequestMapping;
+import com.springselfcoding.mvcframework.SelfRequestMethod;
+import com.springselfcoding.mvcframework.SelfRequestParam;
+
+/**
+ * 与DemoAction.query相同的Handler, 但不缓存响应, 每次请求都走完整的参数绑定, 调用与写出
+ */
+@SelfController
+@SelfRequestMapping("/echo")
+public class EchoAction {
+
+    @SelfRequestMapping(value = "/query", method = SelfRequestMethod.GET)
+    public String query(@SelfRequestParam("name") String name) {
+        return "My name is " + name;
+    }
+
+    @SelfRequestMapping(value = "/users/{id}", method = SelfRequestMethod.GET)
+    public User user(@SelfPathVariable("id") long id, @SelfRequestParam(value = "name", required = false) String name) {
+        return new User(id, name);
+    }
+
+    public record User(long id, String name) {
+    }
+}
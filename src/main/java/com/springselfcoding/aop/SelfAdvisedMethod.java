@@ -0,0 +1,49 @@
+package com.springselfcoding.aop;
+
+import com.springselfcoding.aop.intercept.SelfMethodInterceptor;
+import com.springselfcoding.aop.intercept.SelfMethodInvocation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+
+/**
+ * 一个被代理方法的拦截器链与目标调用, 创建代理时生成, 调用时只读
+ */
+public class SelfAdvisedMethod {
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final Method method;
+
+    private final SelfMethodInterceptor[] interceptors;
+
+    // (Object, Object[])Object 签名, 调用目标对象上的原方法
+    private final MethodHandle invoker;
+
+    SelfAdvisedMethod(Method method, SelfMethodInterceptor[] interceptors, MethodHandle invoker) {
+        this.method = method;
+        this.interceptors = interceptors;
+        this.invoker = invoker;
+    }
+
+    /**
+     * 执行拦截器链, 没有拦截器时直接调用目标方法
+     */
+    public Object invoke(Object proxy, Object target, Object[] args) throws Throwable {
+        if (null == args) {
+            args = NO_ARGS;
+        }
+        if (0 == this.interceptors.length) {
+            return (Object) this.invoker.invokeExact(target, args);
+        }
+        return new SelfMethodInvocation(proxy, target, this.method, args, this.interceptors, this.invoker).proceed();
+    }
+
+    public Method getMethod() {
+        return this.method;
+    }
+
+    public boolean isAdvised() {
+        return this.interceptors.length > 0;
+    }
+}
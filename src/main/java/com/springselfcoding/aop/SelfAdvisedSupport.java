@@ -0,0 +1,129 @@
+package com.springselfcoding.aop;
+
+import com.springselfcoding.aop.aspect.SelfAdvisor;
+import com.springselfcoding.aop.intercept.SelfMethodInterceptor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一个目标类的代理配置, 同一个类的所有实例(包括prototype)共用
+ * 1) 对目标类的每个public方法匹配一遍所有切面, 得到固定的拦截器数组
+ * 2) 目标类实现的接口方法也各自对应一份, 拦截器按实现方法匹配, JDK动态代理使用
+ * 3) 目标方法统一转换为MethodHandle, 调用时不再反射
+ */
+public class SelfAdvisedSupport {
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private final Class<?> targetClass;
+
+    // 目标类方法与接口方法 -> 拦截器链
+    private final Map<Method, SelfAdvisedMethod> methodCache = new HashMap<>();
+
+    // 目标类实现的全部接口
+    private final Class<?>[] interfaces;
+
+    // 是否有任何方法被切中
+    private final boolean advised;
+
+    public SelfAdvisedSupport(Class<?> targetClass, List<SelfAdvisor> advisors) {
+        this.targetClass = targetClass;
+
+        // 1. 目标类自己的方法
+        boolean advised = false;
+        for (Method method : targetClass.getMethods()) {
+            if (Object.class == method.getDeclaringClass() || Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            SelfAdvisedMethod advisedMethod = createAdvisedMethod(method, method, advisors);
+            this.methodCache.put(method, advisedMethod);
+            advised |= advisedMethod.isAdvised();
+        }
+        this.advised = advised;
+
+        // 2. 接口方法, 拦截器按实现方法匹配
+        Set<Class<?>> allInterfaces = new LinkedHashSet<>();
+        collectInterfaces(targetClass, allInterfaces);
+        this.interfaces = allInterfaces.toArray(new Class<?>[0]);
+        for (Class<?> anInterface : this.interfaces) {
+            for (Method interfaceMethod : anInterface.getMethods()) {
+                if (Modifier.isStatic(interfaceMethod.getModifiers()) || this.methodCache.containsKey(interfaceMethod)) {
+                    continue;
+                }
+                try {
+                    Method implementation = targetClass.getMethod(interfaceMethod.getName(),
+                            interfaceMethod.getParameterTypes());
+                    this.methodCache.put(interfaceMethod, createAdvisedMethod(interfaceMethod, implementation, advisors));
+                } catch (NoSuchMethodException e) {
+                    // 抽象类才会走到这里, 容器中不会出现
+                }
+            }
+        }
+    }
+
+    /**
+     * 是否需要创建代理
+     */
+    public boolean isAdvised() {
+        return this.advised;
+    }
+
+    public Class<?> getTargetClass() {
+        return this.targetClass;
+    }
+
+    public Class<?>[] getInterfaces() {
+        return this.interfaces.clone();
+    }
+
+    /**
+     * 目标类方法或接口方法对应的拦截器链, 不是public方法时返回null
+     */
+    public SelfAdvisedMethod getAdvisedMethod(Method method) {
+        return this.methodCache.get(method);
+    }
+
+    private SelfAdvisedMethod createAdvisedMethod(Method method, Method implementation, List<SelfAdvisor> advisors) {
+        List<SelfMethodInterceptor> interceptors = new ArrayList<>();
+        for (SelfAdvisor advisor : advisors) {
+            if (advisor.getPointcut().matches(implementation, this.targetClass)) {
+                interceptors.add(advisor.getInterceptor(implementation, this.targetClass));
+            }
+        }
+        return new SelfAdvisedMethod(method, interceptors.toArray(new SelfMethodInterceptor[0]), createInvoker(method));
+    }
+
+    private static MethodHandle createInvoker(Method method) {
+        try {
+            if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                // 非public类中的public方法, 同样需要暴力访问
+                method.setAccessible(true);
+            }
+            return MethodHandles.lookup().unreflect(method)
+                    .asSpreader(Object[].class, method.getParameterCount())
+                    .asType(INVOKER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot access " + method, e);
+        }
+    }
+
+    private static void collectInterfaces(Class<?> clazz, Set<Class<?>> result) {
+        for (Class<?> current = clazz; null != current; current = current.getSuperclass()) {
+            for (Class<?> anInterface : current.getInterfaces()) {
+                if (result.add(anInterface)) {
+                    collectInterfaces(anInterface, result);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.springselfcoding.aop;
+
+/**
+ * 代理工厂, 每个目标类创建一次, 之后为该类的每个实例生成代理对象
+ */
+public interface SelfAopProxy {
+
+    Object getProxy(Object target);
+}
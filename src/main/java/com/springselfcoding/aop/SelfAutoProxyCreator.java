@@ -0,0 +1,105 @@
+package com.springselfcoding.aop;
+
+import com.springselfcoding.aop.aspect.SelfAdvisor;
+import com.springselfcoding.ioc.beans.config.SelfBeanPostProcessor;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 在Bean创建时自动织入切面
+ * 1) 每个目标类只匹配一次切面, 生成的代理工厂按类缓存, 没有被切中的类直接返回原对象
+ * 2) 默认使用子类代理, 这样按类注入不受影响; proxyTargetClass为false且实现了接口时使用JDK动态代理
+ *    final类无法生成子类, 有接口时退回JDK动态代理, 否则不代理
+ * 3) 被循环依赖的单例在getEarlyBeanReference中提前代理, 初始化完成后不再重复代理
+ */
+public class SelfAutoProxyCreator implements SelfBeanPostProcessor {
+
+    private final boolean proxyTargetClass;
+
+    // 按order排序的切面
+    private final List<SelfAdvisor> advisors = new CopyOnWriteArrayList<>();
+
+    // 目标类 -> 代理工厂, 不需要代理的类为empty; 保存在类自身上, 热加载丢弃的旧类不会因此无法卸载
+    private volatile ClassValue<Optional<SelfAopProxy>> proxyCache = newProxyCache();
+
+    // 已经提前代理过的beanName
+    private final Set<String> earlyProxyReferences = ConcurrentHashMap.newKeySet();
+
+    public SelfAutoProxyCreator(boolean proxyTargetClass) {
+        this.proxyTargetClass = proxyTargetClass;
+    }
+
+    /**
+     * 注册切面, 只影响之后创建的Bean
+     */
+    public synchronized void addAdvisor(SelfAdvisor advisor) {
+        List<SelfAdvisor> sorted = new ArrayList<>(this.advisors);
+        sorted.add(advisor);
+        sorted.sort(Comparator.comparingInt(SelfAdvisor::getOrder));
+        this.advisors.clear();
+        this.advisors.addAll(sorted);
+        this.proxyCache = newProxyCache();
+    }
+
+    public List<SelfAdvisor> getAdvisors() {
+        return this.advisors;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (this.earlyProxyReferences.remove(beanName)) {
+            // 早期引用已经是代理, 容器会暴露早期引用
+            return bean;
+        }
+        return wrapIfNecessary(bean);
+    }
+
+    @Override
+    public Object getEarlyBeanReference(Object bean, String beanName) {
+        this.earlyProxyReferences.add(beanName);
+        return wrapIfNecessary(bean);
+    }
+
+    private Object wrapIfNecessary(Object bean) {
+        if (this.advisors.isEmpty() || bean instanceof SelfAdvisor) {
+            return bean;
+        }
+        Optional<SelfAopProxy> aopProxy = this.proxyCache.get(bean.getClass());
+        return aopProxy.isPresent() ? aopProxy.get().getProxy(bean) : bean;
+    }
+
+    private ClassValue<Optional<SelfAopProxy>> newProxyCache() {
+        return new ClassValue<>() {
+            @Override
+            protected Optional<SelfAopProxy> computeValue(Class<?> type) {
+                return createAopProxy(type);
+            }
+        };
+    }
+
+    private Optional<SelfAopProxy> createAopProxy(Class<?> targetClass) {
+        SelfAdvisedSupport config = new SelfAdvisedSupport(targetClass, this.advisors);
+        if (!config.isAdvised()) {
+            return Optional.empty();
+        }
+        boolean hasInterfaces = config.getInterfaces().length > 0;
+        if (Modifier.isFinal(targetClass.getModifiers())) {
+            if (!hasInterfaces) {
+                System.out.println("Cannot proxy final class " + targetClass.getName() + ", advice ignored");
+                return Optional.empty();
+            }
+            return Optional.of(new SelfJdkDynamicAopProxy(config));
+        }
+        if (!this.proxyTargetClass && hasInterfaces) {
+            return Optional.of(new SelfJdkDynamicAopProxy(config));
+        }
+        return Optional.of(new SelfCglibAopProxy(config));
+    }
+}
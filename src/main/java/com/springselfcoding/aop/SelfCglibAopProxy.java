@@ -0,0 +1,81 @@
+package com.springselfcoding.aop;
+
+import org.springframework.cglib.proxy.Callback;
+import org.springframework.cglib.proxy.Dispatcher;
+import org.springframework.cglib.proxy.Enhancer;
+import org.springframework.cglib.proxy.Factory;
+import org.springframework.cglib.proxy.MethodInterceptor;
+import org.springframework.objenesis.Objenesis;
+import org.springframework.objenesis.ObjenesisStd;
+import org.springframework.objenesis.instantiator.ObjectInstantiator;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于子类的代理 (spring-core中重新打包的cglib), 可以按类注入
+ * 1) 代理类每个目标类只生成一次, 被切中的方法各自对应一个Callback, 由CallbackFilter在生成时确定
+ *    调用时既不查Map, 也不匹配切点; 没被切中的方法用Dispatcher直接转给目标对象
+ * 2) 代理对象通过Objenesis创建, 不执行目标类的构造器, 所以构造器注入的类同样可以代理
+ *    实例化器随代理类保存, 不用Objenesis按类名的全局缓存: 热加载后新一代的同名代理类不会拿到旧类的实例化器, 旧类也能卸载
+ * 3) final方法无法重写, 会直接在代理对象上执行, 目标类中需要被切的方法不能是final的
+ */
+public class SelfCglibAopProxy implements SelfAopProxy {
+
+    private static final Objenesis OBJENESIS = new ObjenesisStd(false);
+
+    // 与Callback下标一一对应, 0号为Dispatcher
+    private final SelfAdvisedMethod[] advisedMethods;
+
+    private final ObjectInstantiator<?> instantiator;
+
+    public SelfCglibAopProxy(SelfAdvisedSupport config) {
+        Class<?> targetClass = config.getTargetClass();
+
+        // 1. 为被切中的方法分配Callback下标
+        Map<Method, Integer> callbackIndexes = new HashMap<>();
+        List<SelfAdvisedMethod> advised = new ArrayList<>();
+        advised.add(null);
+        for (Method method : targetClass.getMethods()) {
+            SelfAdvisedMethod advisedMethod = config.getAdvisedMethod(method);
+            if (null != advisedMethod && advisedMethod.isAdvised() && !Modifier.isFinal(method.getModifiers())) {
+                callbackIndexes.put(method, advised.size());
+                advised.add(advisedMethod);
+            }
+        }
+        this.advisedMethods = advised.toArray(new SelfAdvisedMethod[0]);
+
+        // 2. 生成代理类
+        Class<?>[] callbackTypes = new Class<?>[this.advisedMethods.length];
+        callbackTypes[0] = Dispatcher.class;
+        for (int i = 1; i < callbackTypes.length; i++) {
+            callbackTypes[i] = MethodInterceptor.class;
+        }
+        Enhancer enhancer = new Enhancer();
+        enhancer.setSuperclass(targetClass);
+        enhancer.setClassLoader(targetClass.getClassLoader());
+        enhancer.setUseCache(false);
+        enhancer.setCallbackTypes(callbackTypes);
+        enhancer.setCallbackFilter(method -> callbackIndexes.getOrDefault(method, 0));
+        Class<?> proxyClass = enhancer.createClass();
+        this.instantiator = OBJENESIS.getInstantiatorOf(proxyClass);
+    }
+
+    @Override
+    public Object getProxy(Object target) {
+        Callback[] callbacks = new Callback[this.advisedMethods.length];
+        callbacks[0] = (Dispatcher) () -> target;
+        for (int i = 1; i < callbacks.length; i++) {
+            SelfAdvisedMethod advisedMethod = this.advisedMethods[i];
+            callbacks[i] = (MethodInterceptor) (proxy, method, args, methodProxy) ->
+                    advisedMethod.invoke(proxy, target, args);
+        }
+        Factory proxy = (Factory) this.instantiator.newInstance();
+        proxy.setCallbacks(callbacks);
+        return proxy;
+    }
+}
@@ -0,0 +1,41 @@
+package com.springselfcoding.aop;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * 基于JDK动态代理, 只能代理接口方法, 注入时需要按接口类型注入
+ * 调用时按接口方法找到预先生成的拦截器链, 不是接口上的方法(如Object的方法)直接转给目标对象
+ */
+public class SelfJdkDynamicAopProxy implements SelfAopProxy {
+
+    private final SelfAdvisedSupport config;
+
+    private final Class<?>[] interfaces;
+
+    public SelfJdkDynamicAopProxy(SelfAdvisedSupport config) {
+        this.config = config;
+        this.interfaces = config.getInterfaces();
+    }
+
+    @Override
+    public Object getProxy(Object target) {
+        return Proxy.newProxyInstance(this.config.getTargetClass().getClassLoader(), this.interfaces,
+                (proxy, method, args) -> {
+                    SelfAdvisedMethod advisedMethod = this.config.getAdvisedMethod(method);
+                    if (null == advisedMethod) {
+                        return invokeDirectly(target, method, args);
+                    }
+                    return advisedMethod.invoke(proxy, target, args);
+                });
+    }
+
+    private static Object invokeDirectly(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
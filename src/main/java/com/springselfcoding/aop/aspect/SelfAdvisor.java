@@ -0,0 +1,57 @@
+package com.springselfcoding.aop.aspect;
+
+import com.springselfcoding.aop.intercept.SelfMethodInterceptor;
+
+import java.lang.reflect.Method;
+
+/**
+ * 切面 = 切点 + 通知, 容器中实现了该接口的Bean会被自动注册
+ * 1) 前置, 后置, 环绕通知都适配为SelfMethodInterceptor
+ * 2) order越小越靠外层, 先进后出
+ * 3) 需要按方法绑定状态的切面(如每个方法一个计时器)可以重写getInterceptor(Method, Class), 创建代理时每个方法调用一次
+ */
+public interface SelfAdvisor {
+
+    SelfPointcut getPointcut();
+
+    SelfMethodInterceptor getInterceptor();
+
+    /**
+     * 切中某个方法时放进拦截器链的拦截器, 默认所有方法共用一个
+     */
+    default SelfMethodInterceptor getInterceptor(Method method, Class<?> targetClass) {
+        return getInterceptor();
+    }
+
+    default int getOrder() {
+        return 0;
+    }
+
+    static SelfDefaultAdvisor around(SelfPointcut pointcut, SelfMethodInterceptor interceptor) {
+        return new SelfDefaultAdvisor(pointcut, interceptor, 0);
+    }
+
+    static SelfDefaultAdvisor before(SelfPointcut pointcut, SelfBeforeAdvice advice) {
+        return new SelfDefaultAdvisor(pointcut, invocation -> {
+            advice.before(invocation.getMethod(), invocation.getArguments(), invocation.getThis());
+            return invocation.proceed();
+        }, 0);
+    }
+
+    static SelfDefaultAdvisor after(SelfPointcut pointcut, SelfAfterAdvice advice) {
+        return new SelfDefaultAdvisor(pointcut, invocation -> {
+            Object returnValue = null;
+            Throwable thrown = null;
+            try {
+                returnValue = invocation.proceed();
+                return returnValue;
+            } catch (Throwable t) {
+                thrown = t;
+                throw t;
+            } finally {
+                advice.after(invocation.getMethod(), invocation.getArguments(), invocation.getThis(),
+                        returnValue, thrown);
+            }
+        }, 0);
+    }
+}
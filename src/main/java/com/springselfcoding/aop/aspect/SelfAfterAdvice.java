@@ -0,0 +1,13 @@
+package com.springselfcoding.aop.aspect;
+
+import java.lang.reflect.Method;
+
+/**
+ * 后置通知, 目标方法正常返回或抛出异常后都会执行 (相当于finally)
+ * 正常返回时thrown为null, 抛出异常时returnValue为null
+ */
+@FunctionalInterface
+public interface SelfAfterAdvice {
+
+    void after(Method method, Object[] args, Object target, Object returnValue, Throwable thrown) throws Throwable;
+}
@@ -0,0 +1,12 @@
+package com.springselfcoding.aop.aspect;
+
+import java.lang.reflect.Method;
+
+/**
+ * 前置通知, 在目标方法之前执行, 抛出异常则目标方法不会执行
+ */
+@FunctionalInterface
+public interface SelfBeforeAdvice {
+
+    void before(Method method, Object[] args, Object target) throws Throwable;
+}
@@ -0,0 +1,43 @@
+package com.springselfcoding.aop.aspect;
+
+import com.springselfcoding.aop.intercept.SelfMethodInterceptor;
+
+/**
+ * 通用的切面实现, 直接持有切点与拦截器
+ */
+public class SelfDefaultAdvisor implements SelfAdvisor {
+
+    private final SelfPointcut pointcut;
+
+    private final SelfMethodInterceptor interceptor;
+
+    private final int order;
+
+    public SelfDefaultAdvisor(SelfPointcut pointcut, SelfMethodInterceptor interceptor, int order) {
+        this.pointcut = pointcut;
+        this.interceptor = interceptor;
+        this.order = order;
+    }
+
+    /**
+     * 返回一个新的切面, 只有顺序不同
+     */
+    public SelfDefaultAdvisor withOrder(int order) {
+        return new SelfDefaultAdvisor(this.pointcut, this.interceptor, order);
+    }
+
+    @Override
+    public SelfPointcut getPointcut() {
+        return this.pointcut;
+    }
+
+    @Override
+    public SelfMethodInterceptor getInterceptor() {
+        return this.interceptor;
+    }
+
+    @Override
+    public int getOrder() {
+        return this.order;
+    }
+}
@@ -0,0 +1,57 @@
+package com.springselfcoding.aop.aspect;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.regex.Pattern;
+
+/**
+ * 切点, 只在创建代理时对每个方法匹配一次, 调用时不再匹配
+ * method是目标类上的实现方法, 所以实现类方法上的注解同样生效
+ */
+@FunctionalInterface
+public interface SelfPointcut {
+
+    boolean matches(Method method, Class<?> targetClass);
+
+    default SelfPointcut and(SelfPointcut other) {
+        return (method, targetClass) -> matches(method, targetClass) && other.matches(method, targetClass);
+    }
+
+    default SelfPointcut or(SelfPointcut other) {
+        return (method, targetClass) -> matches(method, targetClass) || other.matches(method, targetClass);
+    }
+
+    /**
+     * 方法或目标类上标注了该注解
+     */
+    static SelfPointcut annotatedWith(Class<? extends Annotation> annotationType) {
+        return (method, targetClass) -> method.isAnnotationPresent(annotationType)
+                || targetClass.isAnnotationPresent(annotationType);
+    }
+
+    /**
+     * 目标类的全类名匹配包表达式, 写法同AspectJ的within
+     * e.g. com.foo.* 只匹配com.foo下的类, com.foo..* 包含子包, com.foo..*Service 子包中以Service结尾的类
+     */
+    static SelfPointcut within(String typePattern) {
+        StringBuilder regex = new StringBuilder();
+        String trimmed = typePattern.trim();
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if ('.' == c && i + 1 < trimmed.length() && '.' == trimmed.charAt(i + 1)) {
+                // .. 任意层子包
+                regex.append("\\.(.*\\.)?");
+                i++;
+            } else if ('.' == c) {
+                regex.append("\\.");
+            } else if ('*' == c) {
+                // * 不跨越包
+                regex.append("[^.]*");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        Pattern pattern = Pattern.compile(regex.toString());
+        return (method, targetClass) -> pattern.matcher(targetClass.getName()).matches();
+    }
+}
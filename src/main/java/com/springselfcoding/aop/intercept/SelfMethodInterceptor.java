@@ -0,0 +1,10 @@
+package com.springselfcoding.aop.intercept;
+
+/**
+ * 环绕通知, 所有的通知最终都适配为它, 调用invocation.proceed()进入链上的下一个拦截器
+ */
+@FunctionalInterface
+public interface SelfMethodInterceptor {
+
+    Object invoke(SelfMethodInvocation invocation) throws Throwable;
+}
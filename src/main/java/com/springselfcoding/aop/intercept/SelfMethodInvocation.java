@@ -0,0 +1,69 @@
+package com.springselfcoding.aop.intercept;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+
+/**
+ * 一次被代理的方法调用, 拦截器链在创建代理时就已经确定
+ * proceed()只是沿数组前进一格, 走到末尾时通过MethodHandle调用目标对象
+ */
+public class SelfMethodInvocation {
+
+    private final Object proxy;
+
+    private final Object target;
+
+    private final Method method;
+
+    private final Object[] arguments;
+
+    private final SelfMethodInterceptor[] interceptors;
+
+    // (Object, Object[])Object 签名, 调用目标对象上的原方法
+    private final MethodHandle invoker;
+
+    // 下一个要执行的拦截器
+    private int index;
+
+    public SelfMethodInvocation(Object proxy, Object target, Method method, Object[] arguments,
+                                SelfMethodInterceptor[] interceptors, MethodHandle invoker) {
+        this.proxy = proxy;
+        this.target = target;
+        this.method = method;
+        this.arguments = arguments;
+        this.interceptors = interceptors;
+        this.invoker = invoker;
+    }
+
+    /**
+     * 执行下一个拦截器, 没有了就调用目标方法
+     */
+    public Object proceed() throws Throwable {
+        if (this.index == this.interceptors.length) {
+            return (Object) this.invoker.invokeExact(this.target, this.arguments);
+        }
+        return this.interceptors[this.index++].invoke(this);
+    }
+
+    public Method getMethod() {
+        return this.method;
+    }
+
+    /**
+     * 参数数组, 拦截器可以在proceed()之前修改
+     */
+    public Object[] getArguments() {
+        return this.arguments;
+    }
+
+    /**
+     * 目标对象 (原生对象, 不是代理)
+     */
+    public Object getThis() {
+        return this.target;
+    }
+
+    public Object getProxy() {
+        return this.proxy;
+    }
+}
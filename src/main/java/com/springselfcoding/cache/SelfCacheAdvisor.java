@@ -0,0 +1,126 @@
+package com.springselfcoding.cache;
+
+import com.springselfcoding.aop.aspect.SelfAdvisor;
+import com.springselfcoding.aop.aspect.SelfPointcut;
+import com.springselfcoding.aop.intercept.SelfMethodInterceptor;
+import com.springselfcoding.aop.intercept.SelfMethodInvocation;
+import com.springselfcoding.mvcframework.SelfCache;
+import com.springselfcoding.mvcframework.codec.SelfJsonCodec;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 织入@SelfCache, 每个方法的缓存在创建代理时就从SelfCacheManager中取出并绑定到拦截器上
+ * 1) 位于指标切面的内层, 命中时的耗时同样计入@SelfTimed
+ * 2) key: 无参数时为常量, 一个非数组参数时为参数本身, 否则为按deepEquals比较的参数数组
+ */
+public class SelfCacheAdvisor implements SelfAdvisor {
+
+    // 在指标切面(-100)之内, 普通切面之外
+    public static final int ORDER = -50;
+
+    private static final SelfPointcut POINTCUT = (method, targetClass) -> method.isAnnotationPresent(SelfCache.class);
+
+    private static final Object EMPTY_KEY = new Object();
+
+    private static final Object NULL_KEY = new Object();
+
+    private final SelfCacheManager cacheManager;
+
+    private final SelfJsonCodec jsonCodec;
+
+    public SelfCacheAdvisor(SelfCacheManager cacheManager, SelfJsonCodec jsonCodec) {
+        this.cacheManager = cacheManager;
+        this.jsonCodec = jsonCodec;
+    }
+
+    @Override
+    public SelfPointcut getPointcut() {
+        return POINTCUT;
+    }
+
+    @Override
+    public SelfMethodInterceptor getInterceptor() {
+        // 缓存与方法绑定, 只通过getInterceptor(Method, Class)使用
+        return SelfMethodInvocation::proceed;
+    }
+
+    @Override
+    public SelfMethodInterceptor getInterceptor(Method method, Class<?> targetClass) {
+        if (void.class == method.getReturnType()) {
+            throw new IllegalStateException("@SelfCache method must return a value: " + method);
+        }
+        SelfCache annotation = method.getAnnotation(SelfCache.class);
+        String name = annotation.value().trim().isEmpty() ? defaultName(method, targetClass) : annotation.value().trim();
+        SelfLoadingCache<Object, Object> cache = this.cacheManager.getOrCreate(name, targetClass, () -> new SelfLoadingCache<>(
+                name, createStore(annotation, method), TimeUnit.MILLISECONDS.toNanos(annotation.ttl())));
+        return invocation -> cache.get(keyOf(invocation.getArguments()), invocation::proceed);
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    private SelfCacheStore<Object, Object> createStore(SelfCache annotation, Method method) {
+        if (SelfCache.Store.OFF_HEAP == annotation.store()) {
+            return new SelfOffHeapCacheStore<>(annotation.maxBytes(),
+                    new SelfJsonCacheSerializer(this.jsonCodec, method.getGenericReturnType()));
+        }
+        return new SelfHeapCacheStore<>(annotation.maxEntries());
+    }
+
+    /**
+     * 类名.方法名, 有重载时再加上参数类型
+     */
+    private static String defaultName(Method method, Class<?> targetClass) {
+        String name = targetClass.getName() + "." + method.getName();
+        for (Method candidate : targetClass.getMethods()) {
+            if (candidate.getName().equals(method.getName()) && !candidate.equals(method)
+                    && candidate.isAnnotationPresent(SelfCache.class)) {
+                StringBuilder signature = new StringBuilder(name).append('(');
+                Class<?>[] parameterTypes = method.getParameterTypes();
+                for (int i = 0; i < parameterTypes.length; i++) {
+                    signature.append(i > 0 ? "," : "").append(parameterTypes[i].getSimpleName());
+                }
+                return signature.append(')').toString();
+            }
+        }
+        return name;
+    }
+
+    private static Object keyOf(Object[] args) {
+        if (0 == args.length) {
+            return EMPTY_KEY;
+        }
+        if (1 == args.length && !(null != args[0] && args[0].getClass().isArray())) {
+            return null == args[0] ? NULL_KEY : args[0];
+        }
+        // 复制一份, 内层切面修改参数数组不影响key
+        return new ArgumentsKey(args.clone());
+    }
+
+    private static final class ArgumentsKey {
+
+        private final Object[] args;
+
+        private final int hash;
+
+        ArgumentsKey(Object[] args) {
+            this.args = args;
+            this.hash = Arrays.deepHashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof ArgumentsKey && Arrays.deepEquals(this.args, ((ArgumentsKey) o).args));
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.springselfcoding.cache;
+
+/**
+ * 未命中时加载值, 织入@SelfCache时就是调用被代理的方法
+ */
+@FunctionalInterface
+public interface SelfCacheLoader<V> {
+
+    V load() throws Throwable;
+}
@@ -0,0 +1,118 @@
+package com.springselfcoding.cache;
+
+import com.springselfcoding.metrics.SelfMetricsRegistry;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 持有所有命名的缓存, 容器启动时作为单例注册, 可以@SelfAutowired后按名称失效
+ * 1) 每个缓存创建时把统计注册到SelfMetricsRegistry, 以cache标签区分
+ * 2) 记录使用缓存的类, 热加载后同名的新类拿到的是新缓存, 不会拿到按旧类型序列化或持有旧类对象的缓存
+ */
+public class SelfCacheManager {
+
+    private final Map<String, SelfLoadingCache<?, ?>> caches = new ConcurrentHashMap<>();
+
+    // 缓存名 -> 使用它的类, 只在caches的compute中修改
+    private final Map<String, Set<Class<?>>> owners = new ConcurrentHashMap<>();
+
+    private final SelfMetricsRegistry metricsRegistry;
+
+    public SelfCacheManager(SelfMetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    /**
+     * 同名的缓存只创建一次, 之后返回已有的缓存, 不同的类可以共用
+     * 已有的缓存被ownerClass的另一代(热加载前的同名类)使用过时, 重新创建并替换
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> SelfLoadingCache<K, V> getOrCreate(String name, Class<?> ownerClass,
+                                                     Supplier<SelfLoadingCache<K, V>> factory) {
+        return (SelfLoadingCache<K, V>) this.caches.compute(name, (k, existing) -> {
+            Set<Class<?>> classes = this.owners.get(k);
+            if (null != existing && !isOtherGeneration(classes, ownerClass)) {
+                classes.add(ownerClass);
+                return existing;
+            }
+            SelfLoadingCache<K, V> cache = factory.get();
+            bindMetrics(cache);
+            classes = ConcurrentHashMap.newKeySet();
+            classes.add(ownerClass);
+            this.owners.put(k, classes);
+            return cache;
+        });
+    }
+
+    /**
+     * 移除被满足条件的类使用过的缓存 (热加载时移除旧类的缓存, 旧的ClassLoader才能被回收), 返回移除的缓存名
+     */
+    public Set<String> removeCaches(Predicate<Class<?>> ownerFilter) {
+        Set<String> removed = new HashSet<>();
+        for (String name : this.owners.keySet()) {
+            this.caches.computeIfPresent(name, (k, cache) -> {
+                Set<Class<?>> classes = this.owners.get(k);
+                if (null == classes || classes.stream().noneMatch(ownerFilter)) {
+                    return cache;
+                }
+                this.owners.remove(k);
+                removed.add(k);
+                return null;
+            });
+        }
+        return removed;
+    }
+
+    /**
+     * 不存在时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> SelfLoadingCache<K, V> getCache(String name) {
+        return (SelfLoadingCache<K, V>) this.caches.get(name);
+    }
+
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(this.caches.keySet());
+    }
+
+    public void invalidateAll() {
+        for (SelfLoadingCache<?, ?> cache : this.caches.values()) {
+            cache.invalidateAll();
+        }
+    }
+
+    private static boolean isOtherGeneration(Set<Class<?>> classes, Class<?> ownerClass) {
+        for (Class<?> owner : classes) {
+            if (owner != ownerClass && owner.getName().equals(ownerClass.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void bindMetrics(SelfLoadingCache<?, ?> cache) {
+        if (null == this.metricsRegistry) {
+            return;
+        }
+        String name = cache.getName();
+        this.metricsRegistry.functionCounter("self_cache_requests_total", cache::hitCount, "cache", name, "result", "hit");
+        this.metricsRegistry.functionCounter("self_cache_requests_total", cache::missCount, "cache", name, "result", "miss");
+        this.metricsRegistry.functionCounter("self_cache_loads_total", cache::loadCount, "cache", name, "result", "success");
+        this.metricsRegistry.functionCounter("self_cache_loads_total", cache::loadFailureCount, "cache", name, "result", "error");
+        this.metricsRegistry.functionCounter("self_cache_coalesced_total", cache::coalescedCount, "cache", name);
+        this.metricsRegistry.functionCounter("self_cache_evictions_total", cache::evictionCount, "cache", name);
+        this.metricsRegistry.gauge("self_cache_size", cache::size, "cache", name);
+        if (cache.getStore() instanceof SelfOffHeapCacheStore) {
+            SelfOffHeapCacheStore<?, ?> store = (SelfOffHeapCacheStore<?, ?>) cache.getStore();
+            this.metricsRegistry.functionCounter("self_cache_rejected_total", store::rejectedCount, "cache", name);
+            this.metricsRegistry.gauge("self_cache_off_heap_bytes", store::allocatedBytes, "cache", name);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.springselfcoding.cache;
+
+/**
+ * 堆外存储中值与字节之间的转换
+ */
+public interface SelfCacheSerializer<V> {
+
+    byte[] serialize(V value);
+
+    /**
+     * 字节无法还原时抛出异常, 存储会删除该项并按未命中处理
+     */
+    V deserialize(byte[] bytes);
+}
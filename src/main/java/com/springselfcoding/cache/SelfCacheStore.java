@@ -0,0 +1,26 @@
+package com.springselfcoding.cache;
+
+/**
+ * @SelfCache的底层存储, 堆内见SelfHeapCacheStore, 堆外见SelfOffHeapCacheStore
+ * 存储只负责容量与有效期, 并发加载的合并与统计由SelfLoadingCache完成
+ */
+public interface SelfCacheStore<K, V> {
+
+    /**
+     * 不存在或已过期时返回null
+     */
+    V get(K key);
+
+    /**
+     * @param ttlNanos 有效期(纳秒), 小于等于0表示不过期
+     */
+    void put(K key, V value, long ttlNanos);
+
+    void invalidate(K key);
+
+    void invalidateAll();
+
+    long size();
+
+    long evictionCount();
+}
@@ -0,0 +1,43 @@
+package com.springselfcoding.cache;
+
+/**
+ * 堆内存储, 直接持有返回值对象, 按条目数淘汰
+ */
+public class SelfHeapCacheStore<K, V> implements SelfCacheStore<K, V> {
+
+    private final SelfSegmentedLruCache<K, V> cache;
+
+    public SelfHeapCacheStore(long maximumEntries) {
+        this.cache = new SelfSegmentedLruCache<>(maximumEntries, (key, value) -> 1);
+    }
+
+    @Override
+    public V get(K key) {
+        return this.cache.get(key);
+    }
+
+    @Override
+    public void put(K key, V value, long ttlNanos) {
+        this.cache.put(key, value, ttlNanos);
+    }
+
+    @Override
+    public void invalidate(K key) {
+        this.cache.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+        return this.cache.size();
+    }
+
+    @Override
+    public long evictionCount() {
+        return this.cache.evictionCount();
+    }
+}
@@ -0,0 +1,41 @@
+package com.springselfcoding.cache;
+
+import com.springselfcoding.mvcframework.codec.SelfJsonCodec;
+import com.springselfcoding.mvcframework.codec.SelfJsonException;
+import com.springselfcoding.mvcframework.codec.SelfJsonReader;
+import com.springselfcoding.mvcframework.codec.SelfJsonTypeCodec;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * 以JSON保存值, 读取时按声明的类型还原 (方法的泛型返回类型), 值的运行时子类型不会保留
+ */
+public class SelfJsonCacheSerializer implements SelfCacheSerializer<Object> {
+
+    private final SelfJsonCodec codec;
+
+    private final SelfJsonTypeCodec<Object> typeCodec;
+
+    public SelfJsonCacheSerializer(SelfJsonCodec codec, Type type) {
+        this.codec = codec;
+        this.typeCodec = codec.codecFor(type);
+    }
+
+    @Override
+    public byte[] serialize(Object value) {
+        return this.codec.writeAsBytes(value);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) {
+        try {
+            SelfJsonReader reader = new SelfJsonReader(bytes);
+            Object value = this.typeCodec.read(reader);
+            reader.readEnd();
+            return value;
+        } catch (IOException e) {
+            throw new SelfJsonException("Cannot read cached JSON", e);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.springselfcoding.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带名称的缓存, @SelfCache标注的每个方法对应一个
+ * 1) 未命中时同一个key只有一个线程调用loader, 其他线程等待它的结果 (single-flight), 缓存击穿时不会压垮下游
+ * 2) loader抛出的异常原样抛给所有等待的线程, 异常与null都不缓存
+ * 3) 统计命中, 未命中, 加载, 加载失败与合并的次数, 淘汰次数来自存储
+ */
+public class SelfLoadingCache<K, V> {
+
+    private final String name;
+
+    private final SelfCacheStore<K, V> store;
+
+    private final long ttlNanos;
+
+    // 正在加载的key, 加载完成后立即移除
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder loadCount = new LongAdder();
+
+    private final LongAdder loadFailureCount = new LongAdder();
+
+    private final LongAdder coalescedCount = new LongAdder();
+
+    public SelfLoadingCache(String name, SelfCacheStore<K, V> store, long ttlNanos) {
+        this.name = name;
+        this.store = store;
+        this.ttlNanos = ttlNanos;
+    }
+
+    public V get(K key, SelfCacheLoader<? extends V> loader) throws Throwable {
+        V value = this.store.get(key);
+        if (null != value) {
+            this.hitCount.increment();
+            return value;
+        }
+        this.missCount.increment();
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = this.loading.putIfAbsent(key, future);
+        if (null != inFlight) {
+            // 已有线程在加载, 等待它的结果
+            this.coalescedCount.increment();
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                throw null == e.getCause() ? e : e.getCause();
+            }
+        }
+        try {
+            // 上一个加载者可能刚刚写入并移除了自己, 再查一次存储
+            value = this.store.get(key);
+            if (null == value) {
+                value = loader.load();
+                this.loadCount.increment();
+                if (null != value) {
+                    this.store.put(key, value, this.ttlNanos);
+                }
+            }
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            this.loadFailureCount.increment();
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.loading.remove(key, future);
+        }
+    }
+
+    public void put(K key, V value) {
+        this.store.put(key, value, this.ttlNanos);
+    }
+
+    public void invalidate(K key) {
+        this.store.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        this.store.invalidateAll();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public SelfCacheStore<K, V> getStore() {
+        return this.store;
+    }
+
+    public long size() {
+        return this.store.size();
+    }
+
+    public long hitCount() {
+        return this.hitCount.sum();
+    }
+
+    public long missCount() {
+        return this.missCount.sum();
+    }
+
+    public long loadCount() {
+        return this.loadCount.sum();
+    }
+
+    public long loadFailureCount() {
+        return this.loadFailureCount.sum();
+    }
+
+    public long coalescedCount() {
+        return this.coalescedCount.sum();
+    }
+
+    public long evictionCount() {
+        return this.store.evictionCount();
+    }
+}
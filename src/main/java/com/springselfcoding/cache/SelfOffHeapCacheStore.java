@@ -0,0 +1,333 @@
+package com.springselfcoding.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 堆外存储, 值序列化后放在DirectByteBuffer中, 缓存再多也不增加GC扫描的对象
+ * 1) 内存按1MB的页向操作系统申请, 页再按2的幂切成固定大小的槽 (64B起), 释放的槽进入对应大小的空闲链表复用
+ *    页中的槽全部释放后整页回收, 可以重新切成其他大小
+ * 2) 索引是以槽大小为权重的SelfSegmentedLruCache, 项被淘汰, 过期或替换时通过SelfRemovalListener归还槽
+ *    写入已在写锁内串行, 索引只用一个分片, 权重与已用的槽完全一致
+ * 3) 读取在读锁内复制字节, 写入在写锁内分配槽, 槽在有读者时不会被重新分配
+ * 4) 分配不到槽时只做能腾出所需槽的淘汰, 然后再分配一次; 仍然分配不到 (如比一页还大) 时放弃写入并计数
+ *    该大小还有在用的槽时按LRU顺序淘汰其中一个; 没有时清空在用槽最少的一页, 回收后切成所需大小
+ */
+public class SelfOffHeapCacheStore<K, V> implements SelfCacheStore<K, V> {
+
+    static final int PAGE_SIZE = 1 << 20;
+
+    static final int MIN_SLOT_SIZE = 64;
+
+    private final SelfCacheSerializer<V> serializer;
+
+    private final SlabAllocator allocator;
+
+    private final SelfSegmentedLruCache<K, Slot> index;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    public SelfOffHeapCacheStore(long maximumBytes, SelfCacheSerializer<V> serializer) {
+        this.serializer = serializer;
+        this.allocator = new SlabAllocator((int) Math.max(1, (maximumBytes + PAGE_SIZE - 1) / PAGE_SIZE));
+        this.index = new SelfSegmentedLruCache<>(maximumBytes, (key, slot) -> slot.capacity(), 1,
+                (key, slot) -> this.allocator.free(slot));
+    }
+
+    @Override
+    public V get(K key) {
+        byte[] bytes;
+        this.lock.readLock().lock();
+        try {
+            Slot slot = this.index.get(key);
+            if (null == slot) {
+                return null;
+            }
+            bytes = this.allocator.read(slot);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        try {
+            return this.serializer.deserialize(bytes);
+        } catch (RuntimeException e) {
+            // 返回值的类型变了等, 删除后重新加载
+            invalidate(key);
+            return null;
+        }
+    }
+
+    @Override
+    public void put(K key, V value, long ttlNanos) {
+        // 序列化不需要持有锁
+        byte[] bytes = this.serializer.serialize(value);
+        this.lock.writeLock().lock();
+        try {
+            Slot slot = this.allocator.allocate(bytes.length);
+            if (null == slot && bytes.length <= PAGE_SIZE && makeRoom(SlabAllocator.sizeClassOf(bytes.length))) {
+                slot = this.allocator.allocate(bytes.length);
+            }
+            if (null == slot) {
+                this.rejectedCount.increment();
+                // 旧值已经过时, 不能留在缓存中
+                this.index.invalidate(key);
+                return;
+            }
+            this.allocator.write(slot, bytes);
+            this.index.put(key, slot, ttlNanos);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 淘汰能腾出一个该大小的槽的项 (调用方持有写锁), 没有可淘汰的项时返回false
+     */
+    private boolean makeRoom(int sizeClass) {
+        // 1. 同样大小的槽释放后直接复用
+        if (this.allocator.usedSlots(sizeClass) > 0) {
+            return this.index.evictOne(slot -> slot.sizeClass == sizeClass);
+        }
+        // 2. 淘汰一整页上的项, 最后一个槽释放时该页被回收
+        int page = this.allocator.leastUsedPage();
+        return page >= 0 && this.index.evictAll(slot -> slot.page == page) > 0;
+    }
+
+    @Override
+    public void invalidate(K key) {
+        this.lock.writeLock().lock();
+        try {
+            this.index.invalidate(key);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        this.lock.writeLock().lock();
+        try {
+            this.index.invalidateAll();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        return this.index.size();
+    }
+
+    @Override
+    public long evictionCount() {
+        return this.index.evictionCount();
+    }
+
+    /**
+     * 因分配不到槽而放弃的写入次数
+     */
+    public long rejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    /**
+     * 已向操作系统申请的堆外字节数
+     */
+    public long allocatedBytes() {
+        return this.allocator.allocatedBytes();
+    }
+
+    /**
+     * 槽的位置与实际长度, 分配后不再修改
+     */
+    static final class Slot {
+
+        final int page;
+
+        final int offset;
+
+        final int sizeClass;
+
+        final int length;
+
+        Slot(int page, int offset, int sizeClass, int length) {
+            this.page = page;
+            this.offset = offset;
+            this.sizeClass = sizeClass;
+            this.length = length;
+        }
+
+        int capacity() {
+            return MIN_SLOT_SIZE << this.sizeClass;
+        }
+    }
+
+    /**
+     * 按大小分级的槽分配器, 每页只切一种大小的槽, 页不会还给操作系统
+     * 1) 空闲链表中的槽编码为 页号 << 20 | 页内偏移
+     * 2) 按页记录在用的槽数, 降为0时从空闲链表中移除该页的槽, 页进入空闲页栈, 之后可以切成任意大小
+     */
+    static final class SlabAllocator {
+
+        private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(PAGE_SIZE / MIN_SLOT_SIZE) + 1;
+
+        private final int maximumPages;
+
+        private final List<ByteBuffer> pages = new ArrayList<>();
+
+        // 每个大小正在切分的页与下一个槽的偏移, 页号为-1表示还没有
+        private final int[] carvingPage = new int[SIZE_CLASSES];
+
+        private final int[] carvingOffset = new int[SIZE_CLASSES];
+
+        private final long[][] freeSlots = new long[SIZE_CLASSES][];
+
+        private final int[] freeCount = new int[SIZE_CLASSES];
+
+        // 每个大小在用的槽数
+        private final int[] classUsed = new int[SIZE_CLASSES];
+
+        // 每页在用的槽数
+        private final int[] pageUsed;
+
+        // 已回收的空页
+        private final int[] freePages;
+
+        private int freePageCount;
+
+        SlabAllocator(int maximumPages) {
+            this.maximumPages = maximumPages;
+            this.pageUsed = new int[maximumPages];
+            this.freePages = new int[maximumPages];
+            Arrays.fill(this.carvingPage, -1);
+            for (int i = 0; i < SIZE_CLASSES; i++) {
+                this.freeSlots[i] = new long[16];
+            }
+        }
+
+        /**
+         * 没有可用的槽时返回null
+         */
+        synchronized Slot allocate(int length) {
+            if (length > PAGE_SIZE) {
+                return null;
+            }
+            int sizeClass = sizeClassOf(length);
+            // 1. 优先复用释放的槽
+            Slot slot;
+            if (this.freeCount[sizeClass] > 0) {
+                long address = this.freeSlots[sizeClass][--this.freeCount[sizeClass]];
+                slot = new Slot((int) (address >>> 20), (int) (address & (PAGE_SIZE - 1)), sizeClass, length);
+            } else {
+                // 2. 从正在切分的页中取下一个槽
+                int slotSize = MIN_SLOT_SIZE << sizeClass;
+                if (this.carvingPage[sizeClass] < 0 || this.carvingOffset[sizeClass] + slotSize > PAGE_SIZE) {
+                    // 3. 当前页已切完, 优先使用回收的空页, 其次申请新页
+                    int page = nextPage();
+                    if (page < 0) {
+                        return null;
+                    }
+                    this.carvingPage[sizeClass] = page;
+                    this.carvingOffset[sizeClass] = 0;
+                }
+                slot = new Slot(this.carvingPage[sizeClass], this.carvingOffset[sizeClass], sizeClass, length);
+                this.carvingOffset[sizeClass] += slotSize;
+            }
+            this.classUsed[sizeClass]++;
+            this.pageUsed[slot.page]++;
+            return slot;
+        }
+
+        synchronized void free(Slot slot) {
+            this.classUsed[slot.sizeClass]--;
+            if (0 == --this.pageUsed[slot.page]) {
+                reclaim(slot.page, slot.sizeClass);
+                return;
+            }
+            long[] stack = this.freeSlots[slot.sizeClass];
+            if (this.freeCount[slot.sizeClass] == stack.length) {
+                stack = this.freeSlots[slot.sizeClass] = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[this.freeCount[slot.sizeClass]++] = ((long) slot.page << 20) | slot.offset;
+        }
+
+        synchronized int usedSlots(int sizeClass) {
+            return this.classUsed[sizeClass];
+        }
+
+        /**
+         * 在用槽最少的一页, 没有在用的页时返回-1
+         */
+        synchronized int leastUsedPage() {
+            int least = -1;
+            for (int page = 0; page < this.pages.size(); page++) {
+                if (this.pageUsed[page] > 0 && (least < 0 || this.pageUsed[page] < this.pageUsed[least])) {
+                    least = page;
+                }
+            }
+            return least;
+        }
+
+        private int nextPage() {
+            if (this.freePageCount > 0) {
+                return this.freePages[--this.freePageCount];
+            }
+            if (this.pages.size() >= this.maximumPages) {
+                return -1;
+            }
+            this.pages.add(ByteBuffer.allocateDirect(PAGE_SIZE));
+            return this.pages.size() - 1;
+        }
+
+        /**
+         * 页上已经没有在用的槽: 从空闲链表中移除它的槽, 停止切分, 放入空页栈
+         */
+        private void reclaim(int page, int sizeClass) {
+            long[] stack = this.freeSlots[sizeClass];
+            int kept = 0;
+            for (int i = 0; i < this.freeCount[sizeClass]; i++) {
+                if ((int) (stack[i] >>> 20) != page) {
+                    stack[kept++] = stack[i];
+                }
+            }
+            this.freeCount[sizeClass] = kept;
+            if (this.carvingPage[sizeClass] == page) {
+                this.carvingPage[sizeClass] = -1;
+            }
+            this.freePages[this.freePageCount++] = page;
+        }
+
+        void write(Slot slot, byte[] bytes) {
+            // 绝对位置的批量读写不修改position, 多个线程可以共用同一页
+            page(slot.page).put(slot.offset, bytes);
+        }
+
+        byte[] read(Slot slot) {
+            byte[] bytes = new byte[slot.length];
+            page(slot.page).get(slot.offset, bytes);
+            return bytes;
+        }
+
+        synchronized long allocatedBytes() {
+            return (long) this.pages.size() * PAGE_SIZE;
+        }
+
+        private ByteBuffer page(int page) {
+            // 新页只在存储的写锁内加入, 读者持有读锁, 不需要再同步
+            return this.pages.get(page);
+        }
+
+        static int sizeClassOf(int length) {
+            if (length <= MIN_SLOT_SIZE) {
+                return 0;
+            }
+            // 向上取整到2的幂
+            return 32 - Integer.numberOfLeadingZeros(length - 1) - Integer.numberOfTrailingZeros(MIN_SLOT_SIZE);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.springselfcoding.cache;
+
+/**
+ * 缓存项被淘汰, 过期, 删除或替换时的回调, 在分片的锁内调用, 不应做耗时操作
+ */
+@FunctionalInterface
+public interface SelfRemovalListener<K, V> {
+
+    void onRemoval(K key, V value);
+}
@@ -0,0 +1,507 @@
+package com.springselfcoding.cache;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * 按总权重淘汰的并发缓存, 淘汰策略为分段LRU (SLRU), 每项可以有自己的有效期
+ * 1) key按哈希分到多个分片, 每个分片一把锁, 分片之间互不阻塞
+ * 2) 分片内分为试用区与保护区: 新写入的项进入试用区, 再次命中才晋升到保护区 (占平均分片容量的80%)
+ *    保护区满时把最久未用的项降回试用区, 淘汰总是从试用区的尾部开始, 一次性的扫描不会冲掉热点数据
+ * 3) 过期的项在读到时删除, 或者在淘汰时随LRU顺序被移除
+ * 4) 可选的SelfRemovalListener在项被淘汰, 过期, 删除或替换时回调, 回调时持有分片的锁
+ * 5) 总权重由所有分片共享, 超出时先淘汰写入的分片, 该分片只剩新写入的项时再从其他分片淘汰
+ *    单项不超过总容量就可以缓存, 不受分片数影响; 超过总容量的项不缓存, 计入rejectedCount
+ */
+public class SelfSegmentedLruCache<K, V> {
+
+    // 保护区占分片容量的比例
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private final Segment<K, V>[] segments;
+
+    private final int segmentMask;
+
+    private final long maximumWeight;
+
+    private final SelfWeigher<? super K, ? super V> weigher;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    // 所有分片的权重之和, 在分片的锁内更新
+    private final AtomicLong weightedSize = new AtomicLong();
+
+    public SelfSegmentedLruCache(long maximumWeight, SelfWeigher<? super K, ? super V> weigher) {
+        this(maximumWeight, weigher, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public SelfSegmentedLruCache(long maximumWeight, SelfWeigher<? super K, ? super V> weigher, int concurrencyLevel) {
+        this(maximumWeight, weigher, concurrencyLevel, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public SelfSegmentedLruCache(long maximumWeight, SelfWeigher<? super K, ? super V> weigher, int concurrencyLevel,
+                                 SelfRemovalListener<? super K, ? super V> removalListener) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("maximumWeight must be positive: " + maximumWeight);
+        }
+        // 分片数取2的幂, 并且保证每个分片至少能放下一些数据
+        int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(concurrencyLevel, 64)) * 2 - 1);
+        while (segmentCount > 1 && maximumWeight / segmentCount < 1024) {
+            segmentCount >>= 1;
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.segmentMask = segmentCount - 1;
+        this.segments = new Segment[segmentCount];
+        long maximumProtectedWeight = (long) (maximumWeight / segmentCount * PROTECTED_RATIO);
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new Segment<>(maximumWeight, maximumProtectedWeight, this.weightedSize,
+                    this.evictionCount, removalListener);
+        }
+    }
+
+    /**
+     * 不存在或已过期时返回null
+     */
+    public V get(K key) {
+        int hash = spread(key.hashCode());
+        V value = segmentFor(hash).get(key, System.nanoTime());
+        if (null == value) {
+            this.missCount.increment();
+        } else {
+            this.hitCount.increment();
+        }
+        return value;
+    }
+
+    /**
+     * @param ttlNanos 有效期(纳秒), 小于等于0表示不过期
+     */
+    public void put(K key, V value, long ttlNanos) {
+        int weight = this.weigher.weigh(key, value);
+        int hash = spread(key.hashCode());
+        long expiresAt = ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0;
+        Segment<K, V> segment = segmentFor(hash);
+        if (!segment.put(key, value, weight, expiresAt)) {
+            this.rejectedCount.increment();
+            return;
+        }
+        // 本分片只剩新写入的项时仍然超出, 从其他分片淘汰
+        while (this.weightedSize.get() > this.maximumWeight && evictOther(segment)) {
+            // 继续淘汰
+        }
+    }
+
+    public void invalidate(K key) {
+        int hash = spread(key.hashCode());
+        segmentFor(hash).remove(key);
+    }
+
+    /**
+     * 按淘汰顺序移除一项 (计入淘汰次数), 缓存为空时返回false
+     * 用于权重之外还有其他容量限制的场景, 多个分片时依次从各分片中淘汰
+     */
+    public boolean evictOne() {
+        return evictOne(value -> true);
+    }
+
+    /**
+     * 按淘汰顺序移除第一个满足条件的项 (计入淘汰次数), 没有这样的项时返回false
+     * 需要扫描不满足条件的项, 用于值本身决定能否腾出所需资源的场景 (如堆外存储中只有同样大小的槽才能复用)
+     */
+    public boolean evictOne(Predicate<? super V> filter) {
+        for (Segment<K, V> segment : this.segments) {
+            if (segment.evictOne(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 移除所有满足条件的项 (计入淘汰次数), 返回移除的项数
+     */
+    public int evictAll(Predicate<? super V> filter) {
+        int evicted = 0;
+        for (Segment<K, V> segment : this.segments) {
+            evicted += segment.evictAll(filter);
+        }
+        return evicted;
+    }
+
+    private boolean evictOther(Segment<K, V> except) {
+        for (Segment<K, V> segment : this.segments) {
+            if (segment != except && segment.evictOne(value -> true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void invalidateAll() {
+        for (Segment<K, V> segment : this.segments) {
+            segment.clear();
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment<K, V> segment : this.segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long weightedSize() {
+        return this.weightedSize.get();
+    }
+
+    public long getMaximumWeight() {
+        return this.maximumWeight;
+    }
+
+    public long hitCount() {
+        return this.hitCount.sum();
+    }
+
+    public long missCount() {
+        return this.missCount.sum();
+    }
+
+    public long evictionCount() {
+        return this.evictionCount.sum();
+    }
+
+    /**
+     * 因超过总容量而没有缓存的写入次数
+     */
+    public long rejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    private Segment<K, V> segmentFor(int hash) {
+        return this.segments[hash & this.segmentMask];
+    }
+
+    private static int spread(int h) {
+        // 分片用低位, 先把高位混进来
+        h ^= (h >>> 16);
+        return h * 0x9E3779B9;
+    }
+
+    /**
+     * 一个分片: HashMap定位 + 两条带哨兵的双向链表维护LRU顺序, 表头是最近使用的
+     */
+    private static final class Segment<K, V> {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Map<K, Node<K, V>> map = new HashMap<>();
+
+        private final Node<K, V> probation = Node.sentinel();
+
+        private final Node<K, V> protectedHead = Node.sentinel();
+
+        private final long maximumWeight;
+
+        private final long maximumProtectedWeight;
+
+        private final AtomicLong totalWeight;
+
+        private final LongAdder evictionCount;
+
+        private final SelfRemovalListener<? super K, ? super V> removalListener;
+
+        private long weight;
+
+        private long protectedWeight;
+
+        /**
+         * @param maximumWeight 整个缓存的容量, 与其他分片共享
+         */
+        Segment(long maximumWeight, long maximumProtectedWeight, AtomicLong totalWeight, LongAdder evictionCount,
+                SelfRemovalListener<? super K, ? super V> removalListener) {
+            this.maximumWeight = maximumWeight;
+            this.maximumProtectedWeight = maximumProtectedWeight;
+            this.totalWeight = totalWeight;
+            this.evictionCount = evictionCount;
+            this.removalListener = removalListener;
+        }
+
+        V get(K key, long now) {
+            this.lock.lock();
+            try {
+                Node<K, V> node = this.map.get(key);
+                if (null == node) {
+                    return null;
+                }
+                if (node.isExpired(now)) {
+                    removeNode(node);
+                    return null;
+                }
+                if (node.isProtected) {
+                    moveToHead(node, this.protectedHead);
+                } else {
+                    // 第二次命中, 从试用区晋升到保护区
+                    unlink(node);
+                    node.isProtected = true;
+                    this.protectedWeight += node.weight;
+                    linkHead(node, this.protectedHead);
+                    demoteProtected();
+                }
+                return node.value;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * 比整个缓存还大的项不缓存并返回false
+         */
+        boolean put(K key, V value, int weight, long expiresAt) {
+            if (weight > this.maximumWeight) {
+                // 同时移除旧值, 新值同样回调给监听器
+                remove(key);
+                if (null != this.removalListener) {
+                    this.removalListener.onRemoval(key, value);
+                }
+                return false;
+            }
+            this.lock.lock();
+            try {
+                Node<K, V> node = this.map.get(key);
+                if (null == node) {
+                    node = new Node<>(key, value, weight, expiresAt);
+                    this.map.put(key, node);
+                    linkHead(node, this.probation);
+                    addWeight(weight);
+                } else {
+                    // 替换已有的项, 保留其所在的区
+                    int delta = weight - node.weight;
+                    V oldValue = node.value;
+                    node.value = value;
+                    node.weight = weight;
+                    node.expiresAt = expiresAt;
+                    addWeight(delta);
+                    if (node.isProtected) {
+                        this.protectedWeight += delta;
+                        moveToHead(node, this.protectedHead);
+                        demoteProtected();
+                    } else {
+                        moveToHead(node, this.probation);
+                    }
+                    if (null != this.removalListener && oldValue != value) {
+                        this.removalListener.onRemoval(key, oldValue);
+                    }
+                }
+                evict(node);
+                return true;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        void remove(K key) {
+            this.lock.lock();
+            try {
+                Node<K, V> node = this.map.get(key);
+                if (null != node) {
+                    removeNode(node);
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        void clear() {
+            this.lock.lock();
+            try {
+                if (null != this.removalListener) {
+                    for (Node<K, V> node : this.map.values()) {
+                        this.removalListener.onRemoval(node.key, node.value);
+                    }
+                }
+                this.map.clear();
+                this.probation.prev = this.probation.next = this.probation;
+                this.protectedHead.prev = this.protectedHead.next = this.protectedHead;
+                addWeight(-this.weight);
+                this.protectedWeight = 0;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        int size() {
+            this.lock.lock();
+            try {
+                return this.map.size();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * 先从试用区尾部, 再从保护区尾部查找满足条件的项
+         */
+        boolean evictOne(Predicate<? super V> filter) {
+            this.lock.lock();
+            try {
+                Node<K, V> victim = findFromTail(this.probation, filter);
+                if (null == victim) {
+                    victim = findFromTail(this.protectedHead, filter);
+                }
+                if (null == victim) {
+                    return false;
+                }
+                removeNode(victim);
+                this.evictionCount.increment();
+                return true;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        int evictAll(Predicate<? super V> filter) {
+            this.lock.lock();
+            try {
+                int evicted = 0;
+                for (Node<K, V> head : List.of(this.probation, this.protectedHead)) {
+                    Node<K, V> node = head.next;
+                    while (node != head) {
+                        Node<K, V> next = node.next;
+                        if (filter.test(node.value)) {
+                            removeNode(node);
+                            evicted++;
+                        }
+                        node = next;
+                    }
+                }
+                this.evictionCount.add(evicted);
+                return evicted;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        private static <K, V> Node<K, V> findFromTail(Node<K, V> head, Predicate<? super V> filter) {
+            for (Node<K, V> node = head.prev; node != head; node = node.prev) {
+                if (filter.test(node.value)) {
+                    return node;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 保护区超出容量时, 把最久未用的项降回试用区的表头
+         */
+        private void demoteProtected() {
+            while (this.protectedWeight > this.maximumProtectedWeight) {
+                Node<K, V> tail = this.protectedHead.prev;
+                unlink(tail);
+                tail.isProtected = false;
+                this.protectedWeight -= tail.weight;
+                linkHead(tail, this.probation);
+            }
+        }
+
+        /**
+         * 总权重超出容量时从试用区尾部淘汰, 试用区为空才淘汰保护区; 不淘汰刚写入的项, 本分片淘汰不够时交给调用方
+         */
+        private void evict(Node<K, V> written) {
+            while (this.totalWeight.get() > this.maximumWeight) {
+                Node<K, V> victim = this.probation.prev;
+                if (victim == this.probation || victim == written) {
+                    victim = this.protectedHead.prev;
+                }
+                if (victim == this.protectedHead || victim == written) {
+                    return;
+                }
+                removeNode(victim);
+                this.evictionCount.increment();
+            }
+        }
+
+        private void removeNode(Node<K, V> node) {
+            this.map.remove(node.key);
+            unlink(node);
+            addWeight(-node.weight);
+            if (node.isProtected) {
+                this.protectedWeight -= node.weight;
+            }
+            if (null != this.removalListener) {
+                this.removalListener.onRemoval(node.key, node.value);
+            }
+        }
+
+        private void addWeight(long delta) {
+            this.weight += delta;
+            this.totalWeight.addAndGet(delta);
+        }
+
+        private static <K, V> void moveToHead(Node<K, V> node, Node<K, V> head) {
+            unlink(node);
+            linkHead(node, head);
+        }
+
+        private static <K, V> void linkHead(Node<K, V> node, Node<K, V> head) {
+            node.prev = head;
+            node.next = head.next;
+            head.next.prev = node;
+            head.next = node;
+        }
+
+        private static <K, V> void unlink(Node<K, V> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = node.next = null;
+        }
+    }
+
+    private static final class Node<K, V> {
+
+        final K key;
+
+        V value;
+
+        int weight;
+
+        // System.nanoTime()下的过期时刻, 0表示不过期
+        long expiresAt;
+
+        boolean isProtected;
+
+        Node<K, V> prev;
+
+        Node<K, V> next;
+
+        Node(K key, V value, int weight, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+
+        static <K, V> Node<K, V> sentinel() {
+            Node<K, V> node = new Node<>(null, null, 0, 0);
+            node.prev = node.next = node;
+            return node;
+        }
+
+        boolean isExpired(long now) {
+            return 0 != this.expiresAt && now - this.expiresAt >= 0;
+        }
+    }
+}
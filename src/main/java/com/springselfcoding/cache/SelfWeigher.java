@@ -0,0 +1,10 @@
+package com.springselfcoding.cache;
+
+/**
+ * 计算缓存项的权重, 一般是占用的字节数, 缓存按总权重淘汰
+ */
+@FunctionalInterface
+public interface SelfWeigher<K, V> {
+
+    int weigh(K key, V value);
+}
@@ -1,61 +1,260 @@
 package com.springselfcoding.demo;
 
 import com.springselfcoding.ioc.context.SelfApplicationContext;
+import com.springselfcoding.ioc.core.SelfScopeContext;
+import com.springselfcoding.ioc.core.SelfStartupSnapshot;
+import com.springselfcoding.metrics.SelfCounter;
+import com.springselfcoding.metrics.SelfMetricsEndpoint;
+import com.springselfcoding.metrics.SelfMetricsRegistry;
+import com.springselfcoding.mvcframework.SelfCacheable;
 import com.springselfcoding.mvcframework.SelfController;
+import com.springselfcoding.mvcframework.SelfRequestBody;
 import com.springselfcoding.mvcframework.SelfRequestMapping;
+import com.springselfcoding.mvcframework.SelfRequestMethod;
+import com.springselfcoding.mvcframework.bind.SelfArgumentResolverComposite;
+import com.springselfcoding.mvcframework.bind.SelfBindException;
+import com.springselfcoding.mvcframework.codec.SelfJsonCodec;
+import com.springselfcoding.mvcframework.handler.SelfConcurrencyLimiter;
+import com.springselfcoding.mvcframework.handler.SelfHandlerInvoker;
+import com.springselfcoding.mvcframework.handler.SelfHandlerMapping;
+import com.springselfcoding.mvcframework.handler.SelfHandlerMethods;
+import com.springselfcoding.mvcframework.handler.SelfResponseCache;
+import com.springselfcoding.mvcframework.returnvalue.SelfResponseOutput;
+import com.springselfcoding.mvcframework.returnvalue.SelfReturnValueHandlerComposite;
+import com.springselfcoding.mvcframework.returnvalue.SelfStringReturnValueHandler;
+import com.springselfcoding.mvcframework.router.SelfRouteMatch;
+import com.springselfcoding.mvcframework.router.SelfRouter;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 import java.io.IOException;
 import java.lang.reflect.Method;
-import java.util.*;
+import java.lang.reflect.Parameter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 /**
  * V2版本将IoC注入, WebMVC, AOP功能拆分出去
+ * 每个路由的耗时与异常次数都会记录, 通过内置的/metrics (配置metrics.path, 为空时关闭) 以Prometheus格式输出
+ * Handler返回CompletionStage时切换为异步: 容器线程立即归还, 结果完成(或超时)时再写响应并结束请求
+ * 标注virtualThread的路由同样走异步, Handler在虚拟线程上执行, 阻塞调用不再占用容器线程
+ * Handler的返回值按类型写出 (String, byte[], ByteBuffer, InputStream, Path, FileChannel, 其余转JSON), 错误信息同样直接写字节
+ * @SelfRequestBody与JSON返回值使用自带的SelfJsonCodec, 每个类型的读写计划只生成一次
+ * 路由按HTTP方法分发, 路径匹配但方法不支持时返回405; @SelfCacheable的GET路由缓存响应字节并支持ETag/304
+ * 配置了并发上限的路由超出时立即返回503 + Retry-After, 上限默认按AIMD随耗时自适应, 见SelfConcurrencyLimiter
+ * 启动快照有效时按快照中的路由表直接查找Handler方法, 不再遍历所有Bean的类型与方法上的注解
+ * 热加载时只重新映射被刷新的Controller, 新的路由树整体替换旧的, 已经匹配到旧Handler的请求在旧Handler上完成
  */
 public class SelfDispatchServletV2 extends HttpServlet {
 
-    // 存放Url和Controller的处理方法, 进行绑定
-    private Map<String, Method> handlerMapper = new HashMap<>();
+    // 内置指标端点的路径配置
+    public static final String METRICS_PATH = "metrics.path";
+
+    // 路由耗时的指标名称, 以route区分
+    public static final String REQUEST_TIMER_NAME = "self_http_server_requests_seconds";
+
+    // 异步请求的默认超时(毫秒), 0表示不超时
+    public static final String ASYNC_TIMEOUT = "async.timeout";
+
+    private static final long DEFAULT_ASYNC_TIMEOUT = 30000;
+
+    // @SelfCacheable响应缓存的最大字节数
+    public static final String RESPONSE_CACHE_SIZE = "response.cache.size";
+
+    private static final long DEFAULT_RESPONSE_CACHE_SIZE = 64L * 1024 * 1024;
+
+    // 每条路由的最大并发数, 0表示不限制; limit.maxConcurrency.<pattern>与@SelfRequestMapping(maxConcurrency)可以单独设置
+    public static final String LIMIT_MAX_CONCURRENCY = "limit.maxConcurrency";
+
+    // 自适应上限的下限
+    public static final String LIMIT_MIN_CONCURRENCY = "limit.minConcurrency";
+
+    // 为false时上限固定为maxConcurrency
+    public static final String LIMIT_ADAPTIVE = "limit.adaptive";
+
+    // 过载时上限的缩小比例
+    public static final String LIMIT_BACKOFF_RATIO = "limit.backoffRatio";
+
+    // 耗时超过平均耗时的多少倍视为过载
+    public static final String LIMIT_TOLERANCE = "limit.tolerance";
+
+    // 拒绝时Retry-After响应头的秒数
+    public static final String LIMIT_RETRY_AFTER = "limit.retryAfter";
+
+    // 路由并发指标的名称前缀, 以route与method区分
+    public static final String LIMIT_METRICS_PREFIX = "self_http_server_";
+
+    // 启动快照中路由表的段
+    private static final String SNAPSHOT_ROUTES = "routes";
+
+    // Url pattern与按HTTP方法区分的Handler的路由树, 支持{var}, *, **; 建好后只读, 热加载时整体替换 (copy-on-write)
+    private volatile SelfRouter<SelfHandlerMethods> handlerMapper = new SelfRouter<>();
+
+    // Controller的beanName -> 它映射的路由, 热加载时只重新映射被刷新的Controller
+    private Map<String, List<RouteRegistration>> controllerRoutes = new LinkedHashMap<>();
+
+    // 内置的路由 (指标端点)
+    private List<RouteRegistration> builtinRoutes = new ArrayList<>();
+
+    // 路由 + 方法 + 上限 -> 并发上限, 热加载重新映射时沿用, 旧Handler上的请求结束时归还到同一个名额
+    private Map<String, SelfConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    // 请求体与返回值共用的JSON编解码, 按类型缓存Codec
+    private SelfJsonCodec jsonCodec = new SelfJsonCodec();
+
+    // 参数解析策略链, 只在HandlerMapping阶段使用
+    private SelfArgumentResolverComposite argumentResolvers = new SelfArgumentResolverComposite(jsonCodec);
+
+    // 返回值处理策略链, 只在HandlerMapping阶段使用
+    private SelfReturnValueHandlerComposite returnValueHandlers = new SelfReturnValueHandlerComposite(jsonCodec);
 
     // 声明ApplicationContext, IoC容器的访问上下文
     private SelfApplicationContext applicationContext = null;
 
+    // 容器内置的指标注册中心
+    private SelfMetricsRegistry metricsRegistry;
 
+    // 没有匹配到路由的请求数
+    private SelfCounter notFoundCounter;
+
+    // 全局的异步超时(毫秒)
+    private long asyncTimeout;
+
+    // 每个任务一个虚拟线程, 有路由需要时才创建
+    private ExecutorService virtualThreadExecutor;
+
+    // @SelfCacheable的响应缓存, 有路由需要时才创建
+    private SelfResponseCache responseCache;
+
+    // 并发超限时的Retry-After (秒)
+    private String retryAfter;
+
+    /**
+     * 所有HTTP方法都交给路由按方法分发; HEAD仍交给HttpServlet, 它以不输出响应体的Response调用doGet
+     */
     @Override
-    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        doPost(req, resp);
+    protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if ("HEAD".equals(req.getMethod())) {
+            super.service(req, resp);
+            return;
+        }
+        processRequest(req, resp);
     }
 
     @Override
-    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        // 6. 根据URL委派给具体调用方法
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        processRequest(req, resp);
+    }
+
+    private void processRequest(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        // 请求作用域绑定到当前线程, 同步请求在这里结束, 异步请求在完成回调中结束
+        SelfScopeContext scope = SelfScopeContext.beginRequest();
+        boolean async = false;
+
+        // 6. 根据URL与HTTP方法委派给具体调用方法
         try {
-            doDispatch(req, resp);
+            async = doDispatch(req, resp);
         } catch (Exception e) {
+            processException(e, resp);
+        } finally {
+            SelfScopeContext.detach(null);
+            if (!async) {
+                scope.end();
+            }
+        }
+
+    }
+
+    /**
+     * 同步与异步共用的异常处理
+     */
+    private void processException(Throwable e, HttpServletResponse resp) throws IOException {
+        if (e instanceof SelfBindException) {
+            // 参数缺失或转换失败
+            writeError(resp, HttpServletResponse.SC_BAD_REQUEST, "400 Bad Request: " + e.getMessage());
+        } else {
             e.printStackTrace();
-            resp.getWriter().write("500 Error");
+            writeError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "500 Error");
         }
+    }
+
+    /**
+     * 错误信息不经过Writer, 直接写UTF-8字节; Handler已经写了一部分但还没提交时先丢弃
+     */
+    private void writeError(HttpServletResponse resp, int status, String message) throws IOException {
+        if (!resp.isCommitted()) {
+            resp.resetBuffer();
+        }
+        resp.setStatus(status);
+        resp.setContentType(SelfStringReturnValueHandler.CONTENT_TYPE);
+        SelfResponseOutput.writeText(resp, message);
+    }
 
+    public SelfDispatchServletV2() {
+    }
+
+    /**
+     * 内嵌服务器使用: 由调用方创建好ApplicationContext, init时不再创建
+     */
+    public SelfDispatchServletV2(SelfApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
     }
 
     @Override
     public void init(ServletConfig config) throws ServletException {
 
         // 直接将加载配置文件, 扫描相关类, 初始化IoC容器, Bean实例化, 依赖注入, 全部交给ApplicationContext处理
-        applicationContext = new SelfApplicationContext(config.getInitParameter("contextConfigLocation"));
+        if (null == applicationContext) {
+            applicationContext = new SelfApplicationContext(config.getInitParameter("contextConfigLocation"));
+        }
+        metricsRegistry = applicationContext.getMetricsRegistry();
+        notFoundCounter = metricsRegistry.counter("self_http_server_not_found_total");
+        asyncTimeout = Long.parseLong(applicationContext.getConfig()
+                .getProperty(ASYNC_TIMEOUT, String.valueOf(DEFAULT_ASYNC_TIMEOUT)).trim());
+        retryAfter = applicationContext.getConfig().getProperty(LIMIT_RETRY_AFTER, "1").trim();
 
         // ------------- MVC ------------------
         // 5. 初始化HandlerMapping (url和method建立关系)
         doInitHandlerMapping();
+        applicationContext.addRefreshListener(this::doRefreshHandlerMapping);
 
         System.out.println("Self Dispatch Servlet finished initialization");
 
     }
 
+    @Override
+    public void destroy() {
+        applicationContext.close();
+        if (null != this.virtualThreadExecutor) {
+            this.virtualThreadExecutor.shutdownNow();
+        }
+    }
+
     /**
      * 建立Url和Method的关联
      */
@@ -64,66 +263,627 @@ public class SelfDispatchServletV2 extends HttpServlet {
             return;
         }
 
-        for (String beanName : this.applicationContext.getBeanDefinitionNames()) {
+        // 启动快照中有路由表时直接读取, 否则逐个Bean判断并写入快照
+        SelfStartupSnapshot snapshot = this.applicationContext.getStartupSnapshot();
+        SelfStartupSnapshot.Input snapshotRoutes = null == snapshot ? null : snapshot.getSection(SNAPSHOT_ROUTES);
+        if (null == snapshotRoutes || !doLoadSnapshotRoutes(snapshotRoutes)) {
+            this.controllerRoutes = new LinkedHashMap<>();
+            for (String beanName : this.applicationContext.getBeanDefinitionNames()) {
+                List<RouteRegistration> routes = doMapController(beanName);
+                if (null != routes) {
+                    this.controllerRoutes.put(beanName, routes);
+                }
+            }
+            if (null != snapshot) {
+                doWriteSnapshotRoutes(snapshot);
+            }
+        }
 
-            Object ins = this.applicationContext.getBean(beanName);
-            Class<?> clazz = ins.getClass();
+        // 内置的指标端点, 与普通Handler一样映射
+        String metricsPath = this.applicationContext.getConfig().getProperty(METRICS_PATH, "/metrics").trim();
+        if (!metricsPath.isEmpty()) {
+            try {
+                SelfMetricsEndpoint endpoint = new SelfMetricsEndpoint(this.metricsRegistry);
+                this.builtinRoutes.add(doRegisterHandler(metricsPath, new SelfRequestMethod[]{SelfRequestMethod.GET},
+                        endpoint, SelfMetricsEndpoint.class.getMethod("scrape", HttpServletResponse.class),
+                        asyncTimeout, false, 0));
+            } catch (NoSuchMethodException e) {
+                e.printStackTrace();
+            }
+        }
+        this.handlerMapper = buildRouter(this.controllerRoutes);
+    }
 
-            // 只对Controller进行处理
-            if (clazz.isAnnotationPresent(SelfController.class)) {
+    /**
+     * 按快照中的路由表映射, 方法按名称与参数类型直接查找; 类与快照不一致时返回false, 改为重新扫描
+     */
+    private boolean doLoadSnapshotRoutes(SelfStartupSnapshot.Input snapshotRoutes) {
+        Map<String, List<RouteRegistration>> loaded = new LinkedHashMap<>();
+        try {
+            for (int i = snapshotRoutes.readInt(); i > 0; i--) {
+                String beanName = snapshotRoutes.readString();
+                Class<?> clazz = this.applicationContext.getType(beanName);
+                Object ins = this.applicationContext.getBean(beanName);
+                List<RouteRegistration> routes = new ArrayList<>();
+                for (int j = snapshotRoutes.readInt(); j > 0; j--) {
+                    String methodName = snapshotRoutes.readString();
+                    String[] parameterTypeNames = snapshotRoutes.readStrings();
+                    Class<?>[] parameterTypes = new Class<?>[parameterTypeNames.length];
+                    for (int k = 0; k < parameterTypes.length; k++) {
+                        parameterTypes[k] = SelfStartupSnapshot.forName(parameterTypeNames[k], clazz.getClassLoader());
+                    }
+                    Method method = clazz.getDeclaredMethod(methodName, parameterTypes);
+                    String url = snapshotRoutes.readString();
+                    SelfRequestMethod[] methods = Arrays.stream(snapshotRoutes.readStrings())
+                            .map(SelfRequestMethod::valueOf).toArray(SelfRequestMethod[]::new);
+                    long timeout = snapshotRoutes.readLong();
+                    boolean virtualThread = snapshotRoutes.readBoolean();
+                    int maxConcurrency = snapshotRoutes.readInt();
+                    RouteRegistration route = doRegisterHandler(url, methods, ins, method, timeout, virtualThread,
+                            maxConcurrency);
+                    if (null != route) {
+                        routes.add(route);
+                    }
+                }
+                loaded.put(beanName, routes);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.out.println("Failed to load routes from startup snapshot, mapping again: " + e);
+            return false;
+        }
+        this.controllerRoutes = loaded;
+        System.out.println("Routes of " + loaded.size() + " controllers loaded from startup snapshot");
+        return true;
+    }
 
-                String baseUrl = "";
-                // 判断Clazz有没有加RequestMapping
-                if (clazz.isAnnotationPresent(SelfRequestMapping.class)) {
-                    SelfRequestMapping baseRequestMapping = clazz.getAnnotation(SelfRequestMapping.class);
-                    baseUrl = baseRequestMapping.value();
+    /**
+     * 把Controller的路由表写入启动快照, 内置路由每次启动都重新映射
+     */
+    private void doWriteSnapshotRoutes(SelfStartupSnapshot snapshot) {
+        try {
+            SelfStartupSnapshot.Output output = new SelfStartupSnapshot.Output();
+            output.writeInt(this.controllerRoutes.size());
+            for (Map.Entry<String, List<RouteRegistration>> entry : this.controllerRoutes.entrySet()) {
+                output.writeString(entry.getKey());
+                output.writeInt(entry.getValue().size());
+                for (RouteRegistration route : entry.getValue()) {
+                    Method method = route.handler.getInvoker().getMethod();
+                    output.writeString(method.getName());
+                    output.writeStrings(Arrays.stream(method.getParameterTypes()).map(Class::getName)
+                            .toArray(String[]::new));
+                    output.writeString(route.url);
+                    output.writeStrings(Arrays.stream(route.methods).map(Enum::name).toArray(String[]::new));
+                    output.writeLong(route.handler.getAsyncTimeout());
+                    output.writeBoolean(route.handler.isVirtualThread());
+                    output.writeInt(route.maxConcurrency);
                 }
+            }
+            snapshot.putSection(SNAPSHOT_ROUTES, output);
+            snapshot.save();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
+    /**
+     * 热加载回调: 被刷新的Controller重新映射, 其余的沿用原来的Handler, 建好新的路由树后一次替换
+     * 路由重复时保留旧的路由树
+     */
+    private synchronized void doRefreshHandlerMapping(Set<String> beanNames) {
+        Map<String, List<RouteRegistration>> routes = new LinkedHashMap<>(this.controllerRoutes);
+        Set<String> defined = new HashSet<>(Arrays.asList(this.applicationContext.getBeanDefinitionNames()));
+        for (String beanName : beanNames) {
+            if (!defined.contains(beanName)) {
+                routes.remove(beanName);
+                continue;
+            }
+            try {
+                List<RouteRegistration> mapped = doMapController(beanName);
+                if (null == mapped) {
+                    routes.remove(beanName);
+                } else {
+                    routes.put(beanName, mapped);
+                }
+            } catch (RuntimeException e) {
+                // 创建或映射失败时保留旧的路由, 修好之后再次刷新
+                e.printStackTrace();
+            }
+        }
+        SelfRouter<SelfHandlerMethods> router;
+        try {
+            router = buildRouter(routes);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return;
+        }
+        this.controllerRoutes = routes;
+        this.handlerMapper = router;
+        // 生成的Codec可能引用旧一代的类, 新的路由用到时重新生成
+        this.jsonCodec.clearCache();
+    }
 
-                // 仅迭代Public的方法
-                for (Method method : clazz.getDeclaredMethods()) {
-                    if (method.isAnnotationPresent(SelfRequestMapping.class)) {
-                        SelfRequestMapping requestMapping = method.getAnnotation(SelfRequestMapping.class);
-                        String url = (baseUrl + requestMapping.value());
+    /**
+     * 映射一个Controller的所有路由, 不是Controller时返回null (不是Controller的Bean不在这里创建, 延迟加载的Service保持未创建)
+     */
+    private List<RouteRegistration> doMapController(String beanName) {
+        // 先按类型判断
+        Class<?> clazz = this.applicationContext.getType(beanName);
 
-                        handlerMapper.put(url, method);
-                        System.out.println("Mapped: " + url + " ---> " + method);
-                    }
+        // 只对Controller进行处理
+        if (!clazz.isAnnotationPresent(SelfController.class)) {
+            return null;
+        }
+
+        // 单例已在容器启动时创建, 这里只是一次缓存查找
+        Object ins = this.applicationContext.getBean(beanName);
+
+        String baseUrl = "";
+        boolean baseVirtualThread = false;
+        int baseMaxConcurrency = -1;
+        long baseAsyncTimeout = asyncTimeout;
+        SelfRequestMethod[] baseMethods = {};
+        // 判断Clazz有没有加RequestMapping
+        if (clazz.isAnnotationPresent(SelfRequestMapping.class)) {
+            SelfRequestMapping baseRequestMapping = clazz.getAnnotation(SelfRequestMapping.class);
+            baseUrl = baseRequestMapping.value();
+            baseVirtualThread = baseRequestMapping.virtualThread();
+            baseMaxConcurrency = baseRequestMapping.maxConcurrency();
+            if (baseRequestMapping.asyncTimeout() >= 0) {
+                baseAsyncTimeout = baseRequestMapping.asyncTimeout();
+            }
+            baseMethods = baseRequestMapping.method();
+        }
+
+        List<RouteRegistration> routes = new ArrayList<>();
+        // 仅迭代Public的方法
+        for (Method method : clazz.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(SelfRequestMapping.class)) {
+                SelfRequestMapping requestMapping = method.getAnnotation(SelfRequestMapping.class);
+                String url = ("/" + baseUrl + "/" + requestMapping.value()).replaceAll("/+", "/");
+
+                long timeout = requestMapping.asyncTimeout() < 0 ? baseAsyncTimeout : requestMapping.asyncTimeout();
+                SelfRequestMethod[] methods = requestMapping.method().length > 0
+                        ? requestMapping.method() : baseMethods;
+                int maxConcurrency = requestMapping.maxConcurrency() >= 0
+                        ? requestMapping.maxConcurrency() : baseMaxConcurrency;
+                RouteRegistration route = doRegisterHandler(url, methods, ins, method, timeout,
+                        baseVirtualThread || requestMapping.virtualThread(), maxConcurrency);
+                if (null != route) {
+                    routes.add(route);
                 }
             }
+        }
+        return routes;
+    }
 
+    /**
+     * 按pattern合并同一路径上不同方法的Handler, 建好新的路由树, 同一路径同一方法重复映射时抛异常
+     */
+    private SelfRouter<SelfHandlerMethods> buildRouter(Map<String, List<RouteRegistration>> controllerRoutes) {
+        SelfRouter<SelfHandlerMethods> router = new SelfRouter<>();
+        Map<String, SelfHandlerMethods> handlerMethods = new LinkedHashMap<>();
+        List<RouteRegistration> routes = new ArrayList<>();
+        controllerRoutes.values().forEach(routes::addAll);
+        routes.addAll(this.builtinRoutes);
+        for (RouteRegistration route : routes) {
+            SelfHandlerMethods handlers = handlerMethods.get(route.url);
+            if (null == handlers) {
+                handlers = new SelfHandlerMethods(route.url);
+                router.addRoute(route.url, handlers);
+                handlerMethods.put(route.url, handlers);
+            }
+            handlers.addHandler(route.methods, route.handler);
+        }
+        return router;
+    }
+
+    /**
+     * 启动时就绑定好Controller实例, 参数解析器与该路由的计时器, 请求时不再反射也不再查找
+     */
+    private RouteRegistration doRegisterHandler(String url, SelfRequestMethod[] methods, Object ins, Method method,
+                                                long timeout, boolean virtualThread, int maxConcurrency) {
+        if (virtualThread && null == this.virtualThreadExecutor) {
+            this.virtualThreadExecutor = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("self-handler-", 0).factory());
+        }
+        long cacheTtl = resolveCacheTtl(method, methods);
+        if (cacheTtl > 0 && null == this.responseCache) {
+            this.responseCache = new SelfResponseCache(Long.parseLong(this.applicationContext.getConfig()
+                    .getProperty(RESPONSE_CACHE_SIZE, String.valueOf(DEFAULT_RESPONSE_CACHE_SIZE)).trim()));
+        }
+        try {
+            SelfHandlerInvoker invoker = new SelfHandlerInvoker(ins, method,
+                    argumentResolvers.createResolvers(method, SelfRouter.getVariableNames(url)),
+                    returnValueHandlers.createWriter(method));
+            SelfHandlerMapping handler = new SelfHandlerMapping(url, invoker,
+                    metricsRegistry.timer(REQUEST_TIMER_NAME, "route", url), timeout, virtualThread, cacheTtl,
+                    createLimiter(url, methods, maxConcurrency));
+            System.out.println("Mapped: " + (0 == methods.length ? "" : Arrays.toString(methods) + " ")
+                    + url + " ---> " + method);
+            return new RouteRegistration(url, methods, handler, maxConcurrency);
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 按配置创建路由的并发上限, 优先级: limit.maxConcurrency.<pattern> > 方法上的注解 > Controller上的注解 > limit.maxConcurrency
+     * 不限制时返回null
+     * 同时注册该路由的并发数, 当前上限与拒绝次数指标; 热加载重新映射时上限不变则沿用原来的
+     */
+    private SelfConcurrencyLimiter createLimiter(String url, SelfRequestMethod[] methods, int maxConcurrency) {
+        Properties config = this.applicationContext.getConfig();
+        String routeLimit = config.getProperty(LIMIT_MAX_CONCURRENCY + "." + url);
+        int limit = null != routeLimit ? Integer.parseInt(routeLimit.trim())
+                : maxConcurrency >= 0 ? maxConcurrency
+                : Integer.parseInt(config.getProperty(LIMIT_MAX_CONCURRENCY, "0").trim());
+        if (limit <= 0) {
+            return null;
         }
+        String method = 0 == methods.length ? "*" : Arrays.stream(methods).map(Enum::name)
+                .collect(Collectors.joining(","));
+        return this.limiters.computeIfAbsent(url + " " + method + " " + limit,
+                key -> doCreateLimiter(url, method, limit));
+    }
+
+    private SelfConcurrencyLimiter doCreateLimiter(String url, String method, int limit) {
+        Properties config = this.applicationContext.getConfig();
+        SelfConcurrencyLimiter limiter;
+        if (Boolean.parseBoolean(config.getProperty(LIMIT_ADAPTIVE, "true").trim())) {
+            limiter = SelfConcurrencyLimiter.aimd(
+                    Math.min(limit, Integer.parseInt(config.getProperty(LIMIT_MIN_CONCURRENCY, "1").trim())), limit,
+                    Double.parseDouble(config.getProperty(LIMIT_BACKOFF_RATIO, "0.9").trim()),
+                    Double.parseDouble(config.getProperty(LIMIT_TOLERANCE, "2.0").trim()));
+        } else {
+            limiter = SelfConcurrencyLimiter.fixed(limit);
+        }
+        this.metricsRegistry.gauge(LIMIT_METRICS_PREFIX + "inflight_requests", limiter::getInflight,
+                "route", url, "method", method);
+        this.metricsRegistry.gauge(LIMIT_METRICS_PREFIX + "concurrency_limit", limiter::getLimit,
+                "route", url, "method", method);
+        this.metricsRegistry.functionCounter(LIMIT_METRICS_PREFIX + "rejected_total", limiter::getRejectedCount,
+                "route", url, "method", method);
+        return limiter;
+    }
+
+    /**
+     * @SelfCacheable的有效期, 不缓存时返回0; 结果必须只取决于绑定的参数, 否则启动时报错
+     */
+    private static long resolveCacheTtl(Method method, SelfRequestMethod[] methods) {
+        SelfCacheable cacheable = method.getAnnotation(SelfCacheable.class);
+        if (null == cacheable) {
+            return 0;
+        }
+        if (cacheable.ttl() <= 0) {
+            throw new IllegalStateException("@SelfCacheable ttl must be positive on " + method);
+        }
+        if (methods.length > 0 && !Arrays.asList(methods).contains(SelfRequestMethod.GET)) {
+            throw new IllegalStateException("@SelfCacheable only applies to GET mappings: " + method);
+        }
+        if (void.class == method.getReturnType()) {
+            throw new IllegalStateException("@SelfCacheable handler must return its response: " + method);
+        }
+        for (Parameter parameter : method.getParameters()) {
+            Class<?> type = parameter.getType();
+            if (ServletRequest.class.isAssignableFrom(type) || ServletResponse.class.isAssignableFrom(type)
+                    || HttpSession.class.isAssignableFrom(type) || parameter.isAnnotationPresent(SelfRequestBody.class)) {
+                throw new IllegalStateException("@SelfCacheable handler can only bind request parameters and path variables: "
+                        + method);
+            }
+        }
+        return cacheable.ttl();
     }
 
     /**
      * 找到对应HandlerMapping并调用处理
+     *
+     * @return 是否转为异步, 异步时由完成回调结束请求作用域
      */
-    private void doDispatch(HttpServletRequest req, HttpServletResponse resp) throws Exception {
+    private boolean doDispatch(HttpServletRequest req, HttpServletResponse resp) throws Exception {
         String url = req.getRequestURI();
-        String contextPath = req.getContextPath();
 
-        if (!this.handlerMapper.containsKey(url)) {
+        SelfRouteMatch<SelfHandlerMethods> match = this.handlerMapper.match(url);
+        if (null == match) {
             // 不存在页面
-            resp.getWriter().write("404 Not Found");
+            this.notFoundCounter.increment();
+            writeError(resp, HttpServletResponse.SC_NOT_FOUND, "404 Not Found");
+            return false;
+        }
+
+        // 按HTTP方法挑选Handler, 路径存在但方法不支持时返回405; 没有映射OPTIONS时只返回支持的方法
+        SelfRequestMethod requestMethod = SelfRequestMethod.resolve(req.getMethod());
+        SelfHandlerMapping handler = match.getHandler().getHandler(requestMethod);
+        if (null == handler) {
+            resp.setHeader("Allow", match.getHandler().getAllow());
+            if (SelfRequestMethod.OPTIONS == requestMethod) {
+                resp.setStatus(HttpServletResponse.SC_OK);
+            } else {
+                writeError(resp, HttpServletResponse.SC_METHOD_NOT_ALLOWED, "405 Method Not Allowed");
+            }
+            return false;
+        }
+
+        // Controller实例与参数解析器已在启动时绑定, 直接调用, 抛出异常计入该路由的错误数
+        long start = System.nanoTime();
+        boolean failed = true;
+        boolean async = false;
+        boolean rejected = false;
+        boolean admitted = false;
+        Object[] args = null;
+        Object cacheKey = null;
+        SelfConcurrencyLimiter limiter = handler.getLimiter();
+        try {
+            if (handler.isCacheable()
+                    && (SelfRequestMethod.GET == requestMethod || SelfRequestMethod.HEAD == requestMethod)) {
+                // 先解析参数查缓存, 命中时不调用Handler也不再序列化
+                args = handler.getInvoker().resolveArguments(req, resp, match);
+                cacheKey = this.responseCache.createKey(handler, args);
+                if (this.responseCache.writeCached(cacheKey, req, resp)) {
+                    failed = false;
+                    return false;
+                }
+            }
+            // 缓存未命中才占用并发名额, 超出上限时立即拒绝, 不让请求堆积在下游
+            if (null != limiter) {
+                if (!limiter.tryAcquire()) {
+                    rejected = true;
+                    resp.setHeader("Retry-After", this.retryAfter);
+                    writeError(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                            "503 Service Unavailable: too many concurrent requests");
+                    return false;
+                }
+                admitted = true;
+            }
+            if (handler.isVirtualThread()) {
+                // 开启异步之后由异步的完成回调记录耗时与归还名额
+                doDispatchVirtual(req, resp, match, handler, args, cacheKey, start);
+                async = true;
+                return true;
+            }
+            // 参数已为缓存key解析过时直接使用, 否则参数数组只在本次调用内使用, 从池中借出
+            Object result = null != args ? handler.getInvoker().invoke(args)
+                    : handler.getInvoker().invokeWithPooledArguments(req, resp, match);
+            if (result instanceof CompletionStage) {
+                // 耗时在异步完成时记录
+                doDispatchAsync(req, resp, handler, cacheKey, (CompletionStage<?>) result, (CompletionStage<?>) result, start);
+                async = true;
+            } else {
+                writeReturnValue(handler, cacheKey, result, req, resp);
+            }
+            failed = false;
+        } finally {
+            // 被拒绝的请求只计入拒绝次数, 不计入路由耗时
+            if (!async && !rejected) {
+                long elapsed = System.nanoTime() - start;
+                handler.getTimer().record(elapsed, failed);
+                if (admitted) {
+                    limiter.release(elapsed);
+                }
+            }
+        }
+        return async;
+    }
+
+    /**
+     * 写出返回值, 可缓存的请求先写入内存放入缓存, 再写给客户端
+     */
+    private void writeReturnValue(SelfHandlerMapping handler, Object cacheKey, Object value,
+                                  HttpServletRequest req, HttpServletResponse resp) throws Exception {
+        if (null != cacheKey && null != value) {
+            this.responseCache.writeAndCache(cacheKey, handler, value, req, resp);
+        } else {
+            handler.getInvoker().writeReturnValue(value, req, resp);
+        }
+    }
+
+    /**
+     * 先开启异步, 再把Handler交给虚拟线程; Handler返回的CompletionStage接着等待, 超时时中断虚拟线程并取消该Stage
+     * 参数在虚拟线程上解析 (读取请求体可能阻塞), 已经为查缓存解析过时直接使用; 请求作用域随任务带到虚拟线程上
+     * 超时只决定响应, Handler真正结束 (虚拟线程上的调用返回, 返回的Stage也已完成) 时才完成done
+     */
+    private void doDispatchVirtual(HttpServletRequest req, HttpServletResponse resp, SelfRouteMatch<?> match,
+                                   SelfHandlerMapping handler, Object[] resolvedArgs, Object cacheKey, long start) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        doDispatchAsync(req, resp, handler, cacheKey, future, done, start);
+
+        // 超时时中断的线程与取消的Stage, 先登记再检查是否已经超时, 与超时回调之间不会漏掉
+        AtomicReference<Thread> runner = new AtomicReference<>();
+        AtomicReference<CompletionStage<?>> pending = new AtomicReference<>();
+        try {
+            this.virtualThreadExecutor.execute(SelfScopeContext.wrap(() -> {
+                runner.set(Thread.currentThread());
+                boolean waiting = false;
+                try {
+                    if (future.isDone()) {
+                        // 开始执行之前已经超时, 不再调用Handler
+                        return;
+                    }
+                    Object[] args = null != resolvedArgs ? resolvedArgs
+                            : handler.getInvoker().resolveArguments(req, resp, match);
+                    Object result = handler.getInvoker().invoke(args);
+                    if (result instanceof CompletionStage) {
+                        CompletionStage<?> stage = (CompletionStage<?>) result;
+                        pending.set(stage);
+                        waiting = true;
+                        stage.whenComplete((value, error) -> {
+                            if (null != error) {
+                                future.completeExceptionally(error);
+                            } else {
+                                future.complete(value);
+                            }
+                            done.complete(null);
+                        });
+                        if (future.isCancelled()) {
+                            cancel(stage);
+                        }
+                    } else {
+                        // 返回值原样交给doDispatchAsync写出, void的Handler已经自己写了响应
+                        future.complete(result);
+                    }
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    if (!waiting) {
+                        done.complete(null);
+                    }
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            // Servlet已经destroy, 异步已经开启, 由完成回调写响应并归还名额
+            future.completeExceptionally(e);
+            done.complete(null);
             return;
         }
+        future.whenComplete((value, error) -> {
+            if (future.isCancelled()) {
+                Thread thread = runner.get();
+                if (null != thread) {
+                    thread.interrupt();
+                }
+                CompletionStage<?> stage = pending.get();
+                if (null != stage) {
+                    cancel(stage);
+                }
+            }
+        });
+    }
+
+    /**
+     * 开启异步, 结果完成时由完成它的线程写响应; 超时先到时返回503, 之后的结果丢弃
+     * 写响应时带上请求作用域; 响应已经写完且Handler已经结束 (done完成) 时才结束作用域,
+     * 超时后仍在虚拟线程上运行的Handler可以继续使用作用域中的Bean
+     *
+     * @param done Handler真正结束时完成, 普通的异步Handler就是stage本身
+     */
+    private void doDispatchAsync(HttpServletRequest req, HttpServletResponse resp, SelfHandlerMapping handler,
+                                 Object cacheKey, CompletionStage<?> stage, CompletionStage<?> done, long start) {
+        SelfScopeContext scope = SelfScopeContext.currentRequest();
+        AsyncContext asyncContext = req.startAsync(req, resp);
+        asyncContext.setTimeout(handler.getAsyncTimeout());
+
+        // 结果与超时只有一个能写响应
+        AtomicBoolean finished = new AtomicBoolean();
+        AtomicBoolean timedOut = new AtomicBoolean();
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (finished.compareAndSet(false, true)) {
+                    timedOut.set(true);
+                    finish(handler, start, true);
+                    if (null != handler.getLimiter()) {
+                        // 只记录过载信号, 名额在Handler真正结束时归还
+                        handler.getLimiter().drop();
+                    }
+                    cancel(stage);
+                    writeError(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                            "503 Service Unavailable: async request timed out");
+                    asyncContext.complete();
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                if (finished.compareAndSet(false, true)) {
+                    finish(handler, start, true);
+                    asyncContext.complete();
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
 
-        Method method = this.handlerMapper.get(url);
-        Map<String, String[]> parameterMap = req.getParameterMap();
+        CompletionStage<?> written = stage.whenComplete((value, error) -> {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            boolean failed = null != error;
+            SelfScopeContext previous = SelfScopeContext.attach(scope);
+            try {
+                if (failed) {
+                    processException(error instanceof CompletionException && null != error.getCause()
+                            ? error.getCause() : error, resp);
+                } else {
+                    writeReturnValue(handler, cacheKey, value, req, resp);
+                }
+            } catch (Exception e) {
+                failed = true;
+                e.printStackTrace();
+            } finally {
+                SelfScopeContext.detach(previous);
+                finish(handler, start, failed);
+                asyncContext.complete();
+            }
+        });
+        // done与stage相同时回调的执行顺序不确定, 嵌套注册保证在写完响应之后
+        written.whenComplete((value, error) -> done.whenComplete((ignored, cause) -> {
+            scope.end();
+            release(handler, start, timedOut.get());
+        }));
+    }
 
-        // 这里就是任务只使用默认名称, 通过这个方式获取beanName
-        String beanName = toLowerFirstCase(method.getDeclaringClass().getSimpleName());
-        method.invoke(this.applicationContext.registry.factoryBeanInstanceCache.get(beanName),
-                new Object[]{req, resp, parameterMap.get("name")[0]});
+    /**
+     * 异步请求的响应结束: 记录耗时
+     */
+    private static void finish(SelfHandlerMapping handler, long start, boolean failed) {
+        handler.getTimer().record(System.nanoTime() - start, failed);
+    }
+
+    /**
+     * Handler真正结束: 有并发上限时归还名额 (异步路由的名额一定已经占用)
+     *
+     * @param dropped 已经超时并drop过, 耗时不再作为样本
+     */
+    private static void release(SelfHandlerMapping handler, long start, boolean dropped) {
+        SelfConcurrencyLimiter limiter = handler.getLimiter();
+        if (null == limiter) {
+            return;
+        }
+        if (dropped) {
+            limiter.release();
+        } else {
+            limiter.release(System.nanoTime() - start);
+        }
     }
 
     /**
-     * 只转首字母为小写
+     * 尽量取消Handler的结果, 不支持转换的CompletionStage无法取消, 结果到达时会被丢弃
      */
-    private String toLowerFirstCase(String simpleName) {
-        char[] chars = simpleName.toCharArray();
-        chars[0] += 32;
-        return String.valueOf(chars);
+    private static void cancel(CompletionStage<?> stage) {
+        try {
+            stage.toCompletableFuture().cancel(true);
+        } catch (UnsupportedOperationException ignored) {
+            // 只能等它自己完成
+        }
+    }
+
+    /**
+     * 一条映射好的路由, 热加载时没有变化的Controller直接沿用
+     */
+    private static final class RouteRegistration {
+
+        private final String url;
+
+        private final SelfRequestMethod[] methods;
+
+        private final SelfHandlerMapping handler;
+
+        // 注解上声明的并发上限, 写入启动快照
+        private final int maxConcurrency;
+
+        RouteRegistration(String url, SelfRequestMethod[] methods, SelfHandlerMapping handler, int maxConcurrency) {
+            this.url = url;
+            this.methods = methods;
+            this.handler = handler;
+            this.maxConcurrency = maxConcurrency;
+        }
     }
 
 }
@@ -0,0 +1,54 @@
+package com.springselfcoding.demo;
+
+import com.springselfcoding.ioc.context.SelfApplicationContext;
+import com.springselfcoding.mvcframework.server.SelfHttpServer;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import java.util.Collections;
+import java.util.Enumeration;
+
+/**
+ * 不使用Servlet容器, 用内嵌服务器启动
+ * 1) 参数为配置文件位置, 默认classpath:application.properties; 服务器的配置 (server.*) 也从中读取
+ * 2) 关闭JVM时先停止服务器, 再销毁Servlet
+ */
+public class SelfEmbeddedApplication {
+
+    public static void main(String[] args) throws Exception {
+        String configLocation = args.length > 0 ? args[0] : "classpath:application.properties";
+
+        // 1. 初始化IoC容器与DispatchServlet
+        SelfApplicationContext applicationContext = new SelfApplicationContext(configLocation);
+        SelfDispatchServletV2 servlet = new SelfDispatchServletV2(applicationContext);
+        servlet.init(new ServletConfig() {
+            @Override
+            public String getServletName() {
+                return "selfMvc";
+            }
+
+            @Override
+            public ServletContext getServletContext() {
+                return null;
+            }
+
+            @Override
+            public String getInitParameter(String name) {
+                return "contextConfigLocation".equals(name) ? configLocation : null;
+            }
+
+            @Override
+            public Enumeration<String> getInitParameterNames() {
+                return Collections.enumeration(Collections.singletonList("contextConfigLocation"));
+            }
+        });
+
+        // 2. 启动服务器
+        SelfHttpServer server = new SelfHttpServer(servlet, applicationContext.getConfig());
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            servlet.destroy();
+        }));
+    }
+}
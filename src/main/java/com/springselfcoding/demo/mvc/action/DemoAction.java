@@ -2,14 +2,12 @@ package com.springselfcoding.demo.mvc.action;
 
 import com.springselfcoding.demo.service.IDemoService;
 import com.springselfcoding.mvcframework.SelfAutowired;
+import com.springselfcoding.mvcframework.SelfCacheable;
 import com.springselfcoding.mvcframework.SelfController;
 import com.springselfcoding.mvcframework.SelfRequestMapping;
+import com.springselfcoding.mvcframework.SelfRequestMethod;
 import com.springselfcoding.mvcframework.SelfRequestParam;
 
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
-import java.io.IOException;
-
 @SelfController
 @SelfRequestMapping("/demo")
 public class DemoAction {
@@ -17,13 +15,9 @@ public class DemoAction {
     @SelfAutowired
     private IDemoService demoService;
 
-    @SelfRequestMapping("/query")
-    public void query(HttpServletRequest req, HttpServletResponse resp, @SelfRequestParam("name") String name) {
-        String result = demoService.get(name);
-        try {
-            resp.getWriter().write(result);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    @SelfCacheable(ttl = 10000)
+    @SelfRequestMapping(value = "/query", method = SelfRequestMethod.GET)
+    public String query(@SelfRequestParam("name") String name) {
+        return demoService.get(name);
     }
 }
@@ -1,12 +1,16 @@
 package com.springselfcoding.demo.service.impl;
 
 
+import com.springselfcoding.mvcframework.SelfCache;
 import com.springselfcoding.mvcframework.SelfService;
+import com.springselfcoding.mvcframework.SelfTimed;
 import com.springselfcoding.demo.service.IDemoService;
 
 @SelfService
+@SelfTimed
 public class DemoService implements IDemoService {
     @Override
+    @SelfCache(ttl = 60000, maxEntries = 1000)
     public String get(String name) {
         return "My name is " + name;
     }
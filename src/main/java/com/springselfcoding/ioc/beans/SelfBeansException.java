@@ -0,0 +1,15 @@
+package com.springselfcoding.ioc.beans;
+
+/**
+ * Bean获取或创建过程中的异常
+ */
+public class SelfBeansException extends RuntimeException {
+
+    public SelfBeansException(String message) {
+        super(message);
+    }
+
+    public SelfBeansException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -5,13 +5,50 @@ package com.springselfcoding.ioc.beans.config;
  */
 public class SelfBeanDefinition {
 
+    // 单例, 整个容器只创建一次
+    public static final String SCOPE_SINGLETON = "singleton";
+
+    // 原型, 每次getBean都创建新实例
+    public static final String SCOPE_PROTOTYPE = "prototype";
+
+    // 请求, 每个请求一个实例, 注入的是作用域代理
+    public static final String SCOPE_REQUEST = "request";
+
+    // 线程, 每个线程一个实例, 注入的是作用域代理
+    public static final String SCOPE_THREAD = "thread";
+
     private String factoryBeanName;
 
     private String beanClassName;
 
+    private String scope = SCOPE_SINGLETON;
+
+    // 延迟加载的单例不在容器启动时创建
+    private boolean lazyInit = false;
+
 
     public boolean isLazyInit() {
-        return false;
+        return lazyInit;
+    }
+
+    public void setLazyInit(boolean lazyInit) {
+        this.lazyInit = lazyInit;
+    }
+
+    public boolean isSingleton() {
+        return SCOPE_SINGLETON.equals(this.scope);
+    }
+
+    public boolean isPrototype() {
+        return SCOPE_PROTOTYPE.equals(this.scope);
+    }
+
+    public boolean isRequestScoped() {
+        return SCOPE_REQUEST.equals(this.scope);
+    }
+
+    public boolean isThreadScoped() {
+        return SCOPE_THREAD.equals(this.scope);
     }
 
     public String getFactoryBeanName() {
@@ -29,4 +66,12 @@ public class SelfBeanDefinition {
     public void setBeanClassName(String beanClassName) {
         this.beanClassName = beanClassName;
     }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public void setScope(String scope) {
+        this.scope = scope;
+    }
 }
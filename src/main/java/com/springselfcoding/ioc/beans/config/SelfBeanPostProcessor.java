@@ -0,0 +1,21 @@
+package com.springselfcoding.ioc.beans.config;
+
+/**
+ * Bean创建过程中的扩展点, AOP通过它把目标对象替换为代理
+ */
+public interface SelfBeanPostProcessor {
+
+    /**
+     * 依赖注入完成后调用, 返回值会替代原来的Bean暴露出去
+     */
+    default Object postProcessAfterInitialization(Object bean, String beanName) {
+        return bean;
+    }
+
+    /**
+     * 单例被循环依赖时提前暴露早期引用, 需要代理的话在这里提前创建
+     */
+    default Object getEarlyBeanReference(Object bean, String beanName) {
+        return bean;
+    }
+}
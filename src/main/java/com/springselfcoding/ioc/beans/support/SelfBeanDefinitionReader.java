@@ -1,65 +1,136 @@
 package com.springselfcoding.ioc.beans.support;
 
 import com.springselfcoding.ioc.beans.config.SelfBeanDefinition;
+import com.springselfcoding.ioc.core.type.SelfClassMetadata;
+import com.springselfcoding.ioc.core.type.SelfClassPathScanner;
+import com.springselfcoding.ioc.index.SelfComponentIndexer;
+import com.springselfcoding.mvcframework.SelfController;
+import com.springselfcoding.mvcframework.SelfScope;
+import com.springselfcoding.mvcframework.SelfService;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 /**
  * 1) 扫描配置信息
- * 2) 扫描路径下的bean信息, 将其存入map(registry)中
- * 3) 后面loadBeanDefinitions()会调用内容, 将map中的bean信息, 封装为BeanDefinition
+ * 2) 优先读取编译期生成的META-INF/self.components索引, 只包含组件类, 不用扫描目录, jar/war中同样可用
+ * 3) 没有索引(或配置了beanIndex.ignore=true)时, 直接解析class文件扫描组件, 目录与jar都可以, 不加载任何类
+ * 4) 两种方式都只读取字节码得到SelfClassMetadata, loadBeanDefinitions()据此封装为BeanDefinition
+ * 5) scanPackage可以用逗号分隔多个包
+ * 6) 构造时只加载配置, 第一次loadBeanDefinitions()时才读取索引或扫描, 使用启动快照时不会扫描
  */
 public class SelfBeanDefinitionReader {
 
+    // 扫描级别的默认延迟加载配置, 为true时所有Bean都延迟加载
+    public static final String LAZY_INIT_DEFAULT = "beanInit.lazyDefault";
+
+    // 为true时忽略组件索引, 强制扫描目录
+    public static final String IGNORE_COMPONENT_INDEX = "beanIndex.ignore";
+
     // 加载配置
     private Properties contextConfig = new Properties();
 
-    // 存放被扫描的全类名, 需要被注册的Bean class
-    private List<String> registryBeanClass = new ArrayList<>();
+    // 字节码扫描器, 索引中的类同样通过它读取注解
+    private final SelfClassPathScanner scanner = new SelfClassPathScanner(this.getClass().getClassLoader());
+
+    // 扫描到的组件类, 需要被注册的Bean class, 第一次loadBeanDefinitions()时扫描
+    private List<SelfClassMetadata> registryBeanClass;
+
+    // 配置的扫描包
+    private final List<String> scanPackages = new ArrayList<>();
 
     /**
-     * 构造方法, 包含加载配置信息, 并扫描类
+     * 构造方法, 加载配置信息
      */
     public SelfBeanDefinitionReader(String... locations) {
         // 1. 加载Properties文件, 直接用原SelfDispatchServlet的即可
         doLoadConfig(locations[0]);
 
-        // 2. 扫描路径下相关类
-        doScanner(contextConfig.getProperty("scanPackage"));
+        // 2. 需要扫描的包
+        for (String scanPackage : contextConfig.getProperty("scanPackage").split(",")) {
+            if (!scanPackage.isBlank()) {
+                scanPackages.add(scanPackage.trim());
+            }
+        }
+    }
+
+    /**
+     * 加载好的配置信息
+     */
+    public Properties getConfig() {
+        return this.contextConfig;
+    }
+
+    /**
+     * 配置的扫描包
+     */
+    public List<String> getScanPackages() {
+        return this.scanPackages;
+    }
+
+    /**
+     * 重新读取单个类当前的字节码, 类已经删除时返回null (热加载时使用)
+     */
+    public SelfClassMetadata readMetadata(String className) {
+        return this.scanner.readMetadata(className);
     }
 
     /**
      * 解析配置信息, 并封装为BeanDefinition
      */
     public List<SelfBeanDefinition> loadBeanDefinitions() {
+        if (null == registryBeanClass) {
+            // 有组件索引就直接读取, 否则扫描路径下相关类
+            registryBeanClass = new ArrayList<>();
+            boolean ignoreIndex = Boolean.parseBoolean(contextConfig.getProperty(IGNORE_COMPONENT_INDEX, "false").trim());
+            if (ignoreIndex || !doLoadIndex(scanPackages)) {
+                doScanner(scanPackages);
+            }
+        }
+        return loadBeanDefinitions(registryBeanClass);
+    }
+
+    /**
+     * 将给定的类封装为BeanDefinition, 不是组件的类直接跳过
+     */
+    public List<SelfBeanDefinition> loadBeanDefinitions(List<SelfClassMetadata> classes) {
         List<SelfBeanDefinition> resultList = new ArrayList<>();
-        try {
-            // 遍历前面扫描到的class
-            for (String beanClass : registryBeanClass) {
-                Class<?> clazz = Class.forName(beanClass);
+        boolean lazyDefault = Boolean.parseBoolean(contextConfig.getProperty(LAZY_INIT_DEFAULT, "false").trim());
+        // 遍历前面扫描到的class, 全部来自字节码, 不需要加载类
+        for (SelfClassMetadata metadata : classes) {
+            // 本身是接口, 或者不是组件, 直接过滤
+            if (!isComponent(metadata)) {
+                continue;
+            }
 
-                // 本身是接口, 直接过滤
-                if (clazz.isInterface()) {
-                    continue;
-                }
+            // 作用域, 默认单例
+            String scope = SelfBeanDefinition.SCOPE_SINGLETON;
+            Object scopeValue = metadata.getAnnotationAttributes(SelfScope.class.getName()).get("value");
+            if (null != scopeValue) {
+                scope = scopeValue.toString().trim();
+            }
 
-                // 1. 默认类名首字母小写的情况
-                resultList.add(doCreateBeanDefinition(toLowerFirstCase(clazz.getSimpleName()), clazz.getName()));
+            // 延迟加载, 注解与扫描级别的默认值满足其一即可, 注解上没写的属性不会出现在class文件中
+            boolean lazyInit = lazyDefault
+                    || Boolean.TRUE.equals(metadata.getAnnotationAttributes(SelfService.class.getName()).get("lazy"))
+                    || Boolean.TRUE.equals(metadata.getAnnotationAttributes(SelfController.class.getName()).get("lazy"));
 
-                // 2. 如果是接口的实现, 就用接口名为beanName
-                for (Class<?> anInterface : clazz.getInterfaces()) {
-                    resultList.add(doCreateBeanDefinition(anInterface.getName(), clazz.getName()));
-                }
+            // 1. 默认类名首字母小写的情况
+            resultList.add(doCreateBeanDefinition(toLowerFirstCase(metadata.getSimpleName()), metadata.getClassName(),
+                    scope, lazyInit));
 
+            // 2. 如果是接口的实现, 就用接口名为beanName (注册时会作为别名)
+            for (String interfaceName : metadata.getInterfaceNames()) {
+                resultList.add(doCreateBeanDefinition(interfaceName, metadata.getClassName(), scope, lazyInit));
             }
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
         }
         return resultList;
     }
@@ -86,35 +157,73 @@ public class SelfBeanDefinitionReader {
     }
 
     /**
-     * 扫描包路径下找所有文件
+     * 读取classpath上所有的组件索引, 只保留scanPackage下的类, 没有任何索引时返回false
      */
-    private void doScanner(String scanPackage) {
-        // 将包路径替换为文件夹路径
-        URL resource = this.getClass().getClassLoader()
-                .getResource("/" + scanPackage.replaceAll("\\.", "/"));
-        File classPath = new File(resource.getPath());
-
-        for (File file : classPath.listFiles()) {
-            // 如果是文件夹则递归
-            if (file.isDirectory()) {
-                doScanner(scanPackage + "." + file.getName());
-            } else if (file.getName().endsWith(".class")) {
-                // 包名.类名, e.g. com.springselfcoding.demo.abc
-                String className = scanPackage + "." + file.getName().replace(".class", "");
-                // 将类名存入
-                registryBeanClass.add(className);
+    private boolean doLoadIndex(List<String> scanPackages) {
+        boolean found = false;
+        // 排序保证注册顺序稳定
+        TreeSet<String> components = new TreeSet<>();
+        try {
+            Enumeration<URL> indexes = this.getClass().getClassLoader().getResources(SelfComponentIndexer.INDEX_LOCATION);
+            while (indexes.hasMoreElements()) {
+                found = true;
+                Properties index = new Properties();
+                try (InputStream in = indexes.nextElement().openStream()) {
+                    index.load(in);
+                }
+                for (String className : index.stringPropertyNames()) {
+                    if (isInPackages(className, scanPackages)) {
+                        components.add(className);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        // 索引中可能残留已经删除的类, 读不到字节码的跳过即可
+        registryBeanClass.addAll(components.parallelStream()
+                .map(scanner::readMetadata)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+        return found;
+    }
+
+    /**
+     * 扫描包路径下所有class文件, 只保留组件
+     */
+    private void doScanner(List<String> scanPackages) {
+        registryBeanClass.addAll(scanner.scan(scanPackages, this::isComponent));
+    }
+
+    /**
+     * 可以实例化, 且标注了@SelfController或@SelfService
+     */
+    private boolean isComponent(SelfClassMetadata metadata) {
+        return metadata.isConcrete()
+                && (metadata.hasAnnotation(SelfController.class.getName())
+                || metadata.hasAnnotation(SelfService.class.getName()));
+    }
+
+    private boolean isInPackages(String className, List<String> scanPackages) {
+        for (String scanPackage : scanPackages) {
+            if (className.startsWith(scanPackage + ".")) {
+                return true;
             }
-            // 不是class结尾的不进行处理
         }
+        return false;
     }
 
     /**
      * 为一个Bean封装其BeanDefinition
      */
-    private SelfBeanDefinition doCreateBeanDefinition(String factoryBeanName, String factoryClassName) {
+    private SelfBeanDefinition doCreateBeanDefinition(String factoryBeanName, String factoryClassName, String scope,
+                                                      boolean lazyInit) {
         SelfBeanDefinition beanDefinition = new SelfBeanDefinition();
         beanDefinition.setFactoryBeanName(factoryBeanName);
         beanDefinition.setBeanClassName(factoryClassName);
+        beanDefinition.setScope(scope);
+        beanDefinition.setLazyInit(lazyInit);
         return beanDefinition;
     }
 
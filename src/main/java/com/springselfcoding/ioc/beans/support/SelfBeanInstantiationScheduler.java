@@ -0,0 +1,223 @@
+package com.springselfcoding.ioc.beans.support;
+
+import com.springselfcoding.ioc.beans.SelfBeansException;
+import com.springselfcoding.ioc.beans.config.SelfBeanDefinition;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 容器启动时, 按依赖关系并行创建单例
+ * 1) 根据@SelfAutowired解析出依赖图(DAG), 经过prototype的依赖会展开为它背后的单例
+ * 2) 没有未完成依赖的Bean提交到ForkJoinPool并行创建, 完成后再唤醒依赖它的Bean (拓扑顺序)
+ * 3) 处在循环依赖中(及其下游)的Bean无法拓扑排序, 最后在当前线程上顺序创建, 由三级缓存解决
+ * 4) 每个Bean的创建耗时都会记录下来, 并行阶段依赖已经就绪, 所以记录的只是Bean自身的耗时
+ */
+public class SelfBeanInstantiationScheduler {
+
+    private final SelfDefaultListableBeanFactory registry;
+
+    private final int parallelism;
+
+    // beanName -> 创建耗时(纳秒)
+    private final Map<String, Long> creationNanos = new ConcurrentHashMap<>();
+
+    public SelfBeanInstantiationScheduler(SelfDefaultListableBeanFactory registry, int parallelism) {
+        this.registry = registry;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * 创建给定的单例, 以及它们依赖的所有单例
+     */
+    public void instantiate(Collection<String> beanNames) {
+        // 1. 构建依赖图, 节点只包含还没创建的单例
+        Map<String, Set<String>> dependencies = new LinkedHashMap<>();
+        Deque<String> toVisit = new ArrayDeque<>(beanNames);
+        while (!toVisit.isEmpty()) {
+            String beanName = this.registry.canonicalName(toVisit.poll());
+            if (dependencies.containsKey(beanName) || this.registry.containsSingleton(beanName)) {
+                continue;
+            }
+            Set<String> singletonDependencies = resolveSingletonDependencies(beanName);
+            dependencies.put(beanName, singletonDependencies);
+            toVisit.addAll(singletonDependencies);
+        }
+
+        // 2. 计算每个节点未完成的依赖数, 以及反向边
+        Map<String, List<String>> dependents = new LinkedHashMap<>();
+        Map<String, AtomicInteger> pendingCounts = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<String>> entry : dependencies.entrySet()) {
+            int pending = 0;
+            for (String dependency : entry.getValue()) {
+                if (dependencies.containsKey(dependency)) {
+                    dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(entry.getKey());
+                    pending++;
+                }
+            }
+            pendingCounts.put(entry.getKey(), new AtomicInteger(pending));
+        }
+
+        // 3. 预先做一遍拓扑排序, 能排进去的走并行, 剩下的都在环上或环的下游
+        Set<String> acyclic = topologicalOrder(dependencies.keySet(), dependents, pendingCounts);
+        if (this.parallelism > 1 && acyclic.size() > 1) {
+            runParallel(acyclic, dependents, pendingCounts);
+        } else {
+            for (String beanName : acyclic) {
+                createAndRecord(beanName);
+            }
+        }
+
+        // 4. 循环依赖的Bean顺序创建
+        for (String beanName : dependencies.keySet()) {
+            if (!acyclic.contains(beanName)) {
+                createAndRecord(beanName);
+            }
+        }
+    }
+
+    /**
+     * 每个Bean的创建耗时 (纳秒)
+     */
+    public Map<String, Long> getCreationNanos() {
+        return this.creationNanos;
+    }
+
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * 直接依赖中的单例, prototype会继续展开它自己的依赖
+     */
+    private Set<String> resolveSingletonDependencies(String beanName) {
+        Set<String> result = new LinkedHashSet<>();
+        Set<String> visitedPrototypes = new HashSet<>();
+        Deque<String> toResolve = new ArrayDeque<>(this.registry.getDependencies(beanName));
+        while (!toResolve.isEmpty()) {
+            String dependency = toResolve.poll();
+            SelfBeanDefinition beanDefinition = this.registry.beanDefinitionMap.get(dependency);
+            if (null == beanDefinition) {
+                // 不存在的依赖留给创建时报错
+                continue;
+            }
+            if (beanDefinition.isSingleton()) {
+                if (!dependency.equals(beanName)) {
+                    result.add(dependency);
+                }
+            } else if (visitedPrototypes.add(dependency)) {
+                toResolve.addAll(this.registry.getDependencies(dependency));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Kahn算法, 返回可以拓扑排序的节点, 不修改pendingCounts
+     */
+    private Set<String> topologicalOrder(Set<String> nodes, Map<String, List<String>> dependents,
+                                         Map<String, AtomicInteger> pendingCounts) {
+        Map<String, Integer> pending = new LinkedHashMap<>();
+        Deque<String> ready = new ArrayDeque<>();
+        for (String node : nodes) {
+            int count = pendingCounts.get(node).get();
+            pending.put(node, count);
+            if (0 == count) {
+                ready.add(node);
+            }
+        }
+        Set<String> ordered = new LinkedHashSet<>();
+        while (!ready.isEmpty()) {
+            String node = ready.poll();
+            ordered.add(node);
+            for (String dependent : dependents.getOrDefault(node, List.of())) {
+                if (0 == pending.merge(dependent, -1, Integer::sum)) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * 入度为0的节点先提交, 每完成一个就把依赖它且依赖全部就绪的节点提交
+     */
+    private void runParallel(Set<String> acyclic, Map<String, List<String>> dependents,
+                             Map<String, AtomicInteger> pendingCounts) {
+        // 工作线程沿用容器线程的ContextClassLoader, 否则在Web容器中生成CGLIB代理时找不到应用的类
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setContextClassLoader(contextClassLoader);
+            return thread;
+        }, null, false);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(acyclic.size());
+        try {
+            for (String beanName : acyclic) {
+                if (0 == pendingCounts.get(beanName).get()) {
+                    submit(pool, beanName, done, remaining, dependents, pendingCounts);
+                }
+            }
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SelfBeansException("Interrupted while creating beans", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SelfBeansException) {
+                throw (SelfBeansException) cause;
+            }
+            throw new SelfBeansException("Failed to create beans", cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void submit(ForkJoinPool pool, String beanName, CompletableFuture<Void> done, AtomicInteger remaining,
+                        Map<String, List<String>> dependents, Map<String, AtomicInteger> pendingCounts) {
+        pool.execute(() -> {
+            if (done.isDone()) {
+                // 已经有Bean创建失败了, 不再继续
+                return;
+            }
+            try {
+                createAndRecord(beanName);
+            } catch (Throwable t) {
+                done.completeExceptionally(t);
+                return;
+            }
+            for (String dependent : dependents.getOrDefault(beanName, List.of())) {
+                if (0 == pendingCounts.get(dependent).decrementAndGet()) {
+                    submit(pool, dependent, done, remaining, dependents, pendingCounts);
+                }
+            }
+            if (0 == remaining.decrementAndGet()) {
+                done.complete(null);
+            }
+        });
+    }
+
+    private void createAndRecord(String beanName) {
+        if (this.registry.containsSingleton(beanName)) {
+            return;
+        }
+        long start = System.nanoTime();
+        this.registry.getBean(beanName);
+        this.creationNanos.put(beanName, System.nanoTime() - start);
+    }
+}
@@ -1,34 +1,102 @@
 package com.springselfcoding.ioc.beans.support;
 
 import com.springselfcoding.ioc.beans.SelfBeanWrapper;
+import com.springselfcoding.ioc.beans.SelfBeansException;
 import com.springselfcoding.ioc.beans.config.SelfBeanDefinition;
+import com.springselfcoding.ioc.beans.config.SelfBeanPostProcessor;
 import com.springselfcoding.ioc.core.SelfBeanFactory;
-import com.springselfcoding.mvcframework.SelfAutowired;
-import com.springselfcoding.mvcframework.SelfController;
-import com.springselfcoding.mvcframework.SelfService;
+import com.springselfcoding.ioc.core.SelfObjectFactory;
+import com.springselfcoding.ioc.core.SelfScopeContext;
 
-import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * 扫描完Bean并都Wrapped为BeanDefinition后, 使用Factory进行Bean的实例化
- * 1) 三级缓存, 第一级就是beanDefinitionMap
- * 2) 第二级缓存, 通过反射实例化bean之后(Singleton), 会将其存入factoryBeanObjCache, 后面可能会需要AOP
- * 3) 实例化后的bean, 通过wrapper为统一好管理的实例, 通过反射找到需要依赖注入的属性(或者是constructor的), 会从factoryBeanInstanceCache中找
- * 4) 实例化并依赖注入完毕后, 放入factoryBeanInstanceCache
+ * 1) 一级缓存singletonObjects, 完整创建(实例化+依赖注入)好的单例, getBean命中时只有一次Map查找
+ * 2) 二级缓存earlySingletonObjects, 出现循环依赖时提前暴露出去的早期引用, 还没有完成依赖注入
+ * 3) 三级缓存singletonFactories, 实例化后立刻放入早期引用的工厂, 只有被循环依赖时才会调用(AOP在这里提前代理)
+ * 4) 依赖在注入时通过getBean按需创建, 与beanDefinitionMap的遍历顺序无关, 每个单例只创建一次
+ * 5) prototype每次都重新创建, 不进缓存, 之间的循环依赖无法解决, 直接报错
+ * 6) 缓存都是线程安全的, 单例按beanName登记创建线程, 不同Bean可以在多个线程上并行创建, 其他线程等待创建完成
+ *    只有等待会成环时(两个线程各自创建循环依赖的一端), 才使用持有者已经暴露的早期引用, 与单线程的循环依赖一致
+ * 7) 实例化与注入按SelfInstantiationPlan执行, 每个BeanDefinition只解析一次构造器与字段
+ *    构造器注入的依赖无法提前暴露, 构造器之间的循环依赖直接报错
+ * 8) 启动快照中的实例化计划先注册为Descriptor, 依赖关系直接从中读取, 不加载类; 创建时按它直接查找构造器与字段
+ * 9) 热加载时配置信息与别名整体复制后替换 (copy-on-write), 只丢弃受影响的Bean, 之后按新的ClassLoader重新解析与创建
+ * 10) request/thread作用域的Bean对外只有一个作用域代理, 与单例一样放在一级缓存中; 实例按槽位存放在SelfScopeContext中
+ *     热加载重建时生成新的代理与槽位, 旧类的实例留在旧槽位中直到作用域结束
  */
 public class SelfDefaultListableBeanFactory implements SelfBeanFactory {
 
-    // 保存所有bean的配置信息
-    public Map<String, SelfBeanDefinition> beanDefinitionMap = new HashMap<>();
+    // 保存所有bean的配置信息, 只包含主beanName, 按注册顺序保存 (注册完成后只读, 热加载时整体替换)
+    public volatile Map<String, SelfBeanDefinition> beanDefinitionMap = new LinkedHashMap<>();
 
-    // 三级缓存, 直接获取实例 (为了方便直接public出去了)
-    public Map<String, SelfBeanWrapper> factoryBeanInstanceCache = new HashMap<>();
+    // 别名 -> 主beanName, 接口名与全类名都作为别名 (注册完成后只读, 热加载时整体替换)
+    private volatile Map<String, String> aliasMap = new ConcurrentHashMap<>();
 
-    // 保存直接的实例, 而不是Wrapper过的
-    private Map<String, Object> factoryBeanObjCache = new HashMap<>();
+    // 被多个类实现的接口名 -> 这些类的主beanName, 按这个名称获取时报错 (注册完成后只读, 热加载时整体替换)
+    private volatile Map<String, List<String>> ambiguousAliases = new ConcurrentHashMap<>();
+
+    // 加载Bean类的ClassLoader, 热加载后是最新一代的SelfReloadClassLoader
+    private volatile ClassLoader beanClassLoader = SelfDefaultListableBeanFactory.class.getClassLoader();
+
+    // 实例化后的单例Wrapper (为了方便直接public出去了)
+    public Map<String, SelfBeanWrapper> factoryBeanInstanceCache = new ConcurrentHashMap<>();
+
+    // 保存直接的实例, 而不是Wrapper过的, 以防代理时丢失原生对象
+    private Map<String, Object> factoryBeanObjCache = new ConcurrentHashMap<>();
+
+    // 一级缓存, key包含主beanName与已经解析过的别名
+    private Map<String, Object> singletonObjects = new ConcurrentHashMap<>();
+
+    // 二级缓存, 已经提前暴露的早期引用
+    private Map<String, Object> earlySingletonObjects = new ConcurrentHashMap<>();
+
+    // 三级缓存, 早期引用的工厂
+    private Map<String, SelfObjectFactory<?>> singletonFactories = new ConcurrentHashMap<>();
+
+    // 正在创建中的单例
+    private Set<String> singletonsCurrentlyInCreation = ConcurrentHashMap.newKeySet();
+
+    // beginCreation的结果: 由当前线程创建 / 当前线程重入 / 等待会成环
+    private static final int CREATION_OWNED = 0;
+    private static final int CREATION_REENTERED = 1;
+    private static final int CREATION_CYCLE = 2;
+
+    // 单例的创建登记, 下面两个Map都由它保护, 等待也在它上面
+    private final Object creationMonitor = new Object();
+
+    // 主beanName -> 正在创建它的线程
+    private final Map<String, Thread> creatingThreads = new HashMap<>();
+
+    // 线程 -> 它正在等待的主beanName, 用于发现跨线程的等待环
+    private final Map<Thread, String> waitingThreads = new HashMap<>();
+
+    // 当前线程正在创建中的prototype与作用域实例
+    private ThreadLocal<Set<String>> prototypesCurrentlyInCreation = ThreadLocal.withInitial(HashSet::new);
+
+    // 主beanName -> 实例化计划
+    private Map<String, SelfInstantiationPlan> instantiationPlans = new ConcurrentHashMap<>();
+
+    // 主beanName -> 启动快照中的实例化计划, 还没有解析成SelfInstantiationPlan
+    private Map<String, SelfInstantiationPlan.Descriptor> planDescriptors = new ConcurrentHashMap<>();
+
+    // 依赖注入完成后依次执行, 可以把Bean替换为代理
+    private List<SelfBeanPostProcessor> beanPostProcessors = new CopyOnWriteArrayList<>();
 
 
     @Override
@@ -38,97 +106,546 @@ public class SelfDefaultListableBeanFactory implements SelfBeanFactory {
 
     @Override
     public Object getBean(String beanName) {
-        // 1. 获取配置信息
-        SelfBeanDefinition beanDefinition = this.beanDefinitionMap.get(beanName);
+        // 快速路径(双重检查的第一次): 已经创建好的单例直接返回, 延迟加载的单例创建后也走这里
+        Object singleton = this.singletonObjects.get(beanName);
+        if (null != singleton) {
+            return singleton;
+        }
+        return doGetBean(beanName);
+    }
 
-        // 2. 反射实例化对象
-        Object ins = instantiateBean(beanName, beanDefinition);
+    /**
+     * 将beanDefinitions遍历, 注册到Map中
+     * 同一个类的第一个定义为主beanName, 后面的定义(接口名)注册为别名
+     * 多个类实现同一个接口时不再报错, 只是不能再按这个接口名获取 (如多个SelfAdvisor)
+     */
+    public void doRegisterBeanDefinition(List<SelfBeanDefinition> beanDefinitions) throws Exception {
+        doRegisterBeanDefinition(beanDefinitions, this.beanDefinitionMap, this.aliasMap, this.ambiguousAliases);
+    }
 
-        // 3. 将Bean实例转换为BeanWrapper方便管理
-        SelfBeanWrapper beanWrapper = new SelfBeanWrapper(ins);
+    private static void doRegisterBeanDefinition(List<SelfBeanDefinition> beanDefinitions,
+                                                 Map<String, SelfBeanDefinition> definitions,
+                                                 Map<String, String> aliases,
+                                                 Map<String, List<String>> ambiguous) throws Exception {
+        for (SelfBeanDefinition beanDefinition : beanDefinitions) {
+            String beanName = beanDefinition.getFactoryBeanName();
+            if (definitions.containsKey(beanName)) {
+                throw new Exception(beanName + " is repeated");
+            }
+            if (!beanDefinition.isSingleton() && !beanDefinition.isPrototype()
+                    && !beanDefinition.isRequestScoped() && !beanDefinition.isThreadScoped()) {
+                throw new Exception("Unknown scope '" + beanDefinition.getScope() + "' for " + beanName);
+            }
 
-        // 4. 依赖注入
-        injection(beanName, beanDefinition, beanWrapper);
+            String primaryName = aliases.get(beanDefinition.getBeanClassName());
+            if (null != primaryName) {
+                // 同一个类已经注册过, 作为别名
+                registerAlias(beanName, primaryName, aliases, ambiguous);
+                continue;
+            }
+            if (aliases.containsKey(beanName) || ambiguous.containsKey(beanName)) {
+                throw new Exception(beanName + " is repeated");
+            }
+            definitions.put(beanName, beanDefinition);
+            aliases.put(beanDefinition.getBeanClassName(), beanName);
+        }
+    }
 
-        // 5. 将Bean实例的Wrapper版, 缓存到IoC容器中
-        this.factoryBeanInstanceCache.put(beanName, beanWrapper);
+    /**
+     * 注册别名, 同一个别名指向不同的Bean时记为不唯一
+     */
+    private static void registerAlias(String alias, String primaryName, Map<String, String> aliases,
+                                      Map<String, List<String>> ambiguous) {
+        List<String> candidates = ambiguous.get(alias);
+        if (null != candidates) {
+            candidates.add(primaryName);
+            return;
+        }
+        String existing = aliases.putIfAbsent(alias, primaryName);
+        if (null != existing && !existing.equals(primaryName)) {
+            aliases.remove(alias);
+            ambiguous.put(alias, new ArrayList<>(List.of(existing, primaryName)));
+        }
+    }
 
-        return beanWrapper;
+    /**
+     * 找不到Bean时的异常, 按不唯一的接口名获取时列出所有候选
+     */
+    private SelfBeansException noSuchBean(String name) {
+        List<String> candidates = this.ambiguousAliases.get(name);
+        if (null != candidates) {
+            return new SelfBeansException("No unique bean named '" + name + "': expected single matching bean but found "
+                    + candidates.size() + ": " + candidates);
+        }
+        return new SelfBeansException("No bean named '" + name + "' is defined");
     }
 
     /**
-     * 将beanDefinitions遍历, 注册到Map中
+     * 直接注册一个已经创建好的单例 (容器内置的对象), 按名称与全类名都可以获取, 不经过BeanPostProcessor
      */
-    public void doRegisterBeanDefinition(List<SelfBeanDefinition> beanDefinitions) throws Exception {
-        for (SelfBeanDefinition beanDefinition : beanDefinitions) {
-            if (this.beanDefinitionMap.containsKey(beanDefinition.getFactoryBeanName())) {
-                throw new Exception(beanDefinition.getFactoryBeanName() + " is repeated");
+    public void registerSingleton(String beanName, Object singleton) {
+        if (this.beanDefinitionMap.containsKey(beanName) || null != this.singletonObjects.putIfAbsent(beanName, singleton)) {
+            throw new SelfBeansException(beanName + " is repeated");
+        }
+        registerAlias(singleton.getClass().getName(), beanName, this.aliasMap, this.ambiguousAliases);
+    }
+
+    /**
+     * 注册BeanPostProcessor, 只影响之后创建的Bean
+     */
+    public void addBeanPostProcessor(SelfBeanPostProcessor beanPostProcessor) {
+        this.beanPostProcessors.add(beanPostProcessor);
+    }
+
+    /**
+     * 别名转为主beanName
+     */
+    public String canonicalName(String name) {
+        String primaryName = this.aliasMap.get(name);
+        return null == primaryName ? name : primaryName;
+    }
+
+    /**
+     * 慢速路径: 按作用域创建Bean
+     */
+    private Object doGetBean(String name) {
+        String beanName = canonicalName(name);
+
+        // 1. 获取配置信息, 直接注册的单例没有配置信息, 按别名获取时走到这里
+        SelfBeanDefinition beanDefinition = this.beanDefinitionMap.get(beanName);
+        if (null == beanDefinition) {
+            Object registered = this.singletonObjects.get(beanName);
+            if (null == registered) {
+                throw noSuchBean(name);
             }
-            this.beanDefinitionMap.put(beanDefinition.getFactoryBeanName(), beanDefinition);
+            this.singletonObjects.put(name, registered);
+            return registered;
         }
+
+        if (beanDefinition.isSingleton()) {
+            Object singleton;
+            // 登记为创建线程, 其他线程等待创建完成; 当前线程重入或等待成环时说明出现了循环依赖
+            int creation = beginCreation(beanName);
+            try {
+                // 2. 双重检查的第二次, 依次查三级缓存, 循环依赖时这里拿到的是早期引用
+                singleton = getSingleton(beanName);
+                if (null == singleton) {
+                    if (CREATION_CYCLE == creation) {
+                        throw new SelfBeansException("Singleton bean '" + beanName + "' is currently in creation on "
+                                + "another thread: is there an unresolvable circular reference?");
+                    }
+                    singleton = createSingleton(beanName, beanDefinition);
+                } else if (this.singletonsCurrentlyInCreation.contains(beanName)) {
+                    // 早期引用不能放进一级缓存
+                    return singleton;
+                }
+            } finally {
+                if (CREATION_OWNED == creation) {
+                    endCreation(beanName);
+                }
+            }
+            // 别名也指向同一个实例, 下次直接走快速路径
+            if (!beanName.equals(name)) {
+                this.singletonObjects.put(name, singleton);
+            }
+            return singleton;
+        }
+
+        if (beanDefinition.isRequestScoped() || beanDefinition.isThreadScoped()) {
+            Object proxy = getScopedProxy(beanName, beanDefinition);
+            if (!beanName.equals(name)) {
+                this.singletonObjects.put(name, proxy);
+            }
+            return proxy;
+        }
+
+        // prototype每次都创建, 不缓存
+        return createUncached(beanName, beanDefinition);
     }
 
     /**
-     * 根据BeanDefinition实例化Bean对象
+     * 创建不进缓存的实例 (prototype, 作用域中的实例), 同一个线程上重入时说明出现了无法解决的循环依赖
      */
-    private Object instantiateBean(String beanName, SelfBeanDefinition beanDefinition) {
-        String className = beanDefinition.getBeanClassName();
-        Object ins = null;
+    private Object createUncached(String beanName, SelfBeanDefinition beanDefinition) {
+        Set<String> prototypesInCreation = this.prototypesCurrentlyInCreation.get();
+        if (!prototypesInCreation.add(beanName)) {
+            throw new SelfBeansException((beanDefinition.isPrototype() ? "Prototype" : "Scoped") + " bean '" + beanName
+                    + "' is currently in creation: is there an unresolvable circular reference?");
+        }
         try {
-            Class<?> clazz = Class.forName(className);
+            return createBean(beanName, beanDefinition);
+        } finally {
+            prototypesInCreation.remove(beanName);
+        }
+    }
 
-            ins = clazz.getDeclaredConstructor().newInstance();
+    /**
+     * 获取(第一次时创建)作用域代理, 代理每次调用时按槽位从当前作用域中取出实例, 还没有时创建
+     */
+    private Object getScopedProxy(String beanName, SelfBeanDefinition beanDefinition) {
+        synchronized (beanDefinition) {
+            Object proxy = this.singletonObjects.get(beanName);
+            if (null != proxy) {
+                return proxy;
+            }
+            int slot = SelfScopeContext.allocateSlot();
+            SelfObjectFactory<?> factory = () -> createUncached(beanName, beanDefinition);
+            SelfObjectFactory<?> target = beanDefinition.isRequestScoped()
+                    ? () -> SelfScopeContext.requireRequest(beanName).getOrCreate(slot, factory)
+                    : () -> SelfScopeContext.currentThread().getOrCreate(slot, factory);
+            proxy = SelfScopedProxy.create(beanName, getType(beanName), target);
+            this.singletonObjects.put(beanName, proxy);
+            return proxy;
+        }
+    }
+
+    /**
+     * 获取Bean的类型, 不会创建Bean
+     */
+    public Class<?> getType(String name) {
+        return getInstantiationPlan(canonicalName(name)).getBeanClass();
+    }
 
-            /**
-             * 如果是代理对象, 会触发AOP逻辑
-             */
+    /**
+     * 单例是否已经完整创建
+     */
+    public boolean containsSingleton(String beanName) {
+        return this.singletonObjects.containsKey(canonicalName(beanName));
+    }
 
-            // 以防代理时, 丢失了原生对象
-            this.factoryBeanObjCache.put(beanName, ins);
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * 解析Bean通过构造器与@SelfAutowired字段直接依赖的其他Bean, 返回主beanName, 不会创建任何Bean
+     */
+    public Set<String> getDependencies(String beanName) {
+        Set<String> dependencies = new LinkedHashSet<>();
+        String primaryName = canonicalName(beanName);
+        if (!this.beanDefinitionMap.containsKey(primaryName)) {
+            return dependencies;
         }
-        return ins;
+        SelfInstantiationPlan plan = this.instantiationPlans.get(primaryName);
+        SelfInstantiationPlan.Descriptor descriptor = this.planDescriptors.get(primaryName);
+        List<String> declared = null == plan && null != descriptor ? descriptor.getDependencies()
+                : getInstantiationPlan(primaryName).getDependencies();
+        for (String dependency : declared) {
+            dependencies.add(canonicalName(dependency));
+        }
+        return dependencies;
     }
 
     /**
-     * 对实例化后的Bean进行依赖注入
+     * 给定的Bean以及直接或间接依赖它们的所有Bean, 返回主beanName, 不会创建任何Bean
      */
-    private void injection(String beanName, SelfBeanDefinition beanDefinition, SelfBeanWrapper beanWrapper) {
+    public Set<String> getDependentBeans(Collection<String> beanNames) {
+        // 1. 反向依赖图
+        Map<String, List<String>> dependents = new HashMap<>();
+        for (String beanName : this.beanDefinitionMap.keySet()) {
+            for (String dependency : getDependencies(beanName)) {
+                dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(beanName);
+            }
+        }
 
-        Object instance = beanWrapper.getWrappedInstance();
+        // 2. 从给定的Bean出发沿反向边遍历
+        Set<String> result = new LinkedHashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>();
+        for (String beanName : beanNames) {
+            toVisit.add(canonicalName(beanName));
+        }
+        while (!toVisit.isEmpty()) {
+            String beanName = toVisit.poll();
+            if (result.add(beanName)) {
+                toVisit.addAll(dependents.getOrDefault(beanName, Collections.emptyList()));
+            }
+        }
+        return result;
+    }
 
-        Class<?> clazz = beanWrapper.getWrappedClass();
+    /**
+     * 热加载: 替换给定类的BeanDefinition, 丢弃受影响的Bean已经创建的单例与实例化计划, 之后按新的ClassLoader重新解析
+     * 配置信息与别名先复制再修改, 全部成功后才替换, 注册失败时容器保持原样
+     *
+     * @param changedClassNames 变化(修改, 新增或删除)的类, 它们原来的BeanDefinition全部移除
+     * @param beanDefinitions   变化的类重新读出的BeanDefinition, 已删除的类没有
+     * @param affectedBeanNames 需要重新创建的已有Bean, 一般是getDependentBeans的结果
+     * @return 被丢弃或新增的主beanName, 其中已删除的Bean不在beanDefinitionMap中
+     */
+    public synchronized Set<String> refreshBeanDefinitions(Collection<String> changedClassNames,
+                                                           List<SelfBeanDefinition> beanDefinitions,
+                                                           Collection<String> affectedBeanNames,
+                                                           ClassLoader beanClassLoader) throws Exception {
+        Map<String, SelfBeanDefinition> definitions = new LinkedHashMap<>(this.beanDefinitionMap);
+        Map<String, String> aliases = new ConcurrentHashMap<>(this.aliasMap);
+        Map<String, List<String>> ambiguous = new ConcurrentHashMap<>();
+        for (Map.Entry<String, List<String>> entry : this.ambiguousAliases.entrySet()) {
+            ambiguous.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        Set<String> refreshed = new LinkedHashSet<>(affectedBeanNames);
 
-        // 不是被定义的注解直接返回
-        if (!clazz.isAnnotationPresent(SelfController.class) && !clazz.isAnnotationPresent(SelfService.class)) {
-            return;
+        // 1. 移除变化的类原来的BeanDefinition与指向它们的别名, 不再重复的别名恢复为唯一
+        Set<String> changed = new HashSet<>(changedClassNames);
+        for (Iterator<SelfBeanDefinition> it = definitions.values().iterator(); it.hasNext(); ) {
+            SelfBeanDefinition beanDefinition = it.next();
+            if (!changed.contains(beanDefinition.getBeanClassName())) {
+                continue;
+            }
+            String beanName = beanDefinition.getFactoryBeanName();
+            it.remove();
+            refreshed.add(beanName);
+            aliases.values().removeIf(beanName::equals);
+            for (Iterator<Map.Entry<String, List<String>>> entries = ambiguous.entrySet().iterator(); entries.hasNext(); ) {
+                Map.Entry<String, List<String>> entry = entries.next();
+                entry.getValue().remove(beanName);
+                if (1 == entry.getValue().size()) {
+                    aliases.put(entry.getKey(), entry.getValue().get(0));
+                    entries.remove();
+                }
+            }
+        }
+
+        // 2. 注册新的BeanDefinition, 与启动时的规则相同
+        doRegisterBeanDefinition(beanDefinitions, definitions, aliases, ambiguous);
+        for (SelfBeanDefinition beanDefinition : beanDefinitions) {
+            refreshed.add(aliases.getOrDefault(beanDefinition.getBeanClassName(), beanDefinition.getFactoryBeanName()));
         }
 
-        // 遍历获取其中需要Autowired的属性
-        for (Field field : clazz.getDeclaredFields()) {
-            if (field.isAnnotationPresent(SelfAutowired.class)) {
-                SelfAutowired autowired = field.getAnnotation(SelfAutowired.class);
-                // 找别名, 没有别名就用类型作为名称
-                String autowiredBeanName = autowired.value().trim();
-                if ("".equals(autowiredBeanName)) {
-                    autowiredBeanName = field.getType().getName();
+        // 3. 发布新的ClassLoader与配置信息
+        this.beanClassLoader = beanClassLoader;
+        this.beanDefinitionMap = definitions;
+        this.aliasMap = aliases;
+        this.ambiguousAliases = ambiguous;
+
+        // 4. 丢弃旧的实例与计划, 一级缓存中以别名缓存的同一个实例一起移除
+        for (String beanName : refreshed) {
+            this.instantiationPlans.remove(beanName);
+            this.planDescriptors.remove(beanName);
+            this.factoryBeanInstanceCache.remove(beanName);
+            this.factoryBeanObjCache.remove(beanName);
+            Object singleton = this.singletonObjects.remove(beanName);
+            if (null != singleton) {
+                this.singletonObjects.values().removeIf(existing -> existing == singleton);
+            }
+        }
+        return refreshed;
+    }
+
+    /**
+     * 加载Bean类的ClassLoader
+     */
+    public ClassLoader getBeanClassLoader() {
+        return this.beanClassLoader;
+    }
+
+    /**
+     * 获取(第一次时解析)Bean的实例化计划
+     */
+    private SelfInstantiationPlan getInstantiationPlan(String beanName) {
+        SelfInstantiationPlan plan = this.instantiationPlans.get(beanName);
+        if (null != plan) {
+            return plan;
+        }
+        SelfBeanDefinition beanDefinition = this.beanDefinitionMap.get(beanName);
+        if (null == beanDefinition) {
+            throw noSuchBean(beanName);
+        }
+        return this.instantiationPlans.computeIfAbsent(beanName, key -> {
+            Class<?> beanClass;
+            try {
+                beanClass = Class.forName(beanDefinition.getBeanClassName(), true, this.beanClassLoader);
+            } catch (ClassNotFoundException e) {
+                throw new SelfBeansException("Failed to load class of bean '" + beanName + "'", e);
+            }
+            SelfInstantiationPlan.Descriptor descriptor = this.planDescriptors.remove(beanName);
+            if (null != descriptor) {
+                try {
+                    return SelfInstantiationPlan.forDescriptor(beanClass, descriptor);
+                } catch (SelfBeansException e) {
+                    // 快照与类不一致, 重新解析
+                    System.out.println(e.getMessage() + ", resolving again");
                 }
-                // 属性赋值前, 暴力访问
-                field.setAccessible(true);
+            }
+            return SelfInstantiationPlan.forClass(beanClass);
+        });
+    }
+
+    /**
+     * 注册启动快照中的实例化计划, 只在创建任何Bean之前调用
+     */
+    public void registerPlanDescriptors(Map<String, SelfInstantiationPlan.Descriptor> descriptors) {
+        this.planDescriptors.putAll(descriptors);
+    }
+
+    /**
+     * 已经解析过的实例化计划, 用于写入启动快照
+     */
+    public Map<String, SelfInstantiationPlan.Descriptor> getPlanDescriptors() {
+        Map<String, SelfInstantiationPlan.Descriptor> descriptors = new LinkedHashMap<>();
+        for (String beanName : this.beanDefinitionMap.keySet()) {
+            SelfInstantiationPlan plan = this.instantiationPlans.get(beanName);
+            if (null != plan) {
+                descriptors.put(beanName, plan.getDescriptor());
+            }
+        }
+        return descriptors;
+    }
+
+    /**
+     * 依次从一级, 二级, 三级缓存中获取单例, 三级缓存命中后升级到二级缓存
+     */
+    private Object getSingleton(String beanName) {
+        Object singleton = this.singletonObjects.get(beanName);
+        if (null == singleton && this.singletonsCurrentlyInCreation.contains(beanName)) {
+            singleton = this.earlySingletonObjects.get(beanName);
+            if (null == singleton) {
+                SelfObjectFactory<?> singletonFactory = this.singletonFactories.remove(beanName);
+                if (null != singletonFactory) {
+                    singleton = singletonFactory.getObject();
+                    this.earlySingletonObjects.put(beanName, singleton);
+                }
+            }
+        }
+        return singleton;
+    }
+
+    /**
+     * 登记当前线程为beanName的创建线程, 已经由其他线程登记时等待它结束
+     * 1) 返回CREATION_OWNED时由调用方在结束后调用endCreation
+     * 2) 当前线程已经登记过(同一线程上的循环依赖)时返回CREATION_REENTERED
+     * 3) 持有者直接或间接在等待当前线程时, 继续等待会死锁, 返回CREATION_CYCLE; 持有者此时停在注入中, 早期引用不会再变化
+     */
+    private int beginCreation(String beanName) {
+        Thread current = Thread.currentThread();
+        synchronized (this.creationMonitor) {
+            while (true) {
+                Thread owner = this.creatingThreads.get(beanName);
+                if (null == owner) {
+                    this.creatingThreads.put(beanName, current);
+                    return CREATION_OWNED;
+                }
+                if (owner == current) {
+                    return CREATION_REENTERED;
+                }
+                if (isWaitingFor(owner, current)) {
+                    return CREATION_CYCLE;
+                }
+                this.waitingThreads.put(current, beanName);
                 try {
-                    SelfBeanWrapper autowiredBeanWrapper = factoryBeanInstanceCache.get(autowiredBeanName);
-                    if (null == autowiredBeanWrapper) {
-                        return;
-                    }
-                    // 到ioc找到注册的bean进行赋值 (哪个对象, 赋什么值)
-                    field.set(instance, autowiredBeanWrapper.getWrappedInstance());
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
-                    // 某个报错不能影响继续加载
-                    continue;
+                    this.creationMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SelfBeansException("Interrupted while waiting for singleton bean '" + beanName + "'", e);
+                } finally {
+                    this.waitingThreads.remove(current);
                 }
             }
         }
     }
+
+    /**
+     * 沿 线程 -> 等待的Bean -> 创建线程 的链查找, thread是否直接或间接在等待target (调用方持有creationMonitor)
+     */
+    private boolean isWaitingFor(Thread thread, Thread target) {
+        for (int i = 0; null != thread && i <= this.waitingThreads.size(); i++) {
+            String awaited = this.waitingThreads.get(thread);
+            if (null == awaited) {
+                return false;
+            }
+            thread = this.creatingThreads.get(awaited);
+            if (thread == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 取消登记并唤醒等待的线程
+     */
+    private void endCreation(String beanName) {
+        synchronized (this.creationMonitor) {
+            this.creatingThreads.remove(beanName);
+            this.creationMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * 创建单例, 创建期间标记为正在创建, 完成后放入一级缓存并清理二三级缓存
+     */
+    private Object createSingleton(String beanName, SelfBeanDefinition beanDefinition) {
+        if (!this.singletonsCurrentlyInCreation.add(beanName)) {
+            throw new SelfBeansException("Singleton bean '" + beanName + "' is currently in creation: "
+                    + "is there an unresolvable circular reference?");
+        }
+        try {
+            Object singleton = createBean(beanName, beanDefinition);
+
+            // 被循环依赖过, 别人拿到的是早期引用, 需要保证最终暴露的是同一个对象
+            Object earlyReference = this.earlySingletonObjects.get(beanName);
+            if (null != earlyReference) {
+                singleton = earlyReference;
+            }
+            this.singletonObjects.put(beanName, singleton);
+            return singleton;
+        } finally {
+            this.earlySingletonObjects.remove(beanName);
+            this.singletonFactories.remove(beanName);
+            this.singletonsCurrentlyInCreation.remove(beanName);
+        }
+    }
+
+    /**
+     * 实例化 + 依赖注入 + BeanPostProcessor, 返回最终暴露出去的对象(可能是代理)
+     */
+    private Object createBean(String beanName, SelfBeanDefinition beanDefinition) {
+        SelfInstantiationPlan plan = getInstantiationPlan(beanName);
+
+        // 2. 按计划调用构造器实例化对象, 构造器参数在这里按需创建
+        Object ins = instantiateBean(beanName, beanDefinition, plan);
+
+        // 3. 单例提前暴露早期引用的工厂, 解决属性注入的循环依赖
+        if (beanDefinition.isSingleton()) {
+            this.singletonFactories.put(beanName, () -> getEarlyBeanReference(beanName, beanDefinition, ins));
+        }
+
+        // 4. 将Bean实例转换为BeanWrapper方便管理
+        SelfBeanWrapper beanWrapper = new SelfBeanWrapper(ins);
+
+        // 5. 依赖注入
+        plan.injectFields(beanName, ins, this);
+
+        // 6. 将单例Bean实例的Wrapper版, 缓存到IoC容器中
+        if (beanDefinition.isSingleton()) {
+            this.factoryBeanInstanceCache.put(beanName, beanWrapper);
+        }
+
+        // 7. 执行BeanPostProcessor, 需要代理的Bean在这里替换为代理对象
+        Object exposedObject = ins;
+        for (SelfBeanPostProcessor beanPostProcessor : this.beanPostProcessors) {
+            exposedObject = beanPostProcessor.postProcessAfterInitialization(exposedObject, beanName);
+        }
+        return exposedObject;
+    }
+
+    /**
+     * 获取早期引用, 只有出现循环依赖时才会调用
+     */
+    private Object getEarlyBeanReference(String beanName, SelfBeanDefinition beanDefinition, Object ins) {
+        // 需要代理的话, 在这里提前代理, 别人注入的就是代理对象
+        Object exposedObject = ins;
+        for (SelfBeanPostProcessor beanPostProcessor : this.beanPostProcessors) {
+            exposedObject = beanPostProcessor.getEarlyBeanReference(exposedObject, beanName);
+        }
+        return exposedObject;
+    }
+
+    /**
+     * 根据BeanDefinition实例化Bean对象
+     */
+    private Object instantiateBean(String beanName, SelfBeanDefinition beanDefinition, SelfInstantiationPlan plan) {
+        Object ins = plan.instantiate(beanName, this);
+
+        // 以防代理时, 丢失了原生对象
+        if (beanDefinition.isSingleton()) {
+            this.factoryBeanObjCache.put(beanName, ins);
+        }
+        return ins;
+    }
 }
@@ -0,0 +1,298 @@
+package com.springselfcoding.ioc.beans.support;
+
+import com.springselfcoding.ioc.beans.SelfBeansException;
+import com.springselfcoding.ioc.core.SelfStartupSnapshot;
+import com.springselfcoding.mvcframework.SelfAutowired;
+import com.springselfcoding.mvcframework.SelfController;
+import com.springselfcoding.mvcframework.SelfService;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Parameter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 每个BeanDefinition对应一个实例化计划, 第一次创建Bean时解析, 之后一直复用
+ * 1) 构造器: 标注@SelfAutowired的构造器优先, 其次是唯一的构造器, 最后是无参构造器, 参数按类型(或@SelfAutowired的名称)注入
+ * 2) 构造器与需要注入的字段都提前转换为MethodHandle, 创建Bean时不再有反射查找, setAccessible与访问检查
+ * 3) prototype每次创建只是按顺序调用这些MethodHandle, 开销接近直接new
+ * 4) 解析结果可以导出为Descriptor写入启动快照, 下次启动按其中的签名与字段名直接查找, 不再遍历构造器, 字段与注解
+ */
+public class SelfInstantiationPlan {
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Class<?> beanClass;
+
+    // 构造器的参数类型, 只用于导出Descriptor
+    private final Class<?>[] parameterTypes;
+
+    // 统一为 (Object[])Object 签名的构造器
+    private final MethodHandle constructor;
+
+    // 构造器参数依赖的beanName (可能是别名)
+    private final String[] constructorDependencies;
+
+    // 需要注入的字段名, 只用于报错信息
+    private final String[] fieldNames;
+
+    // 字段依赖的beanName (可能是别名)
+    private final String[] fieldDependencies;
+
+    // 统一为 (Object, Object)void 签名的字段setter
+    private final MethodHandle[] fieldSetters;
+
+    private SelfInstantiationPlan(Class<?> beanClass, Class<?>[] parameterTypes, MethodHandle constructor,
+                                  String[] constructorDependencies, String[] fieldNames, String[] fieldDependencies,
+                                  MethodHandle[] fieldSetters) {
+        this.beanClass = beanClass;
+        this.parameterTypes = parameterTypes;
+        this.constructor = constructor;
+        this.constructorDependencies = constructorDependencies;
+        this.fieldNames = fieldNames;
+        this.fieldDependencies = fieldDependencies;
+        this.fieldSetters = fieldSetters;
+    }
+
+    /**
+     * 解析类的构造器与@SelfAutowired字段
+     */
+    public static SelfInstantiationPlan forClass(Class<?> beanClass) {
+        // 1. 构造器
+        Constructor<?> constructor = determineConstructor(beanClass);
+        Parameter[] parameters = constructor.getParameters();
+        String[] constructorDependencies = new String[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            constructorDependencies[i] = dependencyName(parameters[i].getAnnotation(SelfAutowired.class),
+                    parameters[i].getType());
+        }
+
+        // 2. 字段, 不是被定义的注解就不注入
+        List<Field> fields = new ArrayList<>();
+        List<String> fieldDependencies = new ArrayList<>();
+        if (beanClass.isAnnotationPresent(SelfController.class) || beanClass.isAnnotationPresent(SelfService.class)) {
+            for (Field field : beanClass.getDeclaredFields()) {
+                SelfAutowired autowired = field.getAnnotation(SelfAutowired.class);
+                if (null != autowired) {
+                    fields.add(field);
+                    fieldDependencies.add(dependencyName(autowired, field.getType()));
+                }
+            }
+        }
+        return create(beanClass, constructor, constructorDependencies, fields, fieldDependencies);
+    }
+
+    /**
+     * 按启动快照中的构造器签名与字段名直接查找, 找不到时 (类已经变了) 抛出SelfBeansException
+     */
+    public static SelfInstantiationPlan forDescriptor(Class<?> beanClass, Descriptor descriptor) {
+        try {
+            Class<?>[] parameterTypes = new Class<?>[descriptor.getParameterTypes().length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                parameterTypes[i] = SelfStartupSnapshot.forName(descriptor.getParameterTypes()[i],
+                        beanClass.getClassLoader());
+            }
+            Constructor<?> constructor = beanClass.getDeclaredConstructor(parameterTypes);
+            List<Field> fields = new ArrayList<>();
+            for (String fieldName : descriptor.getFieldNames()) {
+                fields.add(beanClass.getDeclaredField(fieldName));
+            }
+            return create(beanClass, constructor, descriptor.getConstructorDependencies(), fields,
+                    List.of(descriptor.getFieldDependencies()));
+        } catch (ClassNotFoundException | NoSuchMethodException | NoSuchFieldException e) {
+            throw new SelfBeansException("Stale instantiation descriptor for " + beanClass.getName(), e);
+        }
+    }
+
+    /**
+     * 构造器与字段都转换为MethodHandle
+     */
+    private static SelfInstantiationPlan create(Class<?> beanClass, Constructor<?> constructor,
+                                                String[] constructorDependencies, List<Field> fields,
+                                                List<String> fieldDependencies) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle constructorHandle;
+        try {
+            constructor.setAccessible(true);
+            constructorHandle = lookup.unreflectConstructor(constructor)
+                    .asSpreader(Object[].class, constructor.getParameterCount())
+                    .asType(CONSTRUCTOR_TYPE);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new SelfBeansException("Cannot access constructor " + constructor, e);
+        }
+
+        List<String> fieldNames = new ArrayList<>();
+        List<String> injectedDependencies = new ArrayList<>();
+        List<MethodHandle> fieldSetters = new ArrayList<>();
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            try {
+                // 属性赋值前, 暴力访问, 只在这里执行一次
+                field.setAccessible(true);
+                fieldSetters.add(lookup.unreflectSetter(field).asType(SETTER_TYPE));
+            } catch (IllegalAccessException | RuntimeException e) {
+                // 某个字段报错不能影响继续加载
+                e.printStackTrace();
+                continue;
+            }
+            fieldNames.add(field.getName());
+            injectedDependencies.add(fieldDependencies.get(i));
+        }
+
+        return new SelfInstantiationPlan(beanClass, constructor.getParameterTypes(), constructorHandle,
+                constructorDependencies, fieldNames.toArray(new String[0]),
+                injectedDependencies.toArray(new String[0]), fieldSetters.toArray(new MethodHandle[0]));
+    }
+
+    /**
+     * 按计划调用构造器, 参数依赖通过factory按需获取
+     */
+    public Object instantiate(String beanName, SelfDefaultListableBeanFactory factory) {
+        Object[] args = new Object[this.constructorDependencies.length];
+        for (int i = 0; i < args.length; i++) {
+            try {
+                args[i] = factory.getBean(this.constructorDependencies[i]);
+            } catch (SelfBeansException e) {
+                throw new SelfBeansException("Failed to resolve constructor argument " + i
+                        + " of bean '" + beanName + "'", e);
+            }
+        }
+        try {
+            return (Object) this.constructor.invokeExact(args);
+        } catch (Throwable t) {
+            throw new SelfBeansException("Failed to instantiate bean '" + beanName + "' of " + this.beanClass.getName(), t);
+        }
+    }
+
+    /**
+     * 按计划注入字段, 循环依赖时拿到的是早期引用
+     */
+    public void injectFields(String beanName, Object instance, SelfDefaultListableBeanFactory factory) {
+        for (int i = 0; i < this.fieldSetters.length; i++) {
+            Object autowiredBean;
+            try {
+                autowiredBean = factory.getBean(this.fieldDependencies[i]);
+            } catch (SelfBeansException e) {
+                throw new SelfBeansException("Failed to inject field '" + this.fieldNames[i]
+                        + "' of bean '" + beanName + "'", e);
+            }
+            try {
+                this.fieldSetters[i].invokeExact(instance, autowiredBean);
+            } catch (Throwable t) {
+                // 类型不匹配等, 与原来Field.set的处理一致, 不影响其他字段
+                t.printStackTrace();
+            }
+        }
+    }
+
+    public Class<?> getBeanClass() {
+        return this.beanClass;
+    }
+
+    /**
+     * 构造器参数与字段依赖的beanName, 可能是别名
+     */
+    public List<String> getDependencies() {
+        List<String> dependencies = new ArrayList<>(List.of(this.constructorDependencies));
+        dependencies.addAll(List.of(this.fieldDependencies));
+        return dependencies;
+    }
+
+    /**
+     * 导出写入启动快照的信息
+     */
+    public Descriptor getDescriptor() {
+        String[] parameterTypeNames = new String[this.parameterTypes.length];
+        for (int i = 0; i < parameterTypeNames.length; i++) {
+            parameterTypeNames[i] = this.parameterTypes[i].getName();
+        }
+        return new Descriptor(parameterTypeNames, this.constructorDependencies, this.fieldNames, this.fieldDependencies);
+    }
+
+    private static Constructor<?> determineConstructor(Class<?> beanClass) {
+        Constructor<?>[] constructors = beanClass.getDeclaredConstructors();
+        Constructor<?> autowired = null;
+        for (Constructor<?> constructor : constructors) {
+            if (constructor.isAnnotationPresent(SelfAutowired.class)) {
+                if (null != autowired) {
+                    throw new SelfBeansException("Multiple @SelfAutowired constructors found in " + beanClass.getName());
+                }
+                autowired = constructor;
+            }
+        }
+        if (null != autowired) {
+            return autowired;
+        }
+        if (1 == constructors.length) {
+            return constructors[0];
+        }
+        for (Constructor<?> constructor : constructors) {
+            if (0 == constructor.getParameterCount()) {
+                return constructor;
+            }
+        }
+        throw new SelfBeansException("No default constructor found in " + beanClass.getName()
+                + ", mark one constructor with @SelfAutowired");
+    }
+
+    /**
+     * 找别名, 没有别名就用类型作为名称
+     */
+    private static String dependencyName(SelfAutowired autowired, Class<?> type) {
+        String name = null == autowired ? "" : autowired.value().trim();
+        return "".equals(name) ? type.getName() : name;
+    }
+
+    /**
+     * 实例化计划中可以持久化的部分: 构造器签名, 注入的字段名与依赖的beanName
+     */
+    public static final class Descriptor {
+
+        private final String[] parameterTypes;
+
+        private final String[] constructorDependencies;
+
+        private final String[] fieldNames;
+
+        private final String[] fieldDependencies;
+
+        public Descriptor(String[] parameterTypes, String[] constructorDependencies, String[] fieldNames,
+                          String[] fieldDependencies) {
+            this.parameterTypes = parameterTypes;
+            this.constructorDependencies = constructorDependencies;
+            this.fieldNames = fieldNames;
+            this.fieldDependencies = fieldDependencies;
+        }
+
+        public String[] getParameterTypes() {
+            return this.parameterTypes;
+        }
+
+        public String[] getConstructorDependencies() {
+            return this.constructorDependencies;
+        }
+
+        public String[] getFieldNames() {
+            return this.fieldNames;
+        }
+
+        public String[] getFieldDependencies() {
+            return this.fieldDependencies;
+        }
+
+        /**
+         * 构造器参数与字段依赖的beanName, 可能是别名
+         */
+        public List<String> getDependencies() {
+            List<String> dependencies = new ArrayList<>(List.of(this.constructorDependencies));
+            dependencies.addAll(List.of(this.fieldDependencies));
+            return dependencies;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.springselfcoding.ioc.beans.support;
+
+import com.springselfcoding.ioc.beans.SelfBeansException;
+import com.springselfcoding.ioc.core.SelfObjectFactory;
+import org.springframework.cglib.proxy.Callback;
+import org.springframework.cglib.proxy.Dispatcher;
+import org.springframework.cglib.proxy.Enhancer;
+import org.springframework.cglib.proxy.Factory;
+import org.springframework.objenesis.Objenesis;
+import org.springframework.objenesis.ObjenesisStd;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * request/thread作用域Bean的代理, 容器中注入与getBean拿到的都是它, 每次调用时转给当前作用域中的实例
+ * 1) 默认生成Bean类的子类, 只有一个Dispatcher, 调用时不查Map也不匹配方法
+ * 2) final类无法生成子类, 退回实现它所有接口的JDK动态代理, 没有接口时报错
+ * 3) final方法会直接在代理对象上执行, 作用域Bean对外的方法不能是final的
+ */
+final class SelfScopedProxy {
+
+    // 不按类名缓存实例化器, 热加载后同名的新代理类不会拿到旧的
+    private static final Objenesis OBJENESIS = new ObjenesisStd(false);
+
+    private SelfScopedProxy() {
+    }
+
+    static Object create(String beanName, Class<?> beanClass, SelfObjectFactory<?> target) {
+        if (Modifier.isFinal(beanClass.getModifiers())) {
+            Class<?>[] interfaces = collectInterfaces(beanClass);
+            if (0 == interfaces.length) {
+                throw new SelfBeansException("Cannot create scoped proxy for bean '" + beanName
+                        + "': final class " + beanClass.getName() + " implements no interfaces");
+            }
+            return Proxy.newProxyInstance(beanClass.getClassLoader(), interfaces, (proxy, method, args) -> {
+                try {
+                    return method.invoke(target.getObject(), args);
+                } catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                }
+            });
+        }
+        Enhancer enhancer = new Enhancer();
+        enhancer.setSuperclass(beanClass);
+        enhancer.setClassLoader(beanClass.getClassLoader());
+        enhancer.setUseCache(false);
+        enhancer.setCallbackType(Dispatcher.class);
+        Class<?> proxyClass = enhancer.createClass();
+        Factory proxy = (Factory) OBJENESIS.newInstance(proxyClass);
+        proxy.setCallbacks(new Callback[]{(Dispatcher) target::getObject});
+        return proxy;
+    }
+
+    private static Class<?>[] collectInterfaces(Class<?> beanClass) {
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        for (Class<?> type = beanClass; null != type; type = type.getSuperclass()) {
+            for (Class<?> candidate : type.getInterfaces()) {
+                interfaces.add(candidate);
+            }
+        }
+        return interfaces.toArray(new Class<?>[0]);
+    }
+}
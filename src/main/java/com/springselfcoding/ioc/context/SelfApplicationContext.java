@@ -1,31 +1,114 @@
 package com.springselfcoding.ioc.context;
 
-import com.springselfcoding.ioc.beans.SelfBeanWrapper;
+import com.springselfcoding.aop.SelfAutoProxyCreator;
+import com.springselfcoding.aop.aspect.SelfAdvisor;
+import com.springselfcoding.cache.SelfCacheAdvisor;
+import com.springselfcoding.cache.SelfCacheManager;
 import com.springselfcoding.ioc.beans.config.SelfBeanDefinition;
 import com.springselfcoding.ioc.beans.support.SelfBeanDefinitionReader;
+import com.springselfcoding.ioc.beans.support.SelfBeanInstantiationScheduler;
 import com.springselfcoding.ioc.beans.support.SelfDefaultListableBeanFactory;
+import com.springselfcoding.ioc.beans.support.SelfInstantiationPlan;
 import com.springselfcoding.ioc.core.SelfBeanFactory;
-import com.springselfcoding.mvcframework.SelfAutowired;
-import com.springselfcoding.mvcframework.SelfController;
-import com.springselfcoding.mvcframework.SelfService;
+import com.springselfcoding.ioc.core.SelfStartupSnapshot;
+import com.springselfcoding.ioc.core.type.SelfClassMetadata;
+import com.springselfcoding.metrics.SelfMetricsAdvisor;
+import com.springselfcoding.metrics.SelfMetricsRegistry;
+import com.springselfcoding.mvcframework.codec.SelfJsonCodec;
 
-import java.lang.reflect.Field;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * 这里为了方便直接写成实体类, Spring中这里还是abstract的
  * 主要对Bean进行读, 配置, 并缓存所有等待实例化的Bean的信息
+ * 容器中实现了SelfAdvisor的Bean先于其他Bean创建, 之后创建的Bean按切面自动代理
+ * 内置单例selfMetricsRegistry, 标注了@SelfTimed/@SelfCounted的Bean自动统计
+ * 配置了snapshot.path时, 第一次启动把BeanDefinition, 切面与实例化计划写入启动快照, 之后classpath不变就直接读取, 见SelfStartupSnapshot
+ * 配置reload.enabled=true时监听class文件的变化, 只重新加载变化的类并重建受影响的Bean, 见refresh
  */
 public class SelfApplicationContext implements SelfBeanFactory {
 
+    // 并行创建Bean的线程数, 配置为1则在当前线程顺序创建
+    public static final String BEAN_INIT_PARALLELISM = "beanInit.parallelism";
+
+    // 为false时, 实现了接口的Bean使用JDK动态代理, 默认使用子类代理
+    public static final String AOP_PROXY_TARGET_CLASS = "aop.proxyTargetClass";
+
+    // 内置指标注册中心的beanName
+    public static final String METRICS_REGISTRY_BEAN_NAME = "selfMetricsRegistry";
+
+    // 内置缓存管理器的beanName
+    public static final String CACHE_MANAGER_BEAN_NAME = "selfCacheManager";
+
+    // 为true时开启热加载, 默认关闭
+    public static final String RELOAD_ENABLED = "reload.enabled";
+
+    // 最后一个class文件变化之后静默多少毫秒才刷新
+    public static final String RELOAD_DEBOUNCE = "reload.debounce";
+
+    // 启动快照的文件路径, 不配置时不使用快照
+    public static final String SNAPSHOT_PATH = "snapshot.path";
+
+    // 启动报告中最多打印多少个最慢的Bean, 默认全部打印
+    public static final String STARTUP_REPORT_LIMIT = "startup.reportLimit";
+
+    // 快照中BeanDefinition与切面的段
+    private static final String SNAPSHOT_BEANS = "beans";
+
+    // 快照中实例化计划的段
+    private static final String SNAPSHOT_PLANS = "plans";
+
     // 扫描并读入配置信息
     private SelfBeanDefinitionReader reader;
 
     // 缓存Bean信息的Factory
     public SelfDefaultListableBeanFactory registry = new SelfDefaultListableBeanFactory();
 
+    // 自动代理, 持有容器中所有的切面
+    private SelfAutoProxyCreator autoProxyCreator;
+
+    // 指标注册中心, 同时注册为单例
+    private final SelfMetricsRegistry metricsRegistry = new SelfMetricsRegistry();
+
+    // @SelfCache的缓存管理器, 同时注册为单例
+    private final SelfCacheManager cacheManager = new SelfCacheManager(this.metricsRegistry);
+
+    // 每个Bean的创建耗时 (纳秒)
+    private Map<String, Long> beanCreationNanos = Collections.emptyMap();
+
+    // 整个容器的启动耗时 (纳秒)
+    private long startupNanos;
+
+    // 热加载的class文件监听, 没有开启时为null
+    private SelfClassFileWatcher classFileWatcher;
+
+    // 热加载刷新完成后的回调
+    private final List<SelfRefreshListener> refreshListeners = new CopyOnWriteArrayList<>();
+
+    // 热加载的次数, 也是ClassLoader的代数
+    private int reloadGeneration;
+
+    // 至今由热加载ClassLoader重新定义过的类 (外部类名), 每一代都重新定义全部
+    private final Set<String> reloadedClassNames = new HashSet<>();
+
+    // 启动快照, 没有配置时为null
+    private SelfStartupSnapshot startupSnapshot;
+
+    // 容器中实现了SelfAdvisor的Bean, 快照有效时直接从快照读出, 不需要加载所有的类判断
+    private List<String> advisorBeanNames;
+
     /**
      * 查看是否有Bean
      */
@@ -44,12 +127,17 @@ public class SelfApplicationContext implements SelfBeanFactory {
      * 构造方法, 包含读取配置文件, 解析并封装为BeanDefinition对象, 缓存配置信息到BeanFactory中
      */
     public SelfApplicationContext(String... configurations) {
+        long start = System.nanoTime();
+        List<SelfBeanDefinition> beanDefinitions = Collections.emptyList();
         try {
             // 1. 通过BeanDefinitionReader读取配置文件
             reader = new SelfBeanDefinitionReader(configurations);
 
-            // 2. 解析配置信息, 将配置信息封装为BeanDefinition对象
-            List<SelfBeanDefinition> beanDefinitions = reader.loadBeanDefinitions();
+            // 2. 解析配置信息, 将配置信息封装为BeanDefinition对象, 启动快照有效时直接读出
+            beanDefinitions = doLoadSnapshot();
+            if (null == beanDefinitions) {
+                beanDefinitions = reader.loadBeanDefinitions();
+            }
 
             // 3. 缓存所有配置信息 (registry), 因为存在延迟加载的Bean, 实例化前先将它们存起来
             this.registry.doRegisterBeanDefinition(beanDefinitions);
@@ -57,8 +145,20 @@ public class SelfApplicationContext implements SelfBeanFactory {
         } catch (Exception e) {
             e.printStackTrace();
         }
-        // 4. 加载非延时加载的Bean, 实例化它们
+        // 4. 先创建切面, 再注册自动代理
+        doRegisterAdvisors();
+
+        // 5. 加载非延时加载的Bean, 实例化它们
         doLoadInstance();
+
+        // 6. 第一次启动时写入启动快照
+        doWriteSnapshot(beanDefinitions);
+
+        this.startupNanos = System.nanoTime() - start;
+        printStartupReport();
+
+        // 7. 开启热加载时监听class文件
+        doStartClassFileWatcher();
     }
 
     @Override
@@ -72,15 +172,351 @@ public class SelfApplicationContext implements SelfBeanFactory {
         return registry.getBean(beanName);
     }
 
+    /**
+     * 获取Bean的类型, 不会创建Bean (延迟加载的Bean保持未创建)
+     */
+    public Class<?> getType(String beanName) {
+        return registry.getType(beanName);
+    }
+
+    /**
+     * 自动代理, 可以在运行时追加切面 (只影响之后创建的Bean)
+     */
+    public SelfAutoProxyCreator getAutoProxyCreator() {
+        return this.autoProxyCreator;
+    }
+
+    /**
+     * 加载的配置文件内容, 读取失败时为空
+     */
+    public Properties getConfig() {
+        return null == this.reader ? new Properties() : this.reader.getConfig();
+    }
+
+    public SelfMetricsRegistry getMetricsRegistry() {
+        return this.metricsRegistry;
+    }
+
+    public SelfCacheManager getCacheManager() {
+        return this.cacheManager;
+    }
+
+    public Map<String, Long> getBeanCreationNanos() {
+        return this.beanCreationNanos;
+    }
+
+    public long getStartupNanos() {
+        return this.startupNanos;
+    }
+
+    /**
+     * 启动快照, 没有配置snapshot.path时为null; 快照无效时可以继续写入其他段
+     */
+    public SelfStartupSnapshot getStartupSnapshot() {
+        return this.startupSnapshot;
+    }
+
+    /**
+     * 注册热加载刷新完成后的回调
+     */
+    public void addRefreshListener(SelfRefreshListener listener) {
+        this.refreshListeners.add(listener);
+    }
+
+    /**
+     * 停止监听class文件
+     */
+    public void close() {
+        if (null != this.classFileWatcher) {
+            try {
+                this.classFileWatcher.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 热加载: 用新一代ClassLoader重新定义变化的类, 只重建类变化的Bean与直接或间接依赖它们的Bean
+     * 1) 变化的类不是Bean (接口, DTO等) 时不知道哪些Bean用到了它, 所有Bean都重建
+     * 2) 切面在创建其他Bean之前就已织入, 切面类的变化需要重启, 切面本身也不重建
+     * 3) 旧的Bean不会被修改, 已经拿到它们的请求继续使用旧的实例直到结束
+     * 4) 每一代ClassLoader都以应用的ClassLoader为父, 重新定义至今热加载过的所有类, 这些类的Bean每次都重建,
+     *    旧的一代不再被新的一代引用, 旧的Bean释放后随之回收
+     *
+     * @return 被丢弃或新增的主beanName
+     */
+    public synchronized Set<String> refresh(Collection<String> changedClassNames) {
+        long start = System.nanoTime();
+
+        // 1. 切面类的变化忽略
+        Set<String> advisorClasses = new HashSet<>();
+        for (String beanName : getBeanDefinitionNames()) {
+            if (SelfAdvisor.class.isAssignableFrom(this.registry.getType(beanName))) {
+                advisorClasses.add(SelfReloadClassLoader.outerClassName(
+                        this.registry.beanDefinitionMap.get(beanName).getBeanClassName()));
+            }
+        }
+        Set<String> changed = new LinkedHashSet<>();
+        Set<String> changedOuterNames = new HashSet<>();
+        for (String className : changedClassNames) {
+            String outerClassName = SelfReloadClassLoader.outerClassName(className);
+            if (advisorClasses.contains(outerClassName)) {
+                System.out.println("Advisor " + className + " changed, restart to apply");
+                continue;
+            }
+            changed.add(className);
+            changedOuterNames.add(outerClassName);
+        }
+        if (changed.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        // 2. 重新读取变化的类的字节码, 已删除的类读不到
+        List<SelfClassMetadata> classes = new ArrayList<>();
+        for (String className : changed) {
+            SelfClassMetadata metadata = this.reader.readMetadata(className);
+            if (null != metadata) {
+                classes.add(metadata);
+            }
+        }
+        List<SelfBeanDefinition> beanDefinitions = this.reader.loadBeanDefinitions(classes);
+
+        // 3. 找出受影响的Bean, 之前热加载过的类在新一代中同样重新定义, 视同变化
+        Set<String> redefinedOuterNames = new HashSet<>(changedOuterNames);
+        redefinedOuterNames.addAll(this.reloadedClassNames);
+        Set<String> beanClasses = new HashSet<>();
+        for (SelfBeanDefinition beanDefinition : beanDefinitions) {
+            beanClasses.add(SelfReloadClassLoader.outerClassName(beanDefinition.getBeanClassName()));
+        }
+        Set<String> changedBeans = new LinkedHashSet<>();
+        for (Map.Entry<String, SelfBeanDefinition> entry : this.registry.beanDefinitionMap.entrySet()) {
+            String outerClassName = SelfReloadClassLoader.outerClassName(entry.getValue().getBeanClassName());
+            beanClasses.add(outerClassName);
+            if (redefinedOuterNames.contains(outerClassName)) {
+                changedBeans.add(entry.getKey());
+            }
+        }
+        Set<String> affected = this.registry.getDependentBeans(beanClasses.containsAll(redefinedOuterNames)
+                ? changedBeans : this.registry.beanDefinitionMap.keySet());
+        affected.removeIf(beanName -> advisorClasses.contains(SelfReloadClassLoader.outerClassName(
+                this.registry.beanDefinitionMap.get(beanName).getBeanClassName())));
+
+        // 4. 新一代ClassLoader重新定义这些类与受影响的Bean的类, 它们对其他类的引用才能解析到新的版本
+        //    父ClassLoader始终是应用的ClassLoader, 不以上一代为父, 旧的一代才能被回收
+        Set<String> reloadable = new HashSet<>(redefinedOuterNames);
+        for (String beanName : affected) {
+            reloadable.add(SelfReloadClassLoader.outerClassName(
+                    this.registry.beanDefinitionMap.get(beanName).getBeanClassName()));
+        }
+        ClassLoader parent = this.registry.getBeanClassLoader();
+        if (parent instanceof SelfReloadClassLoader) {
+            parent = parent.getParent();
+        }
+        ClassLoader classLoader = new SelfReloadClassLoader(parent, reloadable, ++this.reloadGeneration);
+
+        // 5. 替换BeanDefinition, 丢弃受影响的单例
+        Set<String> refreshed;
+        try {
+            refreshed = this.registry.refreshBeanDefinitions(changed, beanDefinitions, affected, classLoader);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return Collections.emptySet();
+        }
+        this.reloadedClassNames.addAll(reloadable);
+
+        // 6. 重新加载的类的方法缓存按旧类型序列化, 整个移除, 新一代代理创建新的缓存; 其他缓存中也可能有旧类的对象
+        this.cacheManager.removeCaches(ownerClass -> ownerClass.getClassLoader() != classLoader
+                && reloadable.contains(SelfReloadClassLoader.outerClassName(ownerClass.getName())));
+        this.cacheManager.invalidateAll();
+
+        // 7. 重新创建非延迟加载的单例, 创建失败的留到下次getBean时再报错
+        List<String> beanNames = new ArrayList<>();
+        for (String beanName : refreshed) {
+            SelfBeanDefinition beanDefinition = this.registry.beanDefinitionMap.get(beanName);
+            if (null != beanDefinition && beanDefinition.isSingleton() && !beanDefinition.isLazyInit()) {
+                beanNames.add(beanName);
+            }
+        }
+        try {
+            new SelfBeanInstantiationScheduler(this.registry, 1).instantiate(beanNames);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+
+        // 8. 通知路由等依赖Bean实例的地方
+        for (SelfRefreshListener listener : this.refreshListeners) {
+            try {
+                listener.onRefresh(refreshed);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        System.out.printf("Reloaded %d classes, refreshed %d beans in %.3f ms%n",
+                changed.size(), refreshed.size(), (System.nanoTime() - start) / 1e6);
+        return refreshed;
+    }
+
+    private void doRegisterAdvisors() {
+        boolean proxyTargetClass = null == this.reader
+                || Boolean.parseBoolean(this.reader.getConfig().getProperty(AOP_PROXY_TARGET_CLASS, "true").trim());
+        this.autoProxyCreator = new SelfAutoProxyCreator(proxyTargetClass);
+
+        // 内置的指标切面, 注册中心先注册为单例, 切面与业务Bean都可以注入
+        this.registry.registerSingleton(METRICS_REGISTRY_BEAN_NAME, this.metricsRegistry);
+        this.autoProxyCreator.addAdvisor(new SelfMetricsAdvisor(this.metricsRegistry));
+
+        // 内置的方法缓存切面, 位于指标切面之内
+        this.registry.registerSingleton(CACHE_MANAGER_BEAN_NAME, this.cacheManager);
+        this.autoProxyCreator.addAdvisor(new SelfCacheAdvisor(this.cacheManager, new SelfJsonCodec()));
+
+        if (null == this.advisorBeanNames) {
+            this.advisorBeanNames = new ArrayList<>();
+            for (String beanName : getBeanDefinitionNames()) {
+                if (SelfAdvisor.class.isAssignableFrom(this.registry.getType(beanName))) {
+                    this.advisorBeanNames.add(beanName);
+                }
+            }
+        }
+        for (String beanName : this.advisorBeanNames) {
+            this.autoProxyCreator.addAdvisor((SelfAdvisor) this.registry.getBean(beanName));
+        }
+        this.registry.addBeanPostProcessor(this.autoProxyCreator);
+    }
+
     private void doLoadInstance() {
-        // 循环调用BeanFactory的getBean方法, 对每个Bean进行实例化
+        List<String> beanNames = new ArrayList<>();
         for (Map.Entry<String, SelfBeanDefinition> entry : this.registry.beanDefinitionMap.entrySet()) {
-            if (!entry.getValue().isLazyInit()) {
-                // 不是延时加载的才在这里加载, 延时加载的在getBean的时候才加载
-                String beanName = entry.getKey();
-                getBean(beanName);
+            if (entry.getValue().isSingleton() && !entry.getValue().isLazyInit()) {
+                // 不是延时加载的单例才在这里加载, 延时加载的与prototype在getBean的时候才创建
+                beanNames.add(entry.getKey());
+            }
+        }
+
+        // 按依赖关系并行创建
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if (null != this.reader) {
+            String configured = this.reader.getConfig().getProperty(BEAN_INIT_PARALLELISM);
+            if (null != configured) {
+                parallelism = Integer.parseInt(configured.trim());
+            }
+        }
+        SelfBeanInstantiationScheduler scheduler = new SelfBeanInstantiationScheduler(this.registry, parallelism);
+        scheduler.instantiate(beanNames);
+        this.beanCreationNanos = scheduler.getCreationNanos();
+    }
+
+    /**
+     * 打开启动快照, 有效时读出BeanDefinition, 切面与实例化计划; 没有配置, 无效或读取失败时返回null
+     */
+    private List<SelfBeanDefinition> doLoadSnapshot() {
+        String path = this.reader.getConfig().getProperty(SNAPSHOT_PATH, "").trim();
+        if (path.isEmpty()) {
+            return null;
+        }
+        this.startupSnapshot = SelfStartupSnapshot.open(Paths.get(path), SelfStartupSnapshot.classpathHash(
+                this.registry.getBeanClassLoader(), this.reader.getScanPackages(), this.reader.getConfig()));
+        SelfStartupSnapshot.Input beans = this.startupSnapshot.getSection(SNAPSHOT_BEANS);
+        SelfStartupSnapshot.Input plans = this.startupSnapshot.getSection(SNAPSHOT_PLANS);
+        if (null == beans || null == plans) {
+            return null;
+        }
+        try {
+            // 1. BeanDefinition按原来的注册顺序
+            List<SelfBeanDefinition> beanDefinitions = new ArrayList<>();
+            for (int i = beans.readInt(); i > 0; i--) {
+                SelfBeanDefinition beanDefinition = new SelfBeanDefinition();
+                beanDefinition.setFactoryBeanName(beans.readString());
+                beanDefinition.setBeanClassName(beans.readString());
+                beanDefinition.setScope(beans.readString());
+                beanDefinition.setLazyInit(beans.readBoolean());
+                beanDefinitions.add(beanDefinition);
+            }
+            List<String> advisors = List.of(beans.readStrings());
+
+            // 2. 实例化计划
+            Map<String, SelfInstantiationPlan.Descriptor> descriptors = new LinkedHashMap<>();
+            for (int i = plans.readInt(); i > 0; i--) {
+                descriptors.put(plans.readString(), new SelfInstantiationPlan.Descriptor(plans.readStrings(),
+                        plans.readStrings(), plans.readStrings(), plans.readStrings()));
             }
+
+            // 3. 全部读完才生效, 读到一半出错时回到扫描
+            this.advisorBeanNames = new ArrayList<>(advisors);
+            this.registry.registerPlanDescriptors(descriptors);
+            System.out.println("Startup snapshot loaded from " + path + ": " + beanDefinitions.size()
+                    + " bean definitions, " + descriptors.size() + " instantiation plans");
+            return beanDefinitions;
+        } catch (RuntimeException e) {
+            System.out.println("Failed to decode startup snapshot " + path + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * 快照无效时写入BeanDefinition, 切面与启动过程中解析过的实例化计划
+     */
+    private void doWriteSnapshot(List<SelfBeanDefinition> beanDefinitions) {
+        if (null == this.startupSnapshot || null != this.startupSnapshot.getSection(SNAPSHOT_BEANS)) {
+            return;
+        }
+        try {
+            SelfStartupSnapshot.Output beans = new SelfStartupSnapshot.Output();
+            beans.writeInt(beanDefinitions.size());
+            for (SelfBeanDefinition beanDefinition : beanDefinitions) {
+                beans.writeString(beanDefinition.getFactoryBeanName());
+                beans.writeString(beanDefinition.getBeanClassName());
+                beans.writeString(beanDefinition.getScope());
+                beans.writeBoolean(beanDefinition.isLazyInit());
+            }
+            beans.writeStrings(this.advisorBeanNames.toArray(new String[0]));
+
+            SelfStartupSnapshot.Output plans = new SelfStartupSnapshot.Output();
+            Map<String, SelfInstantiationPlan.Descriptor> descriptors = this.registry.getPlanDescriptors();
+            plans.writeInt(descriptors.size());
+            for (Map.Entry<String, SelfInstantiationPlan.Descriptor> entry : descriptors.entrySet()) {
+                plans.writeString(entry.getKey());
+                plans.writeStrings(entry.getValue().getParameterTypes());
+                plans.writeStrings(entry.getValue().getConstructorDependencies());
+                plans.writeStrings(entry.getValue().getFieldNames());
+                plans.writeStrings(entry.getValue().getFieldDependencies());
+            }
+            this.startupSnapshot.putSection(SNAPSHOT_BEANS, beans);
+            this.startupSnapshot.putSection(SNAPSHOT_PLANS, plans);
+            this.startupSnapshot.save();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void doStartClassFileWatcher() {
+        Properties config = getConfig();
+        if (null == this.reader || !Boolean.parseBoolean(config.getProperty(RELOAD_ENABLED, "false").trim())) {
+            return;
+        }
+        long debounce = Long.parseLong(config.getProperty(RELOAD_DEBOUNCE, "100").trim());
+        try {
+            this.classFileWatcher = new SelfClassFileWatcher(this.registry.getBeanClassLoader(),
+                    this.reader.getScanPackages(), debounce, this::refresh);
+            System.out.println("Hot reload enabled, watching " + this.classFileWatcher.getWatchedDirectoryCount()
+                    + " class directories");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 打印每个Bean的创建耗时(从慢到快, 最多startup.reportLimit个)与容器总耗时
+     */
+    private void printStartupReport() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(this.beanCreationNanos.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        int limit = Integer.parseInt(getConfig().getProperty(STARTUP_REPORT_LIMIT, "-1").trim());
+        for (Map.Entry<String, Long> entry : limit < 0 ? entries : entries.subList(0, Math.min(limit, entries.size()))) {
+            System.out.printf("Bean '%s' created in %.3f ms%n", entry.getKey(), entry.getValue() / 1e6);
         }
+        System.out.printf("Application context started in %.3f ms, %d bean creations timed%n",
+                this.startupNanos / 1e6, entries.size());
     }
 
 }
@@ -0,0 +1,168 @@
+package com.springselfcoding.ioc.context;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 监听扫描包对应的class输出目录, 编译器写完一批class文件后回调变化的类名
+ * 1) 只监听目录形式的classpath根, jar中的类不会变化
+ * 2) WatchService不递归, 每个子目录单独注册, 新建的目录注册后补扫一次其中已有的class文件
+ * 3) 编译器一次会写出多个文件, 最后一个事件之后静默debounce毫秒才回调, 同一批变化只回调一次
+ * 4) 回调在监听线程上执行, 上一次回调结束前的变化留到下一批
+ */
+public class SelfClassFileWatcher implements Closeable {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final WatchService watchService;
+
+    // 注册的目录, 以及它所在的classpath根
+    private final Map<WatchKey, Path[]> watchedDirectories = new ConcurrentHashMap<>();
+
+    private final long debounceMillis;
+
+    private final Consumer<Set<String>> listener;
+
+    private final Thread thread;
+
+    public SelfClassFileWatcher(ClassLoader classLoader, Collection<String> basePackages, long debounceMillis,
+                                Consumer<Set<String>> listener) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.debounceMillis = debounceMillis;
+        this.listener = listener;
+
+        // 1. 找到每个包所在的目录, 包路径往上就是classpath根
+        for (String basePackage : basePackages) {
+            String packagePath = basePackage.replace('.', '/');
+            for (URL resource : Collections.list(classLoader.getResources(packagePath))) {
+                if (!"file".equals(resource.getProtocol())) {
+                    continue;
+                }
+                try {
+                    Path directory = Paths.get(resource.toURI());
+                    Path root = directory;
+                    for (int i = 0; i < packagePath.split("/").length; i++) {
+                        root = root.getParent();
+                    }
+                    registerAll(directory, root, null);
+                } catch (URISyntaxException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        // 2. 后台线程等待事件
+        this.thread = new Thread(this::run, "self-class-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public int getWatchedDirectoryCount() {
+        return this.watchedDirectories.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.watchService.close();
+        this.thread.interrupt();
+    }
+
+    private void run() {
+        Set<String> changed = new LinkedHashSet<>();
+        try {
+            while (true) {
+                // 没有待处理的变化时一直等待, 有变化时等到静默debounce毫秒
+                WatchKey key = changed.isEmpty() ? this.watchService.take()
+                        : this.watchService.poll(this.debounceMillis, TimeUnit.MILLISECONDS);
+                if (null == key) {
+                    Set<String> batch = changed;
+                    changed = new LinkedHashSet<>();
+                    try {
+                        this.listener.accept(batch);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                    continue;
+                }
+                collect(key, changed);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 关闭
+        }
+    }
+
+    private void collect(WatchKey key, Set<String> changed) {
+        Path[] watched = this.watchedDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (null == watched || StandardWatchEventKinds.OVERFLOW == event.kind()) {
+                System.out.println("Class file events overflowed, some changes may be missed");
+                continue;
+            }
+            Path path = watched[0].resolve((Path) event.context());
+            if (StandardWatchEventKinds.ENTRY_CREATE == event.kind() && Files.isDirectory(path)) {
+                // 新建的包目录, 注册后其中已有的文件一起算作变化
+                registerAll(path, watched[1], changed);
+            } else if (path.toString().endsWith(CLASS_SUFFIX)) {
+                changed.add(toClassName(watched[1], path));
+            }
+        }
+        if (!key.reset()) {
+            // 目录已删除
+            this.watchedDirectories.remove(key);
+        }
+    }
+
+    /**
+     * 注册目录与所有子目录, changed不为null时把其中已有的class文件记为变化
+     */
+    private void registerAll(Path directory, Path root, Set<String> changed) {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            paths = new ArrayList<>(walk.toList());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                try {
+                    WatchKey key = path.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                    this.watchedDirectories.put(key, new Path[]{path, root});
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            } else if (null != changed && path.toString().endsWith(CLASS_SUFFIX)) {
+                changed.add(toClassName(root, path));
+            }
+        }
+    }
+
+    private static String toClassName(Path root, Path classFile) {
+        String relative = root.relativize(classFile).toString();
+        return relative.substring(0, relative.length() - CLASS_SUFFIX.length())
+                .replace(classFile.getFileSystem().getSeparator(), ".");
+    }
+}
@@ -0,0 +1,15 @@
+package com.springselfcoding.ioc.context;
+
+import java.util.Set;
+
+/**
+ * 热加载刷新完成后的回调, 在监听线程上调用; 此时非延迟加载的单例已经重新创建
+ */
+@FunctionalInterface
+public interface SelfRefreshListener {
+
+    /**
+     * @param beanNames 被丢弃或新增的主beanName, 已删除的Bean不再出现在getBeanDefinitionNames中
+     */
+    void onRefresh(Set<String> beanNames);
+}
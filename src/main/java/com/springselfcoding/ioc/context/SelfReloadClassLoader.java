@@ -0,0 +1,66 @@
+package com.springselfcoding.ioc.context;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+/**
+ * 热加载时每次刷新新建一个, 只重新定义给定的类, 其余的类交给应用的ClassLoader
+ * 1) 给定的类与它们的内部类优先自己定义 (child-first), 字节码通过父ClassLoader按资源重新读取, 读到的是磁盘上最新的文件
+ * 2) 每一代都以应用的ClassLoader为父, 给定的类包括之前刷新过的所有类, 上一代不被引用, 可以随旧的Bean一起回收
+ * 3) 重新定义的类与没有重新定义的同包类不在同一个运行时包中, 它们之间不能访问包级私有的成员
+ */
+public class SelfReloadClassLoader extends ClassLoader {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    // 需要重新定义的类, 只保存外部类名
+    private final Set<String> reloadableClassNames;
+
+    public SelfReloadClassLoader(ClassLoader parent, Set<String> reloadableClassNames, int generation) {
+        super("self-reload-" + generation, parent);
+        this.reloadableClassNames = reloadableClassNames;
+    }
+
+    /**
+     * 内部类的外部类名, 热加载以外部类为单位
+     */
+    public static String outerClassName(String className) {
+        int index = className.indexOf('$');
+        return index < 0 ? className : className.substring(0, index);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (!this.reloadableClassNames.contains(outerClassName(name))) {
+            return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> clazz = findLoadedClass(name);
+            if (null == clazz) {
+                clazz = findClass(name);
+            }
+            if (resolve) {
+                resolveClass(clazz);
+            }
+            return clazz;
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + CLASS_SUFFIX)) {
+            if (null == in) {
+                throw new ClassNotFoundException(name);
+            }
+            byte[] bytes = in.readAllBytes();
+            return defineClass(name, bytes, 0, bytes.length);
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+}
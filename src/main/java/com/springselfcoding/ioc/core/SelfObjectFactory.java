@@ -0,0 +1,10 @@
+package com.springselfcoding.ioc.core;
+
+/**
+ * 延迟获取对象的工厂, 三级缓存中用来生成Bean的早期引用
+ */
+@FunctionalInterface
+public interface SelfObjectFactory<T> {
+
+    T getObject();
+}
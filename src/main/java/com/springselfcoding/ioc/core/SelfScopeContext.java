@@ -0,0 +1,187 @@
+package com.springselfcoding.ioc.core;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * request与thread作用域的实例容器, 按槽位下标存取, 不做Map查找
+ * 1) 每个request/thread作用域的Bean在创建作用域代理时分配一个全局槽位, 代理每次调用时按下标取出当前上下文中的实例
+ * 2) request作用域由Dispatcher在请求开始时beginRequest, 请求 (包括异步部分) 结束时end
+ *    跨线程时用attach/detach或wrap把同一个上下文带过去, 同一个请求在不同线程上拿到的是同一个实例
+ * 3) thread作用域每个线程一个上下文, 随线程结束释放
+ * 4) 已经创建的实例无锁读取 (acquire), 只有第一次创建时加锁; end()只把用过的槽位置空并关闭其中的AutoCloseable, 不分配对象
+ */
+public final class SelfScopeContext {
+
+    private static final VarHandle INSTANCES = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private static final Object[] EMPTY = new Object[0];
+
+    // 已经分配的槽位数, 热加载重建的Bean分配新的槽位, 旧的槽位随上下文结束释放
+    private static final AtomicInteger SLOT_COUNT = new AtomicInteger();
+
+    private static final ThreadLocal<SelfScopeContext> CURRENT_REQUEST = new ThreadLocal<>();
+
+    private static final ThreadLocal<SelfScopeContext> CURRENT_THREAD = ThreadLocal.withInitial(SelfScopeContext::new);
+
+    // 槽位 -> 实例, 扩容时整体替换
+    private volatile Object[] instances = EMPTY;
+
+    // 用过的槽位, 结束时只清理这些
+    private int[] used = new int[4];
+
+    private int usedCount;
+
+    private boolean ended;
+
+    /**
+     * 为一个作用域Bean分配槽位
+     */
+    public static int allocateSlot() {
+        return SLOT_COUNT.getAndIncrement();
+    }
+
+    /**
+     * 开始一个请求, 上下文绑定到当前线程
+     */
+    public static SelfScopeContext beginRequest() {
+        SelfScopeContext context = new SelfScopeContext();
+        CURRENT_REQUEST.set(context);
+        return context;
+    }
+
+    /**
+     * 当前线程上的请求上下文, 不在请求中时为null
+     */
+    public static SelfScopeContext currentRequest() {
+        return CURRENT_REQUEST.get();
+    }
+
+    /**
+     * 当前线程上的请求上下文, 不在请求中时抛出异常
+     */
+    public static SelfScopeContext requireRequest(String beanName) {
+        SelfScopeContext context = CURRENT_REQUEST.get();
+        if (null == context) {
+            throw new IllegalStateException("No request scope is active for bean '" + beanName
+                    + "': use SelfScopeContext.wrap when handing work to another thread");
+        }
+        return context;
+    }
+
+    /**
+     * 当前线程的thread作用域上下文
+     */
+    public static SelfScopeContext currentThread() {
+        return CURRENT_THREAD.get();
+    }
+
+    /**
+     * 把请求上下文绑定到当前线程, 返回原来绑定的上下文, 之后交给detach恢复
+     */
+    public static SelfScopeContext attach(SelfScopeContext context) {
+        SelfScopeContext previous = CURRENT_REQUEST.get();
+        CURRENT_REQUEST.set(context);
+        return previous;
+    }
+
+    /**
+     * 恢复attach之前的请求上下文
+     */
+    public static void detach(SelfScopeContext previous) {
+        if (null == previous) {
+            CURRENT_REQUEST.remove();
+        } else {
+            CURRENT_REQUEST.set(previous);
+        }
+    }
+
+    /**
+     * 在其他线程上执行时带上当前的请求上下文, 不在请求中时原样返回
+     */
+    public static Runnable wrap(Runnable task) {
+        SelfScopeContext context = CURRENT_REQUEST.get();
+        if (null == context) {
+            return task;
+        }
+        return () -> {
+            SelfScopeContext previous = attach(context);
+            try {
+                task.run();
+            } finally {
+                detach(previous);
+            }
+        };
+    }
+
+    /**
+     * 提交时带上提交线程的请求上下文
+     */
+    public static Executor wrap(Executor executor) {
+        return task -> executor.execute(wrap(task));
+    }
+
+    /**
+     * 取出槽位中的实例, 还没有时用factory创建
+     */
+    public Object getOrCreate(int slot, SelfObjectFactory<?> factory) {
+        Object[] current = this.instances;
+        if (slot < current.length) {
+            Object instance = INSTANCES.getAcquire(current, slot);
+            if (null != instance) {
+                return instance;
+            }
+        }
+        return create(slot, factory);
+    }
+
+    private synchronized Object create(int slot, SelfObjectFactory<?> factory) {
+        if (this.ended) {
+            throw new IllegalStateException("Scope has already ended");
+        }
+        Object[] current = this.instances;
+        if (slot < current.length && null != current[slot]) {
+            return current[slot];
+        }
+        Object instance = factory.getObject();
+        // 创建过程中可能扩容过
+        current = this.instances;
+        if (slot >= current.length) {
+            Object[] larger = new Object[Math.max(slot + 1, SLOT_COUNT.get())];
+            System.arraycopy(current, 0, larger, 0, current.length);
+            current = larger;
+        }
+        INSTANCES.setRelease(current, slot, instance);
+        this.instances = current;
+        if (this.usedCount == this.used.length) {
+            int[] larger = new int[this.used.length * 2];
+            System.arraycopy(this.used, 0, larger, 0, this.usedCount);
+            this.used = larger;
+        }
+        this.used[this.usedCount++] = slot;
+        return instance;
+    }
+
+    /**
+     * 结束作用域: 关闭并释放其中的实例, 之后不能再创建; 可以重复调用
+     */
+    public synchronized void end() {
+        this.ended = true;
+        Object[] current = this.instances;
+        for (int i = 0; i < this.usedCount; i++) {
+            int slot = this.used[i];
+            Object instance = current[slot];
+            INSTANCES.setRelease(current, slot, null);
+            if (instance instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) instance).close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        this.usedCount = 0;
+    }
+}
@@ -0,0 +1,363 @@
+package com.springselfcoding.ioc.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * 启动快照: 第一次启动时把解析好的结果 (BeanDefinition, 实例化计划, 路由表等) 按段写入一个二进制文件,
+ * 之后的启动直接读取, 跳过扫描, 注解解析与反射遍历
+ * 1) 文件内容: magic, 版本, classpath摘要, 段表 (名称, 偏移, 长度), 各段数据; 整数为大端, 字符串为长度 + UTF-8
+ * 2) 读取时整个文件mmap, 每个段是映射区域上的一个切片, 不复制
+ * 3) classpath摘要覆盖配置与扫描包下所有文件的路径与内容, jar中的按中央目录记录的CRC-32与大小, 任何变化都使快照失效
+ *    不看修改时间, 构建把时间戳统一 (Jib, 可重复构建) 时代码变化同样能发现
+ * 4) 写入先写临时文件再原子替换, 多个进程共享同一个快照文件时不会读到写了一半的内容
+ */
+public class SelfStartupSnapshot {
+
+    private static final int MAGIC = 0x53454C46;
+
+    private static final int VERSION = 1;
+
+    private static final Map<String, Class<?>> PRIMITIVE_TYPES = new LinkedHashMap<>();
+
+    static {
+        for (Class<?> type : new Class<?>[]{boolean.class, byte.class, char.class, short.class, int.class,
+                long.class, float.class, double.class, void.class}) {
+            PRIMITIVE_TYPES.put(type.getName(), type);
+        }
+    }
+
+    private final Path path;
+
+    private final byte[] classpathHash;
+
+    // 从文件读出的段, 快照不存在或已失效时为空
+    private final Map<String, ByteBuffer> loadedSections;
+
+    // 本次启动新写入的段
+    private final Map<String, byte[]> writtenSections = new LinkedHashMap<>();
+
+    // 有还没有写回文件的段
+    private boolean dirty;
+
+    private SelfStartupSnapshot(Path path, byte[] classpathHash, Map<String, ByteBuffer> loadedSections) {
+        this.path = path;
+        this.classpathHash = classpathHash;
+        this.loadedSections = loadedSections;
+    }
+
+    /**
+     * 打开快照文件, 文件不存在, 格式不对或摘要不一致时返回一个空的快照, 之后写入的段在save时覆盖原文件
+     */
+    public static SelfStartupSnapshot open(Path path, byte[] classpathHash) {
+        if (!Files.isRegularFile(path)) {
+            return new SelfStartupSnapshot(path, classpathHash, Collections.emptyMap());
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // 映射在channel关闭后仍然有效
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || MAGIC != buffer.getInt() || VERSION != buffer.getInt()) {
+                System.out.println("Startup snapshot " + path + " has an unknown format, ignored");
+                return new SelfStartupSnapshot(path, classpathHash, Collections.emptyMap());
+            }
+            byte[] hash = new byte[buffer.getInt()];
+            buffer.get(hash);
+            if (!MessageDigest.isEqual(hash, classpathHash)) {
+                System.out.println("Startup snapshot " + path + " is stale, classpath changed");
+                return new SelfStartupSnapshot(path, classpathHash, Collections.emptyMap());
+            }
+            Input header = new Input(buffer);
+            int count = header.readInt();
+            Map<String, ByteBuffer> sections = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = header.readString();
+                int offset = header.readInt();
+                int length = header.readInt();
+                sections.put(name, buffer.slice(offset, length));
+            }
+            return new SelfStartupSnapshot(path, classpathHash, sections);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Failed to read startup snapshot " + path + ": " + e);
+            return new SelfStartupSnapshot(path, classpathHash, Collections.emptyMap());
+        }
+    }
+
+    /**
+     * 配置与扫描包下所有类的摘要: 目录中的文件读取内容, jar只读中央目录, 不解压
+     */
+    public static byte[] classpathHash(ClassLoader classLoader, Collection<String> basePackages, Properties config) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        // 1. 配置按key排序
+        for (Map.Entry<String, String> entry : new TreeMap<>(toMap(config)).entrySet()) {
+            update(digest, entry.getKey() + "=" + entry.getValue());
+        }
+        // 2. 每个包的根, 目录逐个文件, jar整体
+        for (String basePackage : basePackages) {
+            try {
+                for (URL root : Collections.list(classLoader.getResources(basePackage.replace('.', '/')))) {
+                    update(digest, root.toString());
+                    if ("file".equals(root.getProtocol())) {
+                        hashDirectory(digest, Paths.get(root.toURI()));
+                    } else if ("jar".equals(root.getProtocol())) {
+                        JarURLConnection connection = (JarURLConnection) root.openConnection();
+                        connection.setUseCaches(false);
+                        try (JarFile jar = connection.getJarFile()) {
+                            hashJar(digest, jar, connection.getEntryName());
+                        }
+                    }
+                }
+            } catch (IOException | URISyntaxException e) {
+                throw new IllegalStateException("Failed to hash classpath of " + basePackage, e);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * 按名称加载类, 支持基本类型, 不初始化
+     */
+    public static Class<?> forName(String name, ClassLoader classLoader) throws ClassNotFoundException {
+        Class<?> primitive = PRIMITIVE_TYPES.get(name);
+        return null != primitive ? primitive : Class.forName(name, false, classLoader);
+    }
+
+    /**
+     * 快照有效, 读出了至少一个段
+     */
+    public boolean isLoaded() {
+        return !this.loadedSections.isEmpty();
+    }
+
+    /**
+     * 读取一个段, 没有时返回null
+     */
+    public Input getSection(String name) {
+        ByteBuffer section = this.loadedSections.get(name);
+        return null == section ? null : new Input(section.duplicate());
+    }
+
+    public void putSection(String name, Output output) {
+        this.writtenSections.put(name, output.toByteArray());
+        this.dirty = true;
+    }
+
+    /**
+     * 有新写入的段时, 与读出的段及之前写入的段一起写回文件
+     */
+    public void save() {
+        if (!this.dirty) {
+            return;
+        }
+        Map<String, byte[]> sections = new LinkedHashMap<>();
+        for (Map.Entry<String, ByteBuffer> entry : this.loadedSections.entrySet()) {
+            ByteBuffer section = entry.getValue().duplicate();
+            byte[] bytes = new byte[section.remaining()];
+            section.get(bytes);
+            sections.put(entry.getKey(), bytes);
+        }
+        sections.putAll(this.writtenSections);
+
+        try {
+            // 1. 先算出段表的长度, 才能确定每个段的偏移
+            Output header = new Output();
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(this.classpathHash.length);
+            header.writeBytes(this.classpathHash);
+            header.writeInt(sections.size());
+            int tableLength = 0;
+            for (String name : sections.keySet()) {
+                tableLength += 4 + name.getBytes(StandardCharsets.UTF_8).length + 8;
+            }
+            int offset = header.size() + tableLength;
+            for (Map.Entry<String, byte[]> entry : sections.entrySet()) {
+                header.writeString(entry.getKey());
+                header.writeInt(offset);
+                header.writeInt(entry.getValue().length);
+                offset += entry.getValue().length;
+            }
+
+            // 2. 写临时文件后原子替换
+            Path directory = this.path.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, this.path.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(header.toByteArray()));
+                for (byte[] section : sections.values()) {
+                    channel.write(ByteBuffer.wrap(section));
+                }
+            }
+            Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.dirty = false;
+            System.out.println("Startup snapshot written to " + this.path + ", " + offset + " bytes");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static Map<String, String> toMap(Properties config) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (String key : config.stringPropertyNames()) {
+            map.put(key, config.getProperty(key));
+        }
+        return map;
+    }
+
+    private static void hashDirectory(MessageDigest digest, Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = new ArrayList<>(paths.filter(Files::isRegularFile).sorted().toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (Path file : files) {
+            hashFile(digest, file);
+        }
+    }
+
+    private static void hashFile(MessageDigest digest, Path file) throws IOException {
+        update(digest, file.toString());
+        digest.update(Files.readAllBytes(file));
+    }
+
+    /**
+     * jar中包下的条目按名称排序, 每个条目取中央目录中的CRC-32与大小
+     */
+    private static void hashJar(MessageDigest digest, JarFile jar, String prefix) {
+        List<JarEntry> entries = new ArrayList<>();
+        for (JarEntry entry : Collections.list(jar.entries())) {
+            if (null == prefix || entry.getName().startsWith(prefix)) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparing(JarEntry::getName));
+        for (JarEntry entry : entries) {
+            update(digest, entry.getName() + ":" + entry.getSize() + ":" + Long.toHexString(entry.getCrc()));
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * 顺序读取一个段
+     */
+    public static final class Input {
+
+        private final ByteBuffer buffer;
+
+        Input(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int readInt() {
+            return this.buffer.getInt();
+        }
+
+        public long readLong() {
+            return this.buffer.getLong();
+        }
+
+        public boolean readBoolean() {
+            return 0 != this.buffer.get();
+        }
+
+        public String readString() {
+            byte[] bytes = new byte[this.buffer.getInt()];
+            this.buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        public String[] readStrings() {
+            String[] values = new String[this.buffer.getInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readString();
+            }
+            return values;
+        }
+    }
+
+    /**
+     * 在内存中写出一个段
+     */
+    public static final class Output {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private final DataOutputStream out = new DataOutputStream(this.bytes);
+
+        public void writeInt(int value) throws IOException {
+            this.out.writeInt(value);
+        }
+
+        public void writeLong(long value) throws IOException {
+            this.out.writeLong(value);
+        }
+
+        public void writeBoolean(boolean value) throws IOException {
+            this.out.writeBoolean(value);
+        }
+
+        public void writeString(String value) throws IOException {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            this.out.writeInt(utf8.length);
+            this.out.write(utf8);
+        }
+
+        public void writeStrings(String[] values) throws IOException {
+            this.out.writeInt(values.length);
+            for (String value : values) {
+                writeString(value);
+            }
+        }
+
+        void writeBytes(byte[] value) throws IOException {
+            this.out.write(value);
+        }
+
+        int size() {
+            return this.bytes.size();
+        }
+
+        byte[] toByteArray() {
+            return this.bytes.toByteArray();
+        }
+    }
+}
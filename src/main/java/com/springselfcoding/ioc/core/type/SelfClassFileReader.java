@@ -0,0 +1,292 @@
+package com.springselfcoding.ioc.core.type;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 手写的class文件解析器, 只读取判断组件需要的部分, 不加载类, 也不触发静态初始化
+ * 1) 解析常量池时只记录每个条目的位置, Utf8用到时才解码
+ * 2) 读取access_flags, this_class, super_class与直接实现的接口
+ * 3) 字段与方法整体跳过, 只解析类上的RuntimeVisibleAnnotations
+ * 4) 注解属性保留常量值(基本类型, String), 枚举保留常量名, Class保留全类名, 数组转为List
+ */
+public class SelfClassFileReader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+    private final byte[] bytes;
+
+    // 常量池中每个条目在bytes中的起始位置(指向tag之后)
+    private int[] cpOffsets;
+
+    // 已经解码过的Utf8常量
+    private String[] utf8Cache;
+
+    // 当前读取位置
+    private int pos;
+
+    public SelfClassFileReader(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * 读取整个流后解析
+     */
+    public static SelfClassMetadata read(InputStream in) throws IOException {
+        return new SelfClassFileReader(in.readAllBytes()).read();
+    }
+
+    /**
+     * 解析class文件, 格式不对时抛出IllegalArgumentException
+     */
+    public SelfClassMetadata read() {
+        this.pos = 0;
+        if (readInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a class file");
+        }
+        // minor_version, major_version
+        this.pos += 4;
+
+        // 1. 常量池
+        readConstantPool();
+
+        // 2. 类头
+        int accessFlags = readUnsignedShort();
+        String className = readClassName(readUnsignedShort());
+        int superIndex = readUnsignedShort();
+        String superClassName = 0 == superIndex ? null : readClassName(superIndex);
+        int interfaceCount = readUnsignedShort();
+        List<String> interfaceNames = new ArrayList<>(interfaceCount);
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaceNames.add(readClassName(readUnsignedShort()));
+        }
+
+        // 3. 跳过字段与方法, 结构相同
+        skipMembers();
+        skipMembers();
+
+        // 4. 类上的属性, 只关心注解
+        Map<String, Map<String, Object>> annotations = Collections.emptyMap();
+        int attributeCount = readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String attributeName = readUtf8(readUnsignedShort());
+            int length = readInt();
+            int end = this.pos + length;
+            if (RUNTIME_VISIBLE_ANNOTATIONS.equals(attributeName)) {
+                annotations = readAnnotations();
+            }
+            this.pos = end;
+        }
+
+        return new SelfClassMetadata(className, superClassName, Collections.unmodifiableList(interfaceNames),
+                accessFlags, annotations);
+    }
+
+    private void readConstantPool() {
+        int count = readUnsignedShort();
+        this.cpOffsets = new int[count];
+        this.utf8Cache = new String[count];
+        for (int i = 1; i < count; i++) {
+            byte tag = this.bytes[this.pos++];
+            this.cpOffsets[i] = this.pos;
+            switch (tag) {
+                case 1: // Utf8
+                    this.pos += 2 + readUnsignedShort(this.pos);
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    this.pos += 2;
+                    break;
+                case 15: // MethodHandle
+                    this.pos += 3;
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    this.pos += 4;
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    this.pos += 8;
+                    // 占两个槽位
+                    i++;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+            }
+        }
+    }
+
+    private void skipMembers() {
+        int count = readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            // access_flags, name_index, descriptor_index
+            this.pos += 6;
+            int attributeCount = readUnsignedShort();
+            for (int j = 0; j < attributeCount; j++) {
+                this.pos += 2;
+                // 不能写成pos += readInt(), 复合赋值会先取出pos的旧值
+                int length = readInt();
+                this.pos += length;
+            }
+        }
+    }
+
+    private Map<String, Map<String, Object>> readAnnotations() {
+        int count = readUnsignedShort();
+        Map<String, Map<String, Object>> annotations = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String type = descriptorToClassName(readUtf8(readUnsignedShort()));
+            annotations.put(type, readAnnotationAttributes());
+        }
+        return annotations;
+    }
+
+    private Map<String, Object> readAnnotationAttributes() {
+        int pairCount = readUnsignedShort();
+        if (0 == pairCount) {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> attributes = new HashMap<>(pairCount * 2);
+        for (int i = 0; i < pairCount; i++) {
+            String name = readUtf8(readUnsignedShort());
+            attributes.put(name, readElementValue());
+        }
+        return attributes;
+    }
+
+    private Object readElementValue() {
+        char tag = (char) this.bytes[this.pos++];
+        switch (tag) {
+            case 'B':
+                return (byte) readConstantInt(readUnsignedShort());
+            case 'C':
+                return (char) readConstantInt(readUnsignedShort());
+            case 'S':
+                return (short) readConstantInt(readUnsignedShort());
+            case 'I':
+                return readConstantInt(readUnsignedShort());
+            case 'Z':
+                return readConstantInt(readUnsignedShort()) != 0;
+            case 'J':
+                return readConstantLong(readUnsignedShort());
+            case 'F':
+                return Float.intBitsToFloat(readConstantInt(readUnsignedShort()));
+            case 'D':
+                return Double.longBitsToDouble(readConstantLong(readUnsignedShort()));
+            case 's':
+                return readUtf8(readUnsignedShort());
+            case 'e':
+                // type_name_index, const_name_index, 只保留常量名
+                this.pos += 2;
+                return readUtf8(readUnsignedShort());
+            case 'c':
+                return descriptorToClassName(readUtf8(readUnsignedShort()));
+            case '@':
+                // 嵌套注解, 只保留属性
+                this.pos += 2;
+                return readAnnotationAttributes();
+            case '[':
+                int count = readUnsignedShort();
+                List<Object> values = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    values.add(readElementValue());
+                }
+                return values;
+            default:
+                throw new IllegalArgumentException("Unknown element value tag " + tag);
+        }
+    }
+
+    private String readClassName(int classIndex) {
+        // Class条目指向一个Utf8的内部名称, e.g. com/springselfcoding/demo/Foo
+        return readUtf8(readUnsignedShort(this.cpOffsets[classIndex])).replace('/', '.');
+    }
+
+    private String readUtf8(int index) {
+        String value = this.utf8Cache[index];
+        if (null == value) {
+            int offset = this.cpOffsets[index];
+            value = decodeModifiedUtf8(offset + 2, readUnsignedShort(offset));
+            this.utf8Cache[index] = value;
+        }
+        return value;
+    }
+
+    private int readConstantInt(int index) {
+        return readInt(this.cpOffsets[index]);
+    }
+
+    private long readConstantLong(int index) {
+        int offset = this.cpOffsets[index];
+        return ((long) readInt(offset) << 32) | (readInt(offset + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * class文件中的字符串是Modified UTF-8, 与标准UTF-8只在\0和补充字符上有区别
+     */
+    private String decodeModifiedUtf8(int offset, int length) {
+        char[] chars = new char[length];
+        int count = 0;
+        int end = offset + length;
+        while (offset < end) {
+            int c = this.bytes[offset++] & 0xFF;
+            if (c < 0x80) {
+                chars[count++] = (char) c;
+            } else if ((c & 0xE0) == 0xC0) {
+                chars[count++] = (char) (((c & 0x1F) << 6) | (this.bytes[offset++] & 0x3F));
+            } else {
+                chars[count++] = (char) (((c & 0x0F) << 12) | ((this.bytes[offset++] & 0x3F) << 6)
+                        | (this.bytes[offset++] & 0x3F));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * Lcom/foo/Bar; -> com.foo.Bar
+     */
+    private static String descriptorToClassName(String descriptor) {
+        if (descriptor.startsWith("L") && descriptor.endsWith(";")) {
+            descriptor = descriptor.substring(1, descriptor.length() - 1);
+        }
+        return descriptor.replace('/', '.');
+    }
+
+    private int readUnsignedShort() {
+        int value = readUnsignedShort(this.pos);
+        this.pos += 2;
+        return value;
+    }
+
+    private int readInt() {
+        int value = readInt(this.pos);
+        this.pos += 4;
+        return value;
+    }
+
+    private int readUnsignedShort(int offset) {
+        return ((this.bytes[offset] & 0xFF) << 8) | (this.bytes[offset + 1] & 0xFF);
+    }
+
+    private int readInt(int offset) {
+        return ((this.bytes[offset] & 0xFF) << 24) | ((this.bytes[offset + 1] & 0xFF) << 16)
+                | ((this.bytes[offset + 2] & 0xFF) << 8) | (this.bytes[offset + 3] & 0xFF);
+    }
+}
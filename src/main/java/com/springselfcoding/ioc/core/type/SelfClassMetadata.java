@@ -0,0 +1,88 @@
+package com.springselfcoding.ioc.core.type;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 直接从class文件读出的类信息, 读取时不会加载类
+ * 注解只保留RuntimeVisibleAnnotations中的常量属性(基本类型, String, 枚举名)
+ */
+public class SelfClassMetadata {
+
+    private final String className;
+
+    private final String superClassName;
+
+    private final List<String> interfaceNames;
+
+    private final int accessFlags;
+
+    // 注解全类名 -> (属性名 -> 值)
+    private final Map<String, Map<String, Object>> annotations;
+
+    public SelfClassMetadata(String className, String superClassName, List<String> interfaceNames, int accessFlags,
+                             Map<String, Map<String, Object>> annotations) {
+        this.className = className;
+        this.superClassName = superClassName;
+        this.interfaceNames = interfaceNames;
+        this.accessFlags = accessFlags;
+        this.annotations = annotations;
+    }
+
+    public String getClassName() {
+        return this.className;
+    }
+
+    /**
+     * 去掉包名与外部类名后的简单类名
+     */
+    public String getSimpleName() {
+        String name = this.className.substring(this.className.lastIndexOf('.') + 1);
+        return name.substring(name.lastIndexOf('$') + 1);
+    }
+
+    public String getSuperClassName() {
+        return this.superClassName;
+    }
+
+    public List<String> getInterfaceNames() {
+        return this.interfaceNames;
+    }
+
+    public boolean isInterface() {
+        return (this.accessFlags & 0x0200) != 0;
+    }
+
+    public boolean isAbstract() {
+        return (this.accessFlags & 0x0400) != 0;
+    }
+
+    public boolean isAnnotation() {
+        return (this.accessFlags & 0x2000) != 0;
+    }
+
+    /**
+     * 可以直接实例化的具体类
+     */
+    public boolean isConcrete() {
+        return !isInterface() && !isAbstract() && !isAnnotation();
+    }
+
+    public boolean hasAnnotation(String annotationName) {
+        return this.annotations.containsKey(annotationName);
+    }
+
+    /**
+     * 注解上显式声明的属性, 没有注解返回空Map, 使用默认值的属性不会出现在class文件中
+     */
+    public Map<String, Object> getAnnotationAttributes(String annotationName) {
+        Map<String, Object> attributes = this.annotations.get(annotationName);
+        return null == attributes ? Collections.emptyMap() : attributes;
+    }
+
+    @Override
+    public String toString() {
+        return this.className + " " + this.annotations.keySet();
+    }
+}
@@ -0,0 +1,131 @@
+package com.springselfcoding.ioc.core.type;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 基于字节码的classpath扫描, 先读class文件判断是否需要, 整个过程不加载任何类
+ * 1) 每个包通过ClassLoader.getResources找到所有的根, 目录与jar都可以, jar通过NIO的zip FileSystem读取
+ * 2) 多个根之间并行扫描, 同一个根下的class文件也并行解析
+ * 3) 结果按类名排序, 保证注册顺序与文件系统无关
+ */
+public class SelfClassPathScanner {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final ClassLoader classLoader;
+
+    public SelfClassPathScanner(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * 扫描给定包(含子包)下所有满足条件的类
+     */
+    public List<SelfClassMetadata> scan(Collection<String> basePackages, Predicate<SelfClassMetadata> filter) {
+        // 1. 找到所有包的根, 同一个包在多个jar中出现时会有多个根
+        List<URL> roots = new ArrayList<>();
+        for (String basePackage : basePackages) {
+            try {
+                Enumeration<URL> resources = this.classLoader.getResources(basePackage.replace('.', '/'));
+                roots.addAll(Collections.list(resources));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // 2. 并行扫描每个根, 包有重叠时按类名去重
+        Map<String, SelfClassMetadata> result = roots.parallelStream()
+                .flatMap(root -> scanRoot(root, filter).stream())
+                .collect(Collectors.toMap(SelfClassMetadata::getClassName, m -> m, (a, b) -> a, TreeMap::new));
+        return new ArrayList<>(result.values());
+    }
+
+    /**
+     * 按类名读取单个类的信息, 找不到或无法解析时返回null
+     */
+    public SelfClassMetadata readMetadata(String className) {
+        try (InputStream in = this.classLoader.getResourceAsStream(className.replace('.', '/') + CLASS_SUFFIX)) {
+            return null == in ? null : SelfClassFileReader.read(in);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private List<SelfClassMetadata> scanRoot(URL root, Predicate<SelfClassMetadata> filter) {
+        try {
+            if ("file".equals(root.getProtocol())) {
+                return scanDirectory(Paths.get(root.toURI()), filter);
+            }
+            if ("jar".equals(root.getProtocol())) {
+                return scanJar(root, filter);
+            }
+            System.out.println("Unsupported classpath root, skipped: " + root);
+        } catch (IOException | URISyntaxException | IllegalArgumentException | UncheckedIOException e) {
+            e.printStackTrace();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * jar:file:/a/b.jar!/com/foo 打开为zip FileSystem, 用完即关闭
+     */
+    private List<SelfClassMetadata> scanJar(URL root, Predicate<SelfClassMetadata> filter) throws IOException {
+        String spec = root.getPath();
+        int separator = spec.indexOf("!/");
+        Path jarFile = Paths.get(URI.create(spec.substring(0, separator)));
+        // 每次新建FileSystem, 避免与其他地方打开的同一个jar冲突
+        try (FileSystem fileSystem = FileSystems.newFileSystem(jarFile, (ClassLoader) null)) {
+            return scanDirectory(fileSystem.getPath(spec.substring(separator + 1)), filter);
+        }
+    }
+
+    private List<SelfClassMetadata> scanDirectory(Path directory, Predicate<SelfClassMetadata> filter)
+            throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+        List<Path> classFiles;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            classFiles = paths.filter(path -> path.toString().endsWith(CLASS_SUFFIX))
+                    .filter(Files::isRegularFile)
+                    .collect(Collectors.toList());
+        }
+        return classFiles.parallelStream()
+                .map(this::readMetadata)
+                .filter(Objects::nonNull)
+                .filter(filter)
+                .collect(Collectors.toList());
+    }
+
+    private SelfClassMetadata readMetadata(Path classFile) {
+        try {
+            return new SelfClassFileReader(Files.readAllBytes(classFile)).read();
+        } catch (IOException | RuntimeException e) {
+            // 损坏的class文件不影响其他类
+            System.out.println("Failed to read class file " + classFile + ": " + e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.springselfcoding.ioc.index;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * 编译期注解处理器, 把@SelfController/@SelfService的类写入META-INF/self.components
+ * 1) 格式同Properties: 全类名=注解全类名, 启动时BeanDefinitionReader直接读取, 不再扫描目录
+ * 2) 只依赖注解的名称, 这样可以先于其他源码单独编译
+ * 3) 增量编译时会合并上一次生成的索引
+ */
+@SupportedAnnotationTypes({SelfComponentIndexer.CONTROLLER, SelfComponentIndexer.SERVICE})
+public class SelfComponentIndexer extends AbstractProcessor {
+
+    public static final String INDEX_LOCATION = "META-INF/self.components";
+
+    static final String CONTROLLER = "com.springselfcoding.mvcframework.SelfController";
+
+    static final String SERVICE = "com.springselfcoding.mvcframework.SelfService";
+
+    private final Properties components = new Properties();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            String stereotype = annotation.getQualifiedName().toString();
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                // 接口与抽象类无法实例化, 不进索引
+                if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)) {
+                    continue;
+                }
+                String className = processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString();
+                this.components.setProperty(className, stereotype);
+            }
+        }
+
+        if (roundEnv.processingOver() && !this.components.isEmpty()) {
+            writeIndex();
+        }
+        return false;
+    }
+
+    private void writeIndex() {
+        Filer filer = processingEnv.getFiler();
+
+        // 增量编译时合并上一次的索引, 本次编译到的类以本次为准
+        Properties merged = new Properties();
+        try {
+            FileObject existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", INDEX_LOCATION);
+            try (InputStream in = existing.openInputStream()) {
+                merged.load(in);
+            }
+        } catch (IOException e) {
+            // 第一次编译, 没有旧索引
+        }
+        merged.putAll(this.components);
+
+        try {
+            FileObject index = filer.createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_LOCATION);
+            try (OutputStream out = index.openOutputStream()) {
+                merged.store(out, "Generated by " + getClass().getSimpleName());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Failed to write " + INDEX_LOCATION + ": " + e.getMessage());
+        }
+    }
+}
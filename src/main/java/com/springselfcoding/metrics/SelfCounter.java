@@ -0,0 +1,23 @@
+package com.springselfcoding.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 计数器, 基于LongAdder, 高并发下各线程写各自的Cell, 没有锁也没有CAS竞争
+ */
+public class SelfCounter {
+
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        this.count.increment();
+    }
+
+    public void add(long delta) {
+        this.count.add(delta);
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+}
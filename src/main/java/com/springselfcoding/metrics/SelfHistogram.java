@@ -0,0 +1,104 @@
+package com.springselfcoding.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定桶的对数-线性直方图 (与HdrHistogram的桶布局相同), 记录时不分配内存, 不加锁
+ * 1) 小于32的值每个值一个桶; 之后每个2的幂区间平均分为32个桶, 相对误差不超过1/32
+ * 2) 桶数固定覆盖整个long范围, 记录只是一次位运算加一次原子自增
+ * 3) 分位数在读取时遍历所有桶计算, 返回桶的上界
+ */
+public class SelfHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder totalCount = new LongAdder();
+
+    private final LongAdder totalSum = new LongAdder();
+
+    /**
+     * 记录一个值, 负数按0记录
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.counts.incrementAndGet(indexFor(value));
+        this.totalCount.increment();
+        this.totalSum.add(value);
+    }
+
+    public long getCount() {
+        return this.totalCount.sum();
+    }
+
+    public long getSum() {
+        return this.totalSum.sum();
+    }
+
+    /**
+     * 计算多个分位数, 只遍历一次所有桶, 没有记录时全部为0
+     */
+    public long[] getValuesAtPercentiles(double... quantiles) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = this.counts.get(i);
+            total += snapshot[i];
+        }
+
+        long[] values = new long[quantiles.length];
+        if (0 == total) {
+            return values;
+        }
+        long[] ranks = new long[quantiles.length];
+        for (int q = 0; q < quantiles.length; q++) {
+            ranks[q] = Math.max(1, (long) Math.ceil(quantiles[q] * total));
+        }
+
+        boolean[] found = new boolean[quantiles.length];
+        int foundCount = 0;
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT && foundCount < quantiles.length; i++) {
+            if (0 == snapshot[i]) {
+                continue;
+            }
+            cumulative += snapshot[i];
+            for (int q = 0; q < quantiles.length; q++) {
+                if (!found[q] && cumulative >= ranks[q]) {
+                    values[q] = highestEquivalentValue(i);
+                    found[q] = true;
+                    foundCount++;
+                }
+            }
+        }
+        return values;
+    }
+
+    static int indexFor(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * 桶内最大的值
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        long subBucket = SUB_BUCKET_COUNT + (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return (subBucket << shift) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,107 @@
+package com.springselfcoding.metrics;
+
+import com.springselfcoding.aop.aspect.SelfAdvisor;
+import com.springselfcoding.aop.aspect.SelfPointcut;
+import com.springselfcoding.aop.intercept.SelfMethodInterceptor;
+import com.springselfcoding.aop.intercept.SelfMethodInvocation;
+import com.springselfcoding.mvcframework.SelfCounted;
+import com.springselfcoding.mvcframework.SelfTimed;
+
+import java.lang.reflect.Method;
+
+/**
+ * 织入@SelfTimed与@SelfCounted, Controller与Service都适用
+ * 每个方法的指标在创建代理时就从Registry中取出并绑定到拦截器上, 调用时只有nanoTime与原子操作
+ */
+public class SelfMetricsAdvisor implements SelfAdvisor {
+
+    // 位于普通切面的外层, 统计的耗时包含其他切面
+    public static final int ORDER = -100;
+
+    public static final String DEFAULT_TIMER_NAME = "self_method_seconds";
+
+    public static final String DEFAULT_COUNTER_NAME = "self_method_calls_total";
+
+    private static final SelfPointcut POINTCUT = SelfPointcut.annotatedWith(SelfTimed.class)
+            .or(SelfPointcut.annotatedWith(SelfCounted.class));
+
+    private final SelfMetricsRegistry registry;
+
+    public SelfMetricsAdvisor(SelfMetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public SelfPointcut getPointcut() {
+        return POINTCUT;
+    }
+
+    @Override
+    public SelfMethodInterceptor getInterceptor() {
+        // 指标与方法绑定, 只通过getInterceptor(Method, Class)使用
+        return SelfMethodInvocation::proceed;
+    }
+
+    @Override
+    public SelfMethodInterceptor getInterceptor(Method method, Class<?> targetClass) {
+        SelfTimed timed = method.isAnnotationPresent(SelfTimed.class)
+                ? method.getAnnotation(SelfTimed.class) : targetClass.getAnnotation(SelfTimed.class);
+        SelfCounted counted = method.isAnnotationPresent(SelfCounted.class)
+                ? method.getAnnotation(SelfCounted.class) : targetClass.getAnnotation(SelfCounted.class);
+
+        String className = targetClass.getName();
+        String methodName = method.getName();
+        SelfTimer timer = null == timed ? null : this.registry.timer(
+                nameOrDefault(timed.value(), DEFAULT_TIMER_NAME), "class", className, "method", methodName);
+        SelfCounter successes = null;
+        SelfCounter failures = null;
+        if (null != counted) {
+            String name = nameOrDefault(counted.value(), DEFAULT_COUNTER_NAME);
+            successes = this.registry.counter(name, "class", className, "method", methodName, "result", "success");
+            failures = this.registry.counter(name, "class", className, "method", methodName, "result", "error");
+        }
+        return new MetricsInterceptor(timer, successes, failures);
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    private static String nameOrDefault(String name, String defaultName) {
+        return name.trim().isEmpty() ? defaultName : name.trim();
+    }
+
+    private static final class MetricsInterceptor implements SelfMethodInterceptor {
+
+        private final SelfTimer timer;
+
+        private final SelfCounter successes;
+
+        private final SelfCounter failures;
+
+        MetricsInterceptor(SelfTimer timer, SelfCounter successes, SelfCounter failures) {
+            this.timer = timer;
+            this.successes = successes;
+            this.failures = failures;
+        }
+
+        @Override
+        public Object invoke(SelfMethodInvocation invocation) throws Throwable {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = invocation.proceed();
+                failed = false;
+                return result;
+            } finally {
+                if (null != this.timer) {
+                    this.timer.record(System.nanoTime() - start, failed);
+                }
+                if (null != this.successes) {
+                    (failed ? this.failures : this.successes).increment();
+                }
+            }
+        }
+    }
+}
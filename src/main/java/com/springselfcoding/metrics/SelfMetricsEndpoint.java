@@ -0,0 +1,25 @@
+package com.springselfcoding.metrics;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 内置的/metrics端点, 由DispatchServlet像普通Handler一样映射
+ */
+public class SelfMetricsEndpoint {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final SelfMetricsRegistry registry;
+
+    public SelfMetricsEndpoint(SelfMetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 返回的文本由Dispatcher按String写出
+     */
+    public String scrape(HttpServletResponse resp) {
+        resp.setContentType(CONTENT_TYPE);
+        return this.registry.scrape();
+    }
+}
@@ -0,0 +1,151 @@
+package com.springselfcoding.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * 指标注册中心, 容器启动时作为单例注册, 可以直接@SelfAutowired
+ * 1) 指标按 名称 + 标签 唯一, 获取时创建, 之后一直复用; 调用方应在启动时拿到指标对象, 记录时不再查找
+ * 2) 计数器基于LongAdder, 耗时基于固定桶直方图, 记录都不加锁也不分配内存
+ * 3) scrape()输出Prometheus文本格式, 耗时按summary输出p50/p99/p999(秒), 异常次数单独输出为counter
+ * 4) 已有计数的组件 (如缓存) 通过gauge与functionCounter注册取值函数, 只在scrape时读取
+ */
+public class SelfMetricsRegistry {
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.99", "0.999"};
+
+    // 名称 -> (标签 -> 计数器)
+    private final Map<String, Map<String, SelfCounter>> counters = new ConcurrentHashMap<>();
+
+    // 名称 -> (标签 -> 耗时)
+    private final Map<String, Map<String, SelfTimer>> timers = new ConcurrentHashMap<>();
+
+    // 名称 -> (标签 -> 取值函数)
+    private final Map<String, Map<String, DoubleSupplier>> gauges = new ConcurrentHashMap<>();
+
+    // 名称 -> (标签 -> 取值函数), 值只增不减
+    private final Map<String, Map<String, LongSupplier>> functionCounters = new ConcurrentHashMap<>();
+
+    /**
+     * 获取或创建计数器, labels为 key1, value1, key2, value2 ...
+     */
+    public SelfCounter counter(String name, String... labels) {
+        return this.counters.computeIfAbsent(sanitize(name), k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(formatLabels(labels), k -> new SelfCounter());
+    }
+
+    /**
+     * 获取或创建耗时统计, labels为 key1, value1, key2, value2 ...
+     */
+    public SelfTimer timer(String name, String... labels) {
+        return this.timers.computeIfAbsent(sanitize(name), k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(formatLabels(labels), k -> new SelfTimer());
+    }
+
+    /**
+     * 注册瞬时值, 同名同标签时替换之前的取值函数
+     */
+    public void gauge(String name, DoubleSupplier value, String... labels) {
+        this.gauges.computeIfAbsent(sanitize(name), k -> new ConcurrentHashMap<>()).put(formatLabels(labels), value);
+    }
+
+    /**
+     * 注册由外部维护的计数, 同名同标签时替换之前的取值函数
+     */
+    public void functionCounter(String name, LongSupplier value, String... labels) {
+        this.functionCounters.computeIfAbsent(sanitize(name), k -> new ConcurrentHashMap<>())
+                .put(formatLabels(labels), value);
+    }
+
+    /**
+     * 输出为Prometheus文本格式 (version 0.0.4), 按名称与标签排序
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(1024);
+        for (Map.Entry<String, Map<String, SelfCounter>> family : new TreeMap<>(this.counters).entrySet()) {
+            out.append("# TYPE ").append(family.getKey()).append(" counter\n");
+            for (Map.Entry<String, SelfCounter> entry : new TreeMap<>(family.getValue()).entrySet()) {
+                appendSample(out, family.getKey(), entry.getKey(), null, entry.getValue().getCount());
+            }
+        }
+        for (Map.Entry<String, Map<String, LongSupplier>> family : new TreeMap<>(this.functionCounters).entrySet()) {
+            out.append("# TYPE ").append(family.getKey()).append(" counter\n");
+            for (Map.Entry<String, LongSupplier> entry : new TreeMap<>(family.getValue()).entrySet()) {
+                appendSample(out, family.getKey(), entry.getKey(), null, entry.getValue().getAsLong());
+            }
+        }
+        for (Map.Entry<String, Map<String, DoubleSupplier>> family : new TreeMap<>(this.gauges).entrySet()) {
+            out.append("# TYPE ").append(family.getKey()).append(" gauge\n");
+            for (Map.Entry<String, DoubleSupplier> entry : new TreeMap<>(family.getValue()).entrySet()) {
+                appendSample(out, family.getKey(), entry.getKey(), null, entry.getValue().getAsDouble());
+            }
+        }
+        for (Map.Entry<String, Map<String, SelfTimer>> family : new TreeMap<>(this.timers).entrySet()) {
+            String name = family.getKey();
+            Map<String, SelfTimer> sorted = new TreeMap<>(family.getValue());
+
+            out.append("# TYPE ").append(name).append(" summary\n");
+            for (Map.Entry<String, SelfTimer> entry : sorted.entrySet()) {
+                SelfHistogram histogram = entry.getValue().getHistogram();
+                long[] values = histogram.getValuesAtPercentiles(QUANTILES);
+                for (int i = 0; i < values.length; i++) {
+                    appendSample(out, name, entry.getKey(), "quantile=\"" + QUANTILE_LABELS[i] + "\"", values[i] / 1e9);
+                }
+                appendSample(out, name + "_count", entry.getKey(), null, histogram.getCount());
+                appendSample(out, name + "_sum", entry.getKey(), null, histogram.getSum() / 1e9);
+            }
+
+            out.append("# TYPE ").append(name).append("_errors_total counter\n");
+            for (Map.Entry<String, SelfTimer> entry : sorted.entrySet()) {
+                appendSample(out, name + "_errors_total", entry.getKey(), null, entry.getValue().getErrorCount());
+            }
+        }
+        return out.toString();
+    }
+
+    private static void appendSample(StringBuilder out, String name, String labels, String extraLabel, Object value) {
+        out.append(name);
+        if (!labels.isEmpty() || null != extraLabel) {
+            out.append('{').append(labels);
+            if (null != extraLabel) {
+                if (!labels.isEmpty()) {
+                    out.append(',');
+                }
+                out.append(extraLabel);
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    /**
+     * key1="value1",key2="value2", 值中的反斜杠, 引号与换行需要转义
+     */
+    private static String formatLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be key/value pairs");
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                result.append(',');
+            }
+            result.append(sanitize(labels[i])).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return result.toString();
+    }
+
+    /**
+     * 指标与标签名只能包含字母, 数字, 下划线与冒号
+     */
+    private static String sanitize(String name) {
+        return name.replaceAll("[^a-zA-Z0-9_:]", "_");
+    }
+}
@@ -0,0 +1,29 @@
+package com.springselfcoding.metrics;
+
+/**
+ * 耗时统计 = 直方图(纳秒) + 异常计数
+ */
+public class SelfTimer {
+
+    private final SelfHistogram histogram = new SelfHistogram();
+
+    private final SelfCounter errors = new SelfCounter();
+
+    /**
+     * 记录一次耗时, failed为true时同时计入异常
+     */
+    public void record(long nanos, boolean failed) {
+        this.histogram.record(nanos);
+        if (failed) {
+            this.errors.increment();
+        }
+    }
+
+    public SelfHistogram getHistogram() {
+        return this.histogram;
+    }
+
+    public long getErrorCount() {
+        return this.errors.getCount();
+    }
+}
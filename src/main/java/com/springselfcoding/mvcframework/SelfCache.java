@@ -0,0 +1,37 @@
+package com.springselfcoding.mvcframework;
+
+import java.lang.annotation.*;
+
+/**
+ * 缓存Service方法的返回值, key为全部参数值, 同一个key并发未命中时只调用一次方法
+ * 返回null或抛出异常时不缓存, 不能标注在void方法上
+ * 命名的缓存可以通过容器中的selfCacheManager手动失效
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SelfCache {
+
+    // 缓存名称, 默认为 类名.方法名
+    String value() default "";
+
+    // 有效期(毫秒), 0表示不过期
+    long ttl() default 0;
+
+    // 堆内存储的最大条目数
+    long maxEntries() default 10000;
+
+    // 堆外存储的最大字节数
+    long maxBytes() default 16 * 1024 * 1024;
+
+    Store store() default Store.HEAP;
+
+    enum Store {
+
+        // 直接持有返回值对象
+        HEAP,
+
+        // 返回值序列化为JSON后放在堆外, 读取时反序列化为方法声明的返回类型
+        OFF_HEAP
+    }
+}
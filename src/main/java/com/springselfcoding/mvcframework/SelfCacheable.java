@@ -0,0 +1,18 @@
+package com.springselfcoding.mvcframework;
+
+import java.lang.annotation.*;
+
+/**
+ * 缓存Handler写出的响应字节, 只对GET与HEAD请求生效
+ * 以路由与绑定的参数值为key, 命中时不再调用Handler也不再序列化, 并支持ETag/If-None-Match返回304
+ * Handler的结果必须只取决于@SelfRequestParam与@SelfPathVariable参数, 不能有Servlet对象或请求体参数
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SelfCacheable {
+
+    // 缓存的有效期(毫秒)
+    long ttl() default 60000;
+
+}
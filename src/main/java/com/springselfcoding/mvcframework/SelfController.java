@@ -8,4 +8,7 @@ import java.lang.annotation.*;
 public @interface SelfController {
 
     String value() default "";
+
+    // 延迟加载, 第一次getBean时才创建
+    boolean lazy() default false;
 }
\ No newline at end of file
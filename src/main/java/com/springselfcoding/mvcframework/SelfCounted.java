@@ -0,0 +1,16 @@
+package com.springselfcoding.mvcframework;
+
+import java.lang.annotation.*;
+
+/**
+ * 记录方法调用次数, 按正常返回与抛出异常分开计数, 标在类上时对所有public方法生效
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SelfCounted {
+
+    // 指标名称, 默认self_method_calls_total, 以class, method与result区分
+    String value() default "";
+
+}
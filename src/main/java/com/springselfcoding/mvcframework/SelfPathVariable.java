@@ -0,0 +1,12 @@
+package com.springselfcoding.mvcframework;
+
+import java.lang.annotation.*;
+
+@Target({ElementType.PARAMETER})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SelfPathVariable {
+
+    String value() default "";
+
+}
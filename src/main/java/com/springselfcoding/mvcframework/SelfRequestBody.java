@@ -0,0 +1,16 @@
+package com.springselfcoding.mvcframework;
+
+import java.lang.annotation.*;
+
+/**
+ * 把JSON请求体绑定到参数上, 支持POJO, record, 集合与Map (包括泛型)
+ */
+@Target({ElementType.PARAMETER})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SelfRequestBody {
+
+    // 为true时请求体为空返回400, 为false时传入null
+    boolean required() default true;
+
+}
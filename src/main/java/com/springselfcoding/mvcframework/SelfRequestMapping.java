@@ -9,4 +9,16 @@ public @interface SelfRequestMapping {
 
     String value() default "";
 
+    // 限定的HTTP方法, 为空时不限定; 方法上没有声明时使用Controller上的声明
+    SelfRequestMethod[] method() default {};
+
+    // Handler返回CompletionStage时的异步超时(毫秒), 0表示不超时; 方法上小于0时使用Controller上的声明, 都小于0时使用全局配置async.timeout
+    long asyncTimeout() default -1;
+
+    // 在虚拟线程上执行Handler, 适合阻塞的JDBC/HTTP调用; 标在Controller上时对其所有路由生效
+    boolean virtualThread() default false;
+
+    // 同时处理的最大请求数, 超出时返回503, 0表示不限制; 方法上小于0时使用Controller上的声明, 都小于0时使用配置limit.maxConcurrency
+    int maxConcurrency() default -1;
+
 }
\ No newline at end of file
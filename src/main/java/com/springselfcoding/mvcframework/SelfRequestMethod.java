@@ -0,0 +1,24 @@
+package com.springselfcoding.mvcframework;
+
+/**
+ * @SelfRequestMapping可以限定的HTTP方法
+ */
+public enum SelfRequestMethod {
+
+    GET, HEAD, POST, PUT, PATCH, DELETE, OPTIONS, TRACE;
+
+    private static final SelfRequestMethod[] VALUES = values();
+
+    /**
+     * 不认识的方法返回null
+     */
+    public static SelfRequestMethod resolve(String method) {
+        // 不走valueOf, 避免不认识的方法抛异常
+        for (SelfRequestMethod value : VALUES) {
+            if (value.name().equals(method)) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
@@ -7,6 +7,13 @@ import java.lang.annotation.*;
 @Documented
 public @interface SelfRequestParam {
 
+    // 表示没有默认值, 注解属性不能为null, 用一个不可能出现的字符串代替
+    String DEFAULT_NONE = "\n\t\t\n\t\t\n\n\t\t\t\t\n";
+
     String value() default "";
 
-}
\ No newline at end of file
+    boolean required() default true;
+
+    String defaultValue() default DEFAULT_NONE;
+
+}
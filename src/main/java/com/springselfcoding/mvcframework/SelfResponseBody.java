@@ -0,0 +1,14 @@
+package com.springselfcoding.mvcframework;
+
+import java.lang.annotation.*;
+
+/**
+ * 返回值总是按JSON写出, String也写成JSON字符串; 加在类上时对所有方法生效
+ * 没有该注解时按返回类型挑选写出方式, 见SelfReturnValueHandlerComposite
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SelfResponseBody {
+
+}
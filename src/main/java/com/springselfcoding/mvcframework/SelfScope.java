@@ -0,0 +1,13 @@
+package com.springselfcoding.mvcframework;
+
+import java.lang.annotation.*;
+
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SelfScope {
+
+    // singleton / prototype / request / thread
+    String value() default "singleton";
+
+}
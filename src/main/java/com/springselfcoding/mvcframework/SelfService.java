@@ -9,4 +9,7 @@ public @interface SelfService {
 
     String value() default "";
 
+    // 延迟加载, 第一次getBean时才创建
+    boolean lazy() default false;
+
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.springselfcoding.mvcframework;
+
+import java.lang.annotation.*;
+
+/**
+ * 记录方法耗时分布(p50/p99/p999)与异常次数, 标在类上时对所有public方法生效
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SelfTimed {
+
+    // 指标名称, 默认self_method_seconds, 以class与method区分
+    String value() default "";
+
+}
@@ -0,0 +1,16 @@
+package com.springselfcoding.mvcframework.bind;
+
+import com.springselfcoding.mvcframework.router.SelfRouteMatch;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 已经绑定到某个具体参数的解析器, 注解, 参数名, 类型转换都在创建时确定
+ * 请求时只做取值与转换
+ */
+@FunctionalInterface
+public interface SelfArgumentResolver {
+
+    Object resolve(HttpServletRequest req, HttpServletResponse resp, SelfRouteMatch<?> match) throws Exception;
+}
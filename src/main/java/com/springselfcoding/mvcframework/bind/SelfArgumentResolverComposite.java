@@ -0,0 +1,60 @@
+package com.springselfcoding.mvcframework.bind;
+
+import com.springselfcoding.mvcframework.codec.SelfJsonCodec;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 参数解析策略链, 在HandlerMapping阶段为每个Handler方法一次性算出每个参数的解析器
+ */
+public class SelfArgumentResolverComposite {
+
+    private final List<SelfHandlerMethodArgumentResolver> argumentResolvers = new ArrayList<>();
+
+    public SelfArgumentResolverComposite() {
+        this(new SelfJsonCodec());
+    }
+
+    /**
+     * 默认策略: Servlet对象, @SelfRequestParam, @SelfPathVariable, @SelfRequestBody
+     */
+    public SelfArgumentResolverComposite(SelfJsonCodec jsonCodec) {
+        this.argumentResolvers.add(new SelfServletArgumentResolver());
+        this.argumentResolvers.add(new SelfRequestParamArgumentResolver());
+        this.argumentResolvers.add(new SelfPathVariableArgumentResolver());
+        this.argumentResolvers.add(new SelfRequestBodyArgumentResolver(jsonCodec));
+    }
+
+    /**
+     * 添加自定义策略, 优先于默认策略
+     */
+    public void addFirst(SelfHandlerMethodArgumentResolver argumentResolver) {
+        this.argumentResolvers.add(0, argumentResolver);
+    }
+
+    public void addLast(SelfHandlerMethodArgumentResolver argumentResolver) {
+        this.argumentResolvers.add(argumentResolver);
+    }
+
+    /**
+     * 为方法的每个参数挑选解析器, 有参数无法解析时直接抛异常
+     */
+    public SelfArgumentResolver[] createResolvers(Method method, String[] routeVariableNames) {
+        SelfArgumentResolver[] resolvers = new SelfArgumentResolver[method.getParameterCount()];
+        for (int i = 0; i < resolvers.length; i++) {
+            SelfMethodParameter parameter = new SelfMethodParameter(method, i, routeVariableNames);
+            for (SelfHandlerMethodArgumentResolver argumentResolver : this.argumentResolvers) {
+                if (argumentResolver.supportsParameter(parameter)) {
+                    resolvers[i] = argumentResolver.createResolver(parameter);
+                    break;
+                }
+            }
+            if (null == resolvers[i]) {
+                throw new IllegalStateException("No argument resolver for " + parameter);
+            }
+        }
+        return resolvers;
+    }
+}
@@ -0,0 +1,15 @@
+package com.springselfcoding.mvcframework.bind;
+
+/**
+ * 请求参数缺失或者类型转换失败, 对应400
+ */
+public class SelfBindException extends RuntimeException {
+
+    public SelfBindException(String message) {
+        super(message);
+    }
+
+    public SelfBindException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
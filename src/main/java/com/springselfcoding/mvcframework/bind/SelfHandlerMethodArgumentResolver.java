@@ -0,0 +1,14 @@
+package com.springselfcoding.mvcframework.bind;
+
+/**
+ * 参数解析策略, 可插拔, 在HandlerMapping阶段按顺序挑选第一个支持该参数的策略
+ */
+public interface SelfHandlerMethodArgumentResolver {
+
+    boolean supportsParameter(SelfMethodParameter parameter);
+
+    /**
+     * 为参数创建绑定好的解析器, 校验失败直接抛异常, 让问题在启动时暴露
+     */
+    SelfArgumentResolver createResolver(SelfMethodParameter parameter);
+}
@@ -0,0 +1,79 @@
+package com.springselfcoding.mvcframework.bind;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.Type;
+
+/**
+ * Handler方法的一个参数, 只在HandlerMapping阶段使用, 用于挑选并创建ArgumentResolver
+ */
+public class SelfMethodParameter {
+
+    private final Method method;
+
+    private final int index;
+
+    private final Parameter parameter;
+
+    // 所属路由pattern中的路径变量名, 按出现顺序排列
+    private final String[] routeVariableNames;
+
+    public SelfMethodParameter(Method method, int index, String[] routeVariableNames) {
+        this.method = method;
+        this.index = index;
+        this.parameter = method.getParameters()[index];
+        this.routeVariableNames = routeVariableNames;
+    }
+
+    public Method getMethod() {
+        return this.method;
+    }
+
+    public int getIndex() {
+        return this.index;
+    }
+
+    public Class<?> getParameterType() {
+        return this.parameter.getType();
+    }
+
+    /**
+     * 带泛型信息的参数类型, e.g. List<Item>
+     */
+    public Type getGenericParameterType() {
+        return this.parameter.getParameterizedType();
+    }
+
+    public <A extends Annotation> A getParameterAnnotation(Class<A> annotationType) {
+        return this.parameter.getAnnotation(annotationType);
+    }
+
+    public boolean hasParameterAnnotation(Class<? extends Annotation> annotationType) {
+        return this.parameter.isAnnotationPresent(annotationType);
+    }
+
+    /**
+     * 编译时加了-parameters才有真实参数名, 否则返回null
+     */
+    public String getParameterName() {
+        return this.parameter.isNamePresent() ? this.parameter.getName() : null;
+    }
+
+    /**
+     * 路径变量在路由中的位置, 没有则返回-1
+     */
+    public int getRouteVariableIndex(String name) {
+        for (int i = 0; i < this.routeVariableNames.length; i++) {
+            if (name.equals(this.routeVariableNames[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "parameter " + this.index + " of " + this.method;
+    }
+}
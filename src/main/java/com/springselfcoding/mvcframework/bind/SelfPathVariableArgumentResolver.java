@@ -0,0 +1,48 @@
+package com.springselfcoding.mvcframework.bind;
+
+import com.springselfcoding.mvcframework.SelfPathVariable;
+
+/**
+ * 处理@SelfPathVariable, 变量在路由中的位置在创建时确定, 请求时按下标取值
+ */
+public class SelfPathVariableArgumentResolver implements SelfHandlerMethodArgumentResolver {
+
+    @Override
+    public boolean supportsParameter(SelfMethodParameter parameter) {
+        return parameter.hasParameterAnnotation(SelfPathVariable.class);
+    }
+
+    @Override
+    public SelfArgumentResolver createResolver(SelfMethodParameter parameter) {
+        SelfPathVariable pathVariable = parameter.getParameterAnnotation(SelfPathVariable.class);
+
+        String name = pathVariable.value().trim();
+        if ("".equals(name)) {
+            name = parameter.getParameterName();
+        }
+        if (null == name) {
+            throw new IllegalStateException("Path variable name is not specified for " + parameter);
+        }
+
+        int index = parameter.getRouteVariableIndex(name);
+        if (index < 0) {
+            throw new IllegalStateException("Path variable '" + name + "' is not in the route of " + parameter);
+        }
+
+        SelfTypeConverter converter = SelfTypeConverter.forType(parameter.getParameterType());
+        if (null == converter) {
+            throw new IllegalStateException("Unsupported path variable type "
+                    + parameter.getParameterType().getName() + " for " + parameter);
+        }
+
+        String variableName = name;
+        return (req, resp, match) -> {
+            String value = match.getVariable(index);
+            try {
+                return converter.convert(value);
+            } catch (IllegalArgumentException e) {
+                throw new SelfBindException("Failed to convert path variable '" + variableName + "': " + value, e);
+            }
+        };
+    }
+}
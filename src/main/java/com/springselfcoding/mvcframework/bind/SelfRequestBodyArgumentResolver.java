@@ -0,0 +1,45 @@
+package com.springselfcoding.mvcframework.bind;
+
+import com.springselfcoding.mvcframework.SelfRequestBody;
+import com.springselfcoding.mvcframework.codec.SelfJsonCodec;
+import com.springselfcoding.mvcframework.codec.SelfJsonException;
+import com.springselfcoding.mvcframework.codec.SelfJsonTypeCodec;
+
+/**
+ * 处理@SelfRequestBody, 把JSON请求体直接从输入流解析为参数类型
+ * 参数的Codec (包括泛型) 在创建时确定, 请求时不再反射
+ */
+public class SelfRequestBodyArgumentResolver implements SelfHandlerMethodArgumentResolver {
+
+    private final SelfJsonCodec jsonCodec;
+
+    public SelfRequestBodyArgumentResolver(SelfJsonCodec jsonCodec) {
+        this.jsonCodec = jsonCodec;
+    }
+
+    @Override
+    public boolean supportsParameter(SelfMethodParameter parameter) {
+        return parameter.hasParameterAnnotation(SelfRequestBody.class);
+    }
+
+    @Override
+    public SelfArgumentResolver createResolver(SelfMethodParameter parameter) {
+        boolean required = parameter.getParameterAnnotation(SelfRequestBody.class).required();
+        if (!required && parameter.getParameterType().isPrimitive()) {
+            throw new IllegalStateException("Optional request body cannot be primitive for " + parameter);
+        }
+        SelfJsonTypeCodec<Object> codec = this.jsonCodec.codecFor(parameter.getGenericParameterType());
+        return (req, resp, match) -> {
+            Object body;
+            try {
+                body = this.jsonCodec.read(req.getInputStream(), codec);
+            } catch (SelfJsonException e) {
+                throw new SelfBindException("Malformed JSON request body: " + e.getMessage(), e);
+            }
+            if (null == body && required) {
+                throw new SelfBindException("Required request body is missing");
+            }
+            return body;
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package com.springselfcoding.mvcframework.bind;
+
+import com.springselfcoding.mvcframework.SelfRequestParam;
+
+/**
+ * 处理@SelfRequestParam, 支持required与defaultValue
+ * 参数名, 类型转换器, 默认值的转换结果都在创建时确定, 请求时只调用一次req.getParameter
+ */
+public class SelfRequestParamArgumentResolver implements SelfHandlerMethodArgumentResolver {
+
+    @Override
+    public boolean supportsParameter(SelfMethodParameter parameter) {
+        return parameter.hasParameterAnnotation(SelfRequestParam.class);
+    }
+
+    @Override
+    public SelfArgumentResolver createResolver(SelfMethodParameter parameter) {
+        SelfRequestParam requestParam = parameter.getParameterAnnotation(SelfRequestParam.class);
+        Class<?> type = parameter.getParameterType();
+
+        // 1. 参数名, 没有别名就用真实参数名
+        String name = requestParam.value().trim();
+        if ("".equals(name)) {
+            name = parameter.getParameterName();
+        }
+        if (null == name) {
+            throw new IllegalStateException("Request parameter name is not specified for " + parameter);
+        }
+
+        // 2. 类型转换器
+        SelfTypeConverter converter = SelfTypeConverter.forType(type);
+        if (null == converter) {
+            throw new IllegalStateException("Unsupported request parameter type " + type.getName() + " for " + parameter);
+        }
+
+        // 3. 默认值提前转换好
+        boolean hasDefault = !SelfRequestParam.DEFAULT_NONE.equals(requestParam.defaultValue());
+        Object defaultValue = hasDefault ? converter.convert(requestParam.defaultValue()) : null;
+        boolean required = requestParam.required() && !hasDefault;
+        if (!required && null == defaultValue && type.isPrimitive()) {
+            throw new IllegalStateException("Optional primitive " + parameter + " needs a defaultValue");
+        }
+
+        String paramName = name;
+        return (req, resp, match) -> {
+            String value = req.getParameter(paramName);
+            if (null == value) {
+                if (required) {
+                    throw new SelfBindException("Required request parameter '" + paramName + "' is not present");
+                }
+                return defaultValue;
+            }
+            try {
+                return converter.convert(value);
+            } catch (IllegalArgumentException e) {
+                throw new SelfBindException("Failed to convert request parameter '" + paramName + "': " + value, e);
+            }
+        };
+    }
+}
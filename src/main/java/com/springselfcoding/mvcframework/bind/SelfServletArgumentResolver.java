@@ -0,0 +1,24 @@
+package com.springselfcoding.mvcframework.bind;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * 直接注入HttpServletRequest / HttpServletResponse
+ */
+public class SelfServletArgumentResolver implements SelfHandlerMethodArgumentResolver {
+
+    @Override
+    public boolean supportsParameter(SelfMethodParameter parameter) {
+        Class<?> type = parameter.getParameterType();
+        return ServletRequest.class.isAssignableFrom(type) || ServletResponse.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public SelfArgumentResolver createResolver(SelfMethodParameter parameter) {
+        if (ServletRequest.class.isAssignableFrom(parameter.getParameterType())) {
+            return (req, resp, match) -> req;
+        }
+        return (req, resp, match) -> resp;
+    }
+}
@@ -0,0 +1,101 @@
+package com.springselfcoding.mvcframework.bind;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * String到目标类型的转换器, 每个参数在HandlerMapping阶段挑选一次
+ * 支持String, 基本类型及其包装类, BigDecimal/BigInteger, 枚举
+ */
+@FunctionalInterface
+public interface SelfTypeConverter {
+
+    /**
+     * 转换失败抛出IllegalArgumentException
+     */
+    Object convert(String source);
+
+    /**
+     * 根据目标类型选择转换器, 不支持的类型返回null
+     */
+    static SelfTypeConverter forType(Class<?> type) {
+        if (String.class == type || Object.class == type || CharSequence.class == type) {
+            return source -> source;
+        }
+        if (int.class == type || Integer.class == type) {
+            return source -> Integer.valueOf(source.trim());
+        }
+        if (long.class == type || Long.class == type) {
+            return source -> Long.valueOf(source.trim());
+        }
+        if (boolean.class == type || Boolean.class == type) {
+            return SelfTypeConverter::toBoolean;
+        }
+        if (double.class == type || Double.class == type) {
+            return source -> Double.valueOf(source.trim());
+        }
+        if (float.class == type || Float.class == type) {
+            return source -> Float.valueOf(source.trim());
+        }
+        if (short.class == type || Short.class == type) {
+            return source -> Short.valueOf(source.trim());
+        }
+        if (byte.class == type || Byte.class == type) {
+            return source -> Byte.valueOf(source.trim());
+        }
+        if (char.class == type || Character.class == type) {
+            return source -> {
+                if (source.length() != 1) {
+                    throw new IllegalArgumentException("Can not convert '" + source + "' to char");
+                }
+                return source.charAt(0);
+            };
+        }
+        if (BigDecimal.class == type) {
+            return source -> new BigDecimal(source.trim());
+        }
+        if (BigInteger.class == type) {
+            return source -> new BigInteger(source.trim());
+        }
+        if (type.isEnum()) {
+            return forEnum(type);
+        }
+        return null;
+    }
+
+    /**
+     * 枚举常量提前放入Map, 先精确匹配, 再按大写匹配
+     */
+    private static SelfTypeConverter forEnum(Class<?> type) {
+        Map<String, Object> constants = new HashMap<>();
+        for (Object constant : type.getEnumConstants()) {
+            constants.put(((Enum<?>) constant).name(), constant);
+        }
+        return source -> {
+            Object value = constants.get(source);
+            if (null == value) {
+                value = constants.get(source.trim().toUpperCase(Locale.ROOT));
+            }
+            if (null == value) {
+                throw new IllegalArgumentException("No enum constant " + type.getName() + "." + source);
+            }
+            return value;
+        };
+    }
+
+    private static Object toBoolean(String source) {
+        String value = source.trim();
+        if ("true".equalsIgnoreCase(value) || "on".equalsIgnoreCase(value)
+                || "yes".equalsIgnoreCase(value) || "1".equals(value)) {
+            return Boolean.TRUE;
+        }
+        if ("false".equalsIgnoreCase(value) || "off".equalsIgnoreCase(value)
+                || "no".equalsIgnoreCase(value) || "0".equals(value)) {
+            return Boolean.FALSE;
+        }
+        throw new IllegalArgumentException("Can not convert '" + source + "' to boolean");
+    }
+}
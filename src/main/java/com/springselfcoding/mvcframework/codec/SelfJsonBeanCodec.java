@@ -0,0 +1,377 @@
+package com.springselfcoding.mvcframework.codec;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * POJO与record的Codec, 每个类型在第一次使用时生成一次读写计划, 之后不再反射
+ * 1) 普通类: 父类到子类的全部非static, 非transient字段, 通过无参构造器创建; record: 按组件与规范构造器
+ * 2) 字段读写提前转换为MethodHandle, int/long/double/boolean字段使用对应签名, 不装箱
+ * 3) 写出时字段名连同引号, 逗号, 冒号已经编码好, 只需复制字节
+ * 4) 读取时按字节匹配字段名, 顺序与写出顺序一致时每个字段只比较一次; 未知字段跳过
+ */
+final class SelfJsonBeanCodec implements SelfJsonTypeCodec<Object> {
+
+    private static final int KIND_OBJECT = 0;
+
+    private static final int KIND_INT = 1;
+
+    private static final int KIND_LONG = 2;
+
+    private static final int KIND_DOUBLE = 3;
+
+    private static final int KIND_BOOLEAN = 4;
+
+    private final Class<?> beanClass;
+
+    private final Property[] properties;
+
+    private final SelfJsonNames names;
+
+    // 普通类为 ()Object, record为 (Object[])Object; 不能实例化时为null, 只能写出
+    private final MethodHandle constructor;
+
+    private final boolean record;
+
+    private SelfJsonBeanCodec(Class<?> beanClass, Property[] properties, MethodHandle constructor, boolean record) {
+        this.beanClass = beanClass;
+        this.properties = properties;
+        this.constructor = constructor;
+        this.record = record;
+        String[] names = new String[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            names[i] = properties[i].name;
+        }
+        this.names = new SelfJsonNames(names);
+    }
+
+    static SelfJsonBeanCodec forClass(SelfJsonCodec jsonCodec, Class<?> beanClass) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            return beanClass.isRecord() ? forRecord(jsonCodec, lookup, beanClass) : forBean(jsonCodec, lookup, beanClass);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new SelfJsonException("Cannot build JSON codec for " + beanClass.getName(), e);
+        }
+    }
+
+    private static SelfJsonBeanCodec forBean(SelfJsonCodec jsonCodec, MethodHandles.Lookup lookup, Class<?> beanClass)
+            throws IllegalAccessException {
+        // 1. 父类的字段在前, 子类同名字段覆盖不了已有的名称
+        Deque<Class<?>> hierarchy = new ArrayDeque<>();
+        for (Class<?> c = beanClass; null != c && Object.class != c; c = c.getSuperclass()) {
+            hierarchy.push(c);
+        }
+        Set<String> seen = new LinkedHashSet<>();
+        List<Property> properties = new ArrayList<>();
+        for (Class<?> c : hierarchy) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()
+                        || !seen.add(field.getName())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                MethodHandle getter = lookup.unreflectGetter(field);
+                // final字段只写不读
+                MethodHandle setter = Modifier.isFinal(modifiers) ? null : lookup.unreflectSetter(field);
+                properties.add(new Property(jsonCodec, field.getName(), field.getType(), field.getGenericType(),
+                        getter, setter));
+            }
+        }
+
+        // 2. 无参构造器
+        MethodHandle constructor = null;
+        if (!Modifier.isAbstract(beanClass.getModifiers())) {
+            try {
+                Constructor<?> noArg = beanClass.getDeclaredConstructor();
+                noArg.setAccessible(true);
+                constructor = lookup.unreflectConstructor(noArg).asType(MethodType.methodType(Object.class));
+            } catch (NoSuchMethodException e) {
+                // 没有无参构造器的类型只能写出
+            }
+        }
+        return new SelfJsonBeanCodec(beanClass, properties.toArray(new Property[0]), constructor, false);
+    }
+
+    private static SelfJsonBeanCodec forRecord(SelfJsonCodec jsonCodec, MethodHandles.Lookup lookup, Class<?> recordClass)
+            throws IllegalAccessException {
+        RecordComponent[] components = recordClass.getRecordComponents();
+        Property[] properties = new Property[components.length];
+        Class<?>[] parameterTypes = new Class<?>[components.length];
+        for (int i = 0; i < components.length; i++) {
+            RecordComponent component = components[i];
+            Method accessor = component.getAccessor();
+            accessor.setAccessible(true);
+            properties[i] = new Property(jsonCodec, component.getName(), component.getType(), component.getGenericType(),
+                    lookup.unreflect(accessor), null);
+            parameterTypes[i] = component.getType();
+        }
+        try {
+            Constructor<?> canonical = recordClass.getDeclaredConstructor(parameterTypes);
+            canonical.setAccessible(true);
+            MethodHandle constructor = lookup.unreflectConstructor(canonical)
+                    .asSpreader(Object[].class, components.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+            return new SelfJsonBeanCodec(recordClass, properties, constructor, true);
+        } catch (NoSuchMethodException e) {
+            throw new SelfJsonException("No canonical constructor in " + recordClass.getName(), e);
+        }
+    }
+
+    @Override
+    public Object read(SelfJsonReader reader) throws IOException {
+        if (reader.readNullIfPresent()) {
+            return null;
+        }
+        if (null == this.constructor) {
+            throw reader.error("Cannot instantiate " + this.beanClass.getName());
+        }
+        return this.record ? readRecord(reader) : readBean(reader);
+    }
+
+    private Object readBean(SelfJsonReader reader) throws IOException {
+        Object bean;
+        try {
+            bean = (Object) this.constructor.invokeExact();
+        } catch (Throwable t) {
+            throw new SelfJsonException("Cannot instantiate " + this.beanClass.getName(), t);
+        }
+        Property[] properties = this.properties;
+        reader.expect('{');
+        int hint = 0;
+        for (boolean first = true; reader.hasNext('}', first); first = false) {
+            int index = reader.readName(this.names, hint);
+            if (index < 0 || null == properties[index].setter) {
+                reader.skipValue();
+                continue;
+            }
+            properties[index].read(reader, bean);
+            hint = index + 1;
+        }
+        return bean;
+    }
+
+    private Object readRecord(SelfJsonReader reader) throws IOException {
+        Property[] properties = this.properties;
+        Object[] args = new Object[properties.length];
+        reader.expect('{');
+        int hint = 0;
+        for (boolean first = true; reader.hasNext('}', first); first = false) {
+            int index = reader.readName(this.names, hint);
+            if (index < 0) {
+                reader.skipValue();
+                continue;
+            }
+            args[index] = properties[index].codec().read(reader);
+            hint = index + 1;
+        }
+        // 缺少的基本类型组件取默认值
+        for (int i = 0; i < args.length; i++) {
+            if (null == args[i] && properties[i].rawType.isPrimitive()) {
+                args[i] = defaultValue(properties[i].rawType);
+            }
+        }
+        try {
+            return (Object) this.constructor.invokeExact(args);
+        } catch (Throwable t) {
+            throw new SelfJsonException("Cannot instantiate " + this.beanClass.getName(), t);
+        }
+    }
+
+    @Override
+    public void write(SelfJsonWriter writer, Object bean) throws IOException {
+        Property[] properties = this.properties;
+        if (0 == properties.length) {
+            writer.writeByte('{');
+            writer.writeByte('}');
+            return;
+        }
+        writer.beginObject();
+        for (int i = 0; i < properties.length; i++) {
+            Property property = properties[i];
+            // 第一个字段跳过前面的逗号
+            if (0 == i) {
+                writer.writeRaw(property.prefix, 1, property.prefix.length - 1);
+            } else {
+                writer.writeRaw(property.prefix);
+            }
+            property.write(writer, bean);
+        }
+        writer.endObject();
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (boolean.class == type) {
+            return false;
+        }
+        if (char.class == type) {
+            return '\0';
+        }
+        if (long.class == type) {
+            return 0L;
+        }
+        if (double.class == type) {
+            return 0D;
+        }
+        if (float.class == type) {
+            return 0F;
+        }
+        if (short.class == type) {
+            return (short) 0;
+        }
+        if (byte.class == type) {
+            return (byte) 0;
+        }
+        return 0;
+    }
+
+    /**
+     * 一个字段 (或record组件) 的读写计划
+     */
+    private static final class Property {
+
+        private final SelfJsonCodec jsonCodec;
+
+        private final String name;
+
+        // ,"name":
+        private final byte[] prefix;
+
+        private final Class<?> rawType;
+
+        private final Type genericType;
+
+        private final int kind;
+
+        // 按kind统一签名: (Object)int, (Object)long, (Object)double, (Object)boolean, (Object)Object
+        private final MethodHandle getter;
+
+        // 按kind统一签名: (Object,int)void 等, 只写的字段为null
+        private final MethodHandle setter;
+
+        // 按需解析, 以支持递归类型
+        private SelfJsonTypeCodec<Object> codec;
+
+        Property(SelfJsonCodec jsonCodec, String name, Class<?> rawType, Type genericType,
+                 MethodHandle getter, MethodHandle setter) {
+            this.jsonCodec = jsonCodec;
+            this.name = name;
+            this.prefix = (",\"" + escape(name) + "\":").getBytes(StandardCharsets.UTF_8);
+            this.rawType = rawType;
+            this.genericType = genericType;
+            this.kind = kindOf(rawType);
+            Class<?> valueType = valueType(this.kind);
+            this.getter = getter.asType(MethodType.methodType(valueType, Object.class));
+            this.setter = null == setter ? null : setter.asType(MethodType.methodType(void.class, Object.class, valueType));
+        }
+
+        void write(SelfJsonWriter writer, Object bean) throws IOException {
+            try {
+                switch (this.kind) {
+                    case KIND_INT:
+                        writer.writeInt((int) this.getter.invokeExact(bean));
+                        break;
+                    case KIND_LONG:
+                        writer.writeLong((long) this.getter.invokeExact(bean));
+                        break;
+                    case KIND_DOUBLE:
+                        writer.writeDouble((double) this.getter.invokeExact(bean));
+                        break;
+                    case KIND_BOOLEAN:
+                        writer.writeBoolean((boolean) this.getter.invokeExact(bean));
+                        break;
+                    default:
+                        SelfJsonCodecs.writeNullable(writer, codec(), (Object) this.getter.invokeExact(bean));
+                }
+            } catch (IOException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new SelfJsonException("Cannot read property '" + this.name + "'", t);
+            }
+        }
+
+        void read(SelfJsonReader reader, Object bean) throws IOException {
+            try {
+                switch (this.kind) {
+                    case KIND_INT:
+                        this.setter.invokeExact(bean, reader.readInt());
+                        break;
+                    case KIND_LONG:
+                        this.setter.invokeExact(bean, reader.readLong());
+                        break;
+                    case KIND_DOUBLE:
+                        this.setter.invokeExact(bean, reader.readDouble());
+                        break;
+                    case KIND_BOOLEAN:
+                        this.setter.invokeExact(bean, reader.readBoolean());
+                        break;
+                    default:
+                        this.setter.invokeExact(bean, codec().read(reader));
+                }
+            } catch (IOException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new SelfJsonException("Cannot set property '" + this.name + "'", t);
+            }
+        }
+
+        SelfJsonTypeCodec<Object> codec() {
+            SelfJsonTypeCodec<Object> codec = this.codec;
+            if (null == codec) {
+                codec = this.jsonCodec.codecFor(this.genericType);
+                this.codec = codec;
+            }
+            return codec;
+        }
+
+        private static int kindOf(Class<?> type) {
+            if (int.class == type) {
+                return KIND_INT;
+            }
+            if (long.class == type) {
+                return KIND_LONG;
+            }
+            if (double.class == type) {
+                return KIND_DOUBLE;
+            }
+            if (boolean.class == type) {
+                return KIND_BOOLEAN;
+            }
+            return KIND_OBJECT;
+        }
+
+        private static Class<?> valueType(int kind) {
+            switch (kind) {
+                case KIND_INT:
+                    return int.class;
+                case KIND_LONG:
+                    return long.class;
+                case KIND_DOUBLE:
+                    return double.class;
+                case KIND_BOOLEAN:
+                    return boolean.class;
+                default:
+                    return Object.class;
+            }
+        }
+
+        private static String escape(String name) {
+            return name.replace("\\", "\\\\").replace("\"", "\\\"");
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.springselfcoding.mvcframework.codec;
+
+import com.springselfcoding.mvcframework.returnvalue.SelfBufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JSON读写的入口, 按类型缓存Codec
+ * 1) 每个类型的Codec只在第一次用到时生成, 之后的请求只查一次ConcurrentHashMap, 没有反射
+ * 2) 直接在UTF-8字节上读写, 不经过Reader/Writer与中间的String
+ * 3) 可以通过register为某个类型替换Codec
+ * 4) 热加载后clearCache丢弃生成的Codec, 它们引用的旧类才能随旧的ClassLoader卸载, register的保留
+ */
+public class SelfJsonCodec {
+
+    private final Map<Type, SelfJsonTypeCodec<?>> codecs = new ConcurrentHashMap<>();
+
+    // register注册的Codec, clearCache时保留
+    private final Map<Type, SelfJsonTypeCodec<?>> registered = new ConcurrentHashMap<>();
+
+    private final SelfBufferPool bufferPool;
+
+    public SelfJsonCodec() {
+        this(SelfBufferPool.shared());
+    }
+
+    public SelfJsonCodec(SelfBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    public <T> void register(Class<T> type, SelfJsonTypeCodec<? super T> codec) {
+        register((Type) type, codec);
+    }
+
+    public void register(Type type, SelfJsonTypeCodec<?> codec) {
+        this.registered.put(type, codec);
+        this.codecs.put(type, codec);
+    }
+
+    /**
+     * 丢弃按类型生成的Codec, 之后用到时重新生成
+     */
+    public void clearCache() {
+        this.codecs.clear();
+        this.codecs.putAll(this.registered);
+    }
+
+    @SuppressWarnings("unchecked")
+    public SelfJsonTypeCodec<Object> codecFor(Type type) {
+        SelfJsonTypeCodec<?> codec = this.codecs.get(type);
+        if (null == codec) {
+            // 不使用computeIfAbsent: 生成Codec时可能递归查询其他类型
+            SelfJsonTypeCodec<?> created = createCodec(type);
+            codec = this.codecs.putIfAbsent(type, created);
+            if (null == codec) {
+                codec = created;
+            }
+        }
+        return (SelfJsonTypeCodec<Object>) codec;
+    }
+
+    /**
+     * 从流中读取一个完整的JSON文档, 流为空时返回null
+     */
+    public Object read(InputStream in, SelfJsonTypeCodec<?> codec) throws IOException {
+        byte[] buffer = this.bufferPool.acquire();
+        try {
+            SelfJsonReader reader = new SelfJsonReader(in, buffer);
+            if (reader.peek() < 0) {
+                return null;
+            }
+            Object value = codec.read(reader);
+            reader.readEnd();
+            return value;
+        } finally {
+            this.bufferPool.release(buffer);
+        }
+    }
+
+    public <T> T read(InputStream in, Class<T> type) throws IOException {
+        return type.cast(read(in, codecFor(type)));
+    }
+
+    public <T> T read(byte[] bytes, Class<T> type) throws IOException {
+        SelfJsonReader reader = new SelfJsonReader(bytes);
+        Object value = codecFor(type).read(reader);
+        reader.readEnd();
+        return type.cast(value);
+    }
+
+    public void write(OutputStream out, Object value) throws IOException {
+        byte[] buffer = this.bufferPool.acquire();
+        try {
+            SelfJsonWriter writer = new SelfJsonWriter(out, buffer);
+            write(writer, value);
+            writer.flush();
+        } finally {
+            this.bufferPool.release(buffer);
+        }
+    }
+
+    public void write(SelfJsonWriter writer, Object value) throws IOException {
+        if (null == value) {
+            writer.writeNull();
+            return;
+        }
+        codecFor(value.getClass()).write(writer, value);
+    }
+
+    public byte[] writeAsBytes(Object value) {
+        // 从池化的缓冲区开始写, 超出时写出器自己扩容, 归还的仍是原来的数组
+        byte[] buffer = this.bufferPool.acquire();
+        try {
+            SelfJsonWriter writer = new SelfJsonWriter(null, buffer);
+            write(writer, value);
+            return writer.toByteArray();
+        } catch (IOException e) {
+            // 只写入内存, 不会发生
+            throw new SelfJsonException("Cannot write JSON", e);
+        } finally {
+            this.bufferPool.release(buffer);
+        }
+    }
+
+    private SelfJsonTypeCodec<?> createCodec(Type type) {
+        if (type instanceof Class) {
+            return createCodec((Class<?>) type);
+        }
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterized = (ParameterizedType) type;
+            Class<?> raw = (Class<?>) parameterized.getRawType();
+            Type[] args = parameterized.getActualTypeArguments();
+            if (Collection.class.isAssignableFrom(raw)) {
+                return new SelfJsonCodecs.CollectionCodec(this, raw, args[0]);
+            }
+            if (Map.class.isAssignableFrom(raw)) {
+                return new SelfJsonCodecs.MapCodec(this, raw, resolve(args[0]), args[1]);
+            }
+            return codecFor(raw);
+        }
+        if (type instanceof GenericArrayType) {
+            Type component = ((GenericArrayType) type).getGenericComponentType();
+            return new SelfJsonCodecs.ArrayCodec(this, rawClass(component), component);
+        }
+        if (type instanceof WildcardType) {
+            return codecFor(((WildcardType) type).getUpperBounds()[0]);
+        }
+        // TypeVariable等: 运行时才知道类型
+        return codecFor(Object.class);
+    }
+
+    private SelfJsonTypeCodec<?> createCodec(Class<?> type) {
+        if (type.isPrimitive()) {
+            return SelfJsonCodecs.primitive(type);
+        }
+        SelfJsonTypeCodec<?> boxed = SelfJsonCodecs.boxed(type);
+        if (null != boxed) {
+            return boxed;
+        }
+        if (String.class == type || CharSequence.class == type) {
+            return SelfJsonCodecs.STRING;
+        }
+        if (BigDecimal.class == type) {
+            return SelfJsonCodecs.BIG_DECIMAL;
+        }
+        if (BigInteger.class == type) {
+            return SelfJsonCodecs.BIG_INTEGER;
+        }
+        if (byte[].class == type) {
+            return SelfJsonCodecs.BYTE_ARRAY;
+        }
+        if (type.isArray()) {
+            return new SelfJsonCodecs.ArrayCodec(this, type.getComponentType(), type.getComponentType());
+        }
+        if (type.isEnum()) {
+            return new SelfJsonCodecs.EnumCodec(type);
+        }
+        if (Enum.class.isAssignableFrom(type)) {
+            // 带方法体的枚举常量是枚举的匿名子类
+            return codecFor(type.getSuperclass());
+        }
+        if (Collection.class.isAssignableFrom(type)) {
+            return new SelfJsonCodecs.CollectionCodec(this, type, Object.class);
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            return new SelfJsonCodecs.MapCodec(this, type, Object.class, Object.class);
+        }
+        if (Object.class == type) {
+            return new SelfJsonCodecs.ObjectCodec(this);
+        }
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            return new SelfJsonCodecs.AbstractTypeCodec(this, type);
+        }
+        if (type.getName().startsWith("java.")) {
+            return new SelfJsonCodecs.StringValueCodec(type);
+        }
+        return SelfJsonBeanCodec.forClass(this, type);
+    }
+
+    private static Type resolve(Type type) {
+        if (type instanceof WildcardType) {
+            return ((WildcardType) type).getUpperBounds()[0];
+        }
+        if (type instanceof TypeVariable) {
+            return Object.class;
+        }
+        return type;
+    }
+
+    private static Class<?> rawClass(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawClass(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        }
+        return Object.class;
+    }
+}
@@ -0,0 +1,689 @@
+package com.springselfcoding.mvcframework.codec;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/**
+ * 内置的类型Codec: 基本类型及包装类, String, 枚举, 数组, 集合, Map, 运行时才确定类型的Object
+ */
+final class SelfJsonCodecs {
+
+    private SelfJsonCodecs() {
+    }
+
+    static final SelfJsonTypeCodec<String> STRING = new SelfJsonTypeCodec<>() {
+        @Override
+        public String read(SelfJsonReader reader) throws IOException {
+            return reader.readString();
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, String value) throws IOException {
+            writer.writeString(value);
+        }
+    };
+
+    static final SelfJsonTypeCodec<Boolean> BOOLEAN = new SelfJsonTypeCodec<>() {
+        @Override
+        public Boolean read(SelfJsonReader reader) throws IOException {
+            return reader.readNullIfPresent() ? null : reader.readBoolean();
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, Boolean value) throws IOException {
+            writer.writeBoolean(value);
+        }
+    };
+
+    static final SelfJsonTypeCodec<Integer> INTEGER = new SelfJsonTypeCodec<>() {
+        @Override
+        public Integer read(SelfJsonReader reader) throws IOException {
+            return reader.readNullIfPresent() ? null : reader.readInt();
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, Integer value) throws IOException {
+            writer.writeInt(value);
+        }
+    };
+
+    static final SelfJsonTypeCodec<Long> LONG = new SelfJsonTypeCodec<>() {
+        @Override
+        public Long read(SelfJsonReader reader) throws IOException {
+            return reader.readNullIfPresent() ? null : reader.readLong();
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, Long value) throws IOException {
+            writer.writeLong(value);
+        }
+    };
+
+    static final SelfJsonTypeCodec<Short> SHORT = new SelfJsonTypeCodec<>() {
+        @Override
+        public Short read(SelfJsonReader reader) throws IOException {
+            if (reader.readNullIfPresent()) {
+                return null;
+            }
+            int value = reader.readInt();
+            if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+                throw reader.error("Number out of short range");
+            }
+            return (short) value;
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, Short value) throws IOException {
+            writer.writeInt(value);
+        }
+    };
+
+    static final SelfJsonTypeCodec<Byte> BYTE = new SelfJsonTypeCodec<>() {
+        @Override
+        public Byte read(SelfJsonReader reader) throws IOException {
+            if (reader.readNullIfPresent()) {
+                return null;
+            }
+            int value = reader.readInt();
+            if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+                throw reader.error("Number out of byte range");
+            }
+            return (byte) value;
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, Byte value) throws IOException {
+            writer.writeInt(value);
+        }
+    };
+
+    static final SelfJsonTypeCodec<Double> DOUBLE = new SelfJsonTypeCodec<>() {
+        @Override
+        public Double read(SelfJsonReader reader) throws IOException {
+            return reader.readNullIfPresent() ? null : reader.readDouble();
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, Double value) throws IOException {
+            writer.writeDouble(value);
+        }
+    };
+
+    static final SelfJsonTypeCodec<Float> FLOAT = new SelfJsonTypeCodec<>() {
+        @Override
+        public Float read(SelfJsonReader reader) throws IOException {
+            return reader.readNullIfPresent() ? null : (float) reader.readDouble();
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, Float value) throws IOException {
+            writer.writeAscii(Float.toString(value));
+        }
+    };
+
+    static final SelfJsonTypeCodec<Character> CHARACTER = new SelfJsonTypeCodec<>() {
+        @Override
+        public Character read(SelfJsonReader reader) throws IOException {
+            String value = reader.readString();
+            if (null == value) {
+                return null;
+            }
+            if (1 != value.length()) {
+                throw reader.error("Expected single character string");
+            }
+            return value.charAt(0);
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, Character value) throws IOException {
+            writer.writeString(String.valueOf(value.charValue()));
+        }
+    };
+
+    static final SelfJsonTypeCodec<BigDecimal> BIG_DECIMAL = new SelfJsonTypeCodec<>() {
+        @Override
+        public BigDecimal read(SelfJsonReader reader) throws IOException {
+            return reader.readNullIfPresent() ? null : new BigDecimal(reader.readNumberText());
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, BigDecimal value) throws IOException {
+            writer.writeAscii(value.toString());
+        }
+    };
+
+    static final SelfJsonTypeCodec<BigInteger> BIG_INTEGER = new SelfJsonTypeCodec<>() {
+        @Override
+        public BigInteger read(SelfJsonReader reader) throws IOException {
+            return reader.readNullIfPresent() ? null : new BigInteger(reader.readNumberText());
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, BigInteger value) throws IOException {
+            writer.writeAscii(value.toString());
+        }
+    };
+
+    /**
+     * byte[]与Jackson一致, 按Base64字符串处理
+     */
+    static final SelfJsonTypeCodec<byte[]> BYTE_ARRAY = new SelfJsonTypeCodec<>() {
+        @Override
+        public byte[] read(SelfJsonReader reader) throws IOException {
+            String value = reader.readString();
+            return null == value ? null : Base64.getDecoder().decode(value);
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, byte[] value) throws IOException {
+            writer.writeByte('"');
+            writer.writeRaw(Base64.getEncoder().encode(value));
+            writer.writeByte('"');
+        }
+    };
+
+    /**
+     * 基本类型与包装类共用同一个Codec, 基本类型读到null时报错
+     */
+    static SelfJsonTypeCodec<?> primitive(Class<?> type) {
+        SelfJsonTypeCodec<?> codec = boxed(type);
+        return new SelfJsonTypeCodec<Object>() {
+            @Override
+            public Object read(SelfJsonReader reader) throws IOException {
+                if (reader.peek() == 'n') {
+                    throw reader.error("Cannot read null as " + type.getName());
+                }
+                return codec.read(reader);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void write(SelfJsonWriter writer, Object value) throws IOException {
+                ((SelfJsonTypeCodec<Object>) codec).write(writer, value);
+            }
+        };
+    }
+
+    /**
+     * 基本类型与包装类, 不支持时返回null
+     */
+    static SelfJsonTypeCodec<?> boxed(Class<?> type) {
+        if (int.class == type || Integer.class == type) {
+            return INTEGER;
+        }
+        if (long.class == type || Long.class == type) {
+            return LONG;
+        }
+        if (boolean.class == type || Boolean.class == type) {
+            return BOOLEAN;
+        }
+        if (double.class == type || Double.class == type) {
+            return DOUBLE;
+        }
+        if (float.class == type || Float.class == type) {
+            return FLOAT;
+        }
+        if (short.class == type || Short.class == type) {
+            return SHORT;
+        }
+        if (byte.class == type || Byte.class == type) {
+            return BYTE;
+        }
+        if (char.class == type || Character.class == type) {
+            return CHARACTER;
+        }
+        return null;
+    }
+
+    /**
+     * 枚举按name读写
+     */
+    static final class EnumCodec implements SelfJsonTypeCodec<Enum<?>> {
+
+        private final Class<?> type;
+
+        private final Map<String, Enum<?>> constants = new HashMap<>();
+
+        EnumCodec(Class<?> type) {
+            this.type = type;
+            for (Object constant : type.getEnumConstants()) {
+                Enum<?> e = (Enum<?>) constant;
+                this.constants.put(e.name(), e);
+            }
+        }
+
+        @Override
+        public Enum<?> read(SelfJsonReader reader) throws IOException {
+            String name = reader.readString();
+            if (null == name) {
+                return null;
+            }
+            Enum<?> constant = this.constants.get(name);
+            if (null == constant) {
+                throw reader.error("Unknown " + this.type.getSimpleName() + " constant '" + name + "'");
+            }
+            return constant;
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, Enum<?> value) throws IOException {
+            writer.writeString(value.name());
+        }
+    }
+
+    /**
+     * 数组, 元素Codec按需解析, 以支持递归类型
+     */
+    static final class ArrayCodec implements SelfJsonTypeCodec<Object> {
+
+        private final SelfJsonCodec jsonCodec;
+
+        private final Class<?> componentType;
+
+        private final Type genericComponentType;
+
+        private SelfJsonTypeCodec<Object> elementCodec;
+
+        ArrayCodec(SelfJsonCodec jsonCodec, Class<?> componentType, Type genericComponentType) {
+            this.jsonCodec = jsonCodec;
+            this.componentType = componentType;
+            this.genericComponentType = genericComponentType;
+        }
+
+        @Override
+        public Object read(SelfJsonReader reader) throws IOException {
+            if (reader.readNullIfPresent()) {
+                return null;
+            }
+            SelfJsonTypeCodec<Object> codec = elementCodec();
+            List<Object> elements = new ArrayList<>();
+            reader.expect('[');
+            for (boolean first = true; reader.hasNext(']', first); first = false) {
+                elements.add(codec.read(reader));
+            }
+            Object array = Array.newInstance(this.componentType, elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                Array.set(array, i, elements.get(i));
+            }
+            return array;
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, Object value) throws IOException {
+            SelfJsonTypeCodec<Object> codec = elementCodec();
+            writer.beginArray();
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    writer.writeByte(',');
+                }
+                writeNullable(writer, codec, Array.get(value, i));
+            }
+            writer.endArray();
+        }
+
+        private SelfJsonTypeCodec<Object> elementCodec() {
+            SelfJsonTypeCodec<Object> codec = this.elementCodec;
+            if (null == codec) {
+                codec = this.jsonCodec.codecFor(this.genericComponentType);
+                this.elementCodec = codec;
+            }
+            return codec;
+        }
+    }
+
+    /**
+     * List, Set等集合, 接口类型使用常见的实现类
+     */
+    static final class CollectionCodec implements SelfJsonTypeCodec<Collection<Object>> {
+
+        private final SelfJsonCodec jsonCodec;
+
+        private final Type elementType;
+
+        private final Supplier<Collection<Object>> factory;
+
+        private SelfJsonTypeCodec<Object> elementCodec;
+
+        CollectionCodec(SelfJsonCodec jsonCodec, Class<?> rawType, Type elementType) {
+            this.jsonCodec = jsonCodec;
+            this.elementType = elementType;
+            this.factory = collectionFactory(rawType);
+        }
+
+        @Override
+        public Collection<Object> read(SelfJsonReader reader) throws IOException {
+            if (reader.readNullIfPresent()) {
+                return null;
+            }
+            SelfJsonTypeCodec<Object> codec = elementCodec();
+            Collection<Object> collection = this.factory.get();
+            reader.expect('[');
+            for (boolean first = true; reader.hasNext(']', first); first = false) {
+                collection.add(codec.read(reader));
+            }
+            return collection;
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, Collection<Object> value) throws IOException {
+            SelfJsonTypeCodec<Object> codec = elementCodec();
+            writer.beginArray();
+            boolean first = true;
+            for (Object element : value) {
+                if (!first) {
+                    writer.writeByte(',');
+                }
+                first = false;
+                writeNullable(writer, codec, element);
+            }
+            writer.endArray();
+        }
+
+        private SelfJsonTypeCodec<Object> elementCodec() {
+            SelfJsonTypeCodec<Object> codec = this.elementCodec;
+            if (null == codec) {
+                codec = this.jsonCodec.codecFor(this.elementType);
+                this.elementCodec = codec;
+            }
+            return codec;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Supplier<Collection<Object>> collectionFactory(Class<?> rawType) {
+            if (!rawType.isInterface() && !Modifier.isAbstract(rawType.getModifiers())) {
+                try {
+                    return (Supplier<Collection<Object>>) (Supplier<?>) noArgFactory(rawType);
+                } catch (SelfJsonException e) {
+                    // 不可访问的实现类 (e.g. List.of), 只写不读, 读取时按接口选择实现
+                }
+            }
+            if (SortedSet.class.isAssignableFrom(rawType) || NavigableSet.class.isAssignableFrom(rawType)) {
+                return TreeSet::new;
+            }
+            if (Set.class.isAssignableFrom(rawType)) {
+                return LinkedHashSet::new;
+            }
+            if (Queue.class.isAssignableFrom(rawType)) {
+                return ArrayDeque::new;
+            }
+            return ArrayList::new;
+        }
+    }
+
+    /**
+     * Map, key按字符串读写
+     */
+    static final class MapCodec implements SelfJsonTypeCodec<Map<Object, Object>> {
+
+        private final SelfJsonCodec jsonCodec;
+
+        private final Type valueType;
+
+        private final Supplier<Map<Object, Object>> factory;
+
+        private SelfJsonTypeCodec<Object> valueCodec;
+
+        MapCodec(SelfJsonCodec jsonCodec, Class<?> rawType, Type keyType, Type valueType) {
+            if (String.class != keyType && Object.class != keyType && CharSequence.class != keyType) {
+                throw new SelfJsonException("Only String keys are supported, but got " + keyType.getTypeName());
+            }
+            this.jsonCodec = jsonCodec;
+            this.valueType = valueType;
+            this.factory = mapFactory(rawType);
+        }
+
+        @Override
+        public Map<Object, Object> read(SelfJsonReader reader) throws IOException {
+            if (reader.readNullIfPresent()) {
+                return null;
+            }
+            SelfJsonTypeCodec<Object> codec = valueCodec();
+            Map<Object, Object> map = this.factory.get();
+            reader.expect('{');
+            for (boolean first = true; reader.hasNext('}', first); first = false) {
+                String key = reader.readName();
+                map.put(key, codec.read(reader));
+            }
+            return map;
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, Map<Object, Object> value) throws IOException {
+            SelfJsonTypeCodec<Object> codec = valueCodec();
+            writer.beginObject();
+            boolean first = true;
+            for (Map.Entry<Object, Object> entry : value.entrySet()) {
+                if (!first) {
+                    writer.writeByte(',');
+                }
+                first = false;
+                writer.writeString(String.valueOf(entry.getKey()));
+                writer.writeByte(':');
+                writeNullable(writer, codec, entry.getValue());
+            }
+            writer.endObject();
+        }
+
+        private SelfJsonTypeCodec<Object> valueCodec() {
+            SelfJsonTypeCodec<Object> codec = this.valueCodec;
+            if (null == codec) {
+                codec = this.jsonCodec.codecFor(this.valueType);
+                this.valueCodec = codec;
+            }
+            return codec;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Supplier<Map<Object, Object>> mapFactory(Class<?> rawType) {
+            if (!rawType.isInterface() && !Modifier.isAbstract(rawType.getModifiers())) {
+                try {
+                    return (Supplier<Map<Object, Object>>) (Supplier<?>) noArgFactory(rawType);
+                } catch (SelfJsonException e) {
+                    // 不可访问的实现类 (e.g. Map.of), 只写不读, 读取时按接口选择实现
+                }
+            }
+            if (SortedMap.class.isAssignableFrom(rawType) || NavigableMap.class.isAssignableFrom(rawType)) {
+                return TreeMap::new;
+            }
+            return LinkedHashMap::new;
+        }
+    }
+
+    /**
+     * 声明类型为Object: 写出时按运行时类型挑选Codec, 读取时得到Map/List/String/Long/Double/Boolean
+     */
+    static final class ObjectCodec implements SelfJsonTypeCodec<Object> {
+
+        private final SelfJsonCodec jsonCodec;
+
+        private final SelfJsonTypeCodec<Collection<Object>> listCodec;
+
+        private final SelfJsonTypeCodec<Map<Object, Object>> mapCodec;
+
+        ObjectCodec(SelfJsonCodec jsonCodec) {
+            this.jsonCodec = jsonCodec;
+            this.listCodec = new CollectionCodec(jsonCodec, List.class, Object.class);
+            this.mapCodec = new MapCodec(jsonCodec, Map.class, String.class, Object.class);
+        }
+
+        @Override
+        public Object read(SelfJsonReader reader) throws IOException {
+            switch (reader.peek()) {
+                case '{':
+                    return this.mapCodec.read(reader);
+                case '[':
+                    return this.listCodec.read(reader);
+                case '"':
+                    return reader.readString();
+                case 't':
+                case 'f':
+                    return reader.readBoolean();
+                case 'n':
+                    reader.readNullIfPresent();
+                    return null;
+                case -1:
+                    throw reader.error("Unexpected end of input");
+                default:
+                    return reader.readNumber();
+            }
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, Object value) throws IOException {
+            Class<?> type = value.getClass();
+            if (Object.class == type) {
+                writer.writeByte('{');
+                writer.writeByte('}');
+                return;
+            }
+            this.jsonCodec.codecFor(type).write(writer, value);
+        }
+    }
+
+    /**
+     * 抽象类与接口: 写出时按运行时类型, 不能读取
+     */
+    static final class AbstractTypeCodec implements SelfJsonTypeCodec<Object> {
+
+        private final SelfJsonCodec jsonCodec;
+
+        private final Class<?> type;
+
+        AbstractTypeCodec(SelfJsonCodec jsonCodec, Class<?> type) {
+            this.jsonCodec = jsonCodec;
+            this.type = type;
+        }
+
+        @Override
+        public Object read(SelfJsonReader reader) throws IOException {
+            if (reader.readNullIfPresent()) {
+                return null;
+            }
+            throw reader.error("Cannot instantiate abstract type " + this.type.getName());
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, Object value) throws IOException {
+            this.jsonCodec.codecFor(value.getClass()).write(writer, value);
+        }
+    }
+
+    /**
+     * JDK中没有单独支持的值类型 (UUID, LocalDate等): 按toString写出字符串
+     * 读取时依次尝试 parse(CharSequence), valueOf(String), fromString(String), (String)构造器
+     */
+    static final class StringValueCodec implements SelfJsonTypeCodec<Object> {
+
+        private final Class<?> type;
+
+        // (String)Object, 没有可用的工厂方法时为null
+        private final MethodHandle factory;
+
+        StringValueCodec(Class<?> type) {
+            this.type = type;
+            this.factory = findFactory(type);
+        }
+
+        @Override
+        public Object read(SelfJsonReader reader) throws IOException {
+            String value = reader.readString();
+            if (null == value) {
+                return null;
+            }
+            if (null == this.factory) {
+                throw reader.error("Cannot read " + this.type.getName() + " from string");
+            }
+            try {
+                return (Object) this.factory.invokeExact(value);
+            } catch (RuntimeException e) {
+                throw new SelfJsonException("Cannot convert '" + value + "' to " + this.type.getName(), e);
+            } catch (Throwable t) {
+                throw new SelfJsonException("Cannot convert '" + value + "' to " + this.type.getName(), t);
+            }
+        }
+
+        @Override
+        public void write(SelfJsonWriter writer, Object value) throws IOException {
+            writer.writeString(value.toString());
+        }
+
+        private static MethodHandle findFactory(Class<?> type) {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodType target = MethodType.methodType(Object.class, String.class);
+            try {
+                return lookup.findStatic(type, "parse", MethodType.methodType(type, CharSequence.class)).asType(target);
+            } catch (ReflectiveOperationException e) {
+                // 继续尝试下一种
+            }
+            for (String name : new String[]{"valueOf", "fromString"}) {
+                try {
+                    return lookup.findStatic(type, name, MethodType.methodType(type, String.class)).asType(target);
+                } catch (ReflectiveOperationException e) {
+                    // 继续尝试下一种
+                }
+            }
+            try {
+                return lookup.findConstructor(type, MethodType.methodType(void.class, String.class)).asType(target);
+            } catch (ReflectiveOperationException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * null直接写出, 否则交给Codec
+     */
+    static void writeNullable(SelfJsonWriter writer, SelfJsonTypeCodec<Object> codec, Object value) throws IOException {
+        if (null == value) {
+            writer.writeNull();
+        } else {
+            codec.write(writer, value);
+        }
+    }
+
+    /**
+     * 通过无参构造器创建实例
+     */
+    static Supplier<Object> noArgFactory(Class<?> type) {
+        MethodHandle constructor;
+        try {
+            constructor = MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new SelfJsonException("No public no-arg constructor in " + type.getName(), e);
+        }
+        return () -> {
+            try {
+                return (Object) constructor.invokeExact();
+            } catch (Throwable t) {
+                throw new SelfJsonException("Cannot instantiate " + type.getName(), t);
+            }
+        };
+    }
+}
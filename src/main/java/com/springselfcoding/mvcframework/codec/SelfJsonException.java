@@ -0,0 +1,15 @@
+package com.springselfcoding.mvcframework.codec;
+
+/**
+ * JSON格式错误, 或者类型无法映射
+ */
+public class SelfJsonException extends RuntimeException {
+
+    public SelfJsonException(String message) {
+        super(message);
+    }
+
+    public SelfJsonException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
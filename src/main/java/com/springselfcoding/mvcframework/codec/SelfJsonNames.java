@@ -0,0 +1,84 @@
+package com.springselfcoding.mvcframework.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 一个类型的全部字段名, 预先编码为UTF-8, 按字节查找下标
+ * 开放寻址的哈希表, 调用方给出的hint命中时不用计算哈希
+ */
+public final class SelfJsonNames {
+
+    private final byte[][] names;
+
+    // 存放下标+1, 0表示空槽
+    private final int[] table;
+
+    private final int mask;
+
+    public SelfJsonNames(String[] names) {
+        this.names = new byte[names.length][];
+        int capacity = Integer.highestOneBit(Math.max(names.length, 1) * 4 - 1) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < names.length; i++) {
+            byte[] bytes = names[i].getBytes(StandardCharsets.UTF_8);
+            this.names[i] = bytes;
+            int slot = hash(bytes, 0, bytes.length) & this.mask;
+            while (0 != this.table[slot]) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.table[slot] = i + 1;
+        }
+    }
+
+    public int size() {
+        return this.names.length;
+    }
+
+    public byte[] getName(int index) {
+        return this.names[index];
+    }
+
+    /**
+     * 找不到返回-1
+     */
+    public int indexOf(byte[] bytes, int offset, int length, int hint) {
+        if (hint >= 0 && hint < this.names.length && matches(this.names[hint], bytes, offset, length)) {
+            return hint;
+        }
+        int slot = hash(bytes, offset, length) & this.mask;
+        int entry;
+        while (0 != (entry = this.table[slot])) {
+            if (matches(this.names[entry - 1], bytes, offset, length)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    public int indexOf(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return indexOf(bytes, 0, bytes.length, -1);
+    }
+
+    private static boolean matches(byte[] name, byte[] bytes, int offset, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name[i] != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int h = length;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + bytes[offset + i];
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,619 @@
+package com.springselfcoding.mvcframework.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 直接在UTF-8字节上解析JSON, 不先把请求体转换为String
+ * 1) 数据来自byte[]或InputStream, 流式读取时缓冲区用完才补充, 未读完的部分移到开头
+ * 2) 字段名在字节上与预先编码好的名称比较, 不为字段名创建String
+ * 3) ASCII且没有转义的字符串直接按Latin1构造, 其余逐字节解码
+ * 4) 数字先收集到字符缓冲区并按JSON语法校验 (不允许前导0, 小数点与指数后必须有数字), 整数手工转换,
+ *    小数在精确范围内手工转换, 超出时才交给Double.parseDouble
+ * 5) 对象与数组的嵌套深度不超过MAX_DEPTH, 读取与跳过都是递归的, 过深的输入报格式错误而不是栈溢出
+ */
+public final class SelfJsonReader {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // 对象与数组的最大嵌套深度, 写出时同样限制
+    static final int MAX_DEPTH = 512;
+
+    // 为null时只读取给定的数组
+    private final InputStream in;
+
+    private byte[] buf;
+
+    private int pos;
+
+    private int limit;
+
+    // 已经从缓冲区中丢弃的字节数, 只用于报错位置
+    private long discarded;
+
+    // 数字与需要解码的字符串的临时缓冲
+    private char[] chars = new char[64];
+
+    // 当前所在的对象与数组层数
+    private int depth;
+
+    public SelfJsonReader(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    public SelfJsonReader(byte[] bytes, int offset, int length) {
+        this.in = null;
+        this.buf = bytes;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * @param buffer 读取流使用的缓冲区, 单个token超过缓冲区大小时会替换为更大的数组
+     */
+    public SelfJsonReader(InputStream in, byte[] buffer) {
+        this.in = in;
+        this.buf = buffer;
+    }
+
+    /**
+     * 跳过空白, 返回下一个字节但不消费, 没有更多内容时返回-1
+     */
+    public int peek() throws IOException {
+        while (true) {
+            while (this.pos < this.limit) {
+                int c = this.buf[this.pos];
+                if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                    this.pos++;
+                } else {
+                    return c & 0xFF;
+                }
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * 跳过空白后必须是给定的字符; '{'与'['进入一层嵌套, 由hasNext读到结束符时退出
+     */
+    public void expect(char c) throws IOException {
+        if (peek() != c) {
+            throw error("Expected '" + c + "'");
+        }
+        if ((c == '{' || c == '[') && ++this.depth > MAX_DEPTH) {
+            throw error("Nesting deeper than " + MAX_DEPTH);
+        }
+        this.pos++;
+    }
+
+    /**
+     * 下一个值是null时消费掉并返回true
+     */
+    public boolean readNullIfPresent() throws IOException {
+        if (peek() != 'n') {
+            return false;
+        }
+        expectLiteral("null");
+        return true;
+    }
+
+    /**
+     * 对象或数组的下一个成员, 遇到结束符时消费掉并返回false
+     * 用法: for (boolean first = true; reader.hasNext('}', first); first = false)
+     */
+    public boolean hasNext(char close, boolean first) throws IOException {
+        int c = peek();
+        if (c == close) {
+            this.pos++;
+            this.depth--;
+            return false;
+        }
+        if (!first) {
+            if (c != ',') {
+                throw error("Expected ',' or '" + close + "'");
+            }
+            this.pos++;
+        }
+        return true;
+    }
+
+    /**
+     * 读取字段名与冒号, 返回其在names中的下标, 未知字段返回-1
+     *
+     * @param hint 最可能的下标, 字段顺序与序列化顺序一致时只比较一次
+     */
+    public int readName(SelfJsonNames names, int hint) throws IOException {
+        if (peek() != '"') {
+            throw error("Expected field name");
+        }
+        this.pos++;
+        int index;
+        int length = 0;
+        while (true) {
+            if (this.pos + length >= this.limit) {
+                if (!fill()) {
+                    throw error("Unterminated string");
+                }
+                continue;
+            }
+            byte b = this.buf[this.pos + length];
+            if (b == '"') {
+                index = names.indexOf(this.buf, this.pos, length, hint);
+                this.pos += length + 1;
+                break;
+            }
+            if (b == '\\') {
+                // 带转义的字段名很少见, 解码后再查找
+                index = names.indexOf(readStringBody());
+                break;
+            }
+            length++;
+        }
+        expect(':');
+        return index;
+    }
+
+    /**
+     * 读取Map的key与冒号
+     */
+    public String readName() throws IOException {
+        if (peek() != '"') {
+            throw error("Expected field name");
+        }
+        this.pos++;
+        String name = readStringBody();
+        expect(':');
+        return name;
+    }
+
+    /**
+     * 读取字符串, null返回null
+     */
+    public String readString() throws IOException {
+        int c = peek();
+        if (c == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        if (c != '"') {
+            throw error("Expected string");
+        }
+        this.pos++;
+        return readStringBody();
+    }
+
+    public boolean readBoolean() throws IOException {
+        int c = peek();
+        if (c == 't') {
+            expectLiteral("true");
+            return true;
+        }
+        if (c == 'f') {
+            expectLiteral("false");
+            return false;
+        }
+        throw error("Expected boolean");
+    }
+
+    public int readInt() throws IOException {
+        long value = readLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw error("Number out of int range");
+        }
+        return (int) value;
+    }
+
+    public long readLong() throws IOException {
+        int count = scanNumber();
+        char[] chars = this.chars;
+        boolean negative = chars[0] == '-';
+        int i = negative ? 1 : 0;
+        if (i == count) {
+            throw error("Invalid number");
+        }
+        // 按负数累加, 才能表示Long.MIN_VALUE
+        long value = 0;
+        for (; i < count; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                // 1.0, 1e3这种写法的整数
+                double d = parseDouble(count);
+                if (d != Math.rint(d) || d < Long.MIN_VALUE || d > Long.MAX_VALUE) {
+                    throw error("Expected integer");
+                }
+                return (long) d;
+            }
+            if (value < -922337203685477580L || (value == -922337203685477580L && digit > 8)) {
+                throw error("Number out of long range");
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                throw error("Number out of long range");
+            }
+            value = -value;
+        }
+        return value;
+    }
+
+    public double readDouble() throws IOException {
+        return parseDouble(scanNumber());
+    }
+
+    /**
+     * 数字的原始文本, 用于BigDecimal/BigInteger
+     */
+    public String readNumberText() throws IOException {
+        return new String(this.chars, 0, scanNumber());
+    }
+
+    /**
+     * 类型未知的数字: 能用long表示的整数返回Long, 否则返回Double
+     */
+    public Number readNumber() throws IOException {
+        int count = scanNumber();
+        char[] chars = this.chars;
+        boolean negative = chars[0] == '-';
+        // 按负数累加, 才能表示Long.MIN_VALUE; 超出long的范围时才按Double解析
+        long value = 0;
+        for (int i = negative ? 1 : 0; i < count; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9
+                    || value < -922337203685477580L || (value == -922337203685477580L && digit > 8)) {
+                return parseDouble(count);
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                return parseDouble(count);
+            }
+            value = -value;
+        }
+        return value;
+    }
+
+    /**
+     * 跳过一个任意的值
+     */
+    public void skipValue() throws IOException {
+        int c = peek();
+        switch (c) {
+            case '{':
+                expect('{');
+                for (boolean first = true; hasNext('}', first); first = false) {
+                    readName();
+                    skipValue();
+                }
+                break;
+            case '[':
+                expect('[');
+                for (boolean first = true; hasNext(']', first); first = false) {
+                    skipValue();
+                }
+                break;
+            case '"':
+                this.pos++;
+                while (true) {
+                    int b = nextByte();
+                    if (b == '"') {
+                        break;
+                    }
+                    if (b == '\\') {
+                        nextByte();
+                    }
+                }
+                break;
+            case 't':
+                expectLiteral("true");
+                break;
+            case 'f':
+                expectLiteral("false");
+                break;
+            case 'n':
+                expectLiteral("null");
+                break;
+            case -1:
+                throw error("Unexpected end of input");
+            default:
+                scanNumber();
+        }
+    }
+
+    /**
+     * 整个文档只能有一个值, 之后只允许空白
+     */
+    public void readEnd() throws IOException {
+        if (peek() != -1) {
+            throw error("Unexpected trailing content");
+        }
+    }
+
+    public SelfJsonException error(String message) {
+        return new SelfJsonException(message + " at offset " + (this.discarded + this.pos));
+    }
+
+    // ------------- 内部读取 ------------------
+
+    /**
+     * 补充数据, 未读部分移到缓冲区开头; 缓冲区已满时扩容
+     */
+    private boolean fill() throws IOException {
+        if (null == this.in) {
+            return false;
+        }
+        int remaining = this.limit - this.pos;
+        if (remaining > 0 && this.pos > 0) {
+            System.arraycopy(this.buf, this.pos, this.buf, 0, remaining);
+        }
+        this.discarded += this.pos;
+        this.pos = 0;
+        this.limit = remaining;
+        if (this.limit == this.buf.length) {
+            this.buf = Arrays.copyOf(this.buf, this.buf.length * 2);
+        }
+        int n;
+        do {
+            n = this.in.read(this.buf, this.limit, this.buf.length - this.limit);
+        } while (0 == n);
+        if (n < 0) {
+            return false;
+        }
+        this.limit += n;
+        return true;
+    }
+
+    private int nextByte() throws IOException {
+        if (this.pos >= this.limit && !fill()) {
+            throw error("Unexpected end of input");
+        }
+        return this.buf[this.pos++] & 0xFF;
+    }
+
+    private void expectLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (nextByte() != literal.charAt(i)) {
+                throw error("Expected '" + literal + "'");
+            }
+        }
+    }
+
+    /**
+     * 开头的引号已经消费, 读到结尾的引号为止
+     */
+    private String readStringBody() throws IOException {
+        // 1. 快速路径: ASCII且没有转义
+        int length = 0;
+        while (true) {
+            if (this.pos + length >= this.limit) {
+                if (!fill()) {
+                    throw error("Unterminated string");
+                }
+                continue;
+            }
+            byte b = this.buf[this.pos + length];
+            if (b == '"') {
+                String value = new String(this.buf, this.pos, length, StandardCharsets.ISO_8859_1);
+                this.pos += length + 1;
+                return value;
+            }
+            if (b == '\\' || b < 0) {
+                break;
+            }
+            if (b < 0x20) {
+                this.pos += length;
+                throw error("Unescaped control character in string");
+            }
+            length++;
+        }
+
+        // 2. 慢速路径: 已经扫描过的ASCII部分先放入字符缓冲, 其余逐字节解码
+        char[] chars = ensureChars(length + 16);
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) this.buf[this.pos + i];
+        }
+        this.pos += length;
+        int count = length;
+        while (true) {
+            int b = nextByte();
+            if (b == '"') {
+                return new String(chars, 0, count);
+            }
+            if (count + 2 > chars.length) {
+                chars = ensureChars(chars.length * 2);
+            }
+            if (b == '\\') {
+                chars[count++] = readEscape();
+            } else if (b < 0x80) {
+                chars[count++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (nextByte() & 0x3F));
+            } else if ((b & 0xF0) == 0xE0) {
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((nextByte() & 0x3F) << 6) | (nextByte() & 0x3F));
+            } else {
+                int codePoint = ((b & 0x07) << 18) | ((nextByte() & 0x3F) << 12)
+                        | ((nextByte() & 0x3F) << 6) | (nextByte() & 0x3F);
+                chars[count++] = Character.highSurrogate(codePoint);
+                chars[count++] = Character.lowSurrogate(codePoint);
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = nextByte();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(nextByte(), 16);
+                    if (digit < 0) {
+                        throw error("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                throw error("Invalid escape '\\" + (char) c + "'");
+        }
+    }
+
+    /**
+     * 把数字的字符收集到chars中, 返回长度
+     */
+    private int scanNumber() throws IOException {
+        peek();
+        char[] chars = this.chars;
+        int count = 0;
+        while (this.pos < this.limit || fill()) {
+            int b = this.buf[this.pos];
+            if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+                if (count == chars.length) {
+                    chars = ensureChars(count * 2);
+                }
+                chars[count++] = (char) b;
+                this.pos++;
+            } else {
+                break;
+            }
+        }
+        if (0 == count) {
+            throw error("Expected number");
+        }
+        checkNumber(count);
+        return count;
+    }
+
+    /**
+     * 按JSON的语法检查数字: -? (0 | [1-9][0-9]*) (.[0-9]+)? ([eE][+-]?[0-9]+)?
+     */
+    private void checkNumber(int count) {
+        char[] chars = this.chars;
+        int start = chars[0] == '-' ? 1 : 0;
+        int i = skipDigits(chars, start, count);
+        boolean valid = i > start && !(chars[start] == '0' && i - start > 1);
+        if (valid && i < count && chars[i] == '.') {
+            start = i + 1;
+            i = skipDigits(chars, start, count);
+            valid = i > start;
+        }
+        if (valid && i < count && (chars[i] == 'e' || chars[i] == 'E')) {
+            start = i + 1 < count && (chars[i + 1] == '-' || chars[i + 1] == '+') ? i + 2 : i + 1;
+            i = skipDigits(chars, start, count);
+            valid = i > start;
+        }
+        if (!valid || i != count) {
+            throw error("Invalid number");
+        }
+    }
+
+    private static int skipDigits(char[] chars, int i, int count) {
+        while (i < count && chars[i] >= '0' && chars[i] <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * 有效数字不超过15位, 且10的指数不超过22时, 一次乘除就是精确结果 (Clinger的快速路径)
+     */
+    private double parseDouble(int count) {
+        char[] chars = this.chars;
+        boolean negative = chars[0] == '-';
+        int i = negative ? 1 : 0;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+
+        int start = i;
+        for (; i < count && chars[i] >= '0' && chars[i] <= '9'; i++) {
+            mantissa = mantissa * 10 + (chars[i] - '0');
+            digits++;
+        }
+        if (i == start) {
+            return parseDoubleSlow(count);
+        }
+        if (i < count && chars[i] == '.') {
+            start = ++i;
+            for (; i < count && chars[i] >= '0' && chars[i] <= '9'; i++) {
+                mantissa = mantissa * 10 + (chars[i] - '0');
+                digits++;
+                scale--;
+            }
+            if (i == start) {
+                return parseDoubleSlow(count);
+            }
+        }
+        int exponent = 0;
+        if (i < count && (chars[i] == 'e' || chars[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < count && (chars[i] == '-' || chars[i] == '+')) {
+                negativeExponent = chars[i] == '-';
+                i++;
+            }
+            start = i;
+            for (; i < count && chars[i] >= '0' && chars[i] <= '9' && exponent < 10000; i++) {
+                exponent = exponent * 10 + (chars[i] - '0');
+            }
+            if (i == start) {
+                return parseDoubleSlow(count);
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        if (i != count || digits > 15) {
+            return parseDoubleSlow(count);
+        }
+
+        int power = scale + exponent;
+        double value;
+        if (0 == power) {
+            value = mantissa;
+        } else if (power > 0 && power <= 22) {
+            value = mantissa * POWERS_OF_TEN[power];
+        } else if (power < 0 && power >= -22) {
+            value = mantissa / POWERS_OF_TEN[-power];
+        } else {
+            return parseDoubleSlow(count);
+        }
+        return negative ? -value : value;
+    }
+
+    private double parseDoubleSlow(int count) {
+        try {
+            return Double.parseDouble(new String(this.chars, 0, count));
+        } catch (NumberFormatException e) {
+            throw error("Invalid number");
+        }
+    }
+
+    private char[] ensureChars(int capacity) {
+        if (this.chars.length < capacity) {
+            this.chars = Arrays.copyOf(this.chars, Math.max(capacity, this.chars.length * 2));
+        }
+        return this.chars;
+    }
+}
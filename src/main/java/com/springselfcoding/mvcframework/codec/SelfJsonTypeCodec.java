@@ -0,0 +1,14 @@
+package com.springselfcoding.mvcframework.codec;
+
+import java.io.IOException;
+
+/**
+ * 某一个类型的序列化/反序列化器, 每个类型只创建一次, 之后一直复用
+ * read时当前位置为值的开头 (可能是null), write时value不为null
+ */
+public interface SelfJsonTypeCodec<T> {
+
+    T read(SelfJsonReader reader) throws IOException;
+
+    void write(SelfJsonWriter writer, T value) throws IOException;
+}
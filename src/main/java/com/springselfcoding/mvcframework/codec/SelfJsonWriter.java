@@ -0,0 +1,283 @@
+package com.springselfcoding.mvcframework.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 直接输出UTF-8字节的JSON写出器
+ * 1) 有OutputStream时缓冲区写满就写出, 没有时缓冲区按需扩容, 最后toByteArray
+ * 2) 字符串逐字符编码与转义, 整数逐位写入, 都不产生中间String
+ * 3) 没有写出过 (hasFlushed为false) 时, size就是完整文档的长度, 可以用于Content-Length
+ * 4) 对象与数组的嵌套深度与读取一样不超过MAX_DEPTH, 对象图有环时报错而不是栈溢出
+ * 5) 不成对的代理字符不是合法的UTF-8, 写出为unicode转义
+ */
+public final class SelfJsonWriter {
+
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+    private static final byte[] MIN_LONG = "-9223372036854775808".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    // ASCII字符的转义方式: 0不转义, -1按\\u00XX, 其余为反斜杠后的字符
+    private static final byte[] ESCAPES = new byte[128];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = -1;
+        }
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\r'] = 'r';
+        ESCAPES['\t'] = 't';
+    }
+
+    // 为null时只写入内存
+    private final OutputStream out;
+
+    private byte[] buf;
+
+    private int pos;
+
+    private boolean flushed;
+
+    // 当前所在的对象与数组层数
+    private int depth;
+
+    public SelfJsonWriter() {
+        this(null, new byte[256]);
+    }
+
+    /**
+     * @param buffer 写出使用的缓冲区, out为null时会替换为更大的数组
+     */
+    public SelfJsonWriter(OutputStream out, byte[] buffer) {
+        this.out = out;
+        this.buf = buffer;
+    }
+
+    public void writeByte(int b) throws IOException {
+        if (this.pos == this.buf.length) {
+            ensure(1);
+        }
+        this.buf[this.pos++] = (byte) b;
+    }
+
+    public void beginObject() throws IOException {
+        enter();
+        writeByte('{');
+    }
+
+    public void endObject() throws IOException {
+        this.depth--;
+        writeByte('}');
+    }
+
+    public void beginArray() throws IOException {
+        enter();
+        writeByte('[');
+    }
+
+    public void endArray() throws IOException {
+        this.depth--;
+        writeByte(']');
+    }
+
+    public void writeRaw(byte[] bytes) throws IOException {
+        writeRaw(bytes, 0, bytes.length);
+    }
+
+    public void writeRaw(byte[] bytes, int offset, int length) throws IOException {
+        if (this.pos + length > this.buf.length) {
+            if (null != this.out && length > this.buf.length) {
+                // 比缓冲区还大的内容直接写出
+                flushBuffer();
+                this.out.write(bytes, offset, length);
+                return;
+            }
+            ensure(length);
+        }
+        System.arraycopy(bytes, offset, this.buf, this.pos, length);
+        this.pos += length;
+    }
+
+    public void writeNull() throws IOException {
+        writeRaw(NULL);
+    }
+
+    public void writeBoolean(boolean value) throws IOException {
+        writeRaw(value ? TRUE : FALSE);
+    }
+
+    public void writeInt(int value) throws IOException {
+        writeLong(value);
+    }
+
+    public void writeLong(long value) throws IOException {
+        if (Long.MIN_VALUE == value) {
+            writeRaw(MIN_LONG);
+            return;
+        }
+        ensure(20);
+        byte[] buf = this.buf;
+        if (value < 0) {
+            buf[this.pos++] = '-';
+            value = -value;
+        }
+        int end = this.pos + digitCount(value);
+        int p = end;
+        do {
+            buf[--p] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (0 != value);
+        this.pos = end;
+    }
+
+    /**
+     * 小数使用Double.toString的最短表示; NaN与Infinity不是合法的JSON
+     */
+    public void writeDouble(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new SelfJsonException("Cannot write " + value + " as JSON number");
+        }
+        writeAscii(Double.toString(value));
+    }
+
+    /**
+     * 只包含ASCII的内容, 不加引号也不转义, e.g. 数字文本
+     */
+    public void writeAscii(String value) throws IOException {
+        int length = value.length();
+        ensure(length);
+        byte[] buf = this.buf;
+        int p = this.pos;
+        for (int i = 0; i < length; i++) {
+            buf[p++] = (byte) value.charAt(i);
+        }
+        this.pos = p;
+    }
+
+    public void writeString(String value) throws IOException {
+        writeByte('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            // 一个字符最多占6个字节 (\\u00XX)
+            if (this.pos + 6 > this.buf.length) {
+                ensure(6);
+            }
+            byte[] buf = this.buf;
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                byte escape = ESCAPES[c];
+                if (0 == escape) {
+                    buf[this.pos++] = (byte) c;
+                } else if (escape > 0) {
+                    buf[this.pos++] = '\\';
+                    buf[this.pos++] = escape;
+                } else {
+                    buf[this.pos++] = '\\';
+                    buf[this.pos++] = 'u';
+                    buf[this.pos++] = '0';
+                    buf[this.pos++] = '0';
+                    buf[this.pos++] = HEX[c >> 4];
+                    buf[this.pos++] = HEX[c & 0xF];
+                }
+            } else if (c < 0x800) {
+                buf[this.pos++] = (byte) (0xC0 | (c >> 6));
+                buf[this.pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buf[this.pos++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[this.pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[this.pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[this.pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buf[this.pos++] = '\\';
+                buf[this.pos++] = 'u';
+                buf[this.pos++] = HEX[c >> 12];
+                buf[this.pos++] = HEX[(c >> 8) & 0xF];
+                buf[this.pos++] = HEX[(c >> 4) & 0xF];
+                buf[this.pos++] = HEX[c & 0xF];
+            } else {
+                buf[this.pos++] = (byte) (0xE0 | (c >> 12));
+                buf[this.pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[this.pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    /**
+     * 把缓冲区中剩余的内容写出, 不flush底层的流
+     */
+    public void flush() throws IOException {
+        if (null != this.out && this.pos > 0) {
+            flushBuffer();
+        }
+    }
+
+    public boolean hasFlushed() {
+        return this.flushed;
+    }
+
+    /**
+     * 缓冲区中还没有写出的字节数
+     */
+    public int size() {
+        return this.pos;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(this.buf, this.pos);
+    }
+
+    public void reset() {
+        this.pos = 0;
+        this.flushed = false;
+        this.depth = 0;
+    }
+
+    private void enter() {
+        if (++this.depth > SelfJsonReader.MAX_DEPTH) {
+            throw new SelfJsonException("Nesting deeper than " + SelfJsonReader.MAX_DEPTH + ", possibly a cyclic reference");
+        }
+    }
+
+    private void ensure(int length) throws IOException {
+        if (this.pos + length <= this.buf.length) {
+            return;
+        }
+        if (null != this.out) {
+            flushBuffer();
+            if (length <= this.buf.length) {
+                return;
+            }
+        }
+        this.buf = Arrays.copyOf(this.buf, Math.max(this.buf.length * 2, this.pos + length));
+    }
+
+    private void flushBuffer() throws IOException {
+        this.out.write(this.buf, 0, this.pos);
+        this.pos = 0;
+        this.flushed = true;
+    }
+
+    private static int digitCount(long value) {
+        int count = 1;
+        long threshold = 10;
+        while (count < 19 && value >= threshold) {
+            count++;
+            threshold *= 10;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,147 @@
+package com.springselfcoding.mvcframework.handler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 路由的并发上限, 超出时立即拒绝, 不排队
+ * 1) 固定模式: 同时处理的请求数不超过maxLimit
+ * 2) 自适应模式 (AIMD): 从maxLimit开始, 请求超时或耗时超过平均耗时的tolerance倍时乘以backoffRatio, 否则加1,
+ *    只在并发数达到上限一半以上时调整, 空闲时偶尔的慢请求不会压低上限; 上限始终在[minLimit, maxLimit]之间
+ * 3) 准入与调整都是CAS, 不加锁; 平均耗时为指数加权, 并发更新时丢失个别样本不影响结果
+ * 4) 超时的请求在超时时drop()缩小上限, 名额一直占用到Handler真正结束, 防止超时后仍在运行的Handler叠加到上限之外
+ */
+public class SelfConcurrencyLimiter {
+
+    // 平均耗时的权重, 约为最近100个样本
+    private static final double RTT_SMOOTHING = 0.01;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final boolean adaptive;
+
+    private final double backoffRatio;
+
+    private final double tolerance;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    // 当前上限, double的位表示
+    private final AtomicLong limitBits;
+
+    // 平均耗时(纳秒), double的位表示, 0表示还没有样本
+    private final AtomicLong rttBits = new AtomicLong();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    private SelfConcurrencyLimiter(int minLimit, int maxLimit, boolean adaptive, double backoffRatio, double tolerance) {
+        if (maxLimit <= 0 || minLimit <= 0 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limits: min=" + minLimit + ", max=" + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.adaptive = adaptive && minLimit < maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.tolerance = tolerance;
+        this.limitBits = new AtomicLong(Double.doubleToRawLongBits(maxLimit));
+    }
+
+    public static SelfConcurrencyLimiter fixed(int limit) {
+        return new SelfConcurrencyLimiter(limit, limit, false, 1, 1);
+    }
+
+    /**
+     * @param backoffRatio 过载时上限的缩小比例, e.g. 0.9
+     * @param tolerance    耗时超过平均耗时的多少倍视为过载, e.g. 2.0
+     */
+    public static SelfConcurrencyLimiter aimd(int minLimit, int maxLimit, double backoffRatio, double tolerance) {
+        if (backoffRatio <= 0 || backoffRatio >= 1 || tolerance <= 1) {
+            throw new IllegalArgumentException("Invalid AIMD parameters: backoffRatio=" + backoffRatio
+                    + ", tolerance=" + tolerance);
+        }
+        return new SelfConcurrencyLimiter(minLimit, maxLimit, true, backoffRatio, tolerance);
+    }
+
+    /**
+     * 未达到上限时占用一个名额并返回true, 之后必须调用release; 否则计入拒绝次数并返回false
+     */
+    public boolean tryAcquire() {
+        int limit = getLimit();
+        for (int current = this.inflight.get(); current < limit; current = this.inflight.get()) {
+            if (this.inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+        this.rejectedCount.increment();
+        return false;
+    }
+
+    /**
+     * 请求结束时归还名额, 耗时作为样本调整上限
+     *
+     * @param rttNanos 请求耗时
+     */
+    public void release(long rttNanos) {
+        int current = this.inflight.getAndDecrement();
+        if (!this.adaptive) {
+            return;
+        }
+        double averageRtt = updateAverageRtt(rttNanos);
+        adjust(current, rttNanos > averageRtt * this.tolerance);
+    }
+
+    /**
+     * 请求超时等明确的过载信号, 立即缩小上限; 名额仍被占用, Handler真正结束时再调用release()
+     */
+    public void drop() {
+        if (this.adaptive) {
+            adjust(this.inflight.get(), true);
+        }
+    }
+
+    /**
+     * 归还drop()过的请求的名额, 它的耗时不再作为样本
+     */
+    public void release() {
+        this.inflight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return (int) Double.longBitsToDouble(this.limitBits.get());
+    }
+
+    public int getInflight() {
+        return this.inflight.get();
+    }
+
+    public long getRejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    public boolean isAdaptive() {
+        return this.adaptive;
+    }
+
+    private void adjust(int current, boolean overloaded) {
+        double limit = Double.longBitsToDouble(this.limitBits.get());
+        if (current * 2 < limit) {
+            // 远未用满, 耗时变化与并发无关
+            return;
+        }
+        double next = overloaded ? Math.max(this.minLimit, limit * this.backoffRatio)
+                : Math.min(this.maxLimit, limit + 1);
+        if (next != limit) {
+            this.limitBits.compareAndSet(Double.doubleToRawLongBits(limit), Double.doubleToRawLongBits(next));
+        }
+    }
+
+    private double updateAverageRtt(long rttNanos) {
+        double average = Double.longBitsToDouble(this.rttBits.get());
+        double next = 0 == average ? rttNanos : average + (rttNanos - average) * RTT_SMOOTHING;
+        this.rttBits.set(Double.doubleToRawLongBits(next));
+        return average == 0 ? next : average;
+    }
+}
@@ -0,0 +1,169 @@
+package com.springselfcoding.mvcframework.handler;
+
+import com.springselfcoding.mvcframework.bind.SelfArgumentResolver;
+import com.springselfcoding.mvcframework.returnvalue.SelfReturnValueWriter;
+import com.springselfcoding.mvcframework.router.SelfRouteMatch;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 每个被映射的Controller方法对应一个Invoker, 在HandlerMapping阶段一次性创建
+ * 1) 启动时就拿到Controller实例, 并通过MethodHandle与方法绑定
+ * 2) 每个参数的解析器也在启动时确定, 请求时只是按顺序填充参数数组
+ * 3) 请求时直接invokeExact, 不再走Method.invoke的反射, 也不需要再计算beanName
+ * 4) Controller被JDK动态代理时, 改为绑定代理实现的接口方法; 子类代理可以直接绑定
+ * 5) 返回值的写出器同样在启动时按返回类型确定
+ * 6) 同步调用时参数数组从每个Invoker自己的池中借出, 调用后清空归还; 数组要被缓存key或其他线程持有时不走池
+ */
+public class SelfHandlerInvoker {
+
+    private static final Object[] EMPTY_ARGUMENTS = new Object[0];
+
+    // 已经绑定的Controller实例
+    private final Object controller;
+
+    // 原始方法, 只用于日志与元信息
+    private final Method method;
+
+    // 绑定好实例, 并统一为 (Object[])Object 签名的MethodHandle
+    private final MethodHandle invoker;
+
+    // 与方法参数一一对应的解析器
+    private final SelfArgumentResolver[] argumentResolvers;
+
+    // 返回值的写出器, void方法什么都不写
+    private final SelfReturnValueWriter returnValueWriter;
+
+    // 可复用的参数数组, 按线程id探测, 没有参数时为null
+    private final AtomicReferenceArray<Object[]> argumentSlots;
+
+    private final int slotMask;
+
+    public SelfHandlerInvoker(Object controller, Method method, SelfArgumentResolver[] argumentResolvers,
+                              SelfReturnValueWriter returnValueWriter) throws IllegalAccessException {
+        this.controller = controller;
+        this.method = method;
+        this.argumentResolvers = argumentResolvers;
+        this.returnValueWriter = returnValueWriter;
+        int slotCount = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) * 2;
+        this.argumentSlots = 0 == argumentResolvers.length ? null : new AtomicReferenceArray<>(slotCount);
+        this.slotMask = slotCount - 1;
+
+        // 非public方法需要先暴力访问, 只在启动时执行一次
+        Method invocable = resolveInvocableMethod(controller, method);
+        if (!invocable.canAccess(controller)) {
+            invocable.setAccessible(true);
+        }
+        this.invoker = MethodHandles.lookup().unreflect(invocable)
+                .bindTo(controller)
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(MethodType.methodType(Object.class, Object[].class));
+    }
+
+    /**
+     * 解析参数并调用Handler方法, void方法返回null
+     */
+    public Object invoke(HttpServletRequest req, HttpServletResponse resp, SelfRouteMatch<?> match) throws Exception {
+        return invoke(resolveArguments(req, resp, match));
+    }
+
+    /**
+     * 按顺序解析全部参数, 响应缓存用解析结果作为key
+     */
+    public Object[] resolveArguments(HttpServletRequest req, HttpServletResponse resp, SelfRouteMatch<?> match)
+            throws Exception {
+        SelfArgumentResolver[] resolvers = this.argumentResolvers;
+        Object[] args = new Object[resolvers.length];
+        for (int i = 0; i < resolvers.length; i++) {
+            args[i] = resolvers[i].resolve(req, resp, match);
+        }
+        return args;
+    }
+
+    /**
+     * 在当前线程上同步解析参数并调用, 参数数组用完即归还
+     * 只能在参数不会被保存时使用 (Handler方法拿到的是展开后的参数, 不会持有数组本身)
+     */
+    public Object invokeWithPooledArguments(HttpServletRequest req, HttpServletResponse resp, SelfRouteMatch<?> match)
+            throws Exception {
+        if (null == this.argumentSlots) {
+            return invoke(EMPTY_ARGUMENTS);
+        }
+        int slot = (int) (Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L >>> 40) & this.slotMask;
+        Object[] args = this.argumentSlots.getAndSet(slot, null);
+        if (null == args) {
+            args = new Object[this.argumentResolvers.length];
+        }
+        try {
+            SelfArgumentResolver[] resolvers = this.argumentResolvers;
+            for (int i = 0; i < resolvers.length; i++) {
+                args[i] = resolvers[i].resolve(req, resp, match);
+            }
+            return invoke(args);
+        } finally {
+            // 清空后归还, 不让池持有请求的数据; 槽已被其他线程占用时丢弃
+            Arrays.fill(args, null);
+            this.argumentSlots.compareAndSet(slot, null, args);
+        }
+    }
+
+    /**
+     * 直接用已经解析好的参数调用Handler方法
+     */
+    public Object invoke(Object[] args) throws Exception {
+        try {
+            return (Object) this.invoker.invokeExact(args);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * 写出返回值 (CompletionStage则是其完成后的结果), null不写
+     */
+    public void writeReturnValue(Object value, HttpServletRequest req, HttpServletResponse resp) throws Exception {
+        if (null != value) {
+            this.returnValueWriter.write(value, req, resp);
+        }
+    }
+
+    /**
+     * JDK动态代理只实现了接口, 需要找到接口上的同名方法, 否则请求无法经过代理
+     */
+    private static Method resolveInvocableMethod(Object controller, Method method) {
+        if (method.getDeclaringClass().isInstance(controller)) {
+            return method;
+        }
+        for (Class<?> anInterface : controller.getClass().getInterfaces()) {
+            try {
+                return anInterface.getMethod(method.getName(), method.getParameterTypes());
+            } catch (NoSuchMethodException e) {
+                // 继续找下一个接口
+            }
+        }
+        throw new IllegalStateException("Handler method " + method + " is not exposed by proxy "
+                + controller.getClass().getName() + ", declare it on an interface or use class-based proxies");
+    }
+
+    public Object getController() {
+        return this.controller;
+    }
+
+    public Method getMethod() {
+        return this.method;
+    }
+
+    @Override
+    public String toString() {
+        return this.method.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package com.springselfcoding.mvcframework.handler;
+
+import com.springselfcoding.metrics.SelfTimer;
+
+/**
+ * 一条映射: url pattern + Invoker + 该路由的耗时统计 + 异步超时 + 是否在虚拟线程上执行 + 响应缓存的有效期 + 并发上限
+ * 同一个pattern按HTTP方法区分的多条映射由SelfHandlerMethods保存在路由树上
+ */
+public class SelfHandlerMapping {
+
+    private final String pattern;
+
+    private final SelfHandlerInvoker invoker;
+
+    private final SelfTimer timer;
+
+    // Handler返回CompletionStage时的超时(毫秒), 0表示不超时
+    private final long asyncTimeout;
+
+    // 在虚拟线程上执行Handler, 容器线程只负责开启异步
+    private final boolean virtualThread;
+
+    // @SelfCacheable的有效期(毫秒), 0表示不缓存
+    private final long cacheTtl;
+
+    // 并发上限, null表示不限制
+    private final SelfConcurrencyLimiter limiter;
+
+    public SelfHandlerMapping(String pattern, SelfHandlerInvoker invoker, SelfTimer timer, long asyncTimeout,
+                              boolean virtualThread, long cacheTtl, SelfConcurrencyLimiter limiter) {
+        this.pattern = pattern;
+        this.invoker = invoker;
+        this.timer = timer;
+        this.asyncTimeout = asyncTimeout;
+        this.virtualThread = virtualThread;
+        this.cacheTtl = cacheTtl;
+        this.limiter = limiter;
+    }
+
+    public String getPattern() {
+        return this.pattern;
+    }
+
+    public SelfHandlerInvoker getInvoker() {
+        return this.invoker;
+    }
+
+    public SelfTimer getTimer() {
+        return this.timer;
+    }
+
+    public long getAsyncTimeout() {
+        return this.asyncTimeout;
+    }
+
+    public boolean isVirtualThread() {
+        return this.virtualThread;
+    }
+
+    public boolean isCacheable() {
+        return this.cacheTtl > 0;
+    }
+
+    public long getCacheTtl() {
+        return this.cacheTtl;
+    }
+
+    public SelfConcurrencyLimiter getLimiter() {
+        return this.limiter;
+    }
+
+    @Override
+    public String toString() {
+        return this.pattern + " ---> " + this.invoker;
+    }
+}
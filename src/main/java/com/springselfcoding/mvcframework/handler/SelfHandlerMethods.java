@@ -0,0 +1,95 @@
+package com.springselfcoding.mvcframework.handler;
+
+import com.springselfcoding.mvcframework.SelfRequestMethod;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 路由树上一个url pattern对应的全部Handler, 按HTTP方法区分
+ * 1) 声明了method的Handler按方法放入数组, 查找时按枚举下标直接取
+ * 2) 没有声明method的Handler处理其余所有方法
+ * 3) HEAD没有单独映射时使用GET的Handler
+ */
+public class SelfHandlerMethods {
+
+    private static final SelfRequestMethod[] METHODS = SelfRequestMethod.values();
+
+    private final String pattern;
+
+    private final SelfHandlerMapping[] handlers = new SelfHandlerMapping[METHODS.length];
+
+    // 不限定方法的Handler
+    private SelfHandlerMapping anyMethodHandler;
+
+    // Allow响应头, 注册完成后第一次用到时生成
+    private String allow;
+
+    public SelfHandlerMethods(String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * methods为空表示不限定方法, 同一个方法重复映射时抛异常
+     */
+    public void addHandler(SelfRequestMethod[] methods, SelfHandlerMapping handler) {
+        if (0 == methods.length) {
+            if (null != this.anyMethodHandler) {
+                throw new IllegalStateException(this.pattern + " is repeated: " + handler + " and " + this.anyMethodHandler);
+            }
+            this.anyMethodHandler = handler;
+        }
+        for (SelfRequestMethod method : methods) {
+            SelfHandlerMapping existing = this.handlers[method.ordinal()];
+            if (null != existing) {
+                throw new IllegalStateException(method + " " + this.pattern + " is repeated: " + handler + " and " + existing);
+            }
+            this.handlers[method.ordinal()] = handler;
+        }
+        this.allow = null;
+    }
+
+    /**
+     * 找不到时返回null, 由调用方返回405
+     * @param method 不认识的方法传null
+     */
+    public SelfHandlerMapping getHandler(SelfRequestMethod method) {
+        if (null != method) {
+            SelfHandlerMapping handler = this.handlers[method.ordinal()];
+            if (null != handler) {
+                return handler;
+            }
+            if (SelfRequestMethod.HEAD == method && null != this.handlers[SelfRequestMethod.GET.ordinal()]) {
+                return this.handlers[SelfRequestMethod.GET.ordinal()];
+            }
+        }
+        return this.anyMethodHandler;
+    }
+
+    /**
+     * 该pattern支持的方法, 用于405与OPTIONS的Allow响应头
+     */
+    public String getAllow() {
+        String allow = this.allow;
+        if (null == allow) {
+            List<String> methods = new ArrayList<>();
+            for (SelfRequestMethod method : METHODS) {
+                if (null != getHandler(method) || SelfRequestMethod.OPTIONS == method) {
+                    methods.add(method.name());
+                }
+            }
+            allow = String.join(", ", methods);
+            this.allow = allow;
+        }
+        return allow;
+    }
+
+    public String getPattern() {
+        return this.pattern;
+    }
+
+    @Override
+    public String toString() {
+        return this.pattern;
+    }
+}
@@ -0,0 +1,237 @@
+package com.springselfcoding.mvcframework.handler;
+
+import com.springselfcoding.cache.SelfSegmentedLruCache;
+import com.springselfcoding.mvcframework.returnvalue.SelfResponseOutput;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * @SelfCacheable路由的响应缓存, 缓存的是写出器序列化好的字节
+ * 1) key是路由 + 解析好的参数值, 命中时不调用Handler, 也不再序列化
+ * 2) 每个缓存项在写入时算好ETag, 请求带If-None-Match且匹配时直接返回304
+ * 3) 只缓存状态码为200的响应, 按字节数淘汰, 见SelfSegmentedLruCache
+ */
+public class SelfResponseCache {
+
+    public static final String ETAG = "ETag";
+
+    public static final String IF_NONE_MATCH = "If-None-Match";
+
+    // 每个缓存项除响应体外的大致开销: key, 参数数组, 节点, ETag, Content-Type
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final SelfSegmentedLruCache<Key, Entry> cache;
+
+    public SelfResponseCache(long maximumBytes) {
+        this.cache = new SelfSegmentedLruCache<>(maximumBytes, (key, entry) -> entry.body.length + ENTRY_OVERHEAD);
+    }
+
+    public Object createKey(SelfHandlerMapping handler, Object[] args) {
+        return new Key(handler, args);
+    }
+
+    /**
+     * 命中时写出缓存的响应 (或304), 返回false表示需要调用Handler
+     */
+    public boolean writeCached(Object key, HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        Entry entry = this.cache.get((Key) key);
+        if (null == entry) {
+            return false;
+        }
+        write(entry, req, resp);
+        return true;
+    }
+
+    /**
+     * 把返回值写入内存, 状态码为200时放入缓存, 再写给客户端
+     */
+    public void writeAndCache(Object key, SelfHandlerMapping handler, Object value,
+                              HttpServletRequest req, HttpServletResponse resp) throws Exception {
+        CapturingResponse capture = new CapturingResponse(resp);
+        handler.getInvoker().writeReturnValue(value, req, capture);
+        Entry entry = new Entry(capture.toByteArray(), resp.getContentType());
+        if (HttpServletResponse.SC_OK == resp.getStatus()) {
+            this.cache.put((Key) key, entry, TimeUnit.MILLISECONDS.toNanos(handler.getCacheTtl()));
+        }
+        write(entry, req, resp);
+    }
+
+    public SelfSegmentedLruCache<?, ?> getCache() {
+        return this.cache;
+    }
+
+    private static void write(Entry entry, HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setHeader(ETAG, entry.etag);
+        if (matches(req.getHeader(IF_NONE_MATCH), entry.etag)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        if (null != entry.contentType) {
+            resp.setContentType(entry.contentType);
+        }
+        SelfResponseOutput.write(resp, entry.body);
+    }
+
+    /**
+     * If-None-Match使用弱比较: 忽略W/前缀, *匹配任意
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (null == ifNoneMatch) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if ("*".equals(candidate) || etag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 路由 + 参数值, 参数值已经过类型转换, 直接比较
+     */
+    private static final class Key {
+
+        private final SelfHandlerMapping handler;
+
+        private final Object[] args;
+
+        private final int hash;
+
+        Key(SelfHandlerMapping handler, Object[] args) {
+            this.handler = handler;
+            this.args = args;
+            this.hash = 31 * System.identityHashCode(handler) + Arrays.deepHashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return this.handler == other.handler && Arrays.deepEquals(this.args, other.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    private static final class Entry {
+
+        private final byte[] body;
+
+        private final String contentType;
+
+        private final String etag;
+
+        Entry(byte[] body, String contentType) {
+            this.body = body;
+            this.contentType = contentType;
+            CRC32C crc = new CRC32C();
+            crc.update(body, 0, body.length);
+            this.etag = "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(body.length) + "\"";
+        }
+    }
+
+    /**
+     * 把写出器的输出留在内存, Content-Length在写给客户端时再设置
+     */
+    private static final class CapturingResponse extends HttpServletResponseWrapper {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private ServletOutputStream outputStream;
+
+        private PrintWriter writer;
+
+        CapturingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (null == this.outputStream) {
+                this.outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) {
+                        buffer.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        buffer.write(b, off, len);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                    }
+                };
+            }
+            return this.outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            if (null == this.writer) {
+                this.writer = new PrintWriter(new OutputStreamWriter(this.buffer,
+                        SelfResponseOutput.charsetOf((HttpServletResponse) getResponse())));
+            }
+            return this.writer;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+        }
+
+        @Override
+        public void flushBuffer() {
+        }
+
+        @Override
+        public void resetBuffer() {
+            this.buffer.reset();
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return false;
+        }
+
+        byte[] toByteArray() {
+            if (null != this.writer) {
+                this.writer.flush();
+            }
+            return this.buffer.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.springselfcoding.mvcframework.returnvalue;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 流式写出响应时使用的共享缓冲区池
+ * 1) ServletOutputStream只接受byte[], 所以池化的是堆上的固定大小数组; 读FileChannel时JDK内部已经缓存了每个线程的直接缓冲区
+ * 2) 不用ThreadLocal, 虚拟线程每个请求一个线程, ThreadLocal缓存等于没有缓存
+ * 3) 数组放在定长的槽中, 每个线程按线程id从不同的槽开始探测, 借出与归还只是一次CAS, 不像队列那样每次归还都分配节点
+ * 4) 池有上限, 探测的槽都满时归还的数组直接丢弃, 都空时新建
+ */
+public class SelfBufferPool {
+
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    // 每次借出或归还最多探测的槽数
+    private static final int PROBES = 8;
+
+    private static final SelfBufferPool SHARED = new SelfBufferPool(DEFAULT_BUFFER_SIZE,
+            Math.max(16, Runtime.getRuntime().availableProcessors() * 4));
+
+    private final int bufferSize;
+
+    private final AtomicReferenceArray<byte[]> slots;
+
+    private final int mask;
+
+    public SelfBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        // 槽数取2的幂, 用掩码代替取模
+        int slotCount = Integer.highestOneBit(Math.max(1, maxPooled) * 2 - 1);
+        this.slots = new AtomicReferenceArray<>(slotCount);
+        this.mask = slotCount - 1;
+    }
+
+    public static SelfBufferPool shared() {
+        return SHARED;
+    }
+
+    public byte[] acquire() {
+        int start = probeStart();
+        for (int i = 0; i < PROBES && i <= this.mask; i++) {
+            int index = (start + i) & this.mask;
+            byte[] buffer = this.slots.get(index);
+            if (null != buffer && this.slots.compareAndSet(index, buffer, null)) {
+                return buffer;
+            }
+        }
+        return new byte[this.bufferSize];
+    }
+
+    public void release(byte[] buffer) {
+        if (buffer.length != this.bufferSize) {
+            return;
+        }
+        int start = probeStart();
+        for (int i = 0; i < PROBES && i <= this.mask; i++) {
+            int index = (start + i) & this.mask;
+            if (null == this.slots.get(index) && this.slots.compareAndSet(index, null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    public int getBufferSize() {
+        return this.bufferSize;
+    }
+
+    private int probeStart() {
+        // 相邻的线程id散开到不同的槽, 减少CAS冲突
+        long id = Thread.currentThread().threadId();
+        return (int) (id * 0x9E3779B97F4A7C15L >>> 40) & this.mask;
+    }
+}
@@ -0,0 +1,30 @@
+package com.springselfcoding.mvcframework.returnvalue;
+
+import java.nio.ByteBuffer;
+
+/**
+ * byte[]与ByteBuffer原样写出, 长度已知, 默认application/octet-stream
+ */
+public class SelfByteArrayReturnValueHandler implements SelfHandlerMethodReturnValueHandler {
+
+    public static final String CONTENT_TYPE = "application/octet-stream";
+
+    @Override
+    public boolean supportsReturnType(Class<?> returnType) {
+        return byte[].class == returnType || ByteBuffer.class.isAssignableFrom(returnType);
+    }
+
+    @Override
+    public SelfReturnValueWriter createWriter(Class<?> returnType) {
+        if (byte[].class == returnType) {
+            return (value, req, resp) -> {
+                SelfResponseOutput.setContentTypeIfAbsent(resp, CONTENT_TYPE);
+                SelfResponseOutput.write(resp, (byte[]) value);
+            };
+        }
+        return (value, req, resp) -> {
+            SelfResponseOutput.setContentTypeIfAbsent(resp, CONTENT_TYPE);
+            SelfResponseOutput.write(resp, (ByteBuffer) value);
+        };
+    }
+}
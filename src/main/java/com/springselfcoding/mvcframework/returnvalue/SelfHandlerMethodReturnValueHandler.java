@@ -0,0 +1,23 @@
+package com.springselfcoding.mvcframework.returnvalue;
+
+import java.lang.reflect.Type;
+
+/**
+ * 返回值处理策略, 可插拔, 在HandlerMapping阶段按顺序挑选第一个支持该返回类型的策略
+ */
+public interface SelfHandlerMethodReturnValueHandler {
+
+    boolean supportsReturnType(Class<?> returnType);
+
+    /**
+     * 为返回类型创建绑定好的写出器
+     */
+    SelfReturnValueWriter createWriter(Class<?> returnType);
+
+    /**
+     * 需要泛型信息的策略 (e.g. JSON写出List<Item>) 重写这个方法
+     */
+    default SelfReturnValueWriter createWriter(Class<?> returnType, Type genericReturnType) {
+        return createWriter(returnType);
+    }
+}
@@ -0,0 +1,68 @@
+package com.springselfcoding.mvcframework.returnvalue;
+
+import com.springselfcoding.mvcframework.codec.SelfJsonCodec;
+import com.springselfcoding.mvcframework.codec.SelfJsonTypeCodec;
+import com.springselfcoding.mvcframework.codec.SelfJsonWriter;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * 其余对象序列化为JSON, 排在最后, 支持任意类型
+ * 1) 声明类型确定时Codec在HandlerMapping阶段取好, 否则按运行时类型从SelfJsonCodec的缓存中取
+ * 2) 使用池化的缓冲区直接写入ServletOutputStream, 整个文档没有超出缓冲区时设置Content-Length
+ */
+public class SelfJsonReturnValueHandler implements SelfHandlerMethodReturnValueHandler {
+
+    public static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+
+    private final SelfJsonCodec jsonCodec;
+
+    private final SelfBufferPool bufferPool;
+
+    public SelfJsonReturnValueHandler() {
+        this(new SelfJsonCodec());
+    }
+
+    public SelfJsonReturnValueHandler(SelfJsonCodec jsonCodec) {
+        this.jsonCodec = jsonCodec;
+        this.bufferPool = SelfBufferPool.shared();
+    }
+
+    @Override
+    public boolean supportsReturnType(Class<?> returnType) {
+        return true;
+    }
+
+    @Override
+    public SelfReturnValueWriter createWriter(Class<?> returnType) {
+        return createWriter(returnType, returnType);
+    }
+
+    @Override
+    public SelfReturnValueWriter createWriter(Class<?> returnType, Type genericReturnType) {
+        SelfJsonTypeCodec<Object> codec = this.jsonCodec.codecFor(genericReturnType);
+        if (!(genericReturnType instanceof Class)) {
+            return (value, req, resp) -> write(resp, codec, value);
+        }
+        // 返回值可能是声明类型的子类, 这时按运行时类型写出
+        return (value, req, resp) -> write(resp,
+                returnType == value.getClass() ? codec : this.jsonCodec.codecFor(value.getClass()), value);
+    }
+
+    private void write(HttpServletResponse resp, SelfJsonTypeCodec<Object> codec, Object value) throws IOException {
+        SelfResponseOutput.setContentTypeIfAbsent(resp, CONTENT_TYPE);
+        byte[] buffer = this.bufferPool.acquire();
+        try {
+            SelfJsonWriter writer = new SelfJsonWriter(resp.getOutputStream(), buffer);
+            codec.write(writer, value);
+            if (!writer.hasFlushed()) {
+                resp.setContentLength(writer.size());
+            }
+            writer.flush();
+        } finally {
+            this.bufferPool.release(buffer);
+        }
+    }
+}
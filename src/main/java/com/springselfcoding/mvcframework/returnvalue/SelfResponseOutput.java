@@ -0,0 +1,188 @@
+package com.springselfcoding.mvcframework.returnvalue;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 写响应体的公共方法, 都直接写ServletOutputStream, 不经过字符编码的Writer
+ */
+public final class SelfResponseOutput {
+
+    private SelfResponseOutput() {
+    }
+
+    public static void setContentTypeIfAbsent(HttpServletResponse resp, String contentType) {
+        if (null == resp.getContentType()) {
+            resp.setContentType(contentType);
+        }
+    }
+
+    /**
+     * Handler自己设置过Content-Type时按响应的编码, 否则按UTF-8
+     */
+    public static Charset charsetOf(HttpServletResponse resp) {
+        String encoding = resp.getCharacterEncoding();
+        if (null == encoding || "UTF-8".equalsIgnoreCase(encoding)) {
+            return StandardCharsets.UTF_8;
+        }
+        return Charset.forName(encoding);
+    }
+
+    /**
+     * 写出完整的字节数组并设置Content-Length
+     * Handler已经用过getWriter时不能再取OutputStream, 这时退回Writer, 只用于错误信息这类文本
+     */
+    public static void write(HttpServletResponse resp, byte[] bytes, int offset, int length) throws IOException {
+        OutputStream out;
+        try {
+            out = resp.getOutputStream();
+        } catch (IllegalStateException e) {
+            resp.getWriter().write(new String(bytes, offset, length, charsetOf(resp)));
+            return;
+        }
+        resp.setContentLength(length);
+        out.write(bytes, offset, length);
+    }
+
+    public static void write(HttpServletResponse resp, byte[] bytes) throws IOException {
+        write(resp, bytes, 0, bytes.length);
+    }
+
+    /**
+     * 按响应的编码写出文本; UTF-8时直接编码到池化的缓冲区, 不再生成中间的byte[]
+     */
+    public static void writeText(HttpServletResponse resp, CharSequence text) throws IOException {
+        Charset charset = charsetOf(resp);
+        SelfBufferPool pool = SelfBufferPool.shared();
+        // 每个char最多编码为3个字节 (代理对是2个char编码为4个字节)
+        if (StandardCharsets.UTF_8 != charset || (long) text.length() * 3 > pool.getBufferSize()) {
+            write(resp, text.toString().getBytes(charset));
+            return;
+        }
+        byte[] buffer = pool.acquire();
+        try {
+            write(resp, buffer, 0, encodeUtf8(text, buffer));
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * 不成对的代理字符编码为'?', 与String.getBytes一致
+     */
+    private static int encodeUtf8(CharSequence text, byte[] out) {
+        int n = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                out[n++] = (byte) c;
+            } else if (c < 0x800) {
+                out[n++] = (byte) (0xC0 | (c >> 6));
+                out[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                out[n++] = (byte) (0xF0 | (codePoint >> 18));
+                out[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                out[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                out[n++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out[n++] = '?';
+            } else {
+                out[n++] = (byte) (0xE0 | (c >> 12));
+                out[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 写出ByteBuffer的剩余部分, 不改变其position; 直接缓冲区通过池化的数组分段复制
+     */
+    public static void write(HttpServletResponse resp, ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            write(resp, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        ByteBuffer source = buffer.duplicate();
+        resp.setContentLength(source.remaining());
+        OutputStream out = resp.getOutputStream();
+        SelfBufferPool pool = SelfBufferPool.shared();
+        byte[] chunk = pool.acquire();
+        try {
+            while (source.hasRemaining()) {
+                int n = Math.min(chunk.length, source.remaining());
+                source.get(chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        } finally {
+            pool.release(chunk);
+        }
+    }
+
+    /**
+     * 长度未知, 分段复制到结束
+     */
+    public static void transfer(InputStream in, OutputStream out) throws IOException {
+        SelfBufferPool pool = SelfBufferPool.shared();
+        byte[] chunk = pool.acquire();
+        try {
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                out.write(chunk, 0, n);
+            }
+        } finally {
+            pool.release(chunk);
+        }
+    }
+
+    /**
+     * 从当前position写到文件末尾, 与ByteBuffer一样不改变channel的position
+     * 容器的OutputStream本身是Channel时 (例如内嵌服务器) 直接transferTo, 由内核完成复制
+     * 发送过程中文件被截短时写到新的末尾为止, 不再等待
+     */
+    public static void transfer(FileChannel channel, HttpServletResponse resp) throws IOException {
+        long position = channel.position();
+        long end = channel.size();
+        resp.setContentLengthLong(end - position);
+        OutputStream out = resp.getOutputStream();
+        if (out instanceof WritableByteChannel) {
+            WritableByteChannel target = (WritableByteChannel) out;
+            while (position < end) {
+                long n = channel.transferTo(position, end - position, target);
+                // 目标是阻塞写出的, 返回0只能是文件已经被截短到position之前
+                if (n <= 0) {
+                    break;
+                }
+                position += n;
+            }
+            return;
+        }
+        SelfBufferPool pool = SelfBufferPool.shared();
+        byte[] chunk = pool.acquire();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            while (position < end) {
+                buffer.clear();
+                if (end - position < chunk.length) {
+                    buffer.limit((int) (end - position));
+                }
+                int n = channel.read(buffer, position);
+                if (n <= 0) {
+                    break;
+                }
+                out.write(chunk, 0, n);
+                position += n;
+            }
+        } finally {
+            pool.release(chunk);
+        }
+    }
+}
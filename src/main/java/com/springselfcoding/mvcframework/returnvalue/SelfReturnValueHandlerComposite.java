@@ -0,0 +1,113 @@
+package com.springselfcoding.mvcframework.returnvalue;
+
+import com.springselfcoding.mvcframework.SelfResponseBody;
+import com.springselfcoding.mvcframework.codec.SelfJsonCodec;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 返回值处理策略链, 在HandlerMapping阶段为每个Handler方法一次性算出写出器
+ * 1) 返回CompletionStage<T>时按T挑选, 写出的是异步完成后的结果
+ * 2) 返回void时写出器什么都不做, Handler自己写响应
+ * 3) 声明为Object (或无法确定T) 时按运行时类型挑选, 每个类型只挑选一次
+ * 4) 方法或类上有@SelfResponseBody时直接按JSON写出
+ */
+public class SelfReturnValueHandlerComposite {
+
+    private static final SelfReturnValueWriter NO_OP_WRITER = (value, req, resp) -> {
+    };
+
+    private final List<SelfHandlerMethodReturnValueHandler> returnValueHandlers = new ArrayList<>();
+
+    private final SelfJsonReturnValueHandler jsonReturnValueHandler;
+
+    // 运行时类型对应的写出器
+    private final ClassValue<SelfReturnValueWriter> runtimeWriters = new ClassValue<>() {
+        @Override
+        protected SelfReturnValueWriter computeValue(Class<?> type) {
+            return createWriter(type, type);
+        }
+    };
+
+    public SelfReturnValueHandlerComposite() {
+        this(new SelfJsonCodec());
+    }
+
+    /**
+     * 默认策略: String, byte[]/ByteBuffer, InputStream/Path/FileChannel, 其余对象转JSON
+     */
+    public SelfReturnValueHandlerComposite(SelfJsonCodec jsonCodec) {
+        this.jsonReturnValueHandler = new SelfJsonReturnValueHandler(jsonCodec);
+        this.returnValueHandlers.add(new SelfStringReturnValueHandler());
+        this.returnValueHandlers.add(new SelfByteArrayReturnValueHandler());
+        this.returnValueHandlers.add(new SelfStreamReturnValueHandler());
+        this.returnValueHandlers.add(this.jsonReturnValueHandler);
+    }
+
+    /**
+     * 添加自定义策略, 优先于默认策略
+     */
+    public void addFirst(SelfHandlerMethodReturnValueHandler returnValueHandler) {
+        this.returnValueHandlers.add(0, returnValueHandler);
+    }
+
+    /**
+     * 为Handler方法的返回类型挑选写出器
+     */
+    public SelfReturnValueWriter createWriter(Method method) {
+        Type genericType = resolveReturnType(method);
+        Class<?> returnType = rawType(genericType);
+        if (void.class == returnType || Void.class == returnType) {
+            return NO_OP_WRITER;
+        }
+        if (method.isAnnotationPresent(SelfResponseBody.class)
+                || method.getDeclaringClass().isAnnotationPresent(SelfResponseBody.class)) {
+            return this.jsonReturnValueHandler.createWriter(returnType, genericType);
+        }
+        if (Object.class == returnType) {
+            return (value, req, resp) -> this.runtimeWriters.get(value.getClass()).write(value, req, resp);
+        }
+        return createWriter(returnType, genericType);
+    }
+
+    private SelfReturnValueWriter createWriter(Class<?> returnType, Type genericReturnType) {
+        for (SelfHandlerMethodReturnValueHandler returnValueHandler : this.returnValueHandlers) {
+            if (returnValueHandler.supportsReturnType(returnType)) {
+                return returnValueHandler.createWriter(returnType, genericReturnType);
+            }
+        }
+        throw new IllegalStateException("No return value handler for " + returnType.getName());
+    }
+
+    /**
+     * CompletionStage<T>取T, 取不到具体类型时返回Object
+     */
+    private static Type resolveReturnType(Method method) {
+        Type genericType = method.getGenericReturnType();
+        if (!CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+            return genericType;
+        }
+        if (genericType instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+            if (1 == arguments.length && (arguments[0] instanceof Class || arguments[0] instanceof ParameterizedType)) {
+                return arguments[0];
+            }
+        }
+        return Object.class;
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        return Object.class;
+    }
+}
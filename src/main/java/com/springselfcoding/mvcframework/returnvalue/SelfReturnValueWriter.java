@@ -0,0 +1,14 @@
+package com.springselfcoding.mvcframework.returnvalue;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 已经绑定到某个Handler方法返回类型的写出器, 类型判断在创建时完成
+ * 请求时只负责把非null的返回值写入响应
+ */
+@FunctionalInterface
+public interface SelfReturnValueWriter {
+
+    void write(Object value, HttpServletRequest req, HttpServletResponse resp) throws Exception;
+}
@@ -0,0 +1,52 @@
+package com.springselfcoding.mvcframework.returnvalue;
+
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 流式写出, 写完后关闭返回的资源
+ * 1) InputStream: 长度未知, 分段复制
+ * 2) Path / FileChannel: 长度已知, 设置Content-Length后按Channel传输, Path按文件名推断Content-Type
+ */
+public class SelfStreamReturnValueHandler implements SelfHandlerMethodReturnValueHandler {
+
+    @Override
+    public boolean supportsReturnType(Class<?> returnType) {
+        return InputStream.class.isAssignableFrom(returnType)
+                || Path.class.isAssignableFrom(returnType)
+                || FileChannel.class.isAssignableFrom(returnType);
+    }
+
+    @Override
+    public SelfReturnValueWriter createWriter(Class<?> returnType) {
+        if (InputStream.class.isAssignableFrom(returnType)) {
+            return (value, req, resp) -> {
+                SelfResponseOutput.setContentTypeIfAbsent(resp, SelfByteArrayReturnValueHandler.CONTENT_TYPE);
+                try (InputStream in = (InputStream) value) {
+                    SelfResponseOutput.transfer(in, resp.getOutputStream());
+                }
+            };
+        }
+        if (Path.class.isAssignableFrom(returnType)) {
+            return (value, req, resp) -> {
+                Path path = (Path) value;
+                Path fileName = path.getFileName();
+                String contentType = null == fileName ? null : URLConnection.guessContentTypeFromName(fileName.toString());
+                SelfResponseOutput.setContentTypeIfAbsent(resp,
+                        null == contentType ? SelfByteArrayReturnValueHandler.CONTENT_TYPE : contentType);
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    SelfResponseOutput.transfer(channel, resp);
+                }
+            };
+        }
+        return (value, req, resp) -> {
+            SelfResponseOutput.setContentTypeIfAbsent(resp, SelfByteArrayReturnValueHandler.CONTENT_TYPE);
+            try (FileChannel channel = (FileChannel) value) {
+                SelfResponseOutput.transfer(channel, resp);
+            }
+        };
+    }
+}
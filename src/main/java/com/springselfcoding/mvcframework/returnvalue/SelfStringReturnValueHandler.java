@@ -0,0 +1,23 @@
+package com.springselfcoding.mvcframework.returnvalue;
+
+/**
+ * String (CharSequence) 编码为字节后一次写出, 默认text/plain;charset=UTF-8
+ * UTF-8时编码到池化的缓冲区, 每个请求不再复制出一份byte[]
+ */
+public class SelfStringReturnValueHandler implements SelfHandlerMethodReturnValueHandler {
+
+    public static final String CONTENT_TYPE = "text/plain;charset=UTF-8";
+
+    @Override
+    public boolean supportsReturnType(Class<?> returnType) {
+        return CharSequence.class.isAssignableFrom(returnType);
+    }
+
+    @Override
+    public SelfReturnValueWriter createWriter(Class<?> returnType) {
+        return (value, req, resp) -> {
+            SelfResponseOutput.setContentTypeIfAbsent(resp, CONTENT_TYPE);
+            SelfResponseOutput.writeText(resp, (CharSequence) value);
+        };
+    }
+}
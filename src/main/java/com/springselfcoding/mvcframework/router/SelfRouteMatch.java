@@ -0,0 +1,54 @@
+package com.springselfcoding.mvcframework.router;
+
+/**
+ * 路由匹配结果, 包含Handler, 注册时的pattern, 以及按顺序捕获的路径变量
+ * 匿名的 * 与 ** 在variableNames中对应位置为null
+ */
+public class SelfRouteMatch<T> {
+
+    private final T handler;
+
+    private final String pattern;
+
+    private final String[] variableNames;
+
+    private final String[] variableValues;
+
+    SelfRouteMatch(T handler, String pattern, String[] variableNames, String[] variableValues) {
+        this.handler = handler;
+        this.pattern = pattern;
+        this.variableNames = variableNames;
+        this.variableValues = variableValues;
+    }
+
+    public T getHandler() {
+        return this.handler;
+    }
+
+    public String getPattern() {
+        return this.pattern;
+    }
+
+    public int getVariableCount() {
+        return this.variableValues.length;
+    }
+
+    /**
+     * 按位置获取路径变量, 位置在注册时就已确定
+     */
+    public String getVariable(int index) {
+        return this.variableValues[index];
+    }
+
+    /**
+     * 按名称获取路径变量, 没有则返回null
+     */
+    public String getVariable(String name) {
+        for (int i = 0; i < this.variableNames.length; i++) {
+            if (name.equals(this.variableNames[i])) {
+                return this.variableValues[i];
+            }
+        }
+        return null;
+    }
+}
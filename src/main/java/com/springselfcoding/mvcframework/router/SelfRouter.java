@@ -0,0 +1,306 @@
+package com.springselfcoding.mvcframework.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 基于压缩前缀树(Radix Tree)的URL路由
+ * 1) 静态部分按字符压缩存储, 子节点按首字符索引
+ * 2) {var} 与 * 匹配单个路径段, {var}会被捕获为路径变量
+ * 3) ** 匹配剩余的全部路径, 只能作为最后一段; 剩余路径可以为空, /a/** 同样匹配 /a
+ * 4) 匹配优先级: 静态 > 单段变量 > 多段通配, 查找耗时只与路径长度有关, 与路由数量无关
+ */
+public class SelfRouter<T> {
+
+    // 查找时记录捕获位置的数组, 按线程复用; 匹配结果在返回前已经取出字符串, 不再引用它
+    private static final ThreadLocal<int[]> CAPTURES = ThreadLocal.withInitial(() -> new int[16]);
+
+    private final Node<T> root = new Node<>("");
+
+    // 所有路由中路径变量最多的个数, 查找时据此分配捕获数组
+    private int maxVariables = 0;
+
+    private int size = 0;
+
+    /**
+     * 注册路由, pattern必须以'/'开头, 动态段必须是完整的一段
+     */
+    public void addRoute(String pattern, T handler) {
+        if (null == pattern || !pattern.startsWith("/")) {
+            throw new IllegalArgumentException("Route pattern must start with '/': " + pattern);
+        }
+
+        String[] segments = pattern.split("/", -1);
+        List<String> variableNames = new ArrayList<>();
+        StringBuilder staticPart = new StringBuilder();
+        Node<T> node = this.root;
+
+        // 第0段是开头'/'之前的空串, 跳过
+        for (int i = 1; i < segments.length; i++) {
+            String segment = segments[i];
+            staticPart.append('/');
+
+            if ("**".equals(segment)) {
+                if (i != segments.length - 1) {
+                    throw new IllegalArgumentException("'**' must be the last segment: " + pattern);
+                }
+                node = insertStatic(node, staticPart.toString());
+                staticPart.setLength(0);
+                if (null == node.catchAllChild) {
+                    node.catchAllChild = new Node<>("");
+                }
+                node = node.catchAllChild;
+                variableNames.add(null);
+            } else if ("*".equals(segment) || isVariable(segment)) {
+                node = insertStatic(node, staticPart.toString());
+                staticPart.setLength(0);
+                if (null == node.paramChild) {
+                    node.paramChild = new Node<>("");
+                }
+                node = node.paramChild;
+                // * 不捕获名称, 但依然占一个位置
+                variableNames.add("*".equals(segment) ? null : segment.substring(1, segment.length() - 1));
+            } else if (segment.indexOf('{') >= 0 || segment.indexOf('}') >= 0 || segment.indexOf('*') >= 0) {
+                throw new IllegalArgumentException("Dynamic part must be a whole segment: " + pattern);
+            } else {
+                staticPart.append(segment);
+            }
+        }
+        if (staticPart.length() > 0) {
+            node = insertStatic(node, staticPart.toString());
+        }
+
+        if (null != node.handler) {
+            throw new IllegalStateException(pattern + " is repeated with " + node.pattern);
+        }
+        node.handler = handler;
+        node.pattern = pattern;
+        node.variableNames = variableNames.toArray(new String[0]);
+        if (node.variableNames.length == 0) {
+            // 静态路由的匹配结果不可变, 提前创建好, 查找时不再分配对象
+            node.staticMatch = new SelfRouteMatch<>(handler, pattern, node.variableNames, node.variableNames);
+        }
+        this.maxVariables = Math.max(this.maxVariables, node.variableNames.length);
+        this.size++;
+    }
+
+    /**
+     * 查找与路径匹配的路由, 没有则返回null
+     */
+    public SelfRouteMatch<T> match(String path) {
+        if (null == path || path.isEmpty()) {
+            return null;
+        }
+        int[] captures = null;
+        if (this.maxVariables > 0) {
+            captures = CAPTURES.get();
+            if (captures.length < this.maxVariables * 2) {
+                captures = new int[this.maxVariables * 2];
+                CAPTURES.set(captures);
+            }
+        }
+        Node<T> leaf = find(this.root, path, 0, captures, 0);
+        if (null == leaf) {
+            return null;
+        }
+        if (null != leaf.staticMatch) {
+            return leaf.staticMatch;
+        }
+        String[] values = new String[leaf.variableNames.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = path.substring(captures[i * 2], captures[i * 2 + 1]);
+        }
+        return new SelfRouteMatch<>(leaf.handler, leaf.pattern, leaf.variableNames, values);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * pattern中按顺序出现的路径变量名, 匿名的 * 与 ** 对应null, 与匹配结果中的位置一致
+     */
+    public static String[] getVariableNames(String pattern) {
+        List<String> variableNames = new ArrayList<>();
+        for (String segment : pattern.split("/")) {
+            if ("*".equals(segment) || "**".equals(segment)) {
+                variableNames.add(null);
+            } else if (isVariable(segment)) {
+                variableNames.add(segment.substring(1, segment.length() - 1));
+            }
+        }
+        return variableNames.toArray(new String[0]);
+    }
+
+    /**
+     * 当前节点的前缀已经匹配完, 从pos开始继续向下匹配
+     */
+    private Node<T> find(Node<T> node, String path, int pos, int[] captures, int depth) {
+        int length = path.length();
+        if (pos == length) {
+            if (null != node.handler) {
+                return node;
+            }
+            // ** 可以匹配空的剩余路径
+            if (null != node.catchAllChild) {
+                captures[depth * 2] = pos;
+                captures[depth * 2 + 1] = pos;
+                return node.catchAllChild;
+            }
+            return catchAllBeforeSlash(node.getChild('/'), path, pos, captures, depth);
+        }
+
+        // 1. 静态子节点
+        Node<T> child = node.getChild(path.charAt(pos));
+        if (null != child && path.startsWith(child.prefix, pos)) {
+            Node<T> result = find(child, path, pos + child.prefix.length(), captures, depth);
+            if (null != result) {
+                return result;
+            }
+            child = null;
+        }
+
+        // 2. 单段变量, 匹配到下一个'/'为止
+        if (null != node.paramChild) {
+            int end = path.indexOf('/', pos);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > pos) {
+                captures[depth * 2] = pos;
+                captures[depth * 2 + 1] = end;
+                Node<T> result = find(node.paramChild, path, end, captures, depth + 1);
+                if (null != result) {
+                    return result;
+                }
+            }
+        }
+
+        // 3. 多段通配, 吃掉剩余全部路径
+        if (null != node.catchAllChild) {
+            captures[depth * 2] = pos;
+            captures[depth * 2 + 1] = length;
+            return node.catchAllChild;
+        }
+        return catchAllBeforeSlash(child, path, pos, captures, depth);
+    }
+
+    /**
+     * 剩余路径补上结尾的'/'后正好是child的前缀, 且child下有 ** 时匹配, 捕获空串
+     */
+    private static <T> Node<T> catchAllBeforeSlash(Node<T> child, String path, int pos, int[] captures, int depth) {
+        int rest = path.length() - pos;
+        if (null == child || null == child.catchAllChild || child.prefix.length() != rest + 1
+                || '/' != child.prefix.charAt(rest) || !path.regionMatches(pos, child.prefix, 0, rest)) {
+            return null;
+        }
+        captures[depth * 2] = path.length();
+        captures[depth * 2 + 1] = path.length();
+        return child.catchAllChild;
+    }
+
+    /**
+     * 将静态路径插入到node下, 必要时拆分已有节点, 返回路径末尾对应的节点
+     */
+    private Node<T> insertStatic(Node<T> node, String path) {
+        while (!path.isEmpty()) {
+            Node<T> child = node.getChild(path.charAt(0));
+            if (null == child) {
+                child = new Node<>(path);
+                node.addChild(child);
+                return child;
+            }
+
+            int common = commonPrefixLength(child.prefix, path);
+            if (common < child.prefix.length()) {
+                // 拆分: child变为新中间节点的子节点
+                Node<T> middle = new Node<>(child.prefix.substring(0, common));
+                node.replaceChild(child, middle);
+                child.prefix = child.prefix.substring(common);
+                middle.addChild(child);
+                child = middle;
+            }
+            path = path.substring(common);
+            node = child;
+        }
+        return node;
+    }
+
+    private static boolean isVariable(String segment) {
+        return segment.length() > 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}';
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * 树节点, prefix为压缩后的静态片段
+     */
+    private static final class Node<T> {
+
+        private String prefix;
+
+        // 静态子节点的首字符索引, 与children一一对应
+        private char[] indices = new char[0];
+
+        private Node<T>[] children = newArray(0);
+
+        // 单段变量子节点 ({var} 或 *)
+        private Node<T> paramChild;
+
+        // 多段通配子节点 (**)
+        private Node<T> catchAllChild;
+
+        private T handler;
+
+        private String pattern;
+
+        private String[] variableNames;
+
+        private SelfRouteMatch<T> staticMatch;
+
+        private Node(String prefix) {
+            this.prefix = prefix;
+        }
+
+        private Node<T> getChild(char c) {
+            char[] indices = this.indices;
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] == c) {
+                    return this.children[i];
+                }
+            }
+            return null;
+        }
+
+        private void addChild(Node<T> child) {
+            int n = this.indices.length;
+            this.indices = Arrays.copyOf(this.indices, n + 1);
+            this.children = Arrays.copyOf(this.children, n + 1);
+            this.indices[n] = child.prefix.charAt(0);
+            this.children[n] = child;
+        }
+
+        private void replaceChild(Node<T> oldChild, Node<T> newChild) {
+            for (int i = 0; i < this.children.length; i++) {
+                if (this.children[i] == oldChild) {
+                    this.children[i] = newChild;
+                    this.indices[i] = newChild.prefix.charAt(0);
+                    return;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] newArray(int size) {
+            return (Node<T>[]) new Node[size];
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.springselfcoding.mvcframework.server;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 内嵌服务器的异步上下文
+ * 1) service()返回前调用的complete()只做标记, 由工作线程照常结束请求; 之后调用时交给连接在工作线程上写响应
+ * 2) 超时在service()返回后才开始计时, 监听器都没有complete()时回复500
+ * 3) 不支持dispatch()
+ */
+final class SelfEmbeddedAsyncContext implements AsyncContext {
+
+    private final SelfHttpConnection connection;
+
+    private final SelfHttpRequestHead head;
+
+    private final SelfEmbeddedResponse response;
+
+    private final ServletRequest request;
+
+    private final ServletResponse servletResponse;
+
+    private final boolean originalRequestAndResponse;
+
+    private final List<AsyncListener> listeners = new ArrayList<>();
+
+    private long timeout = 30000;
+
+    private ScheduledFuture<?> timeoutFuture;
+
+    // service()还没有返回
+    private boolean dispatching = true;
+
+    private boolean completed;
+
+    SelfEmbeddedAsyncContext(SelfHttpConnection connection, SelfHttpRequestHead head, SelfEmbeddedResponse response,
+                             ServletRequest request, ServletResponse servletResponse,
+                             boolean originalRequestAndResponse) {
+        this.connection = connection;
+        this.head = head;
+        this.response = response;
+        this.request = request;
+        this.servletResponse = servletResponse;
+        this.originalRequestAndResponse = originalRequestAndResponse;
+    }
+
+    /**
+     * 工作线程: service()返回, 已经complete()时返回true, 否则开始计时并返回false
+     */
+    synchronized boolean onDispatchReturned() {
+        this.dispatching = false;
+        if (this.completed) {
+            return true;
+        }
+        if (this.timeout > 0) {
+            this.timeoutFuture = this.connection.getServer().schedule(this::onTimeout, this.timeout);
+        }
+        return false;
+    }
+
+    synchronized boolean isCompleted() {
+        return this.completed;
+    }
+
+    @Override
+    public void complete() {
+        List<AsyncListener> listeners;
+        boolean dispatching;
+        synchronized (this) {
+            if (this.completed) {
+                return;
+            }
+            this.completed = true;
+            if (null != this.timeoutFuture) {
+                this.timeoutFuture.cancel(false);
+            }
+            listeners = new ArrayList<>(this.listeners);
+            dispatching = this.dispatching;
+        }
+        AsyncEvent event = new AsyncEvent(this, this.request, this.servletResponse);
+        for (AsyncListener listener : listeners) {
+            try {
+                listener.onComplete(event);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (!dispatching) {
+            this.connection.onAsyncComplete(this.head, this.response);
+        }
+    }
+
+    /**
+     * 定时器线程: 通知监听器, 都没有complete()时回复500
+     */
+    private void onTimeout() {
+        List<AsyncListener> listeners;
+        synchronized (this) {
+            if (this.completed) {
+                return;
+            }
+            listeners = new ArrayList<>(this.listeners);
+        }
+        AsyncEvent event = new AsyncEvent(this, this.request, this.servletResponse);
+        for (AsyncListener listener : listeners) {
+            try {
+                listener.onTimeout(event);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (!isCompleted()) {
+            this.response.failIfUncommitted();
+            complete();
+        }
+    }
+
+    @Override
+    public ServletRequest getRequest() {
+        return this.request;
+    }
+
+    @Override
+    public ServletResponse getResponse() {
+        return this.servletResponse;
+    }
+
+    @Override
+    public boolean hasOriginalRequestAndResponse() {
+        return this.originalRequestAndResponse;
+    }
+
+    @Override
+    public void dispatch() {
+        throw new UnsupportedOperationException("dispatch() is not supported by the embedded server");
+    }
+
+    @Override
+    public void dispatch(String path) {
+        throw new UnsupportedOperationException("dispatch() is not supported by the embedded server");
+    }
+
+    @Override
+    public void dispatch(ServletContext context, String path) {
+        throw new UnsupportedOperationException("dispatch() is not supported by the embedded server");
+    }
+
+    @Override
+    public void start(Runnable run) {
+        this.connection.getServer().execute(run);
+    }
+
+    @Override
+    public synchronized void addListener(AsyncListener listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void addListener(AsyncListener listener, ServletRequest servletRequest, ServletResponse servletResponse) {
+        addListener(listener);
+    }
+
+    @Override
+    public <T extends AsyncListener> T createListener(Class<T> clazz) throws ServletException {
+        try {
+            return clazz.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new ServletException(e);
+        }
+    }
+
+    @Override
+    public synchronized void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public synchronized long getTimeout() {
+        return this.timeout;
+    }
+}
@@ -0,0 +1,659 @@
+package com.springselfcoding.mvcframework.server;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.ReadListener;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpUpgradeHandler;
+import javax.servlet.http.Part;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 内嵌服务器的请求, 创建时把请求体复制出连接的读缓冲区
+ * 1) 异步请求超时后Handler还在运行, 连接已经在处理下一个请求或归还了缓冲区, 请求体不能再引用它; 没有请求体时不复制
+ * 2) 参数在第一次访问时解析: 查询串, 以及没有读取过请求体的application/x-www-form-urlencoded表单, 默认按UTF-8解码
+ * 3) 没有Servlet容器: getServletContext()与getRequestDispatcher()返回null, contextPath与servletPath为空, pathInfo就是URI
+ * 4) 不支持Session, 认证与multipart, 调用时抛出异常或返回空值
+ */
+final class SelfEmbeddedRequest implements HttpServletRequest {
+
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    private final SelfHttpConnection connection;
+
+    private final SelfHttpRequestHead head;
+
+    // 请求自己的请求体
+    private final byte[] body;
+
+    private HttpServletResponse response;
+
+    private Map<String, Object> attributes;
+
+    private Map<String, String[]> parameters;
+
+    private String characterEncoding;
+
+    private ServletInputStream inputStream;
+
+    private BufferedReader reader;
+
+    private SelfEmbeddedAsyncContext asyncContext;
+
+    SelfEmbeddedRequest(SelfHttpConnection connection, SelfHttpRequestHead head, byte[] buffer) {
+        this.connection = connection;
+        this.head = head;
+        this.body = 0 == head.getBodyLength() ? EMPTY_BODY
+                : Arrays.copyOfRange(buffer, head.getBodyStart(), head.getBodyStart() + head.getBodyLength());
+    }
+
+    void setResponse(HttpServletResponse response) {
+        this.response = response;
+    }
+
+    SelfEmbeddedAsyncContext getEmbeddedAsyncContext() {
+        return this.asyncContext;
+    }
+
+    // ---------------- 请求行与头部 ----------------
+
+    @Override
+    public String getMethod() {
+        return this.head.getMethod();
+    }
+
+    @Override
+    public String getRequestURI() {
+        return this.head.getUri();
+    }
+
+    @Override
+    public StringBuffer getRequestURL() {
+        return new StringBuffer(getScheme()).append("://").append(getServerName()).append(':')
+                .append(getServerPort()).append(getRequestURI());
+    }
+
+    @Override
+    public String getQueryString() {
+        return this.head.getQueryString();
+    }
+
+    @Override
+    public String getProtocol() {
+        return this.head.getProtocol();
+    }
+
+    @Override
+    public String getContextPath() {
+        return "";
+    }
+
+    @Override
+    public String getServletPath() {
+        return "";
+    }
+
+    @Override
+    public String getPathInfo() {
+        return this.head.getUri();
+    }
+
+    @Override
+    public String getPathTranslated() {
+        return null;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return this.head.getHeaders().get(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+        return Collections.enumeration(this.head.getHeaders().getAll(name));
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+        return Collections.enumeration(this.head.getHeaders().names());
+    }
+
+    @Override
+    public int getIntHeader(String name) {
+        String value = getHeader(name);
+        return null == value ? -1 : Integer.parseInt(value.trim());
+    }
+
+    @Override
+    public long getDateHeader(String name) {
+        String value = getHeader(name);
+        if (null == value) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Malformed date header " + name + ": " + value, e);
+        }
+    }
+
+    @Override
+    public Cookie[] getCookies() {
+        List<Cookie> cookies = new ArrayList<>();
+        for (String header : this.head.getHeaders().getAll("Cookie")) {
+            for (String pair : header.split(";")) {
+                int equals = pair.indexOf('=');
+                if (equals <= 0) {
+                    continue;
+                }
+                try {
+                    cookies.add(new Cookie(pair.substring(0, equals).trim(), pair.substring(equals + 1).trim()));
+                } catch (IllegalArgumentException e) {
+                    // 名称不合法的cookie忽略
+                }
+            }
+        }
+        return cookies.isEmpty() ? null : cookies.toArray(new Cookie[0]);
+    }
+
+    // ---------------- 参数 ----------------
+
+    @Override
+    public String getParameter(String name) {
+        String[] values = parameters().get(name);
+        return null == values ? null : values[0];
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(parameters().keySet());
+    }
+
+    @Override
+    public String[] getParameterValues(String name) {
+        return parameters().get(name);
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        return Collections.unmodifiableMap(parameters());
+    }
+
+    private Map<String, String[]> parameters() {
+        if (null == this.parameters) {
+            Map<String, List<String>> values = new LinkedHashMap<>();
+            Charset charset = charset();
+            if (null != this.head.getQueryString()) {
+                parseForm(this.head.getQueryString(), charset, values);
+            }
+            String contentType = getContentType();
+            if (null == this.inputStream && null != contentType
+                    && contentType.toLowerCase(Locale.ROOT).startsWith(FORM_CONTENT_TYPE) && this.head.getBodyLength() > 0) {
+                parseForm(new String(this.body, StandardCharsets.ISO_8859_1), charset, values);
+            }
+            Map<String, String[]> parameters = new LinkedHashMap<>();
+            values.forEach((name, list) -> parameters.put(name, list.toArray(new String[0])));
+            this.parameters = parameters;
+        }
+        return this.parameters;
+    }
+
+    private static void parseForm(String form, Charset charset, Map<String, List<String>> values) {
+        for (String pair : form.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            String name = decode(equals < 0 ? pair : pair.substring(0, equals), charset);
+            String value = equals < 0 ? "" : decode(pair.substring(equals + 1), charset);
+            values.computeIfAbsent(name, key -> new ArrayList<>(1)).add(value);
+        }
+    }
+
+    private static String decode(String value, Charset charset) {
+        if (value.indexOf('%') < 0 && value.indexOf('+') < 0) {
+            return value;
+        }
+        try {
+            return URLDecoder.decode(value, charset);
+        } catch (IllegalArgumentException e) {
+            // 不合法的%转义保留原样
+            return value;
+        }
+    }
+
+    // ---------------- 请求体 ----------------
+
+    @Override
+    public String getCharacterEncoding() {
+        if (null != this.characterEncoding) {
+            return this.characterEncoding;
+        }
+        String contentType = getContentType();
+        if (null != contentType) {
+            for (String parameter : contentType.split(";")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0 && "charset".equalsIgnoreCase(parameter.substring(0, equals).trim())) {
+                    return parameter.substring(equals + 1).trim().replace("\"", "");
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void setCharacterEncoding(String env) throws UnsupportedEncodingException {
+        if (!Charset.isSupported(env)) {
+            throw new UnsupportedEncodingException(env);
+        }
+        this.characterEncoding = env;
+    }
+
+    private Charset charset() {
+        String encoding = getCharacterEncoding();
+        return null == encoding ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+    }
+
+    @Override
+    public int getContentLength() {
+        return this.head.getBodyLength();
+    }
+
+    @Override
+    public long getContentLengthLong() {
+        return this.head.getBodyLength();
+    }
+
+    @Override
+    public String getContentType() {
+        return getHeader("Content-Type");
+    }
+
+    @Override
+    public ServletInputStream getInputStream() {
+        if (null != this.reader) {
+            throw new IllegalStateException("getReader() has already been called");
+        }
+        if (null == this.inputStream) {
+            this.inputStream = new BodyInputStream(this.body, 0, this.body.length);
+        }
+        return this.inputStream;
+    }
+
+    @Override
+    public BufferedReader getReader() {
+        if (null != this.inputStream && null == this.reader) {
+            throw new IllegalStateException("getInputStream() has already been called");
+        }
+        if (null == this.reader) {
+            this.inputStream = new BodyInputStream(this.body, 0, this.body.length);
+            this.reader = new BufferedReader(new InputStreamReader(this.inputStream, charset()));
+        }
+        return this.reader;
+    }
+
+    // ---------------- 属性 ----------------
+
+    @Override
+    public Object getAttribute(String name) {
+        return null == this.attributes ? null : this.attributes.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        return Collections.enumeration(null == this.attributes ? Collections.emptySet() : this.attributes.keySet());
+    }
+
+    @Override
+    public void setAttribute(String name, Object o) {
+        if (null == o) {
+            removeAttribute(name);
+            return;
+        }
+        if (null == this.attributes) {
+            this.attributes = new HashMap<>();
+        }
+        this.attributes.put(name, o);
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        if (null != this.attributes) {
+            this.attributes.remove(name);
+        }
+    }
+
+    // ---------------- 连接 ----------------
+
+    @Override
+    public String getScheme() {
+        return "http";
+    }
+
+    @Override
+    public boolean isSecure() {
+        return false;
+    }
+
+    @Override
+    public String getServerName() {
+        String host = getHeader("Host");
+        if (null == host || host.isEmpty()) {
+            return getLocalName();
+        }
+        // IPv6字面量带方括号, 端口在方括号之后
+        int colon = host.lastIndexOf(':');
+        return colon > host.lastIndexOf(']') ? host.substring(0, colon) : host;
+    }
+
+    @Override
+    public int getServerPort() {
+        String host = getHeader("Host");
+        if (null != host) {
+            int colon = host.lastIndexOf(':');
+            if (colon > host.lastIndexOf(']')) {
+                try {
+                    return Integer.parseInt(host.substring(colon + 1).trim());
+                } catch (NumberFormatException e) {
+                    // 格式不对时按本地端口
+                }
+            }
+        }
+        return getLocalPort();
+    }
+
+    @Override
+    public String getRemoteAddr() {
+        InetSocketAddress address = this.connection.getRemoteAddress();
+        return null == address ? null : address.getAddress().getHostAddress();
+    }
+
+    @Override
+    public String getRemoteHost() {
+        return getRemoteAddr();
+    }
+
+    @Override
+    public int getRemotePort() {
+        InetSocketAddress address = this.connection.getRemoteAddress();
+        return null == address ? -1 : address.getPort();
+    }
+
+    @Override
+    public String getLocalName() {
+        return getLocalAddr();
+    }
+
+    @Override
+    public String getLocalAddr() {
+        InetSocketAddress address = this.connection.getLocalAddress();
+        return null == address ? null : address.getAddress().getHostAddress();
+    }
+
+    @Override
+    public int getLocalPort() {
+        InetSocketAddress address = this.connection.getLocalAddress();
+        return null == address ? -1 : address.getPort();
+    }
+
+    @Override
+    public Locale getLocale() {
+        Enumeration<Locale> locales = getLocales();
+        return locales.nextElement();
+    }
+
+    @Override
+    public Enumeration<Locale> getLocales() {
+        List<Locale> locales = new ArrayList<>();
+        String acceptLanguage = getHeader("Accept-Language");
+        if (null != acceptLanguage) {
+            for (Locale.LanguageRange range : Locale.LanguageRange.parse(acceptLanguage)) {
+                if (!"*".equals(range.getRange())) {
+                    locales.add(Locale.forLanguageTag(range.getRange()));
+                }
+            }
+        }
+        if (locales.isEmpty()) {
+            locales.add(Locale.getDefault());
+        }
+        return Collections.enumeration(locales);
+    }
+
+    // ---------------- 异步 ----------------
+
+    @Override
+    public AsyncContext startAsync() {
+        return startAsync(this, this.response);
+    }
+
+    @Override
+    public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+        if (null != this.asyncContext) {
+            throw new IllegalStateException("Async processing has already been started");
+        }
+        this.asyncContext = new SelfEmbeddedAsyncContext(this.connection, this.head,
+                (SelfEmbeddedResponse) this.response, servletRequest, servletResponse,
+                servletRequest == this && servletResponse == this.response);
+        return this.asyncContext;
+    }
+
+    @Override
+    public boolean isAsyncStarted() {
+        return null != this.asyncContext && !this.asyncContext.isCompleted();
+    }
+
+    @Override
+    public boolean isAsyncSupported() {
+        return true;
+    }
+
+    @Override
+    public AsyncContext getAsyncContext() {
+        if (null == this.asyncContext) {
+            throw new IllegalStateException("Async processing has not been started");
+        }
+        return this.asyncContext;
+    }
+
+    @Override
+    public DispatcherType getDispatcherType() {
+        return DispatcherType.REQUEST;
+    }
+
+    // ---------------- 不支持的功能 ----------------
+
+    @Override
+    public ServletContext getServletContext() {
+        return null;
+    }
+
+    @Override
+    public RequestDispatcher getRequestDispatcher(String path) {
+        return null;
+    }
+
+    @Override
+    @Deprecated
+    public String getRealPath(String path) {
+        return null;
+    }
+
+    @Override
+    public String getAuthType() {
+        return null;
+    }
+
+    @Override
+    public String getRemoteUser() {
+        return null;
+    }
+
+    @Override
+    public boolean isUserInRole(String role) {
+        return false;
+    }
+
+    @Override
+    public Principal getUserPrincipal() {
+        return null;
+    }
+
+    @Override
+    public String getRequestedSessionId() {
+        return null;
+    }
+
+    @Override
+    public HttpSession getSession(boolean create) {
+        if (create) {
+            throw new IllegalStateException("Sessions are not supported by the embedded server");
+        }
+        return null;
+    }
+
+    @Override
+    public HttpSession getSession() {
+        return getSession(true);
+    }
+
+    @Override
+    public String changeSessionId() {
+        throw new IllegalStateException("Sessions are not supported by the embedded server");
+    }
+
+    @Override
+    public boolean isRequestedSessionIdValid() {
+        return false;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromCookie() {
+        return false;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromURL() {
+        return false;
+    }
+
+    @Override
+    @Deprecated
+    public boolean isRequestedSessionIdFromUrl() {
+        return false;
+    }
+
+    @Override
+    public boolean authenticate(HttpServletResponse response) throws ServletException {
+        throw new ServletException("Authentication is not supported by the embedded server");
+    }
+
+    @Override
+    public void login(String username, String password) throws ServletException {
+        throw new ServletException("Authentication is not supported by the embedded server");
+    }
+
+    @Override
+    public void logout() throws ServletException {
+        throw new ServletException("Authentication is not supported by the embedded server");
+    }
+
+    @Override
+    public Collection<Part> getParts() throws ServletException {
+        throw new ServletException("Multipart requests are not supported by the embedded server");
+    }
+
+    @Override
+    public Part getPart(String name) throws ServletException {
+        throw new ServletException("Multipart requests are not supported by the embedded server");
+    }
+
+    @Override
+    public <T extends HttpUpgradeHandler> T upgrade(Class<T> handlerClass) throws ServletException {
+        throw new ServletException("HTTP upgrade is not supported by the embedded server");
+    }
+
+    /**
+     * 读取缓冲区中的请求体, 不复制
+     */
+    private static final class BodyInputStream extends ServletInputStream {
+
+        private final byte[] buffer;
+
+        private int position;
+
+        private final int end;
+
+        BodyInputStream(byte[] buffer, int start, int end) {
+            this.buffer = buffer;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() {
+            return this.position < this.end ? this.buffer[this.position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (this.position >= this.end) {
+                return -1;
+            }
+            int n = Math.min(len, this.end - this.position);
+            System.arraycopy(this.buffer, this.position, b, off, n);
+            this.position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return this.end - this.position;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return this.position >= this.end;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            throw new UnsupportedOperationException("Non-blocking input is not supported by the embedded server");
+        }
+    }
+}
@@ -0,0 +1,733 @@
+package com.springselfcoding.mvcframework.server;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 内嵌服务器的响应
+ * 1) 响应体先写入池化的缓冲区, 请求结束时缓冲区还放得下就按Content-Length与响应头一起一次写出
+ * 2) 缓冲区写满或flush时提交响应头: 已设置Content-Length时直接写, 否则HTTP/1.1用chunked, HTTP/1.0写完后关闭连接
+ * 3) OutputStream同时是WritableByteChannel, FileChannel.transferTo与ByteBuffer直接写入Socket, 不经过缓冲区
+ * 4) 异步请求超时后Handler还可能在写, 缓冲区, 结束标记与所有写出都在响应的锁内, 结束后的写入直接失败
+ *    Writer中的字符总是在取得响应的锁之前编码, 锁的顺序固定为先Writer后响应
+ */
+final class SelfEmbeddedResponse implements HttpServletResponse {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    private static final String[] REASON_PHRASES = new String[600];
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    // Date头按秒缓存
+    private static volatile CachedDate cachedDate = new CachedDate(0, "");
+
+    static {
+        String[][] phrases = {{"100", "Continue"}, {"200", "OK"}, {"201", "Created"}, {"202", "Accepted"},
+                {"204", "No Content"}, {"206", "Partial Content"}, {"301", "Moved Permanently"}, {"302", "Found"},
+                {"303", "See Other"}, {"304", "Not Modified"}, {"307", "Temporary Redirect"},
+                {"308", "Permanent Redirect"}, {"400", "Bad Request"}, {"401", "Unauthorized"}, {"403", "Forbidden"},
+                {"404", "Not Found"}, {"405", "Method Not Allowed"}, {"406", "Not Acceptable"},
+                {"408", "Request Timeout"}, {"409", "Conflict"}, {"410", "Gone"}, {"411", "Length Required"},
+                {"412", "Precondition Failed"}, {"413", "Payload Too Large"}, {"414", "URI Too Long"},
+                {"415", "Unsupported Media Type"}, {"429", "Too Many Requests"},
+                {"431", "Request Header Fields Too Large"}, {"500", "Internal Server Error"},
+                {"501", "Not Implemented"}, {"502", "Bad Gateway"}, {"503", "Service Unavailable"},
+                {"504", "Gateway Timeout"}, {"505", "HTTP Version Not Supported"}};
+        for (String[] phrase : phrases) {
+            REASON_PHRASES[Integer.parseInt(phrase[0])] = phrase[1];
+        }
+    }
+
+    private final SelfHttpConnection connection;
+
+    private final SelfHttpRequestHead head;
+
+    private final SelfHttpHeaders headers = new SelfHttpHeaders();
+
+    private int status = SC_OK;
+
+    private String contentType;
+
+    private String characterEncoding;
+
+    private long contentLength = -1;
+
+    private Locale locale = Locale.getDefault();
+
+    // 池化的响应体缓冲区, 第一次写入时借出; 以下写出相关的状态都在synchronized (this)内访问
+    private byte[] buffer;
+
+    private int count;
+
+    private volatile boolean committed;
+
+    private boolean chunked;
+
+    // 响应写完后关闭连接
+    private boolean closeConnection;
+
+    private boolean finished;
+
+    private EmbeddedOutputStream outputStream;
+
+    private EmbeddedWriter writer;
+
+    SelfEmbeddedResponse(SelfHttpConnection connection, SelfHttpRequestHead head) {
+        this.connection = connection;
+        this.head = head;
+        this.closeConnection = !head.isKeepAlive();
+    }
+
+    static String reasonPhrase(int status) {
+        String phrase = status >= 0 && status < REASON_PHRASES.length ? REASON_PHRASES[status] : null;
+        return null == phrase ? "Unknown" : phrase;
+    }
+
+    /**
+     * 请求结束: 写出剩余的响应, 返回连接是否可以继续使用
+     */
+    boolean finish() throws IOException {
+        if (!isFinished()) {
+            flushChars();
+        }
+        synchronized (this) {
+            return finishLocked();
+        }
+    }
+
+    private boolean finishLocked() throws IOException {
+        if (this.finished) {
+            return !this.closeConnection;
+        }
+        try {
+            if (!this.committed) {
+                if (this.contentLength < 0 && !isHead()) {
+                    this.contentLength = this.count;
+                }
+                commit(true);
+            } else if (this.chunked) {
+                if (this.count > 0) {
+                    writeChunk(ByteBuffer.wrap(this.buffer, 0, this.count), ByteBuffer.wrap(LAST_CHUNK));
+                } else {
+                    this.connection.write(ByteBuffer.wrap(LAST_CHUNK));
+                }
+            } else if (this.count > 0) {
+                this.connection.write(ByteBuffer.wrap(this.buffer, 0, this.count));
+            }
+            this.count = 0;
+            return !this.closeConnection;
+        } finally {
+            this.finished = true;
+            if (null != this.buffer) {
+                this.connection.getServer().getBufferPool().release(this.buffer);
+                this.buffer = null;
+            }
+        }
+    }
+
+    private synchronized boolean isFinished() {
+        return this.finished;
+    }
+
+    /**
+     * Servlet抛出异常或异步请求超时, 且还没有提交时回复500
+     */
+    void failIfUncommitted() {
+        if (this.committed) {
+            return;
+        }
+        flushChars();
+        synchronized (this) {
+            if (!this.committed && !this.finished) {
+                this.count = 0;
+                resetHeaders();
+                this.status = SC_INTERNAL_SERVER_ERROR;
+                this.closeConnection = true;
+            }
+        }
+    }
+
+    /**
+     * Writer中还没有编码的字符写入缓冲区, 必须在响应的锁之外调用
+     */
+    private void flushChars() {
+        if (null != this.writer) {
+            this.writer.flushChars();
+        }
+    }
+
+    /**
+     * 提交响应头, last时把缓冲区中的响应体一起写出; 调用方持有响应的锁
+     */
+    private void commit(boolean last) throws IOException {
+        if (this.committed) {
+            return;
+        }
+        this.committed = true;
+        boolean noBody = isHead() || SC_NO_CONTENT == this.status || SC_NOT_MODIFIED == this.status
+                || this.status < 200;
+        if (!noBody && this.contentLength < 0) {
+            if (this.head.isHttp11()) {
+                this.chunked = true;
+            } else {
+                this.closeConnection = true;
+            }
+        }
+        String connectionHeader = this.headers.get("Connection");
+        if (null != connectionHeader && connectionHeader.toLowerCase(Locale.ROOT).contains("close")) {
+            this.closeConnection = true;
+        }
+
+        StringBuilder header = new StringBuilder(256);
+        header.append(this.head.isHttp11() ? "HTTP/1.1 " : "HTTP/1.0 ").append(this.status).append(' ')
+                .append(reasonPhrase(this.status)).append("\r\n");
+        header.append("Date: ").append(currentDate()).append("\r\n");
+        if (null != this.contentType) {
+            header.append("Content-Type: ").append(getContentType()).append("\r\n");
+        }
+        if (this.contentLength >= 0 && SC_NO_CONTENT != this.status && SC_NOT_MODIFIED != this.status) {
+            header.append("Content-Length: ").append(this.contentLength).append("\r\n");
+        } else if (this.chunked) {
+            header.append("Transfer-Encoding: chunked\r\n");
+        }
+        if (this.closeConnection) {
+            if (null == connectionHeader) {
+                header.append("Connection: close\r\n");
+            }
+        } else if (!this.head.isHttp11() && null == connectionHeader) {
+            header.append("Connection: keep-alive\r\n");
+        }
+        for (int i = 0; i < this.headers.size(); i++) {
+            header.append(this.headers.name(i)).append(": ").append(this.headers.value(i)).append("\r\n");
+        }
+        header.append("\r\n");
+        ByteBuffer headerBytes = ByteBuffer.wrap(header.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+        // 没有响应体 (HEAD, 204, 304) 时缓冲区中的内容丢弃
+        if (noBody || 0 == this.count) {
+            this.count = 0;
+            this.connection.write(headerBytes);
+        } else if (!last && this.chunked) {
+            // 之后还有数据, 缓冲区的内容作为第一个chunk
+            ByteBuffer body = ByteBuffer.wrap(this.buffer, 0, this.count);
+            this.count = 0;
+            this.connection.write(headerBytes, chunkHeader(body.remaining()), body, ByteBuffer.wrap(CRLF));
+        } else {
+            ByteBuffer body = ByteBuffer.wrap(this.buffer, 0, this.count);
+            this.count = 0;
+            this.connection.write(headerBytes, body);
+        }
+    }
+
+    /**
+     * 写出缓冲区之外的数据: 先提交响应头与缓冲区, 再直接写入Socket
+     */
+    private synchronized void writeThrough(ByteBuffer data) throws IOException {
+        ensureOpen();
+        flushBody();
+        if (isHead() || !data.hasRemaining()) {
+            data.position(data.limit());
+            return;
+        }
+        if (this.chunked) {
+            writeChunk(data);
+        } else {
+            this.connection.write(data);
+        }
+    }
+
+    private void writeChunk(ByteBuffer data, ByteBuffer... trailing) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[3 + trailing.length];
+        buffers[0] = chunkHeader(data.remaining());
+        buffers[1] = data;
+        buffers[2] = ByteBuffer.wrap(CRLF);
+        System.arraycopy(trailing, 0, buffers, 3, trailing.length);
+        this.connection.write(buffers);
+    }
+
+    private static ByteBuffer chunkHeader(int size) {
+        return ByteBuffer.wrap((Integer.toHexString(size) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private boolean isHead() {
+        return "HEAD".equals(this.head.getMethod());
+    }
+
+    private byte[] buffer() {
+        ensureOpen();
+        if (null == this.buffer) {
+            this.buffer = this.connection.getServer().getBufferPool().acquire();
+        }
+        return this.buffer;
+    }
+
+    /**
+     * 异步请求超时后结果才到达时, 响应已经结束, 不能再写; 调用方持有响应的锁
+     */
+    private void ensureOpen() {
+        if (this.finished) {
+            throw new IllegalStateException("Response has already been completed");
+        }
+    }
+
+    private static String currentDate() {
+        long second = System.currentTimeMillis() / 1000;
+        CachedDate date = cachedDate;
+        if (date.second != second) {
+            date = new CachedDate(second, DATE_FORMAT.format(Instant.ofEpochSecond(second)));
+            cachedDate = date;
+        }
+        return date.value;
+    }
+
+    // ---------------- 响应头 ----------------
+
+    @Override
+    public void addCookie(Cookie cookie) {
+        StringBuilder value = new StringBuilder(cookie.getName()).append('=').append(cookie.getValue());
+        if (null != cookie.getPath()) {
+            value.append("; Path=").append(cookie.getPath());
+        }
+        if (null != cookie.getDomain()) {
+            value.append("; Domain=").append(cookie.getDomain());
+        }
+        if (cookie.getMaxAge() >= 0) {
+            value.append("; Max-Age=").append(cookie.getMaxAge());
+        }
+        if (cookie.getSecure()) {
+            value.append("; Secure");
+        }
+        if (cookie.isHttpOnly()) {
+            value.append("; HttpOnly");
+        }
+        addHeader("Set-Cookie", value.toString());
+    }
+
+    @Override
+    public boolean containsHeader(String name) {
+        return null != getHeader(name);
+    }
+
+    @Override
+    public String encodeURL(String url) {
+        return url;
+    }
+
+    @Override
+    public String encodeRedirectURL(String url) {
+        return url;
+    }
+
+    @Override
+    @Deprecated
+    public String encodeUrl(String url) {
+        return url;
+    }
+
+    @Override
+    @Deprecated
+    public String encodeRedirectUrl(String url) {
+        return url;
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        if (this.committed) {
+            throw new IllegalStateException("Response already committed");
+        }
+        reset();
+        setStatus(sc);
+        if (null != msg) {
+            setContentType("text/plain;charset=UTF-8");
+            byte[] bytes = msg.getBytes(StandardCharsets.UTF_8);
+            setContentLength(bytes.length);
+            getOutputStream().write(bytes);
+        }
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        sendError(sc, sc + " " + reasonPhrase(sc));
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        if (this.committed) {
+            throw new IllegalStateException("Response already committed");
+        }
+        resetBuffer();
+        setStatus(SC_FOUND);
+        setHeader("Location", location);
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+        setHeader(name, DATE_FORMAT.format(Instant.ofEpochMilli(date)));
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+        addHeader(name, DATE_FORMAT.format(Instant.ofEpochMilli(date)));
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (this.committed) {
+            return;
+        }
+        if ("Content-Type".equalsIgnoreCase(name)) {
+            setContentType(value);
+        } else if ("Content-Length".equalsIgnoreCase(name)) {
+            this.contentLength = null == value ? -1 : Long.parseLong(value.trim());
+        } else {
+            this.headers.set(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (this.committed) {
+            return;
+        }
+        if ("Content-Type".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name)) {
+            setHeader(name, value);
+        } else {
+            this.headers.add(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        setHeader(name, String.valueOf(value));
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        addHeader(name, String.valueOf(value));
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        if (!this.committed) {
+            this.status = sc;
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void setStatus(int sc, String sm) {
+        setStatus(sc);
+    }
+
+    @Override
+    public int getStatus() {
+        return this.status;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        if ("Content-Type".equalsIgnoreCase(name)) {
+            return getContentType();
+        }
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            return this.contentLength < 0 ? null : String.valueOf(this.contentLength);
+        }
+        return this.headers.get(name);
+    }
+
+    @Override
+    public Collection<String> getHeaders(String name) {
+        String single = "Content-Type".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name)
+                ? getHeader(name) : null;
+        if (null != single) {
+            return List.of(single);
+        }
+        return this.headers.getAll(name);
+    }
+
+    @Override
+    public Collection<String> getHeaderNames() {
+        Collection<String> names = new ArrayList<>(this.headers.names());
+        if (null != this.contentType) {
+            names.add("Content-Type");
+        }
+        if (this.contentLength >= 0) {
+            names.add("Content-Length");
+        }
+        return names;
+    }
+
+    // ---------------- 响应体 ----------------
+
+    @Override
+    public String getCharacterEncoding() {
+        return null == this.characterEncoding ? StandardCharsets.ISO_8859_1.name() : this.characterEncoding;
+    }
+
+    @Override
+    public String getContentType() {
+        if (null == this.contentType) {
+            return null;
+        }
+        return null == this.characterEncoding ? this.contentType : this.contentType + ";charset=" + this.characterEncoding;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        if (null != this.writer) {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        if (null == this.outputStream) {
+            this.outputStream = new EmbeddedOutputStream();
+        }
+        return this.outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+        if (null != this.outputStream && null == this.writer) {
+            throw new IllegalStateException("getOutputStream() has already been called");
+        }
+        if (null == this.writer) {
+            this.outputStream = new EmbeddedOutputStream();
+            this.writer = new EmbeddedWriter(this.outputStream, Charset.forName(getCharacterEncoding()));
+        }
+        return this.writer;
+    }
+
+    @Override
+    public void setCharacterEncoding(String charset) {
+        if (!this.committed && null == this.writer) {
+            this.characterEncoding = charset;
+        }
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        if (!this.committed) {
+            this.contentLength = len;
+        }
+    }
+
+    @Override
+    public void setContentType(String type) {
+        if (this.committed) {
+            return;
+        }
+        if (null == type) {
+            this.contentType = null;
+            return;
+        }
+        // charset参数单独保存, getCharacterEncoding据此决定Writer的编码
+        int semicolon = type.indexOf(';');
+        this.contentType = semicolon < 0 ? type.trim() : type.substring(0, semicolon).trim();
+        if (semicolon >= 0) {
+            for (String parameter : type.substring(semicolon + 1).split(";")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0 && "charset".equalsIgnoreCase(parameter.substring(0, equals).trim())) {
+                    setCharacterEncoding(parameter.substring(equals + 1).trim().replace("\"", ""));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void setBufferSize(int size) {
+        if (this.count > 0 || this.committed) {
+            throw new IllegalStateException("Content has already been written");
+        }
+    }
+
+    @Override
+    public int getBufferSize() {
+        return this.connection.getServer().getBufferPool().getBufferSize();
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        flushChars();
+        synchronized (this) {
+            ensureOpen();
+            flushBody();
+        }
+    }
+
+    private void flushBody() throws IOException {
+        if (!this.committed) {
+            commit(false);
+        } else if (this.count > 0) {
+            ByteBuffer body = ByteBuffer.wrap(this.buffer, 0, this.count);
+            this.count = 0;
+            if (this.chunked) {
+                writeChunk(body);
+            } else if (!isHead()) {
+                this.connection.write(body);
+            }
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (this.committed) {
+            throw new IllegalStateException("Response already committed");
+        }
+        flushChars();
+        synchronized (this) {
+            this.count = 0;
+        }
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return this.committed;
+    }
+
+    @Override
+    public void reset() {
+        resetBuffer();
+        synchronized (this) {
+            resetHeaders();
+        }
+    }
+
+    private void resetHeaders() {
+        this.headers.clear();
+        this.status = SC_OK;
+        this.contentType = null;
+        this.characterEncoding = null;
+        this.contentLength = -1;
+    }
+
+    @Override
+    public void setLocale(Locale loc) {
+        if (!this.committed && null != loc) {
+            this.locale = loc;
+            this.headers.set("Content-Language", loc.toLanguageTag());
+        }
+    }
+
+    @Override
+    public Locale getLocale() {
+        return this.locale;
+    }
+
+    private record CachedDate(long second, String value) {
+    }
+
+    /**
+     * 内部只把字符编码进响应缓冲区 (flushChars), 不提交; Handler调用flush()时才提交响应
+     */
+    private final class EmbeddedWriter extends PrintWriter {
+
+        EmbeddedWriter(OutputStream out, Charset charset) {
+            // 编码器的flush不传到响应, 否则每次内部flush都会提交
+            super(new OutputStreamWriter(new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    this.out.write(b, off, len);
+                }
+
+                @Override
+                public void flush() {
+                }
+            }, charset), false);
+        }
+
+        void flushChars() {
+            super.flush();
+        }
+
+        @Override
+        public void flush() {
+            super.flush();
+            try {
+                flushBuffer();
+            } catch (IOException e) {
+                setError();
+            }
+        }
+    }
+
+    /**
+     * 写入响应缓冲区, 放不下时先提交再直接写入Socket
+     */
+    private final class EmbeddedOutputStream extends ServletOutputStream implements WritableByteChannel {
+
+        @Override
+        public void write(int b) throws IOException {
+            synchronized (SelfEmbeddedResponse.this) {
+                byte[] target = buffer();
+                if (count == target.length) {
+                    flushBody();
+                }
+                target[count++] = (byte) b;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (SelfEmbeddedResponse.this) {
+                byte[] target = buffer();
+                if (len <= target.length - count) {
+                    System.arraycopy(b, off, target, count, len);
+                    count += len;
+                    return;
+                }
+                writeThrough(ByteBuffer.wrap(b, off, len));
+            }
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int length = src.remaining();
+            writeThrough(src);
+            return length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushBuffer();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !isFinished() && !connection.isClosed();
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            throw new UnsupportedOperationException("Non-blocking output is not supported by the embedded server");
+        }
+    }
+}
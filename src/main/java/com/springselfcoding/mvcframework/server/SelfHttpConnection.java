@@ -0,0 +1,389 @@
+package com.springselfcoding.mvcframework.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 一个客户端连接
+ * 1) 读缓冲区在读取时借出, 处理完所有请求且没有剩余字节时归还; 请求超过缓冲区时换成刚好够大的独立数组
+ * 2) processing期间不监听读, 缓冲区只被处理请求的线程访问, 请求体直接引用其中的字节
+ * 3) Selector线程与工作线程之间通过volatile的processing交接
+ * 4) Selector线程上不写数据: 100-continue与格式错误的回复交给工作线程, 期间不监听读, 写阻塞不影响其他连接
+ * 5) 工作线程结束时总是通过resume交还Selector线程, 连接已经关闭时由Selector线程归还缓冲区, 缓冲区不会在使用中被归还
+ */
+final class SelfHttpConnection {
+
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final SelfHttpServer server;
+
+    private final SelfHttpSelectorLoop loop;
+
+    private final SocketChannel channel;
+
+    private SelectionKey key;
+
+    private byte[] buffer;
+
+    // buffer的ByteBuffer视图, 随buffer一起更换
+    private ByteBuffer readView;
+
+    // 下一个请求的起始位置
+    private int start;
+
+    // 已读取数据的结束位置
+    private int end;
+
+    // 当前请求已经回复过100-continue
+    private boolean continueSent;
+
+    // 需要回复100-continue但还没有写出
+    private boolean continuePending;
+
+    // 当前请求的chunked请求体已经检查过的进度, 见SelfHttpRequestParser
+    private int chunkScanned;
+
+    private long chunkTotal;
+
+    // 发送缓冲区满时等待可写的临时Selector
+    private Selector writeSelector;
+
+    private volatile boolean processing;
+
+    private volatile long lastActive = System.currentTimeMillis();
+
+    private volatile boolean closed;
+
+    SelfHttpConnection(SelfHttpServer server, SelfHttpSelectorLoop loop, SocketChannel channel) {
+        this.server = server;
+        this.loop = loop;
+        this.channel = channel;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Selector线程: 读取并尝试解析出一个完整的请求
+     */
+    void onReadable() {
+        if (this.processing || this.closed) {
+            return;
+        }
+        try {
+            if (null == this.buffer) {
+                acquireBuffer();
+            } else if (this.end == this.buffer.length && this.start > 0) {
+                compact();
+            }
+            int n = this.channel.read(this.readView.limit(this.buffer.length).position(this.end));
+            if (n < 0) {
+                close();
+                return;
+            }
+            this.end += n;
+            this.lastActive = System.currentTimeMillis();
+            SelfHttpRequestHead head = nextRequest();
+            if (null != head) {
+                this.processing = true;
+                this.key.interestOps(0);
+                this.server.execute(() -> process(head));
+            } else if (this.continuePending) {
+                this.processing = true;
+                this.key.interestOps(0);
+                this.server.execute(this::sendContinue);
+            } else if (this.start == this.end) {
+                releaseBuffer();
+            }
+        } catch (SelfHttpParseException e) {
+            this.processing = true;
+            this.key.interestOps(0);
+            this.server.execute(() -> {
+                reject(e);
+                handBack();
+            });
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * Selector线程: 处理完请求后重新监听读; 已经关闭时归还缓冲区
+     */
+    void onResumed() {
+        if (this.closed) {
+            // 正在处理请求时, 由工作线程交还后再归还
+            if (!this.processing) {
+                releaseBuffer();
+            }
+            return;
+        }
+        this.processing = false;
+        this.lastActive = System.currentTimeMillis();
+        this.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Selector线程: 空闲超时的连接直接关闭, 正在处理请求的连接不算空闲
+     */
+    void closeIfIdle(long now) {
+        if (!this.processing && now - this.lastActive > this.server.getIdleTimeout()) {
+            close();
+        }
+    }
+
+    /**
+     * 工作线程: 依次处理请求, 流水线中已经完整到达的下一个请求直接在当前线程继续处理
+     */
+    private void process(SelfHttpRequestHead head) {
+        while (null != head && !this.closed) {
+            SelfEmbeddedRequest request = new SelfEmbeddedRequest(this, head, this.buffer);
+            SelfEmbeddedResponse response = new SelfEmbeddedResponse(this, head);
+            request.setResponse(response);
+            try {
+                this.server.getServlet().service(request, response);
+            } catch (Throwable e) {
+                e.printStackTrace();
+                response.failIfUncommitted();
+            }
+            SelfEmbeddedAsyncContext asyncContext = request.getEmbeddedAsyncContext();
+            if (null != asyncContext && !asyncContext.onDispatchReturned()) {
+                // 异步请求由complete()继续
+                return;
+            }
+            head = finish(head, response);
+        }
+        handBack();
+    }
+
+    /**
+     * 工作线程: 交还Selector线程, 之后缓冲区只由Selector线程访问
+     */
+    private void handBack() {
+        this.processing = false;
+        this.loop.resume(this);
+    }
+
+    /**
+     * 完成异步请求的线程: 回到工作线程上写响应并继续处理后续请求
+     */
+    void onAsyncComplete(SelfHttpRequestHead head, SelfEmbeddedResponse response) {
+        this.server.execute(() -> process(finish(head, response)));
+    }
+
+    /**
+     * 写完响应, 返回流水线中下一个完整的请求; 没有时返回null, 由process交还Selector线程监听读
+     */
+    private SelfHttpRequestHead finish(SelfHttpRequestHead head, SelfEmbeddedResponse response) {
+        boolean keepAlive;
+        try {
+            keepAlive = response.finish();
+        } catch (IOException e) {
+            close();
+            return null;
+        }
+        if (!keepAlive) {
+            close();
+            return null;
+        }
+        this.start = head.getEnd();
+        this.continueSent = false;
+        this.lastActive = System.currentTimeMillis();
+        try {
+            SelfHttpRequestHead next = nextRequest();
+            if (null != next) {
+                return next;
+            }
+            if (this.continuePending) {
+                writeContinue();
+            }
+        } catch (SelfHttpParseException e) {
+            reject(e);
+            return null;
+        } catch (IOException e) {
+            close();
+            return null;
+        }
+        if (this.start == this.end) {
+            releaseBuffer();
+        }
+        return null;
+    }
+
+    /**
+     * 从缓冲区中解析出一个完整的请求; 还没有读完时按需扩容, 需要回复100-continue时只做标记, 由调用方在工作线程上写出
+     */
+    private SelfHttpRequestHead nextRequest() throws IOException {
+        if (null == this.buffer || this.start == this.end) {
+            return null;
+        }
+        long maxBody = this.server.getMaxRequestSize();
+        SelfHttpRequestHead head = SelfHttpRequestParser.parse(this.buffer, this.start, this.end, maxBody,
+                this.chunkScanned, this.chunkTotal);
+        if (null == head) {
+            if (0 == this.start && this.end == this.buffer.length) {
+                throw new SelfHttpParseException(431, "Request header is too large");
+            }
+            return null;
+        }
+        if (head.isComplete()) {
+            this.chunkScanned = 0;
+            this.chunkTotal = 0;
+            return head;
+        }
+        this.chunkScanned = head.getChunkScanned();
+        this.chunkTotal = head.getChunkTotal();
+        if (head.isExpectContinue() && !this.continueSent) {
+            this.continueSent = true;
+            this.continuePending = true;
+        }
+        // 请求体还没有读完, 缓冲区放不下时扩容, chunked时长度未知, 每次翻倍
+        long required = head.getRequiredLength();
+        int available = this.buffer.length - this.start;
+        if (required < 0 ? this.end == this.buffer.length : required > available) {
+            long size = required < 0 ? (long) available * 2 : required;
+            if (size > maxBody + this.buffer.length) {
+                throw new SelfHttpParseException(413, "Request is too large");
+            }
+            byte[] larger = new byte[(int) size];
+            System.arraycopy(this.buffer, this.start, larger, 0, this.end - this.start);
+            this.end -= this.start;
+            this.start = 0;
+            this.server.getBufferPool().release(this.buffer);
+            this.buffer = larger;
+            this.readView = ByteBuffer.wrap(larger);
+        }
+        return null;
+    }
+
+    /**
+     * 工作线程: 回复100-continue后交还Selector线程继续读请求体
+     */
+    private void sendContinue() {
+        try {
+            writeContinue();
+        } catch (IOException e) {
+            close();
+        }
+        handBack();
+    }
+
+    private void writeContinue() throws IOException {
+        this.continuePending = false;
+        write(ByteBuffer.wrap(CONTINUE));
+    }
+
+    /**
+     * 写出全部数据, 发送缓冲区满时在临时Selector上等待, 超过空闲超时抛异常
+     */
+    void write(ByteBuffer... buffers) throws IOException {
+        int last = buffers.length - 1;
+        while (buffers[last].hasRemaining()) {
+            if (0 == this.channel.write(buffers)) {
+                awaitWritable();
+            }
+        }
+    }
+
+    private void awaitWritable() throws IOException {
+        if (null == this.writeSelector) {
+            this.writeSelector = Selector.open();
+            this.channel.register(this.writeSelector, SelectionKey.OP_WRITE);
+        }
+        if (0 == this.writeSelector.select(this.server.getIdleTimeout())) {
+            throw new SocketTimeoutException("Write timed out");
+        }
+        this.writeSelector.selectedKeys().clear();
+    }
+
+    /**
+     * 工作线程: 格式错误的请求直接回复错误并关闭连接
+     */
+    private void reject(SelfHttpParseException e) {
+        byte[] body = (e.getStatus() + " " + SelfEmbeddedResponse.reasonPhrase(e.getStatus()) + ": " + e.getMessage())
+                .getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 " + e.getStatus() + " " + SelfEmbeddedResponse.reasonPhrase(e.getStatus()) + "\r\n"
+                + "Content-Type: text/plain;charset=UTF-8\r\nContent-Length: " + body.length
+                + "\r\nConnection: close\r\n\r\n";
+        try {
+            write(ByteBuffer.wrap(head.getBytes(StandardCharsets.ISO_8859_1)), ByteBuffer.wrap(body));
+        } catch (IOException ignored) {
+            // 客户端已经断开
+        }
+        close();
+    }
+
+    void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        if (null != this.key) {
+            this.key.cancel();
+        }
+        try {
+            this.channel.close();
+            if (null != this.writeSelector) {
+                this.writeSelector.close();
+            }
+        } catch (IOException e) {
+            // 关闭失败不再处理
+        }
+        // 读缓冲区交给Selector线程归还, 正在处理请求时等工作线程交还
+        if (!this.processing) {
+            this.loop.resume(this);
+        }
+    }
+
+    boolean isClosed() {
+        return this.closed;
+    }
+
+    InetSocketAddress getRemoteAddress() {
+        try {
+            return (InetSocketAddress) this.channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) this.channel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    SelfHttpServer getServer() {
+        return this.server;
+    }
+
+    private void acquireBuffer() {
+        this.buffer = this.server.getBufferPool().acquire();
+        this.readView = ByteBuffer.wrap(this.buffer);
+        this.start = 0;
+        this.end = 0;
+    }
+
+    private void releaseBuffer() {
+        this.server.getBufferPool().release(this.buffer);
+        this.buffer = null;
+        this.readView = null;
+        this.start = 0;
+        this.end = 0;
+    }
+
+    private void compact() {
+        System.arraycopy(this.buffer, this.start, this.buffer, 0, this.end - this.start);
+        this.end -= this.start;
+        this.start = 0;
+    }
+}
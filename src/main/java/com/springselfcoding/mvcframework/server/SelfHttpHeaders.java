@@ -0,0 +1,103 @@
+package com.springselfcoding.mvcframework.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 请求与响应共用的头部表, 名称与值按出现顺序放在两个数组中
+ * 一个请求通常只有十几个头, 按名称忽略大小写线性查找比HashMap更快, 也不需要为每个名称生成小写的key
+ */
+final class SelfHttpHeaders {
+
+    private String[] names = new String[16];
+
+    private String[] values = new String[16];
+
+    private int size;
+
+    void add(String name, String value) {
+        if (this.size == this.names.length) {
+            this.names = Arrays.copyOf(this.names, this.size * 2);
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+        }
+        this.names[this.size] = name;
+        this.values[this.size] = value;
+        this.size++;
+    }
+
+    /**
+     * 替换同名的所有头, 值为null时只删除
+     */
+    void set(String name, String value) {
+        remove(name);
+        if (null != value) {
+            add(name, value);
+        }
+    }
+
+    String get(String name) {
+        for (int i = 0; i < this.size; i++) {
+            if (this.names[i].equalsIgnoreCase(name)) {
+                return this.values[i];
+            }
+        }
+        return null;
+    }
+
+    List<String> getAll(String name) {
+        List<String> result = new ArrayList<>(1);
+        for (int i = 0; i < this.size; i++) {
+            if (this.names[i].equalsIgnoreCase(name)) {
+                result.add(this.values[i]);
+            }
+        }
+        return result;
+    }
+
+    boolean contains(String name) {
+        return null != get(name);
+    }
+
+    Set<String> names() {
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i < this.size; i++) {
+            result.add(this.names[i]);
+        }
+        return result;
+    }
+
+    void remove(String name) {
+        int kept = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (!this.names[i].equalsIgnoreCase(name)) {
+                this.names[kept] = this.names[i];
+                this.values[kept] = this.values[i];
+                kept++;
+            }
+        }
+        Arrays.fill(this.names, kept, this.size, null);
+        Arrays.fill(this.values, kept, this.size, null);
+        this.size = kept;
+    }
+
+    void clear() {
+        Arrays.fill(this.names, 0, this.size, null);
+        Arrays.fill(this.values, 0, this.size, null);
+        this.size = 0;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    String name(int index) {
+        return this.names[index];
+    }
+
+    String value(int index) {
+        return this.values[index];
+    }
+}
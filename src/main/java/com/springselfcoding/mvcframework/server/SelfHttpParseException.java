@@ -0,0 +1,18 @@
+package com.springselfcoding.mvcframework.server;
+
+/**
+ * 请求格式错误或超出限制, 回复status之后关闭连接
+ */
+class SelfHttpParseException extends RuntimeException {
+
+    private final int status;
+
+    SelfHttpParseException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    int getStatus() {
+        return this.status;
+    }
+}
@@ -0,0 +1,141 @@
+package com.springselfcoding.mvcframework.server;
+
+/**
+ * 解析好的请求行与头部, 以及请求在读缓冲区中的位置
+ * 请求体只记录偏移与长度, 处理请求期间连接不再读取, SelfEmbeddedRequest创建时从缓冲区中复制出来
+ */
+final class SelfHttpRequestHead {
+
+    private final String method;
+
+    private final String uri;
+
+    private final String queryString;
+
+    private final String protocol;
+
+    private final SelfHttpHeaders headers;
+
+    // 请求在缓冲区中的起始位置
+    private final int start;
+
+    private final int bodyStart;
+
+    // Content-Length, chunked时为-1
+    private long contentLength = -1;
+
+    private int bodyLength = -1;
+
+    // 整个请求的结束位置, 之后是流水线中的下一个请求
+    private int end = -1;
+
+    // chunked请求体已经确认完整的部分: 下一个chunk相对请求起始位置的偏移, 以及之前各chunk的总长度
+    private int chunkScanned;
+
+    private long chunkTotal;
+
+    SelfHttpRequestHead(String method, String uri, String queryString, String protocol, SelfHttpHeaders headers,
+                        int start, int bodyStart) {
+        this.method = method;
+        this.uri = uri;
+        this.queryString = queryString;
+        this.protocol = protocol;
+        this.headers = headers;
+        this.start = start;
+        this.bodyStart = bodyStart;
+    }
+
+    void setContentLength(long contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    void complete(int bodyLength, int end) {
+        this.bodyLength = bodyLength;
+        this.end = end;
+    }
+
+    void setChunkProgress(int chunkScanned, long chunkTotal) {
+        this.chunkScanned = chunkScanned;
+        this.chunkTotal = chunkTotal;
+    }
+
+    int getChunkScanned() {
+        return this.chunkScanned;
+    }
+
+    long getChunkTotal() {
+        return this.chunkTotal;
+    }
+
+    boolean isComplete() {
+        return this.end >= 0;
+    }
+
+    /**
+     * 请求体全部到达时整个请求需要的字节数, chunked时未知, 返回-1
+     */
+    long getRequiredLength() {
+        return this.contentLength < 0 ? -1 : this.bodyStart - this.start + this.contentLength;
+    }
+
+    /**
+     * HTTP/1.1默认保持连接, 除非Connection: close; HTTP/1.0需要显式的Connection: keep-alive
+     */
+    boolean isKeepAlive() {
+        String connection = this.headers.get("Connection");
+        if (isHttp11()) {
+            return null == connection || !containsToken(connection, "close");
+        }
+        return null != connection && containsToken(connection, "keep-alive");
+    }
+
+    boolean isExpectContinue() {
+        String expect = this.headers.get("Expect");
+        return isHttp11() && null != expect && "100-continue".equalsIgnoreCase(expect.trim());
+    }
+
+    boolean isHttp11() {
+        return "HTTP/1.1".equals(this.protocol);
+    }
+
+    String getMethod() {
+        return this.method;
+    }
+
+    String getUri() {
+        return this.uri;
+    }
+
+    String getQueryString() {
+        return this.queryString;
+    }
+
+    String getProtocol() {
+        return this.protocol;
+    }
+
+    SelfHttpHeaders getHeaders() {
+        return this.headers;
+    }
+
+    int getBodyStart() {
+        return this.bodyStart;
+    }
+
+    int getBodyLength() {
+        return this.bodyLength;
+    }
+
+    int getEnd() {
+        return this.end;
+    }
+
+    private static boolean containsToken(String value, String token) {
+        for (String part : value.split(",")) {
+            if (token.equalsIgnoreCase(part.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
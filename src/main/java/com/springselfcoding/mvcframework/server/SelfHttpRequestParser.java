@@ -0,0 +1,279 @@
+package com.springselfcoding.mvcframework.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * HTTP/1.1请求解析, 直接在连接的读缓冲区上进行, 不复制请求体
+ * 1) 头部没有读完时返回null; 头部读完即返回结果, 请求体是否读完由isComplete()判断, 连接据此扩容或回复100-continue
+ * 2) 请求体为Content-Length或chunked, chunked在确认全部到达后原地解码 (解码后只会变短), 之后请求体就是缓冲区上的一段
+ *    Transfer-Encoding只支持单独的chunked, 其他编码回复501; chunked没有到齐时记下已经检查过的位置, 下次从那里继续
+ * 3) 方法名, URI与头部按ISO-8859-1转为字符串, 常用的方法名不新建字符串
+ * 4) 格式错误抛出SelfHttpParseException, 带上应当回复的状态码
+ */
+final class SelfHttpRequestParser {
+
+    private static final byte CR = '\r';
+
+    private static final byte LF = '\n';
+
+    private static final String[] COMMON_METHODS = {"GET", "POST", "PUT", "DELETE", "HEAD", "PATCH", "OPTIONS"};
+
+    private SelfHttpRequestParser() {
+    }
+
+    /**
+     * @param buffer       读缓冲区
+     * @param start        本次请求的起始位置
+     * @param end          已读取数据的结束位置
+     * @param maxBody      请求体的最大长度
+     * @param chunkScanned 上次解析同一个请求时的getChunkScanned(), 第一次解析时为0
+     * @param chunkTotal   上次解析同一个请求时的getChunkTotal()
+     */
+    static SelfHttpRequestHead parse(byte[] buffer, int start, int end, long maxBody, int chunkScanned,
+                                     long chunkTotal) {
+        int origin = start;
+        // 1. 请求行之前的空行忽略
+        while (start + 1 < end && CR == buffer[start] && LF == buffer[start + 1]) {
+            start += 2;
+        }
+        int headerEnd = indexOfHeaderEnd(buffer, start, end);
+        if (headerEnd < 0) {
+            return null;
+        }
+
+        // 2. 请求行: method SP request-target SP HTTP-version
+        int lineEnd = indexOfLineEnd(buffer, start, headerEnd + 2);
+        int methodEnd = indexOf(buffer, start, lineEnd, (byte) ' ');
+        int targetEnd = methodEnd < 0 ? -1 : indexOf(buffer, methodEnd + 1, lineEnd, (byte) ' ');
+        if (methodEnd <= start || targetEnd <= methodEnd + 1) {
+            throw new SelfHttpParseException(400, "Malformed request line");
+        }
+        String protocol = latin1(buffer, targetEnd + 1, lineEnd);
+        if (!"HTTP/1.1".equals(protocol) && !"HTTP/1.0".equals(protocol)) {
+            throw new SelfHttpParseException(505, "Unsupported protocol " + protocol);
+        }
+        String method = method(buffer, start, methodEnd);
+        int queryStart = indexOf(buffer, methodEnd + 1, targetEnd, (byte) '?');
+        String uri = latin1(buffer, methodEnd + 1, queryStart < 0 ? targetEnd : queryStart);
+        String queryString = queryStart < 0 ? null : latin1(buffer, queryStart + 1, targetEnd);
+        if (uri.isEmpty() || '/' != uri.charAt(0)) {
+            // 只支持origin-form, 绝对URI与*都不处理
+            throw new SelfHttpParseException(400, "Unsupported request target " + uri);
+        }
+
+        // 3. 头部, 每行 name ":" OWS value OWS
+        SelfHttpHeaders headers = new SelfHttpHeaders();
+        int position = lineEnd + 2;
+        while (position < headerEnd) {
+            int headerLineEnd = indexOfLineEnd(buffer, position, headerEnd + 2);
+            if (' ' == buffer[position] || '\t' == buffer[position]) {
+                throw new SelfHttpParseException(400, "Obsolete header line folding");
+            }
+            int colon = indexOf(buffer, position, headerLineEnd, (byte) ':');
+            if (colon <= position) {
+                throw new SelfHttpParseException(400, "Malformed header line");
+            }
+            int valueStart = colon + 1;
+            int valueEnd = headerLineEnd;
+            while (valueStart < valueEnd && isWhitespace(buffer[valueStart])) {
+                valueStart++;
+            }
+            while (valueEnd > valueStart && isWhitespace(buffer[valueEnd - 1])) {
+                valueEnd--;
+            }
+            headers.add(latin1(buffer, position, colon), latin1(buffer, valueStart, valueEnd));
+            position = headerLineEnd + 2;
+        }
+        int bodyStart = headerEnd + 4;
+
+        SelfHttpRequestHead head = new SelfHttpRequestHead(method, uri, queryString, protocol, headers, start,
+                bodyStart);
+
+        // 4. 请求体
+        String transferEncoding = headers.get("Transfer-Encoding");
+        if (null != transferEncoding) {
+            // gzip, chunked之类的组合不解码, 不能把未解码的请求体交给Handler
+            if (1 != headers.getAll("Transfer-Encoding").size()
+                    || !"chunked".equals(transferEncoding.trim().toLowerCase(Locale.ROOT))) {
+                throw new SelfHttpParseException(501, "Unsupported transfer encoding " + transferEncoding);
+            }
+            head.setChunkProgress(chunkScanned, chunkTotal);
+            int messageEnd = scanChunked(head, buffer, origin, 0 == chunkScanned ? bodyStart : origin + chunkScanned,
+                    end, maxBody);
+            if (messageEnd >= 0) {
+                head.complete(decodeChunked(buffer, bodyStart), messageEnd);
+            }
+            return head;
+        }
+        long contentLength = contentLength(headers);
+        if (contentLength > maxBody) {
+            throw new SelfHttpParseException(413, "Request body of " + contentLength + " bytes is too large");
+        }
+        head.setContentLength(contentLength);
+        if (end - bodyStart >= contentLength) {
+            head.complete((int) contentLength, bodyStart + (int) contentLength);
+        }
+        return head;
+    }
+
+    /**
+     * 只检查chunked请求体是否完整, 不修改缓冲区; 完整时返回整个请求的结束位置, 否则返回-1
+     * 每确认一个完整的chunk就把进度记到head上, 数据没有到齐时下次从最后一个完整的chunk之后继续
+     */
+    private static int scanChunked(SelfHttpRequestHead head, byte[] buffer, int origin, int position, int end,
+                                   long maxBody) {
+        long total = head.getChunkTotal();
+        while (true) {
+            int lineEnd = indexOfLineEnd(buffer, position, end);
+            if (lineEnd < 0) {
+                return -1;
+            }
+            long size = chunkSize(buffer, position, lineEnd);
+            total += size;
+            if (total > maxBody) {
+                throw new SelfHttpParseException(413, "Request body is too large");
+            }
+            position = lineEnd + 2;
+            if (0 == size) {
+                // trailer部分直到空行
+                while (true) {
+                    int trailerEnd = indexOfLineEnd(buffer, position, end);
+                    if (trailerEnd < 0) {
+                        return -1;
+                    }
+                    boolean empty = trailerEnd == position;
+                    position = trailerEnd + 2;
+                    if (empty) {
+                        return position;
+                    }
+                }
+            }
+            if (end - position < size + 2) {
+                return -1;
+            }
+            position += (int) size;
+            if (CR != buffer[position] || LF != buffer[position + 1]) {
+                throw new SelfHttpParseException(400, "Malformed chunk");
+            }
+            position += 2;
+            head.setChunkProgress(position - origin, total);
+        }
+    }
+
+    /**
+     * 已经确认完整后原地解码, 数据依次前移到bodyStart, 返回请求体长度
+     */
+    private static int decodeChunked(byte[] buffer, int bodyStart) {
+        int read = bodyStart;
+        int write = bodyStart;
+        while (true) {
+            int lineEnd = indexOfLineEnd(buffer, read, buffer.length);
+            int size = (int) chunkSize(buffer, read, lineEnd);
+            read = lineEnd + 2;
+            if (0 == size) {
+                return write - bodyStart;
+            }
+            System.arraycopy(buffer, read, buffer, write, size);
+            write += size;
+            read += size + 2;
+        }
+    }
+
+    private static long chunkSize(byte[] buffer, int start, int end) {
+        long size = 0;
+        int digits = 0;
+        for (int i = start; i < end && ';' != buffer[i]; i++) {
+            int digit = Character.digit(buffer[i], 16);
+            if (digit < 0) {
+                if (isWhitespace(buffer[i])) {
+                    continue;
+                }
+                throw new SelfHttpParseException(400, "Malformed chunk size");
+            }
+            if (++digits > 15) {
+                throw new SelfHttpParseException(413, "Chunk is too large");
+            }
+            size = size * 16 + digit;
+        }
+        if (0 == digits) {
+            throw new SelfHttpParseException(400, "Malformed chunk size");
+        }
+        return size;
+    }
+
+    private static long contentLength(SelfHttpHeaders headers) {
+        long contentLength = 0;
+        boolean found = false;
+        for (String value : headers.getAll("Content-Length")) {
+            long parsed;
+            try {
+                parsed = Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                throw new SelfHttpParseException(400, "Malformed Content-Length " + value);
+            }
+            if (parsed < 0 || (found && parsed != contentLength)) {
+                throw new SelfHttpParseException(400, "Malformed Content-Length " + value);
+            }
+            contentLength = parsed;
+            found = true;
+        }
+        return contentLength;
+    }
+
+    /**
+     * 头部结束的CRLFCRLF的位置, 没有时返回-1
+     */
+    private static int indexOfHeaderEnd(byte[] buffer, int start, int end) {
+        for (int i = start; i + 3 < end; i++) {
+            if (CR == buffer[i] && LF == buffer[i + 1] && CR == buffer[i + 2] && LF == buffer[i + 3]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOfLineEnd(byte[] buffer, int start, int end) {
+        for (int i = start; i + 1 < end; i++) {
+            if (CR == buffer[i] && LF == buffer[i + 1]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] buffer, int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (value == buffer[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String method(byte[] buffer, int start, int end) {
+        for (String method : COMMON_METHODS) {
+            if (method.length() == end - start && matches(buffer, start, method)) {
+                return method;
+            }
+        }
+        return latin1(buffer, start, end);
+    }
+
+    private static boolean matches(byte[] buffer, int start, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (buffer[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return ' ' == b || '\t' == b;
+    }
+
+    private static String latin1(byte[] buffer, int start, int end) {
+        return new String(buffer, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,118 @@
+package com.springselfcoding.mvcframework.server;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 一个Selector线程, 只监听读事件
+ * 1) 新连接与需要重新监听读的连接都放入队列, 唤醒Selector后在本线程上注册, 避免与select()竞争
+ * 2) 每秒检查一次空闲超时, 正在处理请求的连接不算空闲
+ */
+final class SelfHttpSelectorLoop {
+
+    private static final long IDLE_CHECK_INTERVAL = 1000;
+
+    private final SelfHttpServer server;
+
+    private final Selector selector;
+
+    private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+
+    private final Queue<SelfHttpConnection> resumed = new ConcurrentLinkedQueue<>();
+
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    SelfHttpSelectorLoop(SelfHttpServer server, int index) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+        this.thread = Thread.ofPlatform().name("self-http-selector-" + index).start(this::run);
+    }
+
+    void register(SocketChannel channel) {
+        this.accepted.add(channel);
+        this.selector.wakeup();
+    }
+
+    /**
+     * 连接处理完请求后重新监听读, 已经关闭的连接在Selector线程上归还缓冲区
+     */
+    void resume(SelfHttpConnection connection) {
+        this.resumed.add(connection);
+        this.selector.wakeup();
+    }
+
+    void close() {
+        this.running = false;
+        this.selector.wakeup();
+        try {
+            this.thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long lastIdleCheck = System.currentTimeMillis();
+        try {
+            while (this.running) {
+                this.selector.select(IDLE_CHECK_INTERVAL);
+
+                // 1. 注册新连接, 恢复处理完请求的连接
+                SocketChannel channel;
+                while (null != (channel = this.accepted.poll())) {
+                    try {
+                        SelfHttpConnection connection = new SelfHttpConnection(this.server, this, channel);
+                        connection.setKey(channel.register(this.selector, SelectionKey.OP_READ, connection));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        channel.close();
+                    }
+                }
+                SelfHttpConnection connection;
+                while (null != (connection = this.resumed.poll())) {
+                    connection.onResumed();
+                }
+
+                // 2. 可读的连接
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        ((SelfHttpConnection) key.attachment()).onReadable();
+                    }
+                }
+
+                // 3. 空闲超时
+                long now = System.currentTimeMillis();
+                if (now - lastIdleCheck >= IDLE_CHECK_INTERVAL) {
+                    lastIdleCheck = now;
+                    for (SelectionKey key : this.selector.keys()) {
+                        ((SelfHttpConnection) key.attachment()).closeIfIdle(now);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (this.running) {
+                e.printStackTrace();
+            }
+        } finally {
+            for (SelectionKey key : this.selector.keys()) {
+                ((SelfHttpConnection) key.attachment()).close();
+            }
+            try {
+                this.selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.springselfcoding.mvcframework.server;
+
+import com.springselfcoding.mvcframework.returnvalue.SelfBufferPool;
+
+import javax.servlet.http.HttpServlet;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 不依赖Servlet容器的内嵌HTTP/1.1服务器, 直接驱动一个HttpServlet (通常是SelfDispatchServletV2)
+ * 1) 一个线程阻塞accept, 新连接轮流分给多个Selector线程; Selector线程只负责读取与解析, 不执行Handler
+ * 2) 读缓冲区从池中借出, 连接空闲 (没有未处理的字节) 时归还, 大量空闲的keep-alive连接不占用缓冲区
+ * 3) 一个完整的请求到达后停止读取该连接, 交给工作线程执行Servlet; 响应写完后先处理缓冲区中流水线的下一个请求, 没有时才重新监听读
+ *    同一个连接上的请求依次处理, 响应顺序与请求顺序一致 (HTTP/1.1 pipelining)
+ * 4) 响应由工作线程 (或完成异步请求的线程) 直接写入SocketChannel, 发送缓冲区满时在临时Selector上等待可写
+ * 5) 请求与响应对象只实现Dispatcher用到的Servlet API, 不支持Session, RequestDispatcher与multipart
+ * 运行时需要servlet-api在classpath上 (pom中为provided)
+ */
+public class SelfHttpServer implements Closeable {
+
+    // 监听端口, 0表示随机端口
+    public static final String PORT = "server.port";
+
+    // 监听地址, 默认所有地址
+    public static final String HOST = "server.host";
+
+    // Selector线程数, 默认CPU核数
+    public static final String SELECTORS = "server.selectors";
+
+    // 执行Servlet的工作线程数, 0表示每个请求一个虚拟线程
+    public static final String THREADS = "server.threads";
+
+    // 请求 (头部 + 请求体) 的最大字节数, 超出时返回413
+    public static final String MAX_REQUEST_SIZE = "server.maxRequestSize";
+
+    // 连接空闲与发送阻塞的超时 (毫秒)
+    public static final String IDLE_TIMEOUT = "server.idleTimeout";
+
+    // 读缓冲区与响应缓冲区的大小, 请求头不能超过它
+    public static final String BUFFER_SIZE = "server.bufferSize";
+
+    private final HttpServlet servlet;
+
+    private final String host;
+
+    private final int port;
+
+    private final int selectorCount;
+
+    private final int threads;
+
+    private final long maxRequestSize;
+
+    private final long idleTimeout;
+
+    private final SelfBufferPool bufferPool;
+
+    private ServerSocketChannel serverChannel;
+
+    private SelfHttpSelectorLoop[] selectorLoops;
+
+    private Thread acceptor;
+
+    private ExecutorService workers;
+
+    // 异步请求的超时
+    private ScheduledThreadPoolExecutor timer;
+
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    public SelfHttpServer(HttpServlet servlet, Properties config) {
+        this.servlet = servlet;
+        this.host = config.getProperty(HOST, "").trim();
+        this.port = Integer.parseInt(config.getProperty(PORT, "8080").trim());
+        this.selectorCount = Integer.parseInt(config.getProperty(SELECTORS,
+                String.valueOf(Runtime.getRuntime().availableProcessors())).trim());
+        this.threads = Integer.parseInt(config.getProperty(THREADS, "200").trim());
+        this.maxRequestSize = Long.parseLong(config.getProperty(MAX_REQUEST_SIZE, String.valueOf(10 * 1024 * 1024)).trim());
+        this.idleTimeout = Long.parseLong(config.getProperty(IDLE_TIMEOUT, "30000").trim());
+        int bufferSize = Integer.parseInt(config.getProperty(BUFFER_SIZE,
+                String.valueOf(SelfBufferPool.DEFAULT_BUFFER_SIZE)).trim());
+        this.bufferPool = new SelfBufferPool(bufferSize, Math.max(64, Runtime.getRuntime().availableProcessors() * 16));
+    }
+
+    /**
+     * 绑定端口, 启动accept与Selector线程
+     */
+    public void start() throws IOException {
+        // 1. 工作线程与定时器
+        this.workers = 0 == this.threads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("self-http-", 0).factory())
+                : Executors.newFixedThreadPool(this.threads, Thread.ofPlatform().name("self-http-", 0).factory());
+        this.timer = new ScheduledThreadPoolExecutor(1, Thread.ofPlatform().name("self-http-timer").daemon().factory());
+        this.timer.setRemoveOnCancelPolicy(true);
+
+        // 2. Selector线程
+        this.selectorLoops = new SelfHttpSelectorLoop[Math.max(1, this.selectorCount)];
+        for (int i = 0; i < this.selectorLoops.length; i++) {
+            this.selectorLoops[i] = new SelfHttpSelectorLoop(this, i);
+        }
+
+        // 3. 监听端口, accept在单独的线程上阻塞进行
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        this.serverChannel.bind(this.host.isEmpty() ? new InetSocketAddress(this.port)
+                : new InetSocketAddress(this.host, this.port), 1024);
+        this.acceptor = Thread.ofPlatform().name("self-http-acceptor").start(this::accept);
+        System.out.println("Self HTTP server started on port " + getPort() + ", " + this.selectorLoops.length
+                + " selectors, " + (0 == this.threads ? "virtual threads" : this.threads + " worker threads"));
+    }
+
+    /**
+     * 实际监听的端口, 配置为0时由系统分配
+     */
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) this.serverChannel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return this.port;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (null != this.serverChannel) {
+                this.serverChannel.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (null != this.selectorLoops) {
+            for (SelfHttpSelectorLoop loop : this.selectorLoops) {
+                loop.close();
+            }
+        }
+        if (null != this.workers) {
+            this.workers.shutdownNow();
+        }
+        if (null != this.timer) {
+            this.timer.shutdownNow();
+        }
+    }
+
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = this.serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+                continue;
+            }
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                this.selectorLoops[Math.floorMod(this.nextLoop.getAndIncrement(), this.selectorLoops.length)]
+                        .register(channel);
+            } catch (IOException e) {
+                e.printStackTrace();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // 已经出错, 关闭失败不再处理
+                }
+            }
+        }
+    }
+
+    HttpServlet getServlet() {
+        return this.servlet;
+    }
+
+    SelfBufferPool getBufferPool() {
+        return this.bufferPool;
+    }
+
+    long getMaxRequestSize() {
+        return this.maxRequestSize;
+    }
+
+    long getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    void execute(Runnable task) {
+        this.workers.execute(task);
+    }
+
+    ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return this.timer.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+}
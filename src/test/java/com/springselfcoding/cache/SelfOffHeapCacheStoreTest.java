@@ -0,0 +1,99 @@
+package com.springselfcoding.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SelfOffHeapCacheStoreTest {
+
+    private static final SelfCacheSerializer<byte[]> BYTES = new SelfCacheSerializer<>() {
+        @Override
+        public byte[] serialize(byte[] value) {
+            return value;
+        }
+
+        @Override
+        public byte[] deserialize(byte[] bytes) {
+            return bytes;
+        }
+    };
+
+    @Test
+    void otherSizeClassReclaimsOnePageInsteadOfEmptyingTheStore() {
+        SelfOffHeapCacheStore<Integer, byte[]> store = new SelfOffHeapCacheStore<>(2 * SelfOffHeapCacheStore.PAGE_SIZE, BYTES);
+        // 两页都切成128B的槽并写满
+        int perPage = SelfOffHeapCacheStore.PAGE_SIZE / 128;
+        for (int i = 0; i < 2 * perPage; i++) {
+            store.put(i, new byte[100], 0);
+        }
+        assertEquals(2 * perPage, store.size());
+
+        store.put(-1, new byte[1000], 0);
+        assertNotNull(store.get(-1));
+        assertEquals(0, store.rejectedCount());
+        assertEquals(perPage, store.evictionCount());
+        assertEquals(perPage + 1, store.size());
+        assertEquals(2L * SelfOffHeapCacheStore.PAGE_SIZE, store.allocatedBytes());
+    }
+
+    @Test
+    void sameSizeClassEvictsOnlyOneEntry() {
+        SelfOffHeapCacheStore<Integer, byte[]> store = new SelfOffHeapCacheStore<>(SelfOffHeapCacheStore.PAGE_SIZE, BYTES);
+        int perPage = SelfOffHeapCacheStore.PAGE_SIZE / 128;
+        for (int i = 0; i < perPage; i++) {
+            store.put(i, new byte[100], 0);
+        }
+        store.put(-1, new byte[120], 0);
+        assertEquals(1, store.evictionCount());
+        assertEquals(perPage, store.size());
+        // 最久未用的项被淘汰
+        assertNull(store.get(0));
+        assertNotNull(store.get(perPage - 1));
+    }
+
+    @Test
+    void valueLargerThanPageIsRejectedWithoutEviction() {
+        SelfOffHeapCacheStore<Integer, byte[]> store = new SelfOffHeapCacheStore<>(2 * SelfOffHeapCacheStore.PAGE_SIZE, BYTES);
+        store.put(1, new byte[100], 0);
+        store.put(1, new byte[SelfOffHeapCacheStore.PAGE_SIZE + 1], 0);
+        assertEquals(1, store.rejectedCount());
+        assertEquals(0, store.evictionCount());
+        // 旧值已经过时, 不能再读到
+        assertNull(store.get(1));
+    }
+
+    @Test
+    void reclaimedPageKeepsOtherValuesIntact() {
+        SelfOffHeapCacheStore<Integer, byte[]> store = new SelfOffHeapCacheStore<>(2 * SelfOffHeapCacheStore.PAGE_SIZE, BYTES);
+        int perPage = SelfOffHeapCacheStore.PAGE_SIZE / 128;
+        for (int i = 0; i < 2 * perPage; i++) {
+            store.put(i, filled(100, i), 0);
+        }
+        for (int i = 0; i < 8; i++) {
+            store.put(-1 - i, filled(5000, i), 0);
+        }
+        int found = 0;
+        for (int i = 0; i < 2 * perPage; i++) {
+            byte[] value = store.get(i);
+            if (null != value) {
+                assertArrayEquals(filled(100, i), value);
+                found++;
+            }
+        }
+        assertEquals(perPage, found);
+        for (int i = 0; i < 8; i++) {
+            assertArrayEquals(filled(5000, i), store.get(-1 - i));
+        }
+    }
+
+    private static byte[] filled(int length, int seed) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (seed * 31 + i);
+        }
+        return bytes;
+    }
+}
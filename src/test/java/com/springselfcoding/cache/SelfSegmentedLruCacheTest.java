@@ -0,0 +1,74 @@
+package com.springselfcoding.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SelfSegmentedLruCacheTest {
+
+    @Test
+    void totalWeightIsBoundedAcrossSegments() {
+        SelfSegmentedLruCache<Integer, String> cache = new SelfSegmentedLruCache<>(1000, (k, v) -> v.length(), 16);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i, "x".repeat(1 + i % 20), 0);
+            assertTrue(cache.weightedSize() <= 1000);
+        }
+        assertTrue(cache.evictionCount() > 0);
+    }
+
+    @Test
+    void singleEntryUpToTotalCapacityIsCachedWhateverTheSegmentCount() {
+        SelfSegmentedLruCache<Integer, String> cache = new SelfSegmentedLruCache<>(1000, (k, v) -> v.length(), 64);
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, "x".repeat(10), 0);
+        }
+        cache.put(-1, "x".repeat(1000), 0);
+        assertNotNull(cache.get(-1));
+        assertEquals(1000, cache.weightedSize());
+
+        cache.put(-2, "x".repeat(1001), 0);
+        assertNull(cache.get(-2));
+        assertEquals(1, cache.rejectedCount());
+    }
+
+    @Test
+    void scanDoesNotFlushProtectedEntries() {
+        SelfSegmentedLruCache<Integer, String> cache = new SelfSegmentedLruCache<>(100, (k, v) -> 1, 1);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, "hot", 0);
+            cache.get(i);
+        }
+        for (int i = 100; i < 1000; i++) {
+            cache.put(i, "scan", 0);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(cache.get(i));
+        }
+    }
+
+    @Test
+    void filteredEvictionReportsRemovals() {
+        List<Integer> removed = new ArrayList<>();
+        SelfSegmentedLruCache<Integer, String> cache = new SelfSegmentedLruCache<>(100, (k, v) -> 1, 4,
+                (key, value) -> removed.add(key));
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, i % 2 == 0 ? "even" : "odd", 0);
+        }
+
+        assertTrue(cache.evictOne("odd"::equals));
+        assertEquals(1, removed.size());
+        assertEquals(1, removed.get(0) % 2);
+
+        assertEquals(5, cache.evictAll("even"::equals));
+        assertFalse(cache.evictOne("even"::equals));
+        assertEquals(4, cache.size());
+        assertEquals(6, cache.evictionCount());
+    }
+}
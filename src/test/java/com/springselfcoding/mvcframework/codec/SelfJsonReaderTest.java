@@ -0,0 +1,80 @@
+package com.springselfcoding.mvcframework.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SelfJsonReaderTest {
+
+    @Test
+    void integersWithinLongRangeStayExact() throws IOException {
+        assertEquals(1234567890123456789L, number("1234567890123456789"));
+        assertEquals(Long.MAX_VALUE, number("9223372036854775807"));
+        assertEquals(Long.MIN_VALUE, number("-9223372036854775808"));
+        assertEquals(0L, number("-0"));
+    }
+
+    @Test
+    void integersBeyondLongFallBackToDouble() throws IOException {
+        assertEquals(9.223372036854775808E18, number("9223372036854775808"));
+        assertEquals(-1e22, number("-10000000000000000000000"));
+    }
+
+    @Test
+    void fractionsAndExponentsAreDoubles() throws IOException {
+        assertEquals(1.5, number("1.5"));
+        assertEquals(1000.0, number("1e3"));
+        assertEquals(-0.0125, number("-1.25E-2"));
+        assertEquals(0.1, number("0.1"));
+    }
+
+    @Test
+    void rejectsNumbersOutsideJsonGrammar() {
+        for (String text : new String[]{"0123", "-01", "00", "1.", "1.e3", ".5", "+1", "-", "1e", "1e+", "1-2"}) {
+            assertThrows(SelfJsonException.class, () -> number(text), text);
+            assertThrows(SelfJsonException.class, () -> reader("[" + text + "]").skipValue(), text);
+        }
+    }
+
+    @Test
+    void readLongAcceptsIntegralDoublesOnly() throws IOException {
+        assertEquals(1000L, reader("1e3").readLong());
+        assertThrows(SelfJsonException.class, () -> reader("1.5").readLong());
+        assertThrows(SelfJsonException.class, () -> reader("9223372036854775808").readLong());
+        assertThrows(SelfJsonException.class, () -> reader("2147483648").readInt());
+    }
+
+    @Test
+    void numberSplitAcrossStreamRefills() throws IOException {
+        byte[] json = "[12345678901234567,2.5]".getBytes(StandardCharsets.US_ASCII);
+        SelfJsonReader reader = new SelfJsonReader(new ByteArrayInputStream(json), new byte[4]);
+        reader.expect('[');
+        assertEquals(12345678901234567L, reader.readNumber());
+        reader.expect(',');
+        assertEquals(2.5, reader.readNumber());
+        reader.expect(']');
+        reader.readEnd();
+    }
+
+    @Test
+    void nestingDeeperThanLimitIsFormatError() {
+        String deep = "[".repeat(SelfJsonReader.MAX_DEPTH + 1) + "]".repeat(SelfJsonReader.MAX_DEPTH + 1);
+        assertThrows(SelfJsonException.class, () -> reader(deep).skipValue());
+    }
+
+    private static Number number(String text) throws IOException {
+        SelfJsonReader reader = reader(text);
+        Number value = reader.readNumber();
+        reader.readEnd();
+        return value;
+    }
+
+    private static SelfJsonReader reader(String text) {
+        return new SelfJsonReader(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,47 @@
+package com.springselfcoding.mvcframework.router;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SelfRouterTest {
+
+    @Test
+    void doubleWildcardMatchesEmptyRemainder() {
+        SelfRouter<String> router = new SelfRouter<>();
+        router.addRoute("/a/**", "all");
+
+        assertEquals("all", router.match("/a").getHandler());
+        assertEquals("all", router.match("/a/").getHandler());
+        assertEquals("all", router.match("/a/b/c").getHandler());
+        assertNull(router.match("/ab"));
+        assertNull(router.match("/b"));
+    }
+
+    @Test
+    void staticBeatsVariableBeatsDoubleWildcard() {
+        SelfRouter<String> router = new SelfRouter<>();
+        router.addRoute("/a/**", "all");
+        router.addRoute("/a/{id}", "variable");
+        router.addRoute("/a/new", "static");
+
+        assertEquals("static", router.match("/a/new").getHandler());
+        assertEquals("variable", router.match("/a/12").getHandler());
+        assertEquals("all", router.match("/a/12/x").getHandler());
+        assertEquals("all", router.match("/a").getHandler());
+    }
+
+    @Test
+    void capturesVariables() {
+        SelfRouter<String> router = new SelfRouter<>();
+        router.addRoute("/user/{id}/order/{orderId}", "order");
+
+        SelfRouteMatch<String> match = router.match("/user/7/order/42");
+        assertEquals("7", match.getVariable("id"));
+        assertEquals("42", match.getVariable("orderId"));
+        // 捕获缓冲按线程复用, 前一次的结果不受影响
+        router.match("/user/8/order/43");
+        assertEquals("7", match.getVariable(0));
+    }
+}
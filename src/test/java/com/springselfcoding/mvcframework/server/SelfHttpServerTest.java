@@ -0,0 +1,213 @@
+package com.springselfcoding.mvcframework.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 在随机端口上启动SelfHttpServer, 用原始Socket发送请求
+ * /echo 回写请求体, /late 开始异步后不complete(), 超时后再读取请求体并尝试写响应
+ */
+class SelfHttpServerTest {
+
+    private final CountDownLatch timedOut = new CountDownLatch(1);
+
+    private final AtomicReference<String> lateBody = new AtomicReference<>();
+
+    private final CountDownLatch lateDone = new CountDownLatch(1);
+
+    private SelfHttpServer server;
+
+    @BeforeEach
+    void start() throws IOException {
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                if ("/late".equals(req.getRequestURI())) {
+                    late(req, resp);
+                    return;
+                }
+                resp.getOutputStream().write(req.getInputStream().readAllBytes());
+            }
+        };
+        Properties config = new Properties();
+        config.setProperty(SelfHttpServer.PORT, "0");
+        config.setProperty(SelfHttpServer.SELECTORS, "1");
+        config.setProperty(SelfHttpServer.THREADS, "2");
+        this.server = new SelfHttpServer(servlet, config);
+        this.server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        this.server.close();
+    }
+
+    private void late(HttpServletRequest req, HttpServletResponse resp) {
+        AsyncContext async = req.startAsync();
+        async.setTimeout(100);
+        new Thread(() -> {
+            try {
+                // 超时的500已经写出, 连接与缓冲区可能已经在处理其他请求
+                this.timedOut.await(5, TimeUnit.SECONDS);
+                Thread.sleep(100);
+                this.lateBody.set(new String(req.getInputStream().readAllBytes(), StandardCharsets.US_ASCII));
+                resp.getOutputStream().write("late".getBytes(StandardCharsets.US_ASCII));
+                resp.flushBuffer();
+            } catch (Exception ignored) {
+                // 响应已经结束, 写入失败是预期的
+            } finally {
+                this.lateDone.countDown();
+            }
+        }).start();
+    }
+
+    @Test
+    void pipelinedRequestsAreAnsweredInOrder() throws IOException {
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(ascii(post("/echo", "first") + post("/echo", "second-body")
+                    + "GET /echo HTTP/1.1\r\nHost: x\r\n\r\n" + post("/echo", "third")));
+            InputStream in = socket.getInputStream();
+            assertEquals("first", readResponse(in).body);
+            assertEquals("second-body", readResponse(in).body);
+            assertEquals("", readResponse(in).body);
+            assertEquals("third", readResponse(in).body);
+        }
+    }
+
+    @Test
+    void lateHandlerAfterAsyncTimeoutKeepsItsOwnBody() throws Exception {
+        try (Socket socket = connect()) {
+            // 流水线中的第二个请求与第一个请求在同一个缓冲区中
+            socket.getOutputStream().write(ascii(post("/late", "late-request-body") + post("/echo", "pipelined")));
+            InputStream in = socket.getInputStream();
+            assertEquals(500, readResponse(in).status);
+            // 超时的响应关闭连接, 之后的请求不再处理
+            assertEquals(-1, in.read());
+        }
+
+        // 释放的缓冲区交给新的连接
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(ascii(post("/echo", "next-request-body")));
+            InputStream in = socket.getInputStream();
+            assertEquals("next-request-body", readResponse(in).body);
+
+            this.timedOut.countDown();
+            assertTrue(this.lateDone.await(5, TimeUnit.SECONDS));
+            assertEquals("late-request-body", this.lateBody.get());
+
+            // 迟到的写入不会出现在其他连接上
+            socket.getOutputStream().write(ascii(post("/echo", "after")));
+            assertEquals("after", readResponse(in).body);
+        }
+    }
+
+    @Test
+    void chunkedBodyAcrossManyReads() throws Exception {
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            out.write(ascii("POST /echo HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: Chunked\r\n\r\n"));
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                String data = "chunk-" + i;
+                expected.append(data);
+                String chunk = Integer.toHexString(data.length()) + ";ext=1\r\n" + data + "\r\n";
+                // 拆开发送, 块头与块数据分在不同的读取中
+                int half = chunk.length() / 2;
+                out.write(ascii(chunk.substring(0, half)));
+                out.flush();
+                Thread.sleep(5);
+                out.write(ascii(chunk.substring(half)));
+                out.flush();
+            }
+            out.write(ascii("0\r\n\r\n"));
+            Response response = readResponse(socket.getInputStream());
+            assertEquals(200, response.status);
+            assertEquals(expected.toString(), response.body);
+        }
+    }
+
+    @Test
+    void transferCodingOtherThanChunkedIsNotImplemented() throws IOException {
+        assertEquals(501, status("POST /echo HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: gzip, chunked\r\n\r\n"
+                + "5\r\nhello\r\n0\r\n\r\n"));
+        assertEquals(501, status("POST /echo HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: gzip\r\n\r\nhello"));
+        assertEquals(501, status("POST /echo HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n"
+                + "Transfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n0\r\n\r\n"));
+    }
+
+    private int status(String request) throws IOException {
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(ascii(request));
+            return readResponse(socket.getInputStream()).status;
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", this.server.getPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    private static String post(String uri, String body) {
+        return "POST " + uri + " HTTP/1.1\r\nHost: x\r\nContent-Length: " + body.length() + "\r\n\r\n" + body;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 读取一个带Content-Length的响应
+     */
+    private static Response readResponse(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        while (!head.toString(StandardCharsets.US_ASCII).endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Connection closed in response head: " + head);
+            }
+            head.write(b);
+        }
+        String[] lines = head.toString(StandardCharsets.US_ASCII).split("\r\n");
+        int contentLength = 0;
+        for (String line : lines) {
+            if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                contentLength = Integer.parseInt(line.substring(line.indexOf(':') + 1).trim());
+            }
+        }
+        byte[] body = in.readNBytes(contentLength);
+        return new Response(Integer.parseInt(lines[0].split(" ")[1]), new String(body, StandardCharsets.US_ASCII));
+    }
+
+    private static final class Response {
+
+        final int status;
+
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}